@@ -48,6 +48,7 @@ import com.android.ims.rcs.uce.presence.publish.PublishController;
 import com.android.ims.rcs.uce.presence.publish.PublishControllerImpl;
 import com.android.ims.rcs.uce.presence.subscribe.SubscribeController;
 import com.android.ims.rcs.uce.presence.subscribe.SubscribeControllerImpl;
+import com.android.ims.rcs.uce.request.UceRequestCoordinator;
 import com.android.ims.rcs.uce.request.UceRequestManager;
 import com.android.ims.rcs.uce.util.UceUtils;
 import com.android.internal.annotations.VisibleForTesting;
@@ -474,6 +475,7 @@ public class UceController {
         mPublishController.onCarrierConfigChanged();
         mSubscribeController.onCarrierConfigChanged();
         mOptionsController.onCarrierConfigChanged();
+        mRequestManager.onCarrierConfigChanged();
     }
 
     private void handleCachedCapabilityEvent() {
@@ -562,7 +564,10 @@ public class UceController {
         public void refreshCapabilities(@NonNull List<Uri> contactNumbers,
                 @NonNull IRcsUceControllerCallback callback) throws RemoteException{
             logd("refreshCapabilities: " + contactNumbers.size());
-            UceController.this.requestCapabilitiesInternal(contactNumbers, true, callback);
+            // The contacts are refreshed in the background and should yield to the requests which
+            // the user is waiting for.
+            UceController.this.requestCapabilitiesInternal(contactNumbers, true,
+                    UceRequestCoordinator.REQUEST_PRIORITY_BACKGROUND, callback);
         }
     };
 
@@ -627,11 +632,12 @@ public class UceController {
      */
     public void requestCapabilities(@NonNull List<Uri> uriList,
             @NonNull IRcsUceControllerCallback c) throws RemoteException {
-        requestCapabilitiesInternal(uriList, false, c);
+        requestCapabilitiesInternal(uriList, false,
+                UceRequestCoordinator.REQUEST_PRIORITY_INTERACTIVE, c);
     }
 
     private void requestCapabilitiesInternal(@NonNull List<Uri> uriList, boolean skipFromCache,
-            @NonNull IRcsUceControllerCallback c) throws RemoteException {
+            int priority, @NonNull IRcsUceControllerCallback c) throws RemoteException {
         if (uriList == null || uriList.isEmpty() || c == null) {
             logw("requestCapabilities: parameter is empty");
             if (c != null) {
@@ -661,7 +667,7 @@ public class UceController {
 
         // Trigger the capabilities request task
         logd("requestCapabilities: size=" + uriList.size());
-        mRequestManager.sendCapabilityRequest(uriList, skipFromCache, c);
+        mRequestManager.sendCapabilityRequest(uriList, skipFromCache, priority, c);
     }
 
     /**
@@ -868,6 +874,7 @@ public class UceController {
         pw.println("---");
 
         mPublishController.dump(pw);
+        mRequestManager.dump(pw);
 
         pw.decreaseIndent();
     }
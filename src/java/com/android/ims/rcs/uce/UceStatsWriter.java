@@ -118,6 +118,12 @@ public class UceStatsWriter {
          * Notify that the active UCE PUBLISH to the carrier network has been terminated.
          */
         void onStoreCompleteImsRegistrationServiceDescStats(int subId);
+
+        /**
+         * Notify the latency summary of one stage of the capability requests.
+         */
+        default void onUceRequestLatencyStats(int subId, int stage, int count,
+                long averageMillis, long p90Millis, long maxMillis) {}
     }
 
     /**
@@ -256,6 +262,24 @@ public class UceStatsWriter {
         }
     }
 
+    /**
+     * The latency summary of one stage of the capability requests which finished since the
+     * previous summary of the same subscription.
+     * @param subId The subId associated with the event.
+     * @param stage The request stage defined in UceRequestLatencyTracker.
+     * @param count The number of samples of this stage.
+     * @param averageMillis The average latency of this stage.
+     * @param p90Millis The estimated 90th percentile latency of this stage.
+     * @param maxMillis The maximum latency of this stage.
+     */
+    public void setUceRequestLatencyStats(int subId, int stage, int count, long averageMillis,
+            long p90Millis, long maxMillis) {
+        if (mCallBack != null) {
+            mCallBack.onUceRequestLatencyStats(subId, stage, count, averageMillis, p90Millis,
+                    maxMillis);
+        }
+    }
+
     @VisibleForTesting
     protected UceStatsWriter(UceStatsCallback callback) {
         mCallBack = callback;
@@ -42,9 +42,12 @@ import android.telephony.ims.aidl.IRcsUceControllerCallback;
 import android.util.Log;
 
 import com.android.ims.rcs.uce.UceController;
+import com.android.internal.annotations.VisibleForTesting;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 public final class EabBulkCapabilityUpdater {
     private final String TAG = this.getClass().getSimpleName();
@@ -62,6 +65,8 @@ public final class EabBulkCapabilityUpdater {
     private final EabSettingsListener mEabSettingListener;
     private final EabControllerImpl mEabControllerImpl;
     private final EabContactSyncController mEabContactSyncController;
+    private final PendingContactSyncRunnable mPendingContactSyncRunnable =
+            new PendingContactSyncRunnable();
 
     private UceController.UceControllerCallback mUceControllerCallback;
     private List<Uri> mRefreshContactList;
@@ -70,6 +75,8 @@ public final class EabBulkCapabilityUpdater {
     private boolean mIsEabSettingListenerRegistered = false;
     private boolean mIsCarrierConfigListenerRegistered = false;
     private boolean mIsCarrierConfigEnabled = false;
+    // The timestamp of the capability expired alert that has been set, in seconds.
+    private long mExpiredTimeAlertTimestamp = Long.MAX_VALUE;
 
     /**
      * Listen capability expired intent. Only registered when
@@ -80,11 +87,14 @@ public final class EabBulkCapabilityUpdater {
         @Override
         public void onAlarm() {
             Log.d(TAG, "Capability expired.");
+            // The alarm is one-shot. Clear its timestamp so that the next update arms it again
+            // even if the least expired timestamp has not changed.
+            mExpiredTimeAlertTimestamp = Long.MAX_VALUE;
             try {
                 List<Uri> expiredContactList = getExpiredContactList();
                 if (expiredContactList.size() > 0) {
                     mUceControllerCallback.refreshCapabilities(
-                            getExpiredContactList(),
+                            expiredContactList,
                             mRcsUceControllerCallback);
                 } else {
                     Log.d(TAG, "expiredContactList is empty.");
@@ -172,6 +182,18 @@ public final class EabBulkCapabilityUpdater {
         }
     }
 
+    /**
+     * Sync the contacts that have not been synced by the last sync pass. It's posted for each
+     * pass so that the other messages of the handler can be handled between the passes.
+     */
+    private class PendingContactSyncRunnable implements Runnable {
+        @Override
+        public void run() {
+            Log.d(TAG, "Sync the pending contacts from contact provider");
+            syncContactAndRefreshCapabilities();
+        }
+    }
+
     /**
      * Re-refresh capability if error happened.
      */
@@ -233,8 +255,15 @@ public final class EabBulkCapabilityUpdater {
 
     private void syncContactAndRefreshCapabilities() {
         mRefreshContactList = mEabContactSyncController.syncContactToEabProvider(mContext);
+        // The contacts may be removed from the EAB provider while syncing.
+        mEabControllerImpl.clearCapabilityCache();
         Log.d(TAG, "refresh contacts number: " + mRefreshContactList.size());
 
+        mHandler.removeCallbacks(mPendingContactSyncRunnable);
+        if (mEabContactSyncController.hasPendingContacts()) {
+            mHandler.post(mPendingContactSyncRunnable);
+        }
+
         if (mUceControllerCallback == null) {
             Log.d(TAG, "mUceControllerCallback is null.");
             return;
@@ -265,60 +294,110 @@ public final class EabBulkCapabilityUpdater {
                 return;
             }
             expiredTimestamp += mEabControllerImpl.getCapabilityCacheExpiration(mSubId);
+            if (expiredTimestamp == mExpiredTimeAlertTimestamp) {
+                Log.d(TAG, "The time alert has been set at " + expiredTimestamp);
+                return;
+            }
             Log.d(TAG, "set time alert at " + expiredTimestamp);
             cancelTimeAlert(mContext);
             setTimeAlert(mContext, expiredTimestamp);
+            mExpiredTimeAlertTimestamp = expiredTimestamp;
         }
     }
 
     private long getLeastExpiredTimestamp() {
-        String selection = "("
-                // Query presence timestamp
-                + EabProvider.EabCommonColumns.MECHANISM + "=" + CAPABILITY_MECHANISM_PRESENCE
-                + " AND "
-                + EabProvider.PresenceTupleColumns.REQUEST_TIMESTAMP + " IS NOT NULL) "
-
-                // Query options timestamp
-                + " OR " + "(" + EabProvider.EabCommonColumns.MECHANISM + "="
-                + CAPABILITY_MECHANISM_OPTIONS + " AND "
-                + EabProvider.OptionsColumns.REQUEST_TIMESTAMP + " IS NOT NULL) "
-
-                // filter by sub id
-                + " AND " + EabProvider.EabCommonColumns.SUBSCRIPTION_ID + "=" + mSubId
-
-                // filter the contact that not come from contact provider
-                + " AND " + EabProvider.ContactColumns.RAW_CONTACT_ID + " IS NOT NULL "
-                + " AND " + EabProvider.ContactColumns.DATA_ID + " IS NOT NULL ";
+        // Query the presence and the options tables separately so that each minimum is found
+        // by walking the timestamp index of the table instead of scanning the joined tables.
+        long presenceTimestamp = queryLeastTimestamp(EabProvider.PRESENCE_URI,
+                getLeastTimestampSelection(mSubId, EabProvider.EAB_PRESENCE_TUPLE_TABLE_NAME,
+                        EabProvider.PresenceTupleColumns.EAB_COMMON_ID,
+                        EabProvider.PresenceTupleColumns.REQUEST_TIMESTAMP,
+                        CAPABILITY_MECHANISM_PRESENCE),
+                EabProvider.PresenceTupleColumns.REQUEST_TIMESTAMP);
+        long optionsTimestamp = queryLeastTimestamp(EabProvider.OPTIONS_URI,
+                getLeastTimestampSelection(mSubId, EabProvider.EAB_OPTIONS_TABLE_NAME,
+                        EabProvider.OptionsColumns.EAB_COMMON_ID,
+                        EabProvider.OptionsColumns.REQUEST_TIMESTAMP,
+                        CAPABILITY_MECHANISM_OPTIONS),
+                EabProvider.OptionsColumns.REQUEST_TIMESTAMP);
+        return Math.min(presenceTimestamp, optionsTimestamp);
+    }
 
+    private long queryLeastTimestamp(Uri uri, String selection, String timestampColumn) {
         long minTimestamp = Long.MAX_VALUE;
-        Cursor result = mContext.getContentResolver().query(EabProvider.ALL_DATA_URI, null,
+        Cursor result = mContext.getContentResolver().query(uri,
+                new String[]{"MIN(" + timestampColumn + ")"},
                 selection,
                 null, null);
 
         if (result != null) {
-            while (result.moveToNext()) {
-                int mechanism = result.getInt(
-                        result.getColumnIndex(EabProvider.EabCommonColumns.MECHANISM));
-                long timestamp;
-                if (mechanism == CAPABILITY_MECHANISM_PRESENCE) {
-                    timestamp = result.getLong(result.getColumnIndex(
-                            EabProvider.PresenceTupleColumns.REQUEST_TIMESTAMP));
-                } else {
-                    timestamp = result.getLong(result.getColumnIndex(
-                            EabProvider.OptionsColumns.REQUEST_TIMESTAMP));
-                }
-
-                if (timestamp < minTimestamp) {
-                    minTimestamp = timestamp;
-                }
+            if (result.moveToFirst() && !result.isNull(0)) {
+                minTimestamp = result.getLong(0);
             }
             result.close();
         } else {
-            Log.d(TAG, "getLeastExpiredTimestamp() cursor is null");
+            Log.d(TAG, "queryLeastTimestamp() cursor is null, uri: " + uri);
         }
         return minTimestamp;
     }
 
+    /**
+     * Get the selection of the capabilities table to find the least request timestamp of the
+     * given subscription. The contact filters are checked by the correlated sub query with the
+     * primary keys, so the database can walk the timestamp index and stop at the first matched
+     * row.
+     */
+    @VisibleForTesting
+    public static String getLeastTimestampSelection(int subId, String tableName,
+            String commonIdColumn, String timestampColumn, int mechanism) {
+        return timestampColumn + " IS NOT NULL AND "
+                + getContactSelection(subId, tableName, commonIdColumn, mechanism);
+    }
+
+    /**
+     * Get the selection of the capabilities table to find the capabilities of the given
+     * subscription which were requested at or before the given timestamp. The database can
+     * scan the range of the timestamp index instead of joining all the tables.
+     */
+    @VisibleForTesting
+    public static String getExpiredCapabilitySelection(int subId, String tableName,
+            String commonIdColumn, String timestampColumn, int mechanism, long expiredTime) {
+        return timestampColumn + "<=" + expiredTime + " AND "
+                + getContactSelection(subId, tableName, commonIdColumn, mechanism);
+    }
+
+    private static String getContactSelection(int subId, String tableName,
+            String commonIdColumn, int mechanism) {
+        return "EXISTS (SELECT 1 FROM " + EabProvider.EAB_COMMON_TABLE_NAME
+                + " JOIN " + EabProvider.EAB_CONTACT_TABLE_NAME
+                + " ON " + EabProvider.EAB_CONTACT_TABLE_NAME + "." + EabProvider.ContactColumns._ID
+                + "=" + EabProvider.EAB_COMMON_TABLE_NAME + "."
+                + EabProvider.EabCommonColumns.EAB_CONTACT_ID
+                + " WHERE " + EabProvider.EAB_COMMON_TABLE_NAME + "."
+                + EabProvider.EabCommonColumns._ID + "=" + tableName + "." + commonIdColumn
+                + " AND " + EabProvider.EabCommonColumns.MECHANISM + "=" + mechanism
+                + " AND " + EabProvider.EabCommonColumns.SUBSCRIPTION_ID + "=" + subId
+
+                // filter the contact that not come from contact provider
+                + " AND " + EabProvider.ContactColumns.RAW_CONTACT_ID + " IS NOT NULL"
+                + " AND " + EabProvider.ContactColumns.DATA_ID + " IS NOT NULL)";
+    }
+
+    /**
+     * Get the projection of the capabilities table which maps a row back to the phone number of
+     * its contact by the primary keys.
+     */
+    private static String getPhoneNumberProjection(String tableName, String commonIdColumn) {
+        return "(SELECT " + EabProvider.ContactColumns.PHONE_NUMBER
+                + " FROM " + EabProvider.EAB_CONTACT_TABLE_NAME
+                + " JOIN " + EabProvider.EAB_COMMON_TABLE_NAME
+                + " ON " + EabProvider.EAB_CONTACT_TABLE_NAME + "." + EabProvider.ContactColumns._ID
+                + "=" + EabProvider.EAB_COMMON_TABLE_NAME + "."
+                + EabProvider.EabCommonColumns.EAB_CONTACT_ID
+                + " WHERE " + EabProvider.EAB_COMMON_TABLE_NAME + "."
+                + EabProvider.EabCommonColumns._ID + "=" + tableName + "." + commonIdColumn + ")";
+    }
+
     private void setTimeAlert(Context context, long wakeupTimeMs) {
         AlarmManager am = context.getSystemService(AlarmManager.class);
 
@@ -337,6 +416,7 @@ public final class EabBulkCapabilityUpdater {
         Log.d(TAG, "cancelTimeAlert.");
         AlarmManager am = context.getSystemService(AlarmManager.class);
         am.cancel(mCapabilityExpiredListener);
+        mExpiredTimeAlertTimestamp = Long.MAX_VALUE;
     }
 
     private boolean getBooleanCarrierConfig(String key, int subId) {
@@ -368,28 +448,49 @@ public final class EabBulkCapabilityUpdater {
         return false;
     }
 
-    private List<Uri> getExpiredContactList() {
-        List<Uri> refreshList = new ArrayList<>();
+    @VisibleForTesting
+    public List<Uri> getExpiredContactList() {
+        // The capabilities are expired when they were requested before the expiration period.
         long expiredTime = (System.currentTimeMillis() / 1000)
-                + mEabControllerImpl.getCapabilityCacheExpiration(mSubId);
-        String selection = "("
-                + EabProvider.EabCommonColumns.MECHANISM + "=" + CAPABILITY_MECHANISM_PRESENCE
-                + " AND " + EabProvider.PresenceTupleColumns.REQUEST_TIMESTAMP + "<"
-                + expiredTime + ")";
-        selection += " OR " + "(" + EabProvider.EabCommonColumns.MECHANISM + "="
-                + CAPABILITY_MECHANISM_OPTIONS + " AND "
-                + EabProvider.OptionsColumns.REQUEST_TIMESTAMP + "<" + expiredTime + ")";
-
-        Cursor result = mContext.getContentResolver().query(EabProvider.ALL_DATA_URI, null,
-                selection,
+                - mEabControllerImpl.getCapabilityCacheExpiration(mSubId);
+
+        // A contact may have multiple expired tuples, so the duplicated phone numbers are removed.
+        Set<String> expiredNumbers = new LinkedHashSet<>();
+        queryExpiredPhoneNumbers(EabProvider.PRESENCE_URI,
+                EabProvider.EAB_PRESENCE_TUPLE_TABLE_NAME,
+                EabProvider.PresenceTupleColumns.EAB_COMMON_ID,
+                EabProvider.PresenceTupleColumns.REQUEST_TIMESTAMP,
+                CAPABILITY_MECHANISM_PRESENCE, expiredTime, expiredNumbers);
+        queryExpiredPhoneNumbers(EabProvider.OPTIONS_URI,
+                EabProvider.EAB_OPTIONS_TABLE_NAME,
+                EabProvider.OptionsColumns.EAB_COMMON_ID,
+                EabProvider.OptionsColumns.REQUEST_TIMESTAMP,
+                CAPABILITY_MECHANISM_OPTIONS, expiredTime, expiredNumbers);
+
+        List<Uri> refreshList = new ArrayList<>(expiredNumbers.size());
+        for (String phoneNumber : expiredNumbers) {
+            refreshList.add(Uri.parse(phoneNumber));
+        }
+        return refreshList;
+    }
+
+    private void queryExpiredPhoneNumbers(Uri uri, String tableName, String commonIdColumn,
+            String timestampColumn, int mechanism, long expiredTime, Set<String> phoneNumbers) {
+        Cursor result = mContext.getContentResolver().query(uri,
+                new String[]{getPhoneNumberProjection(tableName, commonIdColumn)},
+                getExpiredCapabilitySelection(mSubId, tableName, commonIdColumn,
+                        timestampColumn, mechanism, expiredTime),
                 null, null);
+        if (result == null) {
+            Log.d(TAG, "queryExpiredPhoneNumbers() cursor is null, uri: " + uri);
+            return;
+        }
         while (result.moveToNext()) {
-            String phoneNumber = result.getString(
-                    result.getColumnIndex(EabProvider.ContactColumns.PHONE_NUMBER));
-            refreshList.add(Uri.parse(phoneNumber));
+            if (!result.isNull(0)) {
+                phoneNumbers.add(result.getString(0));
+            }
         }
         result.close();
-        return refreshList;
     }
 
     protected void onDestroy() {
@@ -423,6 +524,7 @@ public final class EabBulkCapabilityUpdater {
             mIsContactProviderListenerRegistered = false;
             mContext.getContentResolver().unregisterContentObserver(mContactProviderListener);
         }
+        mHandler.removeCallbacks(mPendingContactSyncRunnable);
     }
 
     private void unRegisterEabUserSettings() {
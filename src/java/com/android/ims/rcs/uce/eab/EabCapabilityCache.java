@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ims.rcs.uce.eab;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.ArraySet;
+import android.util.Log;
+
+import com.android.ims.rcs.uce.util.CapabilityStringPool;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The in-memory cache of the EAB capability rows of one subscription. It's keyed by the
+ * normalized phone number and keeps the joined rows that the EAB provider returned for that
+ * number, so the expiration rules of {@link EabControllerImpl} can still be evaluated against the
+ * cached rows when they are read.
+ */
+public class EabCapabilityCache {
+    private static final String TAG = "EabCapabilityCache";
+
+    // The maximum number of the contacts kept in the cache.
+    @VisibleForTesting
+    public static final int DEFAULT_MAX_CACHE_SIZE = 500;
+
+    /**
+     * The columns of the joined EAB tables which are needed to build the capabilities. This is
+     * also used as the projection when querying the EAB provider.
+     */
+    public static final String[] CAPABILITY_PROJECTION = new String[] {
+            EabProvider.EabCommonColumns.MECHANISM,
+            EabProvider.EabCommonColumns.REQUEST_RESULT,
+            EabProvider.EabCommonColumns.ENTITY_URI,
+            EabProvider.PresenceTupleColumns.BASIC_STATUS,
+            EabProvider.PresenceTupleColumns.SERVICE_ID,
+            EabProvider.PresenceTupleColumns.SERVICE_VERSION,
+            EabProvider.PresenceTupleColumns.DESCRIPTION,
+            EabProvider.PresenceTupleColumns.REQUEST_TIMESTAMP,
+            EabProvider.PresenceTupleColumns.DUPLEX_MODE,
+            EabProvider.PresenceTupleColumns.UNSUPPORTED_DUPLEX_MODE,
+            EabProvider.PresenceTupleColumns.AUDIO_CAPABLE,
+            EabProvider.PresenceTupleColumns.VIDEO_CAPABLE,
+            EabProvider.OptionsColumns.FEATURE_TAG,
+            EabProvider.OptionsColumns.REQUEST_TIMESTAMP
+    };
+
+    // The columns whose values are shared by the contacts. The cached rows refer to the pooled
+    // instances of these values.
+    private static final Set<String> POOLED_COLUMNS = new ArraySet<>(Arrays.asList(
+            EabProvider.PresenceTupleColumns.BASIC_STATUS,
+            EabProvider.PresenceTupleColumns.SERVICE_ID,
+            EabProvider.PresenceTupleColumns.SERVICE_VERSION,
+            EabProvider.PresenceTupleColumns.DUPLEX_MODE,
+            EabProvider.PresenceTupleColumns.UNSUPPORTED_DUPLEX_MODE,
+            EabProvider.OptionsColumns.FEATURE_TAG));
+
+    /**
+     * The cached rows of one contact. An entry without any row means the contact cannot be found
+     * in the EAB database.
+     */
+    public static class Entry {
+        private final List<Object[]> mRows;
+
+        private Entry(List<Object[]> rows) {
+            mRows = rows;
+        }
+
+        /**
+         * Copy all the rows of the given cursor. The cursor should be queried with the
+         * {@link #CAPABILITY_PROJECTION} and is not closed by this method.
+         */
+        public static @NonNull Entry fromCursor(@Nullable Cursor cursor) {
+            if (cursor == null || cursor.getCount() == 0) {
+                return new Entry(Collections.emptyList());
+            }
+            List<Object[]> rows = new ArrayList<>(cursor.getCount());
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                rows.add(copyRow(cursor));
+            }
+            return new Entry(rows);
+        }
+
+        /**
+         * Create an entry from the rows which have been copied by {@link #copyRow(Cursor)}.
+         */
+        public static @NonNull Entry fromRows(@NonNull List<Object[]> rows) {
+            return new Entry(rows);
+        }
+
+        /**
+         * Copy the current row of the given cursor which is queried with the
+         * {@link #CAPABILITY_PROJECTION}.
+         */
+        public static @NonNull Object[] copyRow(@NonNull Cursor cursor) {
+            Object[] row = new Object[CAPABILITY_PROJECTION.length];
+            for (int i = 0; i < CAPABILITY_PROJECTION.length; i++) {
+                int index = cursor.getColumnIndex(CAPABILITY_PROJECTION[i]);
+                if (index == -1) {
+                    continue;
+                }
+                switch (cursor.getType(index)) {
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        row[i] = cursor.getLong(index);
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        row[i] = cursor.getDouble(index);
+                        break;
+                    case Cursor.FIELD_TYPE_STRING:
+                        String value = cursor.getString(index);
+                        row[i] = POOLED_COLUMNS.contains(CAPABILITY_PROJECTION[i])
+                                ? CapabilityStringPool.intern(value) : value;
+                        break;
+                    case Cursor.FIELD_TYPE_BLOB:
+                        row[i] = cursor.getBlob(index);
+                        break;
+                    default:
+                        row[i] = null;
+                        break;
+                }
+            }
+            return row;
+        }
+
+        /**
+         * @return true if the contact cannot be found in the EAB database.
+         */
+        public boolean isEmpty() {
+            return mRows.isEmpty();
+        }
+
+        /**
+         * @return A new cursor which contains the cached rows. The caller should close it.
+         */
+        public @NonNull Cursor toCursor() {
+            MatrixCursor cursor = new MatrixCursor(CAPABILITY_PROJECTION, mRows.size());
+            for (Object[] row : mRows) {
+                cursor.addRow(row);
+            }
+            return cursor;
+        }
+    }
+
+    private final int mSubId;
+    private final int mMaxSize;
+    private final LinkedHashMap<String, Entry> mCache;
+
+    // Increased whenever the cache is invalidated. It's used to drop the entries which were
+    // queried from the database before the invalidation.
+    private long mVersion = 0;
+
+    public EabCapabilityCache(int subId) {
+        this(subId, DEFAULT_MAX_CACHE_SIZE);
+    }
+
+    @VisibleForTesting
+    public EabCapabilityCache(int subId, int maxSize) {
+        mSubId = subId;
+        mMaxSize = maxSize;
+        mCache = new LinkedHashMap<String, Entry>(16, 0.75f, true /*accessOrder*/) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > mMaxSize;
+            }
+        };
+    }
+
+    /**
+     * @return The cached entry of the given phone number or null if it's not cached.
+     */
+    public synchronized @Nullable Entry get(@Nullable String phoneNumber) {
+        if (phoneNumber == null) {
+            return null;
+        }
+        return mCache.get(phoneNumber);
+    }
+
+    /**
+     * @return The current version of the cache. It should be retrieved before querying the
+     * database and passed to {@link #put(String, Entry, long)}.
+     */
+    public synchronized long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Put the entry into the cache if the cache has not been invalidated since the given version.
+     */
+    public synchronized void put(@Nullable String phoneNumber, @NonNull Entry entry,
+            long version) {
+        if (phoneNumber == null || version != mVersion) {
+            return;
+        }
+        mCache.put(phoneNumber, entry);
+    }
+
+    /**
+     * Remove the given phone numbers from the cache.
+     */
+    public synchronized void invalidate(@NonNull List<String> phoneNumbers) {
+        mVersion++;
+        for (String phoneNumber : phoneNumbers) {
+            if (phoneNumber != null) {
+                mCache.remove(phoneNumber);
+            }
+        }
+    }
+
+    /**
+     * Remove all the entries from the cache.
+     */
+    public synchronized void clear() {
+        mVersion++;
+        Log.d(TAG, "[" + mSubId + "] clear: size=" + mCache.size());
+        mCache.clear();
+    }
+
+    @VisibleForTesting
+    public synchronized int size() {
+        return mCache.size();
+    }
+}
@@ -23,22 +23,24 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.preference.PreferenceManager;
 import android.provider.ContactsContract;
-import android.telephony.TelephonyManager;
+import android.text.TextUtils;
 import android.util.Log;
 
-import com.android.i18n.phonenumbers.NumberParseException;
-import com.android.i18n.phonenumbers.PhoneNumberUtil;
-import com.android.i18n.phonenumbers.Phonenumber;
 import com.android.internal.annotations.VisibleForTesting;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 /**
- * Sync the contacts from Contact Provider to EAB Provider
+ * Sync the contacts from Contact Provider to EAB Provider. The changed phone numbers are synced
+ * in passes of at most {@link #MAX_SYNC_CONTACTS_PER_PASS} rows and the progress is saved after
+ * each pass, so a large initial sync can be resumed and doesn't block the caller's thread for
+ * the whole contact list.
  */
 public class EabContactSyncController {
     private final String TAG = this.getClass().getSimpleName();
@@ -46,6 +48,44 @@ public class EabContactSyncController {
     private static final int NOT_INIT_LAST_UPDATED_TIME = -1;
     private static final String LAST_UPDATED_TIME_KEY = "eab_last_updated_time";
 
+    // The maximum number of the changed phone numbers handled in one sync pass.
+    @VisibleForTesting
+    public static final int MAX_SYNC_CONTACTS_PER_PASS = 2000;
+
+    // The maximum number of the rows inserted, or the arguments bound, in one provider operation.
+    // It's kept below the SQLite limit of the bound arguments.
+    @VisibleForTesting
+    public static final int SYNC_BATCH_SIZE = 500;
+
+    // The columns of the contact provider that are needed to sync the phone numbers.
+    private static final String[] CONTACT_DATA_PROJECTION = new String[] {
+            ContactsContract.Data._ID,
+            ContactsContract.Data.CONTACT_ID,
+            ContactsContract.CommonDataKinds.Phone.RAW_CONTACT_ID,
+            ContactsContract.CommonDataKinds.Phone.NUMBER,
+            ContactsContract.Data.CONTACT_LAST_UPDATED_TIMESTAMP
+    };
+
+    /**
+     * The phone number row of the contact provider which has changed since the last sync.
+     */
+    private static class ContactData {
+        final long mContactId;
+        final long mRawContactId;
+        final long mDataId;
+        final String mNumber;
+
+        ContactData(long contactId, long rawContactId, long dataId, String number) {
+            mContactId = contactId;
+            mRawContactId = rawContactId;
+            mDataId = dataId;
+            mNumber = number;
+        }
+    }
+
+    // Whether there are still changed contacts that have not been synced by the last pass.
+    private boolean mHasPendingContacts;
+
     /**
      * Sync contact from Contact provider to EAB provider. There are 4 kinds of cases need to be
      * handled when received the contact db changed:
@@ -55,61 +95,115 @@ public class EabContactSyncController {
      * 3. Update the phone number
      * 4. Add a new contact and add phone number
      *
+     * Only one pass is handled in each call. The caller should call this method again when
+     * {@link #hasPendingContacts()} returns true.
+     *
      * @return The contacts that need to refresh
      */
     @VisibleForTesting
     public List<Uri> syncContactToEabProvider(Context context) {
         Log.d(TAG, "syncContactToEabProvider");
-        List<Uri> refreshContacts = null;
-        StringBuilder selection = new StringBuilder();
-        String[] selectionArgs = null;
+        mHasPendingContacts = false;
+        String selection = ContactsContract.Data.MIMETYPE + "=?";
+        String[] selectionArgs =
+                new String[] {ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE};
 
         // Get the last update timestamp from shared preference.
         long lastUpdatedTimeStamp = getLastUpdatedTime(context);
         if (lastUpdatedTimeStamp != -1) {
-            selection.append(ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP + ">?");
-            selectionArgs = new String[]{String.valueOf(lastUpdatedTimeStamp)};
+            selection += " AND " + ContactsContract.Data.CONTACT_LAST_UPDATED_TIMESTAMP + ">?";
+            selectionArgs = new String[] {ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE,
+                    String.valueOf(lastUpdatedTimeStamp)};
         }
 
         // Contact deleted cases (case 1)
         handleContactDeletedCase(context, lastUpdatedTimeStamp);
 
-        // Query the contacts that have not been synchronized to eab contact table.
+        // Query the phone numbers that have not been synchronized to eab contact table. They are
+        // sorted by the timestamp so that the sync can be resumed from the last handled one.
         Cursor updatedContact = context.getContentResolver().query(
                 ContactsContract.Data.CONTENT_URI,
-                null,
-                selection.toString(),
+                CONTACT_DATA_PROJECTION,
+                selection,
                 selectionArgs,
-                null);
+                ContactsContract.Data.CONTACT_LAST_UPDATED_TIMESTAMP);
 
-        if (updatedContact != null) {
-            Log.d(TAG, "Contact changed count: " + updatedContact.getCount());
+        if (updatedContact == null) {
+            Log.e(TAG, "Cursor is null.");
+            return new ArrayList<>();
+        }
 
-            if (updatedContact.getCount() == 0) {
-                return new ArrayList<>();
-            }
+        List<ContactData> contactDataList = new ArrayList<>();
+        long maxTimestamp = readContactData(context, updatedContact, contactDataList);
+        updatedContact.close();
+        Log.d(TAG, "Contact changed count: " + contactDataList.size()
+                + ", hasPendingContacts: " + mHasPendingContacts);
 
-            // Delete the EAB phone number that not in contact provider (case 2). Updated phone
-            // number(case 3) also delete in here and re-insert in next step.
-            handlePhoneNumberDeletedCase(context, updatedContact);
+        if (contactDataList.isEmpty()) {
+            return new ArrayList<>();
+        }
 
-            // Insert the phone number that not in EAB provider (case 3 and case 4)
-            refreshContacts = handlePhoneNumberInsertedCase(context, updatedContact);
+        // Delete the EAB phone number that not in contact provider (case 2). Updated phone
+        // number(case 3) also delete in here and re-insert in next step.
+        handlePhoneNumberDeletedCase(context, contactDataList);
 
-            // Update the last update time in shared preference
-            if (updatedContact.getCount() > 0) {
-                long maxTimestamp = findMaxTimestamp(updatedContact);
-                if (maxTimestamp != Long.MIN_VALUE) {
-                    setLastUpdatedTime(context, maxTimestamp);
-                }
-            }
-            updatedContact.close();
-        } else {
-            Log.e(TAG, "Cursor is null.");
+        // Insert the phone number that not in EAB provider (case 3 and case 4)
+        List<Uri> refreshContacts = handlePhoneNumberInsertedCase(context, contactDataList);
+
+        // Update the last update time in shared preference
+        if (maxTimestamp != Long.MIN_VALUE) {
+            setLastUpdatedTime(context, maxTimestamp);
         }
         return refreshContacts;
     }
 
+    /**
+     * @return true if the last call of {@link #syncContactToEabProvider(Context)} has not synced
+     * all the changed contacts.
+     */
+    public boolean hasPendingContacts() {
+        return mHasPendingContacts;
+    }
+
+    /**
+     * Read the changed phone numbers of this pass from the cursor which is sorted by the
+     * timestamp. The phone numbers with the same timestamp are always read in the same pass,
+     * otherwise the rest of them would be skipped by the next pass.
+     *
+     * @return The max timestamp of the phone numbers which have been read.
+     */
+    private long readContactData(Context context, Cursor cursor,
+            List<ContactData> contactDataList) {
+        int contactIdIndex = cursor.getColumnIndex(ContactsContract.Data.CONTACT_ID);
+        int rawContactIdIndex = cursor.getColumnIndex(
+                ContactsContract.CommonDataKinds.Phone.RAW_CONTACT_ID);
+        int dataIdIndex = cursor.getColumnIndex(ContactsContract.Data._ID);
+        int numberIndex = cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.NUMBER);
+        int timestampIndex = cursor.getColumnIndex(
+                ContactsContract.Data.CONTACT_LAST_UPDATED_TIMESTAMP);
+
+        long maxTimestamp = Long.MIN_VALUE;
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            long timestamp = cursor.getLong(timestampIndex);
+            if (contactDataList.size() >= MAX_SYNC_CONTACTS_PER_PASS
+                    && timestamp != maxTimestamp) {
+                mHasPendingContacts = true;
+                break;
+            }
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+
+            String number = EabPhoneNumberFormatter.formatNumber(context,
+                    cursor.getString(numberIndex));
+            if (TextUtils.isEmpty(number)) {
+                continue;
+            }
+            contactDataList.add(new ContactData(cursor.getLong(contactIdIndex),
+                    cursor.getLong(rawContactIdIndex), cursor.getLong(dataIdIndex), number));
+        }
+        return maxTimestamp;
+    }
+
     /**
      * Delete the phone numbers that contact has been deleted in contact provider. Query based on
      * {@link ContactsContract.DeletedContacts#CONTENT_URI} to know which contact has been removed.
@@ -125,8 +219,7 @@ public class EabContactSyncController {
 
         Cursor cursor = context.getContentResolver().query(
                 ContactsContract.DeletedContacts.CONTENT_URI,
-                new String[]{ContactsContract.DeletedContacts.CONTACT_ID,
-                        ContactsContract.DeletedContacts.CONTACT_DELETED_TIMESTAMP},
+                new String[]{ContactsContract.DeletedContacts.CONTACT_ID},
                 selection,
                 null,
                 null);
@@ -139,22 +232,24 @@ public class EabContactSyncController {
         Log.d(TAG, "(Case 1) The count of contact that need to be deleted: "
                 + cursor.getCount());
 
-        StringBuilder deleteClause = new StringBuilder();
+        List<String> contactIds = new ArrayList<>(cursor.getCount());
+        int contactIdIndex = cursor.getColumnIndex(ContactsContract.DeletedContacts.CONTACT_ID);
         while (cursor.moveToNext()) {
-            if (deleteClause.length() > 0) {
-                deleteClause.append(" OR ");
-            }
-
-            String contactId = cursor.getString(cursor.getColumnIndex(
-                    ContactsContract.DeletedContacts.CONTACT_ID));
-            deleteClause.append(EabProvider.ContactColumns.CONTACT_ID + "=" + contactId);
+            contactIds.add(cursor.getString(contactIdIndex));
         }
+        cursor.close();
 
-        if (deleteClause.toString().length() > 0) {
-            int number = context.getContentResolver().delete(
+        int number = 0;
+        for (int i = 0; i < contactIds.size(); i += SYNC_BATCH_SIZE) {
+            List<String> batch =
+                    contactIds.subList(i, Math.min(i + SYNC_BATCH_SIZE, contactIds.size()));
+            number += context.getContentResolver().delete(
                     EabProvider.CONTACT_URI,
-                    deleteClause.toString(),
-                    null);
+                    EabProvider.ContactColumns.CONTACT_ID + " IN ("
+                            + TextUtils.join(",", Collections.nCopies(batch.size(), "?")) + ")",
+                    batch.toArray(new String[0]));
+        }
+        if (!contactIds.isEmpty()) {
             Log.d(TAG, "(Case 1) Deleted contact count=" + number);
         }
     }
@@ -164,166 +259,114 @@ public class EabContactSyncController {
      * deleted phone numbers easily, so check all updated contact's phone number and delete the
      * phone number. It will also delete the phone number that has been changed.
      */
-    private void handlePhoneNumberDeletedCase(Context context, Cursor cursor) {
+    private void handlePhoneNumberDeletedCase(Context context, List<ContactData> contactDataList) {
         // The map represent which contacts have which numbers.
-        Map<String, List<String>> phoneNumberMap = new HashMap<>();
-        cursor.moveToPosition(-1);
-        while (cursor.moveToNext()) {
-            String mimeType = cursor.getString(
-                    cursor.getColumnIndex(ContactsContract.Data.MIMETYPE));
-            if (!mimeType.equals(ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE)) {
-                continue;
-            }
-
-            String rawContactId = cursor.getString(
-                    cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.RAW_CONTACT_ID));
-            String number = formatNumber(context, cursor.getString(
-                    cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.NUMBER)));
-
-            if (phoneNumberMap.containsKey(rawContactId)) {
-                phoneNumberMap.get(rawContactId).add(number);
-            } else {
-                List<String> phoneNumberList = new ArrayList<>();
-                phoneNumberList.add(number);
-                phoneNumberMap.put(rawContactId, phoneNumberList);
-            }
+        Map<Long, List<String>> phoneNumberMap = new HashMap<>();
+        for (ContactData contactData : contactDataList) {
+            phoneNumberMap.computeIfAbsent(contactData.mRawContactId, k -> new ArrayList<>())
+                    .add(contactData.mNumber);
         }
 
-        // Build a SQL statement that delete the phone number not exist in contact provider.
+        // Build the SQL statements that delete the phone number not exist in contact provider.
         // For example:
         // raw_contact_id = 1 AND phone_number NOT IN (12345, 23456)
+        // The statements are split so that each one doesn't bind too many arguments.
+        int number = 0;
         StringBuilder deleteClause = new StringBuilder();
         List<String> deleteClauseArgs = new ArrayList<>();
-        for (Map.Entry<String, List<String>> entry : phoneNumberMap.entrySet()) {
-            String rawContactId = entry.getKey();
+        for (Map.Entry<Long, List<String>> entry : phoneNumberMap.entrySet()) {
             List<String> phoneNumberList = entry.getValue();
+            if (!deleteClauseArgs.isEmpty()
+                    && deleteClauseArgs.size() + phoneNumberList.size() + 1 > SYNC_BATCH_SIZE) {
+                number += context.getContentResolver().delete(EabProvider.CONTACT_URI,
+                        deleteClause.toString(), deleteClauseArgs.toArray(new String[0]));
+                deleteClause.setLength(0);
+                deleteClauseArgs.clear();
+            }
 
             if (deleteClause.length() > 0) {
                 deleteClause.append(" OR ");
             }
-
-            deleteClause.append("(" + EabProvider.ContactColumns.RAW_CONTACT_ID + "=? ");
-            deleteClauseArgs.add(rawContactId);
-
-            if (phoneNumberList.size() > 0) {
-                String argsList = phoneNumberList.stream()
-                        .map(s -> "?")
-                        .collect(Collectors.joining(", "));
-                deleteClause.append(" AND "
-                        + EabProvider.ContactColumns.PHONE_NUMBER
-                        + " NOT IN (" + argsList + "))");
-                deleteClauseArgs.addAll(phoneNumberList);
-            } else {
-                deleteClause.append(")");
-            }
+            deleteClause.append("(" + EabProvider.ContactColumns.RAW_CONTACT_ID + "=? AND "
+                    + EabProvider.ContactColumns.PHONE_NUMBER + " NOT IN ("
+                    + TextUtils.join(",", Collections.nCopies(phoneNumberList.size(), "?"))
+                    + "))");
+            deleteClauseArgs.add(String.valueOf(entry.getKey()));
+            deleteClauseArgs.addAll(phoneNumberList);
+        }
+        if (!deleteClauseArgs.isEmpty()) {
+            number += context.getContentResolver().delete(EabProvider.CONTACT_URI,
+                    deleteClause.toString(), deleteClauseArgs.toArray(new String[0]));
         }
-
-        int number = context.getContentResolver().delete(
-                EabProvider.CONTACT_URI,
-                deleteClause.toString(),
-                deleteClauseArgs.toArray(new String[0]));
         Log.d(TAG, "(Case 2, 3) handlePhoneNumberDeletedCase number count= " + number);
     }
 
     /**
      * Insert new phone number.
      *
-     * @param contactCursor the result of updated contact
+     * @param contactDataList the updated phone numbers
      * @return the contacts that need to refresh
      */
     private List<Uri> handlePhoneNumberInsertedCase(Context context,
-            Cursor contactCursor) {
+            List<ContactData> contactDataList) {
         List<Uri> refreshContacts = new ArrayList<>();
-        List<ContentValues> allContactData = new ArrayList<>();
-        contactCursor.moveToPosition(-1);
-
-        // Query all of contacts that store in eab provider
-        Cursor eabContact = context.getContentResolver().query(
-                EabProvider.CONTACT_URI,
-                null,
-                EabProvider.ContactColumns.DATA_ID + " IS NOT NULL",
-                null,
-                EabProvider.ContactColumns.DATA_ID);
-
-        while (contactCursor.moveToNext()) {
-            String contactId = contactCursor.getString(contactCursor.getColumnIndex(
-                    ContactsContract.Data.CONTACT_ID));
-            String rawContactId = contactCursor.getString(contactCursor.getColumnIndex(
-                    ContactsContract.CommonDataKinds.Phone.RAW_CONTACT_ID));
-            String dataId = contactCursor.getString(
-                    contactCursor.getColumnIndex(ContactsContract.Data._ID));
-            String mimeType = contactCursor.getString(
-                    contactCursor.getColumnIndex(ContactsContract.Data.MIMETYPE));
-
-            if (!mimeType.equals(ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE)) {
-                continue;
-            }
-
-            String number = formatNumber(context, contactCursor.getString(
-                    contactCursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.NUMBER)));
-
-            int index = searchDataIdIndex(eabContact, Integer.parseInt(dataId));
-            if (index == -1) {
-                Log.d(TAG, "Data id does not exist. Insert phone number into EAB db.");
-                refreshContacts.add(Uri.parse(number));
+        int result = 0;
+        for (int i = 0; i < contactDataList.size(); i += SYNC_BATCH_SIZE) {
+            List<ContactData> batch = contactDataList.subList(i,
+                    Math.min(i + SYNC_BATCH_SIZE, contactDataList.size()));
+            Set<Long> existingDataIds = queryExistingDataIds(context, batch);
+
+            List<ContentValues> allContactData = new ArrayList<>();
+            for (ContactData contactData : batch) {
+                if (existingDataIds.contains(contactData.mDataId)) {
+                    continue;
+                }
+                refreshContacts.add(Uri.parse(contactData.mNumber));
                 ContentValues data = new ContentValues();
-                data.put(EabProvider.ContactColumns.CONTACT_ID, contactId);
-                data.put(EabProvider.ContactColumns.DATA_ID, dataId);
-                data.put(EabProvider.ContactColumns.RAW_CONTACT_ID, rawContactId);
-                data.put(EabProvider.ContactColumns.PHONE_NUMBER, number);
+                data.put(EabProvider.ContactColumns.CONTACT_ID, contactData.mContactId);
+                data.put(EabProvider.ContactColumns.DATA_ID, contactData.mDataId);
+                data.put(EabProvider.ContactColumns.RAW_CONTACT_ID, contactData.mRawContactId);
+                data.put(EabProvider.ContactColumns.PHONE_NUMBER, contactData.mNumber);
                 allContactData.add(data);
             }
-        }
 
-        // Insert contacts at once
-        int result = context.getContentResolver().bulkInsert(
-                EabProvider.CONTACT_URI,
-                allContactData.toArray(new ContentValues[0]));
+            if (!allContactData.isEmpty()) {
+                result += context.getContentResolver().bulkInsert(
+                        EabProvider.CONTACT_URI,
+                        allContactData.toArray(new ContentValues[0]));
+            }
+        }
         Log.d(TAG, "(Case 3, 4) Phone number insert count: " + result);
         return refreshContacts;
     }
 
     /**
-     * Binary search the target data_id in the cursor.
-     *
-     * @param cursor       EabProvider contact which sorted by
-     *                     {@link EabProvider.ContactColumns#DATA_ID}
-     * @param targetDataId the data_id to search for
-     * @return the index of cursor
+     * @return The data IDs of the given phone numbers which have been stored in the EAB provider.
      */
-    private int searchDataIdIndex(Cursor cursor, int targetDataId) {
-        int start = 0;
-        int end = cursor.getCount() - 1;
-
-        while (start <= end) {
-            int position = (start + end) >>> 1;
-            cursor.moveToPosition(position);
-            int dataId = cursor.getInt(cursor.getColumnIndex(EabProvider.ContactColumns.DATA_ID));
-
-            if (dataId > targetDataId) {
-                end = position - 1;
-            } else if (dataId < targetDataId) {
-                start = position + 1;
-            } else {
-                return position;
-            }
+    private Set<Long> queryExistingDataIds(Context context, List<ContactData> contactDataList) {
+        String[] selectionArgs = new String[contactDataList.size()];
+        for (int i = 0; i < contactDataList.size(); i++) {
+            selectionArgs[i] = String.valueOf(contactDataList.get(i).mDataId);
         }
-        return -1;
-    }
-
 
-    private long findMaxTimestamp(Cursor cursor) {
-        long maxTimestamp = Long.MIN_VALUE;
-        cursor.moveToPosition(-1);
-        while(cursor.moveToNext()) {
-            long lastUpdatedTimeStamp = cursor.getLong(cursor.getColumnIndex(
-                    ContactsContract.CommonDataKinds.Phone.CONTACT_LAST_UPDATED_TIMESTAMP));
-            Log.d(TAG, lastUpdatedTimeStamp + " " + maxTimestamp);
-            if (lastUpdatedTimeStamp > maxTimestamp) {
-                maxTimestamp = lastUpdatedTimeStamp;
-            }
+        Set<Long> dataIds = new HashSet<>();
+        Cursor cursor = context.getContentResolver().query(
+                EabProvider.CONTACT_URI,
+                new String[] {EabProvider.ContactColumns.DATA_ID},
+                EabProvider.ContactColumns.DATA_ID + " IN ("
+                        + TextUtils.join(",", Collections.nCopies(selectionArgs.length, "?"))
+                        + ")",
+                selectionArgs,
+                null);
+        if (cursor == null) {
+            Log.d(TAG, "queryExistingDataIds() cursor is null.");
+            return dataIds;
         }
-        return maxTimestamp;
+        while (cursor.moveToNext()) {
+            dataIds.add(cursor.getLong(0));
+        }
+        cursor.close();
+        return dataIds;
     }
 
     private void setLastUpdatedTime(Context context, long timestamp) {
@@ -338,20 +381,4 @@ public class EabContactSyncController {
                 PreferenceManager.getDefaultSharedPreferences(context);
         return sharedPreferences.getLong(LAST_UPDATED_TIME_KEY, NOT_INIT_LAST_UPDATED_TIME);
     }
-
-    private String formatNumber(Context context, String number) {
-        TelephonyManager manager = context.getSystemService(TelephonyManager.class);
-        String simCountryIso = manager.getSimCountryIso();
-        if (simCountryIso != null) {
-            simCountryIso = simCountryIso.toUpperCase();
-            PhoneNumberUtil util = PhoneNumberUtil.getInstance();
-            try {
-                Phonenumber.PhoneNumber phoneNumber = util.parse(number, simCountryIso);
-                return util.format(phoneNumber, PhoneNumberUtil.PhoneNumberFormat.E164);
-            } catch (NumberParseException e) {
-                Log.w(TAG, "formatNumber: could not format " + number + ", error: " + e);
-            }
-        }
-        return number;
-    }
 }
@@ -27,13 +27,14 @@ import static com.android.ims.rcs.uce.eab.EabProvider.EAB_PRESENCE_TUPLE_TABLE_N
 import android.annotation.NonNull;
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.PersistableBundle;
 import android.telephony.CarrierConfigManager;
-import android.telephony.TelephonyManager;
 import android.telephony.ims.ProvisioningManager;
 import android.telephony.ims.RcsContactPresenceTuple;
 import android.telephony.ims.RcsContactPresenceTuple.ServiceCapabilities;
@@ -43,21 +44,24 @@ import android.telephony.ims.RcsContactUceCapability.PresenceBuilder;
 import android.text.TextUtils;
 import android.util.Log;
 
-import com.android.i18n.phonenumbers.NumberParseException;
-import com.android.i18n.phonenumbers.PhoneNumberUtil;
-import com.android.i18n.phonenumbers.Phonenumber;
 import com.android.ims.RcsFeatureManager;
 import com.android.ims.rcs.uce.UceController.UceControllerCallback;
+import com.android.ims.rcs.uce.util.CapabilityStringPool;
 import com.android.internal.annotations.VisibleForTesting;
 
 import java.time.Instant;
 import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 /**
  * The implementation of EabController.
@@ -75,10 +79,19 @@ public class EabControllerImpl implements EabController {
     private static final int CLEAN_UP_LEGACY_CAPABILITY_SEC = 7 * 24 * 60 * 60;
     private static final int CLEAN_UP_LEGACY_CAPABILITY_DELAY_MILLI_SEC = 30 * 1000;
 
+    // The maximum number of phone numbers in one query, it's under the SQLite bind arguments limit.
+    private static final int MAX_BATCH_QUERY_SIZE = 500;
+
+    private static final String[] BATCH_QUERY_PROJECTION =
+            Stream.concat(Stream.of(EabProvider.ContactColumns.PHONE_NUMBER),
+                    Arrays.stream(EabCapabilityCache.CAPABILITY_PROJECTION))
+                    .toArray(String[]::new);
+
     private final Context mContext;
     private final int mSubId;
     private final EabBulkCapabilityUpdater mEabBulkCapabilityUpdater;
     private final Handler mHandler;
+    private final EabCapabilityCache mCapabilityCache;
 
     private UceControllerCallback mUceControllerCallback;
     private volatile boolean mIsSetDestroyedFlag = false;
@@ -91,6 +104,20 @@ public class EabControllerImpl implements EabController {
         cleanupExpiredCapabilities();
     };
 
+    /**
+     * Listen to the changes of the EAB provider. The rows may be changed without going through
+     * this controller, e.g. by {@link EabUtil}, so the cached capabilities are dropped on every
+     * change. The observer has no handler and the cache is cleared on the binder thread, so the
+     * stale entries are not returned while the handler is busy.
+     */
+    @VisibleForTesting
+    public final ContentObserver mEabProviderObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            mCapabilityCache.clear();
+        }
+    };
+
     @VisibleForTesting
     public interface ExpirationTimeFactory {
         long getExpirationTime();
@@ -101,11 +128,14 @@ public class EabControllerImpl implements EabController {
         mSubId = subId;
         mUceControllerCallback = c;
         mHandler = new Handler(looper);
+        mCapabilityCache = new EabCapabilityCache(subId);
         mEabBulkCapabilityUpdater = new EabBulkCapabilityUpdater(mContext, mSubId,
                 this,
                 new EabContactSyncController(),
                 mUceControllerCallback,
                 mHandler);
+        mContext.getContentResolver().registerContentObserver(EabProvider.AUTHORITY_URI, true,
+                mEabProviderObserver);
     }
 
     @Override
@@ -120,6 +150,7 @@ public class EabControllerImpl implements EabController {
     public void onDestroy() {
         Log.d(TAG, "onDestroy");
         mIsSetDestroyedFlag = true;
+        mContext.getContentResolver().unregisterContentObserver(mEabProviderObserver);
         mEabBulkCapabilityUpdater.onDestroy();
     }
 
@@ -129,6 +160,9 @@ public class EabControllerImpl implements EabController {
         // that configuration.
         mCapabilityCleanupRunnable.run();
         cleanupOrphanedRows();
+        // The SIM may be changed, so the phone numbers need to be formatted again.
+        EabPhoneNumberFormatter.clear();
+        mCapabilityCache.clear();
         if (!mIsSetDestroyedFlag) {
             mEabBulkCapabilityUpdater.onCarrierConfigChanged();
         }
@@ -162,8 +196,11 @@ public class EabControllerImpl implements EabController {
         Log.d(TAG, "getCapabilities uri size=" + uris.size());
         List<EabCapabilityResult> capabilityResultList = new ArrayList();
 
-        for (Uri uri : uris) {
-            EabCapabilityResult result = generateEabResult(uri, this::isCapabilityExpired);
+        List<String> numbers = getNumbersFromUris(uris);
+        Map<String, EabCapabilityCache.Entry> entries = getCapabilityEntries(numbers);
+        for (int i = 0; i < uris.size(); i++) {
+            EabCapabilityResult result = generateEabResult(uris.get(i),
+                    entries.get(numbers.get(i)), this::isCapabilityExpired);
             capabilityResultList.add(result);
         }
         return capabilityResultList;
@@ -184,9 +221,11 @@ public class EabControllerImpl implements EabController {
         Log.d(TAG, "getCapabilitiesIncludingExpired uri size=" + uris.size());
         List<EabCapabilityResult> capabilityResultList = new ArrayList();
 
-        for (Uri uri : uris) {
-            EabCapabilityResult result = generateEabResultIncludingExpired(uri,
-                    this::isCapabilityExpired);
+        List<String> numbers = getNumbersFromUris(uris);
+        Map<String, EabCapabilityCache.Entry> entries = getCapabilityEntries(numbers);
+        for (int i = 0; i < uris.size(); i++) {
+            EabCapabilityResult result = generateEabResultIncludingExpired(uris.get(i),
+                    entries.get(numbers.get(i)), this::isCapabilityExpired);
             capabilityResultList.add(result);
         }
         return capabilityResultList;
@@ -205,7 +244,8 @@ public class EabControllerImpl implements EabController {
                     EabCapabilityResult.EAB_CONTROLLER_DESTROYED_FAILURE,
                     null);
         }
-        return generateEabResult(contactUri, this::isAvailabilityExpired);
+        return generateEabResult(contactUri, getCapabilityEntry(contactUri),
+                this::isAvailabilityExpired);
     }
 
     /**
@@ -222,7 +262,8 @@ public class EabControllerImpl implements EabController {
                 EabCapabilityResult.EAB_CONTROLLER_DESTROYED_FAILURE,
                 null);
         }
-        return generateEabResultIncludingExpired(contactUri, this::isAvailabilityExpired);
+        return generateEabResultIncludingExpired(contactUri, getCapabilityEntry(contactUri),
+                this::isAvailabilityExpired);
     }
 
     /**
@@ -238,40 +279,37 @@ public class EabControllerImpl implements EabController {
 
         Log.d(TAG, "Save capabilities: " + contactCapabilities.size());
 
-        // Update the capabilities
+        // Update the capabilities in one transaction
+        List<String> updatedNumbers = new ArrayList<>(contactCapabilities.size());
+        ArrayList<Bundle> capabilityList = new ArrayList<>(contactCapabilities.size());
         for (RcsContactUceCapability capability : contactCapabilities) {
             String phoneNumber = getNumberFromUri(mContext, capability.getContactUri());
-            Cursor c = mContext.getContentResolver().query(
-                    EabProvider.CONTACT_URI, null,
-                    EabProvider.ContactColumns.PHONE_NUMBER + "=?",
-                    new String[]{phoneNumber}, null);
-
-            if (c != null && c.moveToNext()) {
-                int contactId = getIntValue(c, EabProvider.ContactColumns._ID);
-                if (capability.getCapabilityMechanism() == CAPABILITY_MECHANISM_PRESENCE) {
-                    Log.d(TAG, "Insert presence capability");
-                    deleteOldPresenceCapability(contactId);
-                    insertNewPresenceCapability(contactId, capability);
-                } else if (capability.getCapabilityMechanism() == CAPABILITY_MECHANISM_OPTIONS) {
-                    Log.d(TAG, "Insert options capability");
-                    deleteOldOptionCapability(contactId);
-                    insertNewOptionCapability(contactId, capability);
-                }
-            } else {
-                Log.e(TAG, "The phone number can't find in contact table. ");
-                int contactId = insertNewContact(phoneNumber);
-                if (capability.getCapabilityMechanism() == CAPABILITY_MECHANISM_PRESENCE) {
-                    insertNewPresenceCapability(contactId, capability);
-                } else if (capability.getCapabilityMechanism() == CAPABILITY_MECHANISM_OPTIONS) {
-                    insertNewOptionCapability(contactId, capability);
-                }
-            }
-
-            if (c != null) {
-                c.close();
+            updatedNumbers.add(phoneNumber);
+
+            Bundle capabilityBundle = new Bundle();
+            capabilityBundle.putString(EabProvider.KEY_PHONE_NUMBER, phoneNumber);
+            if (capability.getCapabilityMechanism() == CAPABILITY_MECHANISM_PRESENCE) {
+                capabilityBundle.putParcelable(EabProvider.KEY_COMMON_VALUES,
+                        createCommonValues(CAPABILITY_MECHANISM_PRESENCE, capability));
+                capabilityBundle.putParcelableArrayList(EabProvider.KEY_PRESENCE_VALUES,
+                        createPresenceValues(capability));
+            } else if (capability.getCapabilityMechanism() == CAPABILITY_MECHANISM_OPTIONS) {
+                capabilityBundle.putParcelable(EabProvider.KEY_COMMON_VALUES,
+                        createCommonValues(CAPABILITY_MECHANISM_OPTIONS, capability));
+                capabilityBundle.putParcelableArrayList(EabProvider.KEY_OPTIONS_VALUES,
+                        createOptionsValues(capability));
             }
+            capabilityList.add(capabilityBundle);
         }
-        cleanupOrphanedRows();
+
+        Bundle extras = new Bundle();
+        extras.putParcelableArrayList(EabProvider.KEY_CAPABILITY_LIST, capabilityList);
+        mContext.getContentResolver().call(EabProvider.AUTHORITY_URI,
+                EabProvider.METHOD_SAVE_CAPABILITIES, null, extras);
+
+        // The saved capabilities are merged with the rows of the other mechanism that are still
+        // in the database, so drop the cached entries and let the next query reload them.
+        mCapabilityCache.invalidate(updatedNumbers);
         mEabBulkCapabilityUpdater.updateExpiredTimeAlert();
 
         if (mHandler.hasCallbacks(mCapabilityCleanupRunnable)) {
@@ -312,16 +350,11 @@ public class EabControllerImpl implements EabController {
     }
 
     private EabCapabilityResult generateEabResult(Uri contactUri,
-            Predicate<Cursor> isExpiredMethod) {
+            EabCapabilityCache.Entry entry, Predicate<Cursor> isExpiredMethod) {
         RcsUceCapabilityBuilderWrapper builder = null;
         EabCapabilityResult result;
 
-        // query EAB provider
-        Uri queryUri = Uri.withAppendedPath(
-                Uri.withAppendedPath(EabProvider.ALL_DATA_URI, String.valueOf(mSubId)),
-                getNumberFromUri(mContext, contactUri));
-        Cursor cursor = mContext.getContentResolver().query(
-                queryUri, null, null, null, null);
+        Cursor cursor = (entry == null || entry.isEmpty()) ? null : entry.toCursor();
 
         if (cursor != null && cursor.getCount() != 0) {
             while (cursor.moveToNext()) {
@@ -363,16 +396,12 @@ public class EabControllerImpl implements EabController {
     }
 
     private EabCapabilityResult generateEabResultIncludingExpired(Uri contactUri,
-            Predicate<Cursor> isExpiredMethod) {
+            EabCapabilityCache.Entry entry, Predicate<Cursor> isExpiredMethod) {
         RcsUceCapabilityBuilderWrapper builder = null;
         EabCapabilityResult result;
         Optional<Boolean> isExpired = Optional.empty();
 
-        // query EAB provider
-        Uri queryUri = Uri.withAppendedPath(
-                Uri.withAppendedPath(EabProvider.ALL_DATA_URI, String.valueOf(mSubId)),
-                getNumberFromUri(mContext, contactUri));
-        Cursor cursor = mContext.getContentResolver().query(queryUri, null, null, null, null);
+        Cursor cursor = (entry == null || entry.isEmpty()) ? null : entry.toCursor();
 
         if (cursor != null && cursor.getCount() != 0) {
             while (cursor.moveToNext()) {
@@ -408,6 +437,78 @@ public class EabControllerImpl implements EabController {
         return result;
     }
 
+    private List<String> getNumbersFromUris(List<Uri> uris) {
+        List<String> numbers = new ArrayList<>(uris.size());
+        for (Uri uri : uris) {
+            numbers.add(getNumberFromUri(mContext, uri));
+        }
+        return numbers;
+    }
+
+    private EabCapabilityCache.Entry getCapabilityEntry(Uri contactUri) {
+        String number = getNumberFromUri(mContext, contactUri);
+        return getCapabilityEntries(Collections.singletonList(number)).get(number);
+    }
+
+    /**
+     * Get the capability rows of the given phone numbers. The rows are served from the capability
+     * cache if the number has been queried before. The rest of the numbers are queried from the
+     * EAB provider together, grouped by the phone number and stored in the cache.
+     */
+    private Map<String, EabCapabilityCache.Entry> getCapabilityEntries(List<String> numbers) {
+        Map<String, EabCapabilityCache.Entry> entries = new HashMap<>();
+        List<String> missingNumbers = new ArrayList<>();
+        for (String number : numbers) {
+            if (number == null || entries.containsKey(number)) {
+                continue;
+            }
+            EabCapabilityCache.Entry entry = mCapabilityCache.get(number);
+            entries.put(number, entry);
+            if (entry == null) {
+                missingNumbers.add(number);
+            }
+        }
+
+        long cacheVersion = mCapabilityCache.getVersion();
+        for (int start = 0; start < missingNumbers.size(); start += MAX_BATCH_QUERY_SIZE) {
+            List<String> batch = missingNumbers.subList(start,
+                    Math.min(start + MAX_BATCH_QUERY_SIZE, missingNumbers.size()));
+            Map<String, List<Object[]>> rowsByNumber = queryCapabilities(batch);
+            for (String number : batch) {
+                List<Object[]> rows = rowsByNumber.get(number);
+                EabCapabilityCache.Entry entry = EabCapabilityCache.Entry.fromRows(
+                        rows == null ? Collections.emptyList() : rows);
+                mCapabilityCache.put(number, entry, cacheVersion);
+                entries.put(number, entry);
+            }
+        }
+        Log.d(TAG, "getCapabilityEntries: size=" + numbers.size()
+                + ", queried=" + missingNumbers.size());
+        return entries;
+    }
+
+    /**
+     * Query the capabilities of the given phone numbers in one query and group the rows by the
+     * phone number.
+     */
+    private Map<String, List<Object[]>> queryCapabilities(List<String> numbers) {
+        Map<String, List<Object[]>> rowsByNumber = new HashMap<>();
+        Uri queryUri = Uri.withAppendedPath(EabProvider.ALL_DATA_URI, String.valueOf(mSubId));
+        Cursor cursor = mContext.getContentResolver().query(queryUri, BATCH_QUERY_PROJECTION,
+                null, numbers.toArray(new String[0]), null);
+        if (cursor == null) {
+            return rowsByNumber;
+        }
+        int numberIndex = cursor.getColumnIndex(EabProvider.ContactColumns.PHONE_NUMBER);
+        while (cursor.moveToNext()) {
+            String number = cursor.getString(numberIndex);
+            rowsByNumber.computeIfAbsent(number, k -> new ArrayList<>())
+                    .add(EabCapabilityCache.Entry.copyRow(cursor));
+        }
+        cursor.close();
+        return rowsByNumber;
+    }
+
     private void updateCapability(Uri contactUri, Cursor cursor,
                 RcsUceCapabilityBuilderWrapper builderWrapper) {
         if (builderWrapper.getMechanism() == CAPABILITY_MECHANISM_PRESENCE) {
@@ -455,15 +556,20 @@ public class EabControllerImpl implements EabController {
     }
 
     private String createOptionTuple(Cursor cursor) {
-        return getStringValue(cursor, EabProvider.OptionsColumns.FEATURE_TAG);
+        return CapabilityStringPool.intern(
+                getStringValue(cursor, EabProvider.OptionsColumns.FEATURE_TAG));
     }
 
     private RcsContactPresenceTuple createPresenceTuple(Uri contactUri, Cursor cursor) {
-        // RcsContactPresenceTuple fields
-        String status = getStringValue(cursor, EabProvider.PresenceTupleColumns.BASIC_STATUS);
-        String serviceId = getStringValue(cursor, EabProvider.PresenceTupleColumns.SERVICE_ID);
-        String version = getStringValue(cursor, EabProvider.PresenceTupleColumns.SERVICE_VERSION);
-        String description = getStringValue(cursor, EabProvider.PresenceTupleColumns.DESCRIPTION);
+        // RcsContactPresenceTuple fields, the values shared by the contacts are pooled.
+        String status = CapabilityStringPool.intern(
+                getStringValue(cursor, EabProvider.PresenceTupleColumns.BASIC_STATUS));
+        String serviceId = CapabilityStringPool.intern(
+                getStringValue(cursor, EabProvider.PresenceTupleColumns.SERVICE_ID));
+        String version = CapabilityStringPool.intern(
+                getStringValue(cursor, EabProvider.PresenceTupleColumns.SERVICE_VERSION));
+        String description = getStringValue(cursor,
+                EabProvider.PresenceTupleColumns.DESCRIPTION);
         String timeStamp = getStringValue(cursor,
                 EabProvider.PresenceTupleColumns.REQUEST_TIMESTAMP);
 
@@ -496,10 +602,12 @@ public class EabControllerImpl implements EabController {
         if (!TextUtils.isEmpty(duplexModes)
                 || !TextUtils.isEmpty(unsupportedDuplexModes)) {
             for (String duplexMode : duplexModeList) {
-                serviceCapabilitiesBuilder.addSupportedDuplexMode(duplexMode);
+                serviceCapabilitiesBuilder.addSupportedDuplexMode(
+                        CapabilityStringPool.intern(duplexMode));
             }
             for (String unsupportedDuplex : unsupportedDuplexModeList) {
-                serviceCapabilitiesBuilder.addUnsupportedDuplexMode(unsupportedDuplex);
+                serviceCapabilitiesBuilder.addUnsupportedDuplexMode(
+                        CapabilityStringPool.intern(unsupportedDuplex));
             }
         }
         serviceCapabilities = serviceCapabilitiesBuilder.build();
@@ -646,75 +754,34 @@ public class EabControllerImpl implements EabController {
         return value;
     }
 
-    private int insertNewContact(String phoneNumber) {
+    private ContentValues createCommonValues(int mechanism,
+            RcsContactUceCapability capability) {
         ContentValues contentValues = new ContentValues();
-        contentValues.put(EabProvider.ContactColumns.PHONE_NUMBER, phoneNumber);
-        Uri result = mContext.getContentResolver().insert(EabProvider.CONTACT_URI, contentValues);
-        return Integer.parseInt(result.getLastPathSegment());
-    }
-
-    private void deleteOldPresenceCapability(int id) {
-        Cursor c = mContext.getContentResolver().query(
-                EabProvider.COMMON_URI,
-                new String[]{EabProvider.EabCommonColumns._ID},
-                EabProvider.EabCommonColumns.EAB_CONTACT_ID + "=?",
-                new String[]{String.valueOf(id)}, null);
-
-        if (c != null && c.getCount() > 0) {
-            while(c.moveToNext()) {
-                int commonId = c.getInt(c.getColumnIndex(EabProvider.EabCommonColumns._ID));
-                mContext.getContentResolver().delete(
-                        EabProvider.PRESENCE_URI,
-                        EabProvider.PresenceTupleColumns.EAB_COMMON_ID + "=?",
-                        new String[]{String.valueOf(commonId)});
-            }
-        }
-
-        if (c != null) {
-            c.close();
-        }
-    }
-
-    private void insertNewPresenceCapability(int contactId, RcsContactUceCapability capability) {
-        ContentValues contentValues = new ContentValues();
-        contentValues.put(EabProvider.EabCommonColumns.EAB_CONTACT_ID, contactId);
-        contentValues.put(EabProvider.EabCommonColumns.MECHANISM, CAPABILITY_MECHANISM_PRESENCE);
+        contentValues.put(EabProvider.EabCommonColumns.MECHANISM, mechanism);
         contentValues.put(EabProvider.EabCommonColumns.SUBSCRIPTION_ID, mSubId);
         contentValues.put(EabProvider.EabCommonColumns.REQUEST_RESULT,
                 capability.getRequestResult());
-        if (capability.getEntityUri() != null) {
+        if (mechanism == CAPABILITY_MECHANISM_PRESENCE && capability.getEntityUri() != null) {
             contentValues.put(EabProvider.EabCommonColumns.ENTITY_URI,
                     capability.getEntityUri().toString());
         }
-        Uri result = mContext.getContentResolver().insert(EabProvider.COMMON_URI, contentValues);
-        int commonId = Integer.parseInt(result.getLastPathSegment());
-        Log.d(TAG, "Insert into common table. Id: " + commonId);
+        return contentValues;
+    }
 
+    private ArrayList<ContentValues> createPresenceValues(RcsContactUceCapability capability) {
+        ArrayList<ContentValues> presenceContent = new ArrayList<>();
         if (capability.getCapabilityTuples().size() == 0) {
-            insertEmptyTuple(commonId);
-        } else {
-            insertAllTuples(commonId, capability);
+            Log.d(TAG, "Insert empty tuple into presence table.");
+            ContentValues contentValues = new ContentValues();
+            // Using current timestamp instead of network timestamp since there is not use cases for
+            // network timestamp and the network timestamp may cause capability expire immediately.
+            contentValues.put(EabProvider.PresenceTupleColumns.REQUEST_TIMESTAMP,
+                    mExpirationTimeFactory.getExpirationTime());
+            presenceContent.add(contentValues);
+            return presenceContent;
         }
-    }
-
-    private void insertEmptyTuple(int commonId) {
-        Log.d(TAG, "Insert empty tuple into presence table.");
-        ContentValues contentValues = new ContentValues();
-        contentValues.put(EabProvider.PresenceTupleColumns.EAB_COMMON_ID, commonId);
-        // Using current timestamp instead of network timestamp since there is not use cases for
-        // network timestamp and the network timestamp may cause capability expire immediately.
-        contentValues.put(EabProvider.PresenceTupleColumns.REQUEST_TIMESTAMP,
-                mExpirationTimeFactory.getExpirationTime());
-        mContext.getContentResolver().insert(EabProvider.PRESENCE_URI, contentValues);
-    }
-
-    private void insertAllTuples(int commonId, RcsContactUceCapability capability) {
-        ContentValues[] presenceContent =
-                new ContentValues[capability.getCapabilityTuples().size()];
-
-        for (int i = 0; i < presenceContent.length; i++) {
-            RcsContactPresenceTuple tuple = capability.getCapabilityTuples().get(i);
 
+        for (RcsContactPresenceTuple tuple : capability.getCapabilityTuples()) {
             // Create new ServiceCapabilities
             ServiceCapabilities serviceCapabilities = tuple.getServiceCapabilities();
             String duplexMode = null, unsupportedDuplexMode = null;
@@ -733,7 +800,6 @@ public class EabControllerImpl implements EabController {
             }
 
             ContentValues contentValues = new ContentValues();
-            contentValues.put(EabProvider.PresenceTupleColumns.EAB_COMMON_ID, commonId);
             contentValues.put(EabProvider.PresenceTupleColumns.BASIC_STATUS, tuple.getStatus());
             contentValues.put(EabProvider.PresenceTupleColumns.SERVICE_ID, tuple.getServiceId());
             contentValues.put(EabProvider.PresenceTupleColumns.SERVICE_VERSION,
@@ -757,57 +823,22 @@ public class EabControllerImpl implements EabController {
                 contentValues.put(EabProvider.PresenceTupleColumns.VIDEO_CAPABLE,
                         serviceCapabilities.isVideoCapable());
             }
-            presenceContent[i] = contentValues;
+            presenceContent.add(contentValues);
         }
-        Log.d(TAG, "Insert into presence table. count: " + presenceContent.length);
-        mContext.getContentResolver().bulkInsert(EabProvider.PRESENCE_URI, presenceContent);
+        Log.d(TAG, "Insert into presence table. count: " + presenceContent.size());
+        return presenceContent;
     }
 
-    private void deleteOldOptionCapability(int contactId) {
-        Cursor c = mContext.getContentResolver().query(
-                EabProvider.COMMON_URI,
-                new String[]{EabProvider.EabCommonColumns._ID},
-                EabProvider.EabCommonColumns.EAB_CONTACT_ID + "=?",
-                new String[]{String.valueOf(contactId)}, null);
-
-        if (c != null && c.getCount() > 0) {
-            while(c.moveToNext()) {
-                int commonId = c.getInt(c.getColumnIndex(EabProvider.EabCommonColumns._ID));
-                mContext.getContentResolver().delete(
-                        EabProvider.OPTIONS_URI,
-                        EabProvider.OptionsColumns.EAB_COMMON_ID + "=?",
-                        new String[]{String.valueOf(commonId)});
-            }
-        }
-
-        if (c != null) {
-            c.close();
-        }
-    }
-
-    private void insertNewOptionCapability(int contactId, RcsContactUceCapability capability) {
-        ContentValues contentValues = new ContentValues();
-        contentValues.put(EabProvider.EabCommonColumns.EAB_CONTACT_ID, contactId);
-        contentValues.put(EabProvider.EabCommonColumns.MECHANISM, CAPABILITY_MECHANISM_OPTIONS);
-        contentValues.put(EabProvider.EabCommonColumns.SUBSCRIPTION_ID, mSubId);
-        contentValues.put(EabProvider.EabCommonColumns.REQUEST_RESULT,
-                capability.getRequestResult());
-        Uri result = mContext.getContentResolver().insert(EabProvider.COMMON_URI, contentValues);
-
-        int commonId = Integer.valueOf(result.getLastPathSegment());
-        List<ContentValues> optionContentList = new ArrayList<>();
+    private ArrayList<ContentValues> createOptionsValues(RcsContactUceCapability capability) {
+        ArrayList<ContentValues> optionContentList = new ArrayList<>();
         for (String feature : capability.getFeatureTags()) {
-            contentValues = new ContentValues();
-            contentValues.put(EabProvider.OptionsColumns.EAB_COMMON_ID, commonId);
+            ContentValues contentValues = new ContentValues();
             contentValues.put(EabProvider.OptionsColumns.FEATURE_TAG, feature);
             contentValues.put(EabProvider.OptionsColumns.REQUEST_TIMESTAMP,
                     Instant.now().getEpochSecond());
             optionContentList.add(contentValues);
         }
-
-        ContentValues[] optionContent = new ContentValues[optionContentList.size()];
-        optionContent = optionContentList.toArray(optionContent);
-        mContext.getContentResolver().bulkInsert(EabProvider.OPTIONS_URI, optionContent);
+        return optionContentList;
     }
 
     private void cleanupExpiredCapabilities() {
@@ -821,11 +852,15 @@ public class EabControllerImpl implements EabController {
                 getNonRcsCapabilityCacheExpiration(mSubId) -
                 CLEAN_UP_LEGACY_CAPABILITY_SEC;
 
-        cleanupCapabilities(rcsCapabilitiesExpiredTime, getRcsCommonIdList());
-        cleanupCapabilities(nonRcsCapabilitiesExpiredTime, getNonRcsCommonIdList());
+        int deleteCount = cleanupCapabilities(rcsCapabilitiesExpiredTime, getRcsCommonIdList());
+        deleteCount += cleanupCapabilities(nonRcsCapabilitiesExpiredTime,
+                getNonRcsCommonIdList());
+        if (deleteCount > 0) {
+            mCapabilityCache.clear();
+        }
     }
 
-    private void cleanupCapabilities(long rcsCapabilitiesExpiredTime, List<Integer> commonIdList) {
+    private int cleanupCapabilities(long rcsCapabilitiesExpiredTime, List<Integer> commonIdList) {
         if (commonIdList.size() > 0) {
             String presenceClause =
                     EabProvider.PresenceTupleColumns.EAB_COMMON_ID +
@@ -849,7 +884,9 @@ public class EabControllerImpl implements EabController {
 
             Log.d(TAG, "Cleanup capabilities. deletePresenceCount: " + deletePresenceCount +
                 ",deleteOptionsCount: " + deleteOptionsCount);
+            return deletePresenceCount + deleteOptionsCount;
         }
+        return 0;
     }
 
     private List<Integer> getRcsCommonIdList() {
@@ -904,23 +941,15 @@ public class EabControllerImpl implements EabController {
         if (numberParts.length == 0) {
             return null;
         }
-        return formatNumber(context, numberParts[0]);
+        return EabPhoneNumberFormatter.formatNumber(context, numberParts[0]);
     }
 
-    static String formatNumber(Context context, String number) {
-        TelephonyManager manager = context.getSystemService(TelephonyManager.class);
-        String simCountryIso = manager.getSimCountryIso();
-        if (simCountryIso != null) {
-            simCountryIso = simCountryIso.toUpperCase();
-            PhoneNumberUtil util = PhoneNumberUtil.getInstance();
-            try {
-                Phonenumber.PhoneNumber phoneNumber = util.parse(number, simCountryIso);
-                return util.format(phoneNumber, PhoneNumberUtil.PhoneNumberFormat.E164);
-            } catch (NumberParseException e) {
-                Log.w(TAG, "formatNumber: could not format " + number + ", error: " + e);
-            }
-        }
-        return number;
+    /**
+     * Clear the capability cache. It should be called when the EAB database is modified without
+     * going through this controller, e.g. the contacts are synced from the contact provider.
+     */
+    public void clearCapabilityCache() {
+        mCapabilityCache.clear();
     }
 
     @VisibleForTesting
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ims.rcs.uce.eab;
+
+import android.content.Context;
+import android.telephony.TelephonyManager;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.android.i18n.phonenumbers.NumberParseException;
+import com.android.i18n.phonenumbers.PhoneNumberUtil;
+import com.android.i18n.phonenumbers.Phonenumber;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Format the phone numbers to E164 format for the EAB database. The SIM country ISO and the
+ * formatted numbers are cached since the same numbers are formatted repeatedly by the capability
+ * queries and the contact sync. The cache should be cleared when the SIM or the carrier changes.
+ */
+public final class EabPhoneNumberFormatter {
+    private static final String TAG = "EabPhoneNumberFormatter";
+
+    // The maximum number of the formatted numbers kept in the cache.
+    @VisibleForTesting
+    public static final int MAX_CACHE_SIZE = 1000;
+
+    private static final Object sLock = new Object();
+
+    // The upper case SIM country ISO. It's null if it has not been retrieved yet.
+    private static String sSimCountryIso;
+
+    // The formatted numbers which are keyed by the SIM country ISO and the original number.
+    private static final LinkedHashMap<String, String> sFormattedNumbers =
+            new LinkedHashMap<String, String>(16, 0.75f, true /*accessOrder*/) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > MAX_CACHE_SIZE;
+                }
+            };
+
+    private EabPhoneNumberFormatter() {}
+
+    /**
+     * Format the given number to E164 format based on the SIM country ISO.
+     * @return The formatted number or the original number if it cannot be formatted.
+     */
+    public static String formatNumber(Context context, String number) {
+        if (number == null) {
+            return null;
+        }
+        String simCountryIso = getSimCountryIso(context);
+        if (simCountryIso == null) {
+            return number;
+        }
+
+        String key = simCountryIso + "|" + number;
+        synchronized (sLock) {
+            String formattedNumber = sFormattedNumbers.get(key);
+            if (formattedNumber != null) {
+                return formattedNumber;
+            }
+        }
+
+        String formattedNumber = number;
+        PhoneNumberUtil util = PhoneNumberUtil.getInstance();
+        try {
+            Phonenumber.PhoneNumber phoneNumber = util.parse(number, simCountryIso);
+            formattedNumber = util.format(phoneNumber, PhoneNumberUtil.PhoneNumberFormat.E164);
+        } catch (NumberParseException e) {
+            Log.w(TAG, "formatNumber: could not format " + number + ", error: " + e);
+        }
+
+        synchronized (sLock) {
+            sFormattedNumbers.put(key, formattedNumber);
+        }
+        return formattedNumber;
+    }
+
+    /**
+     * Clear the cached SIM country ISO and the formatted numbers.
+     */
+    public static void clear() {
+        synchronized (sLock) {
+            sSimCountryIso = null;
+            sFormattedNumbers.clear();
+        }
+    }
+
+    private static String getSimCountryIso(Context context) {
+        synchronized (sLock) {
+            if (sSimCountryIso != null) {
+                return sSimCountryIso;
+            }
+        }
+
+        TelephonyManager manager = context.getSystemService(TelephonyManager.class);
+        String simCountryIso = manager.getSimCountryIso();
+        if (simCountryIso == null) {
+            return null;
+        }
+        simCountryIso = simCountryIso.toUpperCase();
+        // Don't cache the empty country ISO, the SIM may not be loaded yet.
+        if (!TextUtils.isEmpty(simCountryIso)) {
+            synchronized (sLock) {
+                sSimCountryIso = simCountryIso;
+            }
+        }
+        return simCountryIso;
+    }
+}
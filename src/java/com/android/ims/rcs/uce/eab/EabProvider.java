@@ -29,6 +29,7 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
 import android.provider.BaseColumns;
 import android.text.TextUtils;
 import android.util.Log;
@@ -36,7 +37,10 @@ import android.util.Log;
 import com.android.internal.annotations.VisibleForTesting;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * This class provides the ability to query the enhanced address book databases(A.K.A. EAB) based on
@@ -77,11 +81,58 @@ public class EabProvider extends ContentProvider {
     // The public URI for querying EAB DB. Only support query.
     public static final Uri ALL_DATA_URI = Uri.parse("content://eab/all");
 
+    // The public URI for calling the methods of EAB provider.
+    public static final Uri AUTHORITY_URI = Uri.parse("content://eab");
+
+    /**
+     * The method of {@link #call(String, String, Bundle)} to save a batch of capabilities in one
+     * transaction. The extras should contain the {@link #KEY_CAPABILITY_LIST}.
+     */
+    public static final String METHOD_SAVE_CAPABILITIES = "save_capabilities";
+
+    /**
+     * The list of the capabilities to save. Each capability is a {@link Bundle} which contains
+     * the {@link #KEY_PHONE_NUMBER}, the {@link #KEY_COMMON_VALUES} and either the
+     * {@link #KEY_PRESENCE_VALUES} or the {@link #KEY_OPTIONS_VALUES}.
+     * <P>Type: ArrayList&lt;Bundle&gt;</P>
+     */
+    public static final String KEY_CAPABILITY_LIST = "capability_list";
+
+    /**
+     * The phone number of the capability.
+     * <P>Type: String</P>
+     */
+    public static final String KEY_PHONE_NUMBER = "phone_number";
+
+    /**
+     * The values of the common table except the {@link EabCommonColumns#EAB_CONTACT_ID}.
+     * <P>Type: ContentValues</P>
+     */
+    public static final String KEY_COMMON_VALUES = "common_values";
+
+    /**
+     * The rows of the presence table except the {@link PresenceTupleColumns#EAB_COMMON_ID}.
+     * <P>Type: ArrayList&lt;ContentValues&gt;</P>
+     */
+    public static final String KEY_PRESENCE_VALUES = "presence_values";
+
+    /**
+     * The rows of the options table except the {@link OptionsColumns#EAB_COMMON_ID}.
+     * <P>Type: ArrayList&lt;ContentValues&gt;</P>
+     */
+    public static final String KEY_OPTIONS_VALUES = "options_values";
+
+    /**
+     * The number of the capabilities which have been saved.
+     * <P>Type: int</P>
+     */
+    public static final String KEY_RESULT_COUNT = "result_count";
+
     @VisibleForTesting
     public static final String AUTHORITY = "eab";
 
     private static final String TAG = "EabProvider";
-    private static final int DATABASE_VERSION = 4;
+    private static final int DATABASE_VERSION = 5;
 
     public static final String EAB_CONTACT_TABLE_NAME = "eab_contact";
     public static final String EAB_COMMON_TABLE_NAME = "eab_common";
@@ -95,6 +146,7 @@ public class EabProvider extends ContentProvider {
     private static final int URL_OPTIONS = 4;
     private static final int URL_ALL = 5;
     private static final int URL_ALL_WITH_SUB_ID_AND_PHONE_NUMBER = 6;
+    private static final int URL_ALL_WITH_SUB_ID = 7;
 
     static {
         URI_MATCHER.addURI(AUTHORITY, "contact", URL_CONTACT);
@@ -103,6 +155,7 @@ public class EabProvider extends ContentProvider {
         URI_MATCHER.addURI(AUTHORITY, "options", URL_OPTIONS);
         URI_MATCHER.addURI(AUTHORITY, "all", URL_ALL);
         URI_MATCHER.addURI(AUTHORITY, "all/#/*", URL_ALL_WITH_SUB_ID_AND_PHONE_NUMBER);
+        URI_MATCHER.addURI(AUTHORITY, "all/#", URL_ALL_WITH_SUB_ID);
     }
 
     private static final String QUERY_CONTACT_TABLE =
@@ -395,8 +448,33 @@ public class EabProvider extends ContentProvider {
                 + OptionsColumns.FEATURE_TAG + " TEXT DEFAULT NULL "
                 + ");";
 
+        /**
+         * The indexes of the columns that are used to join the tables and to filter the expired
+         * capabilities. The phone number of the contact table is already indexed by its UNIQUE
+         * constraint.
+         */
+        @VisibleForTesting
+        public static final String[] SQL_CREATE_INDEXES = new String[] {
+                "CREATE INDEX IF NOT EXISTS " + EAB_COMMON_TABLE_NAME + "_contact_id_index ON "
+                        + EAB_COMMON_TABLE_NAME + " (" + EabCommonColumns.EAB_CONTACT_ID + ", "
+                        + EabCommonColumns.SUBSCRIPTION_ID + ");",
+                "CREATE INDEX IF NOT EXISTS " + EAB_PRESENCE_TUPLE_TABLE_NAME
+                        + "_common_id_index ON " + EAB_PRESENCE_TUPLE_TABLE_NAME + " ("
+                        + PresenceTupleColumns.EAB_COMMON_ID + ");",
+                "CREATE INDEX IF NOT EXISTS " + EAB_PRESENCE_TUPLE_TABLE_NAME
+                        + "_timestamp_index ON " + EAB_PRESENCE_TUPLE_TABLE_NAME + " ("
+                        + PresenceTupleColumns.REQUEST_TIMESTAMP + ");",
+                "CREATE INDEX IF NOT EXISTS " + EAB_OPTIONS_TABLE_NAME + "_common_id_index ON "
+                        + EAB_OPTIONS_TABLE_NAME + " (" + OptionsColumns.EAB_COMMON_ID + ");",
+                "CREATE INDEX IF NOT EXISTS " + EAB_OPTIONS_TABLE_NAME + "_timestamp_index ON "
+                        + EAB_OPTIONS_TABLE_NAME + " (" + OptionsColumns.REQUEST_TIMESTAMP + ");"
+        };
+
         EabDatabaseHelper(Context context) {
             super(context, DB_NAME, null, DATABASE_VERSION);
+            // The capabilities are read by the UCE requests while the NOTIFY results are written,
+            // WAL allows the readers to proceed without waiting for the writer.
+            setWriteAheadLoggingEnabled(true);
         }
 
         public void onCreate(SQLiteDatabase db) {
@@ -404,6 +482,14 @@ public class EabProvider extends ContentProvider {
             db.execSQL(SQL_CREATE_COMMON_TABLE);
             db.execSQL(SQL_CREATE_PRESENCE_TUPLE_TABLE);
             db.execSQL(SQL_CREATE_OPTIONS_TABLE);
+            createIndexes(db);
+        }
+
+        @VisibleForTesting
+        public static void createIndexes(SQLiteDatabase db) {
+            for (String sql : SQL_CREATE_INDEXES) {
+                db.execSQL(sql);
+            }
         }
 
         @Override
@@ -461,6 +547,11 @@ public class EabProvider extends ContentProvider {
                         + EabCommonColumns.ENTITY_URI + " Text DEFAULT NULL;");
                 oldVersion = 4;
             }
+
+            if (oldVersion < 5) {
+                createIndexes(sqLiteDatabase);
+                oldVersion = 5;
+            }
         }
     }
 
@@ -473,7 +564,7 @@ public class EabProvider extends ContentProvider {
     }
 
     /**
-     * Support 6 URLs for querying:
+     * Support 7 URLs for querying:
      *
      * <ul>
      * <li>{@link #URL_CONTACT}: query contact table.
@@ -488,6 +579,10 @@ public class EabProvider extends ContentProvider {
      * filter by the {@link ContactColumns#PHONE_NUMBER} first and join with others tables. The
      * format is like content://eab/all/[sub_id]/[phone_number]
      *
+     * <li>{@link #URL_ALL_WITH_SUB_ID}: Query the capabilities of multiple phone numbers at once.
+     * The format is like content://eab/all/[sub_id] and the phone numbers are given as the
+     * selectionArgs. The selection is not supported and should be null.
+     *
      * <li> {@link #URL_ALL}: Join all of tables at once
      * </ul>
      */
@@ -543,6 +638,34 @@ public class EabProvider extends ContentProvider {
                                 + JOIN_ALL_TABLES + ")");
                 break;
 
+            case URL_ALL_WITH_SUB_ID:
+                subIdString = uri.getLastPathSegment();
+                try {
+                    subId = Integer.parseInt(subIdString);
+                } catch (NumberFormatException e) {
+                    Log.e(TAG, "NumberFormatException" + e);
+                    return null;
+                }
+                if (selectionArgs == null || selectionArgs.length == 0) {
+                    Log.e(TAG, "phone numbers are empty");
+                    return null;
+                }
+                if (!TextUtils.isEmpty(selection)) {
+                    Log.e(TAG, "selection is not supported");
+                    return null;
+                }
+                qb.appendWhereStandalone(EabCommonColumns.SUBSCRIPTION_ID + "=" + subId);
+
+                // The phone numbers are bound to the placeholders of the contact sub query.
+                String[] placeholders = new String[selectionArgs.length];
+                Arrays.fill(placeholders, "?");
+                String numbersClause = " where " + ContactColumns.PHONE_NUMBER + " IN ("
+                        + TextUtils.join(",", placeholders) + ") ";
+                qb.setTables(
+                        "((" + QUERY_CONTACT_TABLE + numbersClause + ") AS "
+                                + EAB_CONTACT_TABLE_NAME + JOIN_ALL_TABLES + ")");
+                break;
+
             case URL_ALL:
                 qb.setTables("(" + QUERY_CONTACT_TABLE + JOIN_ALL_TABLES + ")");
                 break;
@@ -701,6 +824,169 @@ public class EabProvider extends ContentProvider {
         return result;
     }
 
+    /**
+     * Support 1 method for calling:
+     *
+     * <ul>
+     * <li>{@link #METHOD_SAVE_CAPABILITIES}: Save a batch of capabilities atomically. For each
+     * capability, the contact is inserted if it doesn't exist, the old rows of the same mechanism
+     * are deleted and the new rows are inserted. The common rows that can't map to presence or
+     * options table are cleaned up afterwards, only the common rows of the saved contacts are
+     * checked.
+     * </ul>
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (!METHOD_SAVE_CAPABILITIES.equals(method)) {
+            Log.d(TAG, "Call failed. Not support method: " + method);
+            return null;
+        }
+        if (extras == null) {
+            Log.d(TAG, "Call failed. extras is null");
+            return null;
+        }
+        ArrayList<Bundle> capabilities = extras.getParcelableArrayList(KEY_CAPABILITY_LIST);
+        if (capabilities == null || capabilities.isEmpty()) {
+            Log.d(TAG, "Call failed. capabilities are empty");
+            return null;
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(KEY_RESULT_COUNT, saveCapabilities(capabilities));
+        return result;
+    }
+
+    private int saveCapabilities(List<Bundle> capabilities) {
+        SQLiteDatabase db = getWritableDatabase();
+        Set<Long> touchedCommonIds = new HashSet<>();
+        int result = 0;
+        try {
+            // Save all the capabilities in a single transaction to improve efficiency.
+            db.beginTransaction();
+            for (Bundle capability : capabilities) {
+                String phoneNumber = capability.getString(KEY_PHONE_NUMBER);
+                ContentValues commonValues = capability.getParcelable(KEY_COMMON_VALUES);
+                ArrayList<ContentValues> presenceValues =
+                        capability.getParcelableArrayList(KEY_PRESENCE_VALUES);
+                ArrayList<ContentValues> optionsValues =
+                        capability.getParcelableArrayList(KEY_OPTIONS_VALUES);
+                if (TextUtils.isEmpty(phoneNumber)) {
+                    Log.w(TAG, "saveCapabilities: phone number is empty");
+                    continue;
+                }
+
+                long contactId = getContactId(db, phoneNumber);
+                if (contactId == -1) {
+                    ContentValues contactValues = new ContentValues();
+                    contactValues.put(ContactColumns.PHONE_NUMBER, phoneNumber);
+                    contactId = db.insertWithOnConflict(EAB_CONTACT_TABLE_NAME, null,
+                            contactValues, SQLiteDatabase.CONFLICT_REPLACE);
+                } else if (presenceValues != null || optionsValues != null) {
+                    // Delete the old capabilities of the same mechanism.
+                    List<Long> oldCommonIds = getCommonIds(db, contactId);
+                    touchedCommonIds.addAll(oldCommonIds);
+                    if (!oldCommonIds.isEmpty()) {
+                        String commonIdClause = " IN (" + TextUtils.join(",", oldCommonIds) + ")";
+                        if (presenceValues != null) {
+                            db.delete(EAB_PRESENCE_TUPLE_TABLE_NAME,
+                                    PresenceTupleColumns.EAB_COMMON_ID + commonIdClause, null);
+                        } else {
+                            db.delete(EAB_OPTIONS_TABLE_NAME,
+                                    OptionsColumns.EAB_COMMON_ID + commonIdClause, null);
+                        }
+                    }
+                }
+
+                if (commonValues == null || (presenceValues == null && optionsValues == null)) {
+                    continue;
+                }
+
+                ContentValues values = new ContentValues(commonValues);
+                values.put(EabCommonColumns.EAB_CONTACT_ID, contactId);
+                long commonId = db.insertWithOnConflict(EAB_COMMON_TABLE_NAME, null, values,
+                        SQLiteDatabase.CONFLICT_REPLACE);
+                touchedCommonIds.add(commonId);
+
+                if (presenceValues != null) {
+                    for (ContentValues tuple : presenceValues) {
+                        values = new ContentValues(tuple);
+                        values.put(PresenceTupleColumns.EAB_COMMON_ID, commonId);
+                        db.insertWithOnConflict(EAB_PRESENCE_TUPLE_TABLE_NAME, null, values,
+                                SQLiteDatabase.CONFLICT_REPLACE);
+                    }
+                } else {
+                    for (ContentValues tuple : optionsValues) {
+                        values = new ContentValues(tuple);
+                        values.put(OptionsColumns.EAB_COMMON_ID, commonId);
+                        db.insertWithOnConflict(EAB_OPTIONS_TABLE_NAME, null, values,
+                                SQLiteDatabase.CONFLICT_REPLACE);
+                    }
+                }
+                result++;
+            }
+            cleanupOrphanedCommonRows(db, touchedCommonIds);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (result > 0) {
+            getContext().getContentResolver().notifyChange(CONTACT_URI, null, NOTIFY_INSERT);
+            getContext().getContentResolver().notifyChange(COMMON_URI, null, NOTIFY_INSERT);
+            getContext().getContentResolver().notifyChange(PRESENCE_URI, null, NOTIFY_INSERT);
+            getContext().getContentResolver().notifyChange(OPTIONS_URI, null, NOTIFY_INSERT);
+        }
+        Log.d(TAG, "saveCapabilities count: " + result);
+        return result;
+    }
+
+    private long getContactId(SQLiteDatabase db, String phoneNumber) {
+        long contactId = -1;
+        try (Cursor cursor = db.query(EAB_CONTACT_TABLE_NAME,
+                new String[]{ContactColumns._ID},
+                ContactColumns.PHONE_NUMBER + "=?",
+                new String[]{phoneNumber}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                contactId = cursor.getLong(0);
+            }
+        }
+        return contactId;
+    }
+
+    private List<Long> getCommonIds(SQLiteDatabase db, long contactId) {
+        List<Long> commonIds = new ArrayList<>();
+        try (Cursor cursor = db.query(EAB_COMMON_TABLE_NAME,
+                new String[]{EabCommonColumns._ID},
+                EabCommonColumns.EAB_CONTACT_ID + "=?",
+                new String[]{String.valueOf(contactId)}, null, null, null)) {
+            while (cursor != null && cursor.moveToNext()) {
+                commonIds.add(cursor.getLong(0));
+            }
+        }
+        return commonIds;
+    }
+
+    /**
+     * Delete the given common rows that can't map to presence or option table.
+     */
+    private void cleanupOrphanedCommonRows(SQLiteDatabase db, Set<Long> commonIds) {
+        if (commonIds.isEmpty()) {
+            return;
+        }
+        int count = db.delete(EAB_COMMON_TABLE_NAME,
+                EabCommonColumns._ID + " IN (" + TextUtils.join(",", commonIds) + ")"
+                        + " AND NOT EXISTS (SELECT 1 FROM " + EAB_PRESENCE_TUPLE_TABLE_NAME
+                        + " WHERE " + EAB_PRESENCE_TUPLE_TABLE_NAME + "."
+                        + PresenceTupleColumns.EAB_COMMON_ID + "=" + EAB_COMMON_TABLE_NAME + "."
+                        + EabCommonColumns._ID + ")"
+                        + " AND NOT EXISTS (SELECT 1 FROM " + EAB_OPTIONS_TABLE_NAME
+                        + " WHERE " + EAB_OPTIONS_TABLE_NAME + "."
+                        + OptionsColumns.EAB_COMMON_ID + "=" + EAB_COMMON_TABLE_NAME + "."
+                        + EabCommonColumns._ID + ")",
+                null);
+        Log.d(TAG, "cleanupOrphanedCommonRows: " + count);
+    }
+
     @Override
     public String getType(Uri uri) {
         return null;
@@ -140,7 +140,7 @@ public class EabUtil {
     private static int getEabContactId(String contactNumber, Context context) {
         int contactId = -1;
         Cursor cursor = null;
-        String formattedNumber = EabControllerImpl.formatNumber(context, contactNumber);
+        String formattedNumber = EabPhoneNumberFormatter.formatNumber(context, contactNumber);
         try {
             cursor = context.getContentResolver().query(
                     EabProvider.CONTACT_URI,
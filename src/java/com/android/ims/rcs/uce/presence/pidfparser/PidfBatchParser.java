@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce.presence.pidfparser;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.util.Log;
+
+import com.android.ims.rcs.uce.util.UceUtils;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Convert the PIDF documents of one NOTIFY to the RcsContactUceCapabilityWrappers. When the
+ * NOTIFY carries many documents, they are split into contiguous chunks which are parsed by a
+ * small shared worker pool and by the calling thread. The results keep the order of the given
+ * documents.
+ */
+public final class PidfBatchParser {
+
+    private static final String LOG_TAG = UceUtils.getLogPrefix() + "PidfBatchParser";
+
+    // The minimum number of the documents which are parsed by one thread.
+    @VisibleForTesting
+    public static final int MIN_DOCUMENTS_PER_CHUNK = 8;
+
+    // The maximum number of the worker threads.
+    private static final int MAX_WORKER_THREADS = 3;
+
+    // The time for which the idle worker threads wait before terminating.
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 30L;
+
+    private static final Object sLock = new Object();
+    private static ThreadPoolExecutor sExecutor;
+
+    /**
+     * The result of parsing the PIDF documents.
+     */
+    public static class Result {
+        private final List<RcsContactUceCapabilityWrapper> mCapabilities;
+        private final int mFailedCount;
+        private final long mParseTimeMillis;
+
+        private Result(List<RcsContactUceCapabilityWrapper> capabilities, int failedCount,
+                long parseTimeMillis) {
+            mCapabilities = capabilities;
+            mFailedCount = failedCount;
+            mParseTimeMillis = parseTimeMillis;
+        }
+
+        /**
+         * @return The capabilities in the order of the given documents. The documents which
+         * cannot be parsed are not included.
+         */
+        public @NonNull List<RcsContactUceCapabilityWrapper> getCapabilities() {
+            return mCapabilities;
+        }
+
+        /**
+         * @return The number of the documents which cannot be parsed.
+         */
+        public int getFailedCount() {
+            return mFailedCount;
+        }
+
+        /**
+         * @return The time spent on parsing the documents.
+         */
+        public long getParseTimeMillis() {
+            return mParseTimeMillis;
+        }
+    }
+
+    private PidfBatchParser() {}
+
+    /**
+     * Parse the given PIDF documents.
+     */
+    public static @NonNull Result parse(@Nullable List<String> pidfXmls) {
+        if (pidfXmls == null || pidfXmls.isEmpty()) {
+            return new Result(Collections.emptyList(), 0, 0L);
+        }
+        final long startTime = System.nanoTime();
+        final int size = pidfXmls.size();
+        final RcsContactUceCapabilityWrapper[] wrappers = new RcsContactUceCapabilityWrapper[size];
+
+        int chunkCount = Math.min(getMaxThreads(), size / MIN_DOCUMENTS_PER_CHUNK);
+        if (chunkCount <= 1) {
+            parseChunk(pidfXmls, wrappers, 0, size);
+        } else {
+            final int chunkSize = (size + chunkCount - 1) / chunkCount;
+            List<Future<?>> futures = new ArrayList<>(chunkCount - 1);
+            ThreadPoolExecutor executor = getExecutor();
+            // The first chunk is parsed by the calling thread.
+            for (int start = chunkSize; start < size; start += chunkSize) {
+                final int from = start;
+                final int to = Math.min(start + chunkSize, size);
+                futures.add(executor.submit(() -> parseChunk(pidfXmls, wrappers, from, to)));
+            }
+            parseChunk(pidfXmls, wrappers, 0, chunkSize);
+            waitForChunks(futures, pidfXmls, wrappers, chunkSize);
+        }
+
+        List<RcsContactUceCapabilityWrapper> capabilities = new ArrayList<>(size);
+        for (RcsContactUceCapabilityWrapper wrapper : wrappers) {
+            if (wrapper != null) {
+                capabilities.add(wrapper);
+            }
+        }
+        long parseTimeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        return new Result(capabilities, size - capabilities.size(), parseTimeMillis);
+    }
+
+    private static void parseChunk(List<String> pidfXmls, RcsContactUceCapabilityWrapper[] wrappers,
+            int from, int to) {
+        for (int i = from; i < to; i++) {
+            wrappers[i] = PidfParser.getRcsContactUceCapabilityWrapper(pidfXmls.get(i));
+        }
+    }
+
+    private static void waitForChunks(List<Future<?>> futures, List<String> pidfXmls,
+            RcsContactUceCapabilityWrapper[] wrappers, int chunkSize) {
+        boolean interrupted = false;
+        for (int i = 0; i < futures.size(); i++) {
+            Future<?> future = futures.get(i);
+            boolean done = false;
+            while (!done) {
+                try {
+                    future.get();
+                    done = true;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    // Parse the chunk again on the calling thread.
+                    Log.w(LOG_TAG, "waitForChunks: chunk " + (i + 1) + " failed: " + e);
+                    int from = (i + 1) * chunkSize;
+                    parseChunk(pidfXmls, wrappers, from, Math.min(from + chunkSize,
+                            pidfXmls.size()));
+                    done = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int getMaxThreads() {
+        return Math.min(MAX_WORKER_THREADS, Runtime.getRuntime().availableProcessors() - 1) + 1;
+    }
+
+    private static ThreadPoolExecutor getExecutor() {
+        synchronized (sLock) {
+            if (sExecutor == null) {
+                final AtomicInteger threadCount = new AtomicInteger();
+                sExecutor = new ThreadPoolExecutor(MAX_WORKER_THREADS, MAX_WORKER_THREADS,
+                        WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                        runnable -> {
+                            Thread thread = new Thread(runnable,
+                                    "PidfParser-" + threadCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+                sExecutor.allowCoreThreadTimeOut(true);
+            }
+            return sExecutor;
+        }
+    }
+}
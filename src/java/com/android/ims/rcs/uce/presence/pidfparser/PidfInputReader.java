@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce.presence.pidfparser;
+
+import android.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * The reader of the PIDF document which skips the tab and the newline characters while the
+ * document is being read, so the document doesn't need to be copied before parsing. It reads
+ * from a CharSequence directly or filters the characters read from another reader.
+ */
+final class PidfInputReader extends Reader {
+
+    private final CharSequence mSource;
+    private final Reader mDelegate;
+    private int mPosition;
+
+    PidfInputReader(@NonNull CharSequence source) {
+        mSource = source;
+        mDelegate = null;
+    }
+
+    PidfInputReader(@NonNull Reader delegate) {
+        mSource = null;
+        mDelegate = delegate;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (mSource != null) {
+            return readFromSource(cbuf, off, len);
+        }
+        while (true) {
+            int count = mDelegate.read(cbuf, off, len);
+            if (count == -1) {
+                return -1;
+            }
+            // Remove the skipped characters in place.
+            int filteredCount = 0;
+            for (int i = off; i < off + count; i++) {
+                char c = cbuf[i];
+                if (!isSkipped(c)) {
+                    cbuf[off + filteredCount++] = c;
+                }
+            }
+            if (filteredCount > 0) {
+                return filteredCount;
+            }
+        }
+    }
+
+    private int readFromSource(char[] cbuf, int off, int len) {
+        final int length = mSource.length();
+        int count = 0;
+        while (count < len && mPosition < length) {
+            char c = mSource.charAt(mPosition++);
+            if (!isSkipped(c)) {
+                cbuf[off + count++] = c;
+            }
+        }
+        return (count == 0) ? -1 : count;
+    }
+
+    private static boolean isSkipped(char c) {
+        return c == '\t' || c == '\r' || c == '\n';
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mDelegate != null) {
+            mDelegate.close();
+        }
+    }
+}
@@ -39,14 +39,14 @@ import com.android.ims.rcs.uce.presence.pidfparser.RcsContactUceCapabilityWrappe
 import com.android.ims.rcs.uce.util.UceUtils;
 import com.android.internal.annotations.VisibleForTesting;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.StringReader;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
@@ -60,7 +60,8 @@ public class PidfParser {
 
     private static final String LOG_TAG = UceUtils.getLogPrefix() + "PidfParser";
 
-    private static final Pattern PIDF_PATTERN = Pattern.compile("\t|\r|\n");
+    // The parser of each thread which parses the PIDF documents.
+    private static final ThreadLocal<XmlPullParser> sThreadParser = new ThreadLocal<>();
 
     /**
      * Testing interface used to get the timestamp.
@@ -89,6 +90,14 @@ public class PidfParser {
      * Convert the RcsContactUceCapability to the string of pidf.
      */
     public static String convertToPidf(RcsContactUceCapability capabilities) {
+        // Get the Presence element
+        return serializePresence(PidfParserUtils.getPresence(capabilities));
+    }
+
+    /**
+     * Serialize the given Presence element to the string of pidf.
+     */
+    static String serializePresence(Presence presence) {
         StringWriter pidfWriter = new StringWriter();
         try {
             // Init the instance of the XmlSerializer.
@@ -101,9 +110,6 @@ public class PidfParser {
             serializer.setPrefix("op", OmaPresConstant.NAMESPACE);
             serializer.setPrefix("caps", CapsConstant.NAMESPACE);
 
-            // Get the Presence element
-            Presence presence = PidfParserUtils.getPresence(capabilities);
-
             // Start serializing.
             serializer.startDocument(PidfParserConstant.ENCODING_UTF_8, true);
             presence.serialize(serializer);
@@ -124,26 +130,45 @@ public class PidfParser {
      * Get the RcsContactUceCapabilityWrapper from the given PIDF xml format.
      */
     public static @Nullable RcsContactUceCapabilityWrapper getRcsContactUceCapabilityWrapper(
-            String pidf) {
+            CharSequence pidf) {
         if (TextUtils.isEmpty(pidf)) {
             Log.w(LOG_TAG, "getRcsContactUceCapabilityWrapper: The given pidf is empty");
             return null;
         }
+        return parseRcsContactUceCapabilityWrapper(new PidfInputReader(pidf));
+    }
 
-        // Filter the newline characters
-        Matcher matcher = PIDF_PATTERN.matcher(pidf);
-        String formattedPidf = matcher.replaceAll("");
-        if (TextUtils.isEmpty(formattedPidf)) {
-            Log.w(LOG_TAG, "getRcsContactUceCapabilityWrapper: The formatted pidf is empty");
+    /**
+     * Get the RcsContactUceCapabilityWrapper from the given UTF-8 encoded PIDF xml format.
+     */
+    public static @Nullable RcsContactUceCapabilityWrapper getRcsContactUceCapabilityWrapper(
+            byte[] pidf) {
+        if (pidf == null) {
+            Log.w(LOG_TAG, "getRcsContactUceCapabilityWrapper: The given pidf is empty");
             return null;
         }
+        return getRcsContactUceCapabilityWrapper(pidf, 0, pidf.length);
+    }
 
-        Reader reader = null;
+    /**
+     * Get the RcsContactUceCapabilityWrapper from the UTF-8 encoded PIDF xml format which is
+     * stored in the given range of the byte array.
+     */
+    public static @Nullable RcsContactUceCapabilityWrapper getRcsContactUceCapabilityWrapper(
+            byte[] data, int offset, int length) {
+        if (data == null || length <= 0) {
+            Log.w(LOG_TAG, "getRcsContactUceCapabilityWrapper: The given pidf is empty");
+            return null;
+        }
+        return parseRcsContactUceCapabilityWrapper(new PidfInputReader(new InputStreamReader(
+                new ByteArrayInputStream(data, offset, length), StandardCharsets.UTF_8)));
+    }
+
+    private static @Nullable RcsContactUceCapabilityWrapper parseRcsContactUceCapabilityWrapper(
+            Reader reader) {
         try {
-            // Init the instance of the parser
-            XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
-            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
-            reader = new StringReader(formattedPidf);
+            // The tab and newline characters are filtered by the reader.
+            XmlPullParser parser = obtainParser();
             parser.setInput(reader);
 
             // Start parsing
@@ -154,18 +179,39 @@ public class PidfParser {
 
         } catch (XmlPullParserException | IOException e) {
             e.printStackTrace();
+            discardParser();
         } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+            try {
+                reader.close();
+            } catch (IOException e) {
+                e.printStackTrace();
             }
         }
         return null;
     }
 
+    /**
+     * Discard the parser of the current thread which has encountered an error.
+     */
+    static void discardParser() {
+        sThreadParser.remove();
+    }
+
+    /**
+     * @return The parser of the current thread. The parser is reused by all the documents which
+     * are parsed on the same thread, the caller should finish parsing a document before parsing
+     * the next one.
+     */
+    static XmlPullParser obtainParser() throws XmlPullParserException {
+        XmlPullParser parser = sThreadParser.get();
+        if (parser == null) {
+            parser = XmlPullParserFactory.newInstance().newPullParser();
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+            sThreadParser.set(parser);
+        }
+        return parser;
+    }
+
     private static Presence parsePidf(XmlPullParser parser) throws IOException,
             XmlPullParserException {
         Presence presence = null;
@@ -76,7 +76,7 @@ public class PidfParserUtils {
     /**
      * Convert the class from RcsContactPresenceTuple to the class Tuple
      */
-    private static Tuple getTupleElement(RcsContactPresenceTuple presenceTuple) {
+    static Tuple getTupleElement(RcsContactPresenceTuple presenceTuple) {
         if (presenceTuple == null) {
             return null;
         }
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce.presence.pidfparser;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.net.Uri;
+import android.telephony.ims.RcsContactPresenceTuple;
+import android.telephony.ims.RcsContactPresenceTuple.ServiceCapabilities;
+import android.telephony.ims.RcsContactUceCapability;
+import android.util.Log;
+
+import com.android.ims.rcs.uce.presence.pidfparser.pidf.Presence;
+import com.android.ims.rcs.uce.presence.pidfparser.pidf.Tuple;
+import com.android.ims.rcs.uce.util.UceUtils;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Convert the device's capabilities to the pidf format and keep the serialized tuples of the
+ * latest conversion. When the capabilities are converted again, only the tuples which have
+ * changed are serialized and the cached tuples are reassembled into the new document.
+ */
+public class PidfTemplateCache {
+
+    private static final String LOG_TAG = UceUtils.getLogPrefix() + "PidfTemplateCache";
+
+    private static final String TUPLE_START = "<" + Tuple.ELEMENT_NAME;
+    private static final String PRESENCE_END = "</" + Presence.ELEMENT_NAME + ">";
+
+    /**
+     * The fields of the RcsContactPresenceTuple which are written to the pidf.
+     */
+    private static final class TupleKey {
+        private final String mStatus;
+        private final String mServiceId;
+        private final String mVersion;
+        private final String mDescription;
+        private final Uri mContactUri;
+        private final boolean mHasServiceCaps;
+        private final boolean mAudioCapable;
+        private final boolean mVideoCapable;
+        private final List<String> mSupportedDuplexModes;
+        private final List<String> mUnsupportedDuplexModes;
+
+        TupleKey(RcsContactPresenceTuple tuple) {
+            mStatus = tuple.getStatus();
+            mServiceId = tuple.getServiceId();
+            mVersion = tuple.getServiceVersion();
+            mDescription = tuple.getServiceDescription();
+            mContactUri = tuple.getContactUri();
+            ServiceCapabilities caps = tuple.getServiceCapabilities();
+            mHasServiceCaps = (caps != null);
+            mAudioCapable = mHasServiceCaps && caps.isAudioCapable();
+            mVideoCapable = mHasServiceCaps && caps.isVideoCapable();
+            mSupportedDuplexModes = mHasServiceCaps ? caps.getSupportedDuplexModes() : null;
+            mUnsupportedDuplexModes = mHasServiceCaps ? caps.getUnsupportedDuplexModes() : null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TupleKey)) return false;
+            TupleKey that = (TupleKey) o;
+            return mHasServiceCaps == that.mHasServiceCaps
+                    && mAudioCapable == that.mAudioCapable
+                    && mVideoCapable == that.mVideoCapable
+                    && Objects.equals(mStatus, that.mStatus)
+                    && Objects.equals(mServiceId, that.mServiceId)
+                    && Objects.equals(mVersion, that.mVersion)
+                    && Objects.equals(mDescription, that.mDescription)
+                    && Objects.equals(mContactUri, that.mContactUri)
+                    && Objects.equals(mSupportedDuplexModes, that.mSupportedDuplexModes)
+                    && Objects.equals(mUnsupportedDuplexModes, that.mUnsupportedDuplexModes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mStatus, mServiceId, mVersion, mDescription, mContactUri,
+                    mHasServiceCaps, mAudioCapable, mVideoCapable, mSupportedDuplexModes,
+                    mUnsupportedDuplexModes);
+        }
+    }
+
+    // The serialized tuples of the latest conversion.
+    private Map<TupleKey, String> mTupleFragments = new HashMap<>();
+
+    // The xml declaration and the presence start tag of the latest entity.
+    private Uri mEntity;
+    private String mDocumentHeader;
+
+    // The number of the tuples which have been serialized.
+    private int mSerializedTupleCount;
+
+    /**
+     * Convert the given capabilities to the pidf format.
+     * @return The pidf or null if the capabilities cannot be converted.
+     */
+    public synchronized @Nullable String convertToPidf(
+            @NonNull RcsContactUceCapability capabilities) {
+        Uri entity = capabilities.getContactUri();
+        List<RcsContactPresenceTuple> tupleList = capabilities.getCapabilityTuples();
+        if (entity == null || tupleList == null || tupleList.isEmpty()) {
+            clear();
+            return PidfParser.convertToPidf(capabilities);
+        }
+
+        if (!entity.equals(mEntity)) {
+            // The entity is written to the presence start tag of all the cached documents.
+            mTupleFragments.clear();
+            mEntity = entity;
+            mDocumentHeader = null;
+        }
+
+        Map<TupleKey, String> tupleFragments = new HashMap<>();
+        StringBuilder tuples = new StringBuilder();
+        for (RcsContactPresenceTuple presenceTuple : tupleList) {
+            if (presenceTuple == null) {
+                continue;
+            }
+            TupleKey key = new TupleKey(presenceTuple);
+            // The duplicated tuple is serialized again so that it has a different tuple id.
+            boolean isDuplicated = tupleFragments.containsKey(key);
+            String fragment = isDuplicated ? null : mTupleFragments.get(key);
+            if (fragment == null) {
+                fragment = serializeTuple(entity, presenceTuple);
+                if (fragment == null) {
+                    clear();
+                    return PidfParser.convertToPidf(capabilities);
+                }
+            }
+            if (!isDuplicated) {
+                tupleFragments.put(key, fragment);
+            }
+            tuples.append(fragment);
+        }
+        mTupleFragments = tupleFragments;
+
+        if (mDocumentHeader == null) {
+            clear();
+            return PidfParser.convertToPidf(capabilities);
+        }
+        return new StringBuilder(mDocumentHeader.length() + tuples.length()
+                + PRESENCE_END.length())
+                .append(mDocumentHeader).append(tuples).append(PRESENCE_END).toString();
+    }
+
+    /**
+     * Clear the cached tuples.
+     */
+    public synchronized void clear() {
+        mTupleFragments.clear();
+        mEntity = null;
+        mDocumentHeader = null;
+    }
+
+    @VisibleForTesting
+    public synchronized int getSerializedTupleCount() {
+        return mSerializedTupleCount;
+    }
+
+    /**
+     * Serialize the document which only contains the given tuple and extract the tuple from it.
+     * The xml declaration and the presence start tag are cached as the document header.
+     */
+    private String serializeTuple(Uri entity, RcsContactPresenceTuple presenceTuple) {
+        Tuple tuple = PidfParserUtils.getTupleElement(presenceTuple);
+        if (tuple == null) {
+            return null;
+        }
+        Presence presence = new Presence(entity);
+        presence.addTuple(tuple);
+        String pidf = PidfParser.serializePresence(presence);
+        if (pidf == null) {
+            return null;
+        }
+
+        int tupleStart = pidf.indexOf(TUPLE_START);
+        int tupleEnd = pidf.lastIndexOf(PRESENCE_END);
+        if (tupleStart < 0 || tupleEnd < tupleStart) {
+            Log.w(LOG_TAG, "serializeTuple: the tuple cannot be found");
+            return null;
+        }
+        if (mDocumentHeader == null) {
+            mDocumentHeader = pidf.substring(0, tupleStart);
+        }
+        mSerializedTupleCount++;
+        return pidf.substring(tupleStart, tupleEnd);
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce.presence.pidfparser;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.net.Uri;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.android.ims.rcs.uce.util.UceUtils;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Decode the multipart/related body of the NOTIFY from the resource list server (RFC 4662).
+ * The body contains the RLMI document of the resource list and the PIDF documents of the
+ * resources. The parts are located in the raw body and each PIDF document is parsed in place
+ * as soon as it's found, so the parts are never copied to separate strings.
+ */
+public class RlmiNotifyDecoder {
+
+    private static final String LOG_TAG = UceUtils.getLogPrefix() + "RlmiNotifyDecoder";
+
+    /** The content type of the RLMI document. */
+    public static final String CONTENT_TYPE_RLMI = "application/rlmi+xml";
+
+    /** The content type of the PIDF document. */
+    public static final String CONTENT_TYPE_PIDF = "application/pidf+xml";
+
+    /** The state of the resource instance which has been terminated. */
+    public static final String STATE_TERMINATED = "terminated";
+
+    private static final String RLMI_NAMESPACE = "urn:ietf:params:xml:ns:rlmi";
+    private static final String ELEMENT_RESOURCE = "resource";
+    private static final String ELEMENT_INSTANCE = "instance";
+    private static final String ATTRIBUTE_URI = "uri";
+    private static final String ATTRIBUTE_ID = "id";
+    private static final String ATTRIBUTE_STATE = "state";
+    private static final String ATTRIBUTE_REASON = "reason";
+    private static final String ATTRIBUTE_CID = "cid";
+
+    private static final String HEADER_CONTENT_TYPE = "content-type";
+    private static final String HEADER_CONTENT_ID = "content-id";
+    private static final String PARAMETER_BOUNDARY = "boundary=";
+
+    private static final byte[] HEADER_END_CRLF = {'\r', '\n', '\r', '\n'};
+    private static final byte[] HEADER_END_LF = {'\n', '\n'};
+
+    /**
+     * The instance of a resource in the RLMI document.
+     */
+    public static class Resource {
+        private final Uri mUri;
+        private final String mInstanceId;
+        private final String mState;
+        private final String mReason;
+        private final String mContentId;
+
+        Resource(Uri uri, String instanceId, String state, String reason, String contentId) {
+            mUri = uri;
+            mInstanceId = instanceId;
+            mState = state;
+            mReason = reason;
+            mContentId = contentId;
+        }
+
+        /**
+         * @return The URI of the resource.
+         */
+        public @Nullable Uri getUri() {
+            return mUri;
+        }
+
+        /**
+         * @return The id of the resource instance.
+         */
+        public @Nullable String getInstanceId() {
+            return mInstanceId;
+        }
+
+        /**
+         * @return The subscription state of the resource instance, "active", "pending" or
+         * "terminated".
+         */
+        public @Nullable String getState() {
+            return mState;
+        }
+
+        /**
+         * @return The reason why the resource instance is terminated.
+         */
+        public @Nullable String getReason() {
+            return mReason;
+        }
+
+        /**
+         * @return The Content-ID of the part which contains the state of the resource. It's null
+         * if the NOTIFY doesn't carry the state of the resource.
+         */
+        public @Nullable String getContentId() {
+            return mContentId;
+        }
+
+        /**
+         * @return true if the resource instance has been terminated.
+         */
+        public boolean isTerminated() {
+            return STATE_TERMINATED.equals(mState);
+        }
+    }
+
+    /**
+     * The listener of the decoded documents.
+     */
+    public interface Listener {
+        /**
+         * Called when the RLMI document is decoded.
+         * @param resources The instances of all the resources in the RLMI document.
+         */
+        void onResourceListDecoded(@NonNull List<Resource> resources);
+
+        /**
+         * Called when a PIDF document is decoded.
+         * @param capability The capability of the PIDF document.
+         * @param resource The resource whose instance refers to the part of the PIDF document.
+         * It's null if the RLMI document has not been decoded or doesn't refer to the part.
+         */
+        void onCapabilityDecoded(@NonNull RcsContactUceCapabilityWrapper capability,
+                @Nullable Resource resource);
+    }
+
+    private final byte[] mBody;
+    private final byte[] mDelimiter;
+    private final Map<String, Resource> mResourcesByContentId = new HashMap<>();
+    private int mFailedCount;
+
+    /**
+     * @param body The raw multipart body of the NOTIFY.
+     * @param boundary The boundary parameter of the Content-Type header of the NOTIFY.
+     */
+    public RlmiNotifyDecoder(@NonNull byte[] body, @NonNull String boundary) {
+        mBody = body;
+        mDelimiter = ("\n--" + boundary).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return The boundary parameter of the given multipart Content-Type, or null if there is
+     * no boundary.
+     */
+    public static @Nullable String getBoundary(@Nullable String contentType) {
+        if (TextUtils.isEmpty(contentType)) {
+            return null;
+        }
+        for (String parameter : contentType.split(";")) {
+            String param = parameter.trim();
+            if (param.regionMatches(true, 0, PARAMETER_BOUNDARY, 0,
+                    PARAMETER_BOUNDARY.length())) {
+                String boundary = param.substring(PARAMETER_BOUNDARY.length()).trim();
+                if (boundary.length() >= 2 && boundary.startsWith("\"")
+                        && boundary.endsWith("\"")) {
+                    boundary = boundary.substring(1, boundary.length() - 1);
+                }
+                return TextUtils.isEmpty(boundary) ? null : boundary;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decode the body and notify the listener of each document in the order of the parts.
+     * @return false if the multipart body is malformed. The documents which have been decoded
+     * before the malformed part are still notified.
+     */
+    public boolean decode(@NonNull Listener listener) {
+        mResourcesByContentId.clear();
+        mFailedCount = 0;
+
+        // The first delimiter may not be preceded by a line break.
+        int position = indexOf(mBody, mDelimiter, 1, 0);
+        if (position == -1) {
+            Log.w(LOG_TAG, "decode: the boundary cannot be found");
+            return false;
+        }
+
+        while (true) {
+            // Skip the delimiter and check whether it's the close delimiter.
+            position += mDelimiter.length - 1;
+            if (position + 1 < mBody.length && mBody[position] == '-'
+                    && mBody[position + 1] == '-') {
+                return true;
+            }
+            // Skip the transport padding and the line break after the delimiter.
+            while (position < mBody.length && mBody[position] != '\n') {
+                position++;
+            }
+            int partStart = position + 1;
+            if (partStart >= mBody.length) {
+                Log.w(LOG_TAG, "decode: the close delimiter cannot be found");
+                return false;
+            }
+
+            // The line break before the next delimiter belongs to the delimiter.
+            int nextDelimiter = indexOf(mBody, mDelimiter, 0, partStart - 1);
+            if (nextDelimiter == -1) {
+                Log.w(LOG_TAG, "decode: the part is not terminated");
+                return false;
+            }
+            int partEnd = nextDelimiter;
+            if (partEnd > partStart && mBody[partEnd - 1] == '\r') {
+                partEnd--;
+            }
+            decodePart(partStart, partEnd, listener);
+            position = nextDelimiter + 1;
+        }
+    }
+
+    /**
+     * @return The number of the documents which cannot be decoded by the latest
+     * {@link #decode(Listener)}.
+     */
+    public int getFailedCount() {
+        return mFailedCount;
+    }
+
+    private void decodePart(int start, int end, Listener listener) {
+        // Locate the end of the part headers.
+        int bodyStart;
+        if (startsWith(mBody, HEADER_END_CRLF, 2, start)) {
+            bodyStart = start + 2;
+        } else if (startsWith(mBody, HEADER_END_LF, 1, start)) {
+            bodyStart = start + 1;
+        } else {
+            int headerEnd = indexOf(mBody, HEADER_END_CRLF, 0, start);
+            if (headerEnd != -1 && headerEnd < end) {
+                bodyStart = headerEnd + HEADER_END_CRLF.length;
+            } else {
+                headerEnd = indexOf(mBody, HEADER_END_LF, 0, start);
+                if (headerEnd == -1 || headerEnd >= end) {
+                    Log.w(LOG_TAG, "decodePart: the end of the headers cannot be found");
+                    mFailedCount++;
+                    return;
+                }
+                bodyStart = headerEnd + HEADER_END_LF.length;
+            }
+        }
+        bodyStart = Math.min(bodyStart, end);
+
+        String contentType = null;
+        String contentId = null;
+        String headers = new String(mBody, start, bodyStart - start, StandardCharsets.US_ASCII);
+        for (String line : headers.split("\n")) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            if (HEADER_CONTENT_TYPE.equals(name)) {
+                int semicolon = value.indexOf(';');
+                contentType = ((semicolon == -1) ? value : value.substring(0, semicolon))
+                        .trim().toLowerCase(Locale.ROOT);
+            } else if (HEADER_CONTENT_ID.equals(name)) {
+                contentId = stripAngleBrackets(value);
+            }
+        }
+
+        if (CONTENT_TYPE_RLMI.equals(contentType)) {
+            List<Resource> resources = decodeRlmi(bodyStart, end);
+            if (resources == null) {
+                mFailedCount++;
+                return;
+            }
+            resources.stream().filter(resource -> resource.getContentId() != null)
+                    .forEach(resource -> mResourcesByContentId.put(resource.getContentId(),
+                            resource));
+            listener.onResourceListDecoded(Collections.unmodifiableList(resources));
+        } else if (CONTENT_TYPE_PIDF.equals(contentType)) {
+            RcsContactUceCapabilityWrapper capability =
+                    PidfParser.getRcsContactUceCapabilityWrapper(mBody, bodyStart,
+                            end - bodyStart);
+            if (capability == null) {
+                mFailedCount++;
+                return;
+            }
+            Resource resource = (contentId == null) ? null : mResourcesByContentId.get(contentId);
+            listener.onCapabilityDecoded(capability, resource);
+        } else {
+            Log.w(LOG_TAG, "decodePart: unsupported content type=" + contentType);
+        }
+    }
+
+    private @Nullable List<Resource> decodeRlmi(int start, int end) {
+        List<Resource> resources = new ArrayList<>();
+        InputStreamReader reader = new InputStreamReader(
+                new ByteArrayInputStream(mBody, start, end - start), StandardCharsets.UTF_8);
+        try {
+            XmlPullParser parser = PidfParser.obtainParser();
+            parser.setInput(reader);
+            Uri resourceUri = null;
+            int eventType = parser.next();
+            while (eventType != XmlPullParser.END_DOCUMENT) {
+                if (RLMI_NAMESPACE.equals(parser.getNamespace())) {
+                    if (eventType == XmlPullParser.START_TAG
+                            && ELEMENT_RESOURCE.equals(parser.getName())) {
+                        String uri = parser.getAttributeValue(XmlPullParser.NO_NAMESPACE,
+                                ATTRIBUTE_URI);
+                        resourceUri = TextUtils.isEmpty(uri) ? null : Uri.parse(uri);
+                    } else if (eventType == XmlPullParser.START_TAG
+                            && ELEMENT_INSTANCE.equals(parser.getName())) {
+                        resources.add(new Resource(resourceUri,
+                                parser.getAttributeValue(XmlPullParser.NO_NAMESPACE,
+                                        ATTRIBUTE_ID),
+                                parser.getAttributeValue(XmlPullParser.NO_NAMESPACE,
+                                        ATTRIBUTE_STATE),
+                                parser.getAttributeValue(XmlPullParser.NO_NAMESPACE,
+                                        ATTRIBUTE_REASON),
+                                stripAngleBrackets(parser.getAttributeValue(
+                                        XmlPullParser.NO_NAMESPACE, ATTRIBUTE_CID))));
+                    } else if (eventType == XmlPullParser.END_TAG
+                            && ELEMENT_RESOURCE.equals(parser.getName())) {
+                        resourceUri = null;
+                    }
+                }
+                eventType = parser.next();
+            }
+        } catch (XmlPullParserException | IOException e) {
+            Log.w(LOG_TAG, "decodeRlmi: exception=" + e);
+            PidfParser.discardParser();
+            return null;
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return resources;
+    }
+
+    private static String stripAngleBrackets(String value) {
+        if (value != null && value.length() >= 2 && value.startsWith("<")
+                && value.endsWith(">")) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    /**
+     * @return true if the given range of the pattern is at the given position of the data.
+     */
+    private static boolean startsWith(byte[] data, byte[] pattern, int patternOffset,
+            int position) {
+        int length = pattern.length - patternOffset;
+        if (position + length > data.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data[position + i] != pattern[patternOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The position of the given range of the pattern in the data, or -1 if it cannot be
+     * found.
+     */
+    private static int indexOf(byte[] data, byte[] pattern, int patternOffset, int from) {
+        int start = Math.max(from, 0);
+        int last = data.length - (pattern.length - patternOffset);
+        byte first = pattern[patternOffset];
+        for (int i = start; i <= last; i++) {
+            if (data[i] == first && startsWith(data, pattern, patternOffset, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
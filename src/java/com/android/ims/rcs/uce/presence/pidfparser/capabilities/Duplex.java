@@ -170,11 +170,15 @@ public class Duplex extends ElementBase {
 
         String name = parser.getName();
         if (eventType == XmlPullParser.START_TAG) {
-            if (DUPLEX_FULL.equals(name) ||
-                    DUPLEX_HALF.equals(name) ||
-                    DUPLEX_RECEIVE_ONLY.equals(name) ||
-                    DUPLEX_SEND_ONLY.equals(name)) {
-                return name;
+            // Return the constant instead of the parsed name.
+            if (DUPLEX_FULL.equals(name)) {
+                return DUPLEX_FULL;
+            } else if (DUPLEX_HALF.equals(name)) {
+                return DUPLEX_HALF;
+            } else if (DUPLEX_RECEIVE_ONLY.equals(name)) {
+                return DUPLEX_RECEIVE_ONLY;
+            } else if (DUPLEX_SEND_ONLY.equals(name)) {
+                return DUPLEX_SEND_ONLY;
             }
         }
         return null;
@@ -19,6 +19,7 @@ package com.android.ims.rcs.uce.presence.pidfparser.omapres;
 import android.text.TextUtils;
 
 import com.android.ims.rcs.uce.presence.pidfparser.ElementBase;
+import com.android.ims.rcs.uce.util.CapabilityStringPool;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
@@ -84,7 +85,7 @@ public class ServiceId extends ElementBase {
         if (eventType == XmlPullParser.TEXT) {
             String serviceId = parser.getText();
             if (!TextUtils.isEmpty(serviceId)) {
-                mServiceId = serviceId;
+                mServiceId = CapabilityStringPool.intern(serviceId);
             }
         }
 
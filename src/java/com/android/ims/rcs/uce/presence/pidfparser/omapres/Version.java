@@ -19,6 +19,7 @@ package com.android.ims.rcs.uce.presence.pidfparser.omapres;
 import android.text.TextUtils;
 
 import com.android.ims.rcs.uce.presence.pidfparser.ElementBase;
+import com.android.ims.rcs.uce.util.CapabilityStringPool;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
@@ -57,7 +58,7 @@ public class Version extends ElementBase {
     public String getValue() {
         StringBuilder builder = new StringBuilder();
         builder.append(mMajorVersion).append(".").append(mMinorVersion);
-        return builder.toString();
+        return CapabilityStringPool.intern(builder.toString());
     }
 
     @Override
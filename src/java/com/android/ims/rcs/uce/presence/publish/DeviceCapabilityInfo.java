@@ -36,6 +36,7 @@ import android.util.IndentingPrintWriter;
 import android.util.ArraySet;
 import android.util.LocalLog;
 import android.util.Log;
+import android.util.Pair;
 
 import com.android.ims.rcs.uce.util.FeatureTags;
 import com.android.ims.rcs.uce.util.UceUtils;
@@ -53,10 +54,53 @@ import java.util.stream.Collectors;
 
 /**
  * Stores the device's capabilities information.
+ * <p>
+ * The updates are serialized and each one which changes the capabilities publishes a new
+ * immutable {@link CapabilitySnapshot}. The readers use the latest snapshot without taking the
+ * lock, and the capabilities built for PUBLISH and OPTIONS are memoized per snapshot.
  */
 public class DeviceCapabilityInfo {
     private static final String LOG_TAG = UceUtils.getLogPrefix() + "DeviceCapabilityInfo";
 
+    /**
+     * The device capabilities at a given version. The instance is never modified after it is
+     * published, except the memoized capabilities which are derived from the other fields.
+     */
+    private static final class CapabilitySnapshot {
+        final long mVersion;
+        final boolean mImsRegistered;
+        final List<Uri> mMmtelAssociatedUris;
+        final List<Uri> mRcsAssociatedUris;
+        final boolean mPresenceCapable;
+        final boolean mVolteCapable;
+        final boolean mVtCapable;
+        final boolean mCallComposerCapable;
+        final Set<ServiceDescription> mRegistrationCapabilities;
+        final Set<String> mRegistrationFeatureTags;
+
+        // The capabilities built from this snapshot and the contact uri they were built with.
+        volatile Pair<Uri, RcsContactUceCapability> mPresenceCapability;
+        volatile Pair<Uri, RcsContactUceCapability> mOptionsCapability;
+
+        CapabilitySnapshot(long version, boolean imsRegistered, List<Uri> mmtelAssociatedUris,
+                List<Uri> rcsAssociatedUris, boolean presenceCapable, boolean volteCapable,
+                boolean vtCapable, boolean callComposerCapable,
+                Set<ServiceDescription> registrationCapabilities,
+                Set<String> registrationFeatureTags) {
+            mVersion = version;
+            mImsRegistered = imsRegistered;
+            mMmtelAssociatedUris = Collections.unmodifiableList(
+                    new ArrayList<>(mmtelAssociatedUris));
+            mRcsAssociatedUris = Collections.unmodifiableList(new ArrayList<>(rcsAssociatedUris));
+            mPresenceCapable = presenceCapable;
+            mVolteCapable = volteCapable;
+            mVtCapable = vtCapable;
+            mCallComposerCapable = callComposerCapable;
+            mRegistrationCapabilities = Collections.unmodifiableSet(registrationCapabilities);
+            mRegistrationFeatureTags = Collections.unmodifiableSet(registrationFeatureTags);
+        }
+    }
+
     private final int mSubId;
 
     private final LocalLog mLocalLog = new LocalLog(UceUtils.LOG_SIZE);
@@ -110,7 +154,10 @@ public class DeviceCapabilityInfo {
     // The service description associated with the last publication update.
     private final Set<ServiceDescription> mLastSuccessfulCapabilities = new ArraySet<>();
     // The service description to temporarily store the presence capability being sent.
-    private Set<ServiceDescription> mPendingPublishCapabilities;
+    private volatile Set<ServiceDescription> mPendingPublishCapabilities;
+
+    // The latest capabilities which are read without holding the lock.
+    private volatile CapabilitySnapshot mSnapshot;
 
     public DeviceCapabilityInfo(int subId, String[] capToRegistrationMap) {
         mSubId = subId;
@@ -118,6 +165,27 @@ public class DeviceCapabilityInfo {
         reset();
     }
 
+    /**
+     * @return The version of the device capabilities, which increases every time the device
+     * capabilities change.
+     */
+    public long getCapabilityVersion() {
+        return mSnapshot.mVersion;
+    }
+
+    /*
+     * Publish a new snapshot from the current state. It must be called with the lock held after
+     * the state which the capabilities are built from is updated.
+     */
+    private void publishSnapshot() {
+        CapabilitySnapshot previous = mSnapshot;
+        mSnapshot = new CapabilitySnapshot((previous == null) ? 0L : previous.mVersion + 1L,
+                mMmtelRegistered || mRcsRegistered, mMmtelAssociatedUris, mRcsAssociatedUris,
+                mPresenceCapable, hasVolteCapability(), hasVtCapability(),
+                hasCallComposerCapability(), mServiceCapRegTracker.copyRegistrationCapabilities(),
+                mServiceCapRegTracker.copyRegistrationFeatureTags());
+    }
+
     /**
      * Reset all the status.
      */
@@ -135,6 +203,7 @@ public class DeviceCapabilityInfo {
         mRcsAssociatedUris = Collections.EMPTY_LIST;
         mLastSuccessfulCapabilities.clear();
         mPendingPublishCapabilities = null;
+        publishSnapshot();
     }
 
     /**
@@ -148,11 +217,12 @@ public class DeviceCapabilityInfo {
         mServiceCapRegTracker.updateImsRegistration(mLastRegistrationOverrideFeatureTags);
         boolean changed = !oldTags.equals(mServiceCapRegTracker.copyRegistrationFeatureTags());
         if (changed) logi("Carrier Config Change resulted in associated FT list change");
+        publishSnapshot();
         return changed;
     }
 
-    public synchronized boolean isImsRegistered() {
-        return mMmtelRegistered || mRcsRegistered;
+    public boolean isImsRegistered() {
+        return mSnapshot.mImsRegistered;
     }
 
     /**
@@ -172,6 +242,7 @@ public class DeviceCapabilityInfo {
         if (mMmtelNetworkRegType != type) {
             mMmtelNetworkRegType = type;
         }
+        publishSnapshot();
     }
 
     /**
@@ -187,6 +258,7 @@ public class DeviceCapabilityInfo {
         mMmtelNetworkRegType = AccessNetworkConstants.TRANSPORT_TYPE_INVALID;
         mLastSuccessfulCapabilities.clear();
         mPendingPublishCapabilities = null;
+        publishSnapshot();
         return changed;
     }
 
@@ -200,19 +272,21 @@ public class DeviceCapabilityInfo {
                     .filter(Objects::nonNull)
                     .collect(Collectors.toList());
         } else {
-            mMmtelAssociatedUris.clear();
+            mMmtelAssociatedUris = Collections.emptyList();
         }
         int currentSize = mMmtelAssociatedUris.size();
         logd("updateMmTelAssociatedUri: size from " + originalSize + " to " + currentSize);
+        publishSnapshot();
     }
 
     /**
      * Get the MMTEL associated URI. When there are multiple uris in the list, take the first uri.
      * Return null if the list of the MMTEL associated uri is empty.
      */
-    public synchronized Uri getMmtelAssociatedUri() {
-        if (!mMmtelAssociatedUris.isEmpty()) {
-            return mMmtelAssociatedUris.get(0);
+    public Uri getMmtelAssociatedUri() {
+        List<Uri> mmtelAssociatedUris = mSnapshot.mMmtelAssociatedUris;
+        if (!mmtelAssociatedUris.isEmpty()) {
+            return mmtelAssociatedUris.get(0);
         }
         return null;
     }
@@ -241,6 +315,7 @@ public class DeviceCapabilityInfo {
 
         mLastRegistrationFeatureTags = attr.getFeatureTags();
         changed |= updateRegistration(mLastRegistrationFeatureTags);
+        publishSnapshot();
 
         return changed;
     }
@@ -261,6 +336,7 @@ public class DeviceCapabilityInfo {
         mRcsNetworkRegType = AccessNetworkConstants.TRANSPORT_TYPE_INVALID;
         mLastSuccessfulCapabilities.clear();
         mPendingPublishCapabilities = null;
+        publishSnapshot();
         return changed;
     }
 
@@ -274,19 +350,21 @@ public class DeviceCapabilityInfo {
                     .filter(Objects::nonNull)
                     .collect(Collectors.toList());
         } else {
-            mRcsAssociatedUris.clear();
+            mRcsAssociatedUris = Collections.emptyList();
         }
         int currentSize = mRcsAssociatedUris.size();
         logd("updateRcsAssociatedUri: size from " + originalSize + " to " + currentSize);
+        publishSnapshot();
     }
 
     /**
      * Get the RCS associated URI. When there are multiple uris in the list, take the first uri.
      * Return null if the list of the RCS associated uri is empty.
      */
-    public synchronized Uri getRcsAssociatedUri() {
-        if (!mRcsAssociatedUris.isEmpty()) {
-            return mRcsAssociatedUris.get(0);
+    public Uri getRcsAssociatedUri() {
+        List<Uri> rcsAssociatedUris = mSnapshot.mRcsAssociatedUris;
+        if (!rcsAssociatedUris.isEmpty()) {
+            return rcsAssociatedUris.get(0);
         }
         return null;
     }
@@ -299,17 +377,24 @@ public class DeviceCapabilityInfo {
      *                     in the header. If {@code false}, we will return the first URI
      *                     in the "p-associated-uri" header, independent of the URI scheme.
      */
-    public synchronized Uri getImsAssociatedUri(boolean preferTelUri) {
+    public Uri getImsAssociatedUri(boolean preferTelUri) {
+        CapabilitySnapshot snapshot = mSnapshot;
+        return getImsAssociatedUri(snapshot.mRcsAssociatedUris, snapshot.mMmtelAssociatedUris,
+                preferTelUri);
+    }
+
+    private static Uri getImsAssociatedUri(List<Uri> rcsAssociatedUris,
+            List<Uri> mmtelAssociatedUris, boolean preferTelUri) {
         if (preferTelUri) {
-            if (!mRcsAssociatedUris.isEmpty()) {
-                for (Uri rcsAssociatedUri : mRcsAssociatedUris) {
+            if (!rcsAssociatedUris.isEmpty()) {
+                for (Uri rcsAssociatedUri : rcsAssociatedUris) {
                     if (PhoneAccount.SCHEME_TEL.equalsIgnoreCase(rcsAssociatedUri.getScheme())) {
                         return rcsAssociatedUri;
                     }
                 }
             }
-            if (!mMmtelAssociatedUris.isEmpty()) {
-                for (Uri mmtelAssociatedUri : mMmtelAssociatedUris) {
+            if (!mmtelAssociatedUris.isEmpty()) {
+                for (Uri mmtelAssociatedUri : mmtelAssociatedUris) {
                     if (PhoneAccount.SCHEME_TEL.equalsIgnoreCase(mmtelAssociatedUri.getScheme())) {
                         return mmtelAssociatedUri;
                     }
@@ -319,10 +404,10 @@ public class DeviceCapabilityInfo {
 
         // Either we have not found a TEL URI or we do not prefer TEL URIs. Get the first URI from
         // p-associated-uri list.
-        if (!mRcsAssociatedUris.isEmpty()) {
-            return mRcsAssociatedUris.get(0);
-        } else if (!mMmtelAssociatedUris.isEmpty()) {
-            return mMmtelAssociatedUris.get(0);
+        if (!rcsAssociatedUris.isEmpty()) {
+            return rcsAssociatedUris.get(0);
+        } else if (!mmtelAssociatedUris.isEmpty()) {
+            return mmtelAssociatedUris.get(0);
         } else {
             return null;
         }
@@ -333,7 +418,9 @@ public class DeviceCapabilityInfo {
         mOverrideRemoveFeatureTags.removeAll(featureTags);
         mOverrideAddFeatureTags.addAll(featureTags);
         // Call with the last feature tags so that the new ones will be potentially picked up.
-        return updateRegistration(mLastRegistrationFeatureTags);
+        boolean changed = updateRegistration(mLastRegistrationFeatureTags);
+        publishSnapshot();
+        return changed;
     };
 
     public synchronized boolean removeRegistrationOverrideCapabilities(Set<String> featureTags) {
@@ -341,7 +428,9 @@ public class DeviceCapabilityInfo {
         mOverrideAddFeatureTags.removeAll(featureTags);
         mOverrideRemoveFeatureTags.addAll(featureTags);
         // Call with the last feature tags so that the new ones will be potentially picked up.
-        return updateRegistration(mLastRegistrationFeatureTags);
+        boolean changed = updateRegistration(mLastRegistrationFeatureTags);
+        publishSnapshot();
+        return changed;
     };
 
     public synchronized boolean clearRegistrationOverrideCapabilities() {
@@ -349,7 +438,9 @@ public class DeviceCapabilityInfo {
         mOverrideAddFeatureTags.clear();
         mOverrideRemoveFeatureTags.clear();
         // Call with the last feature tags so that base tags will be restored
-        return updateRegistration(mLastRegistrationFeatureTags);
+        boolean changed = updateRegistration(mLastRegistrationFeatureTags);
+        publishSnapshot();
+        return changed;
     };
 
     /**
@@ -440,6 +531,7 @@ public class DeviceCapabilityInfo {
 
         // Update to the new mmtel capabilities
         mMmTelCapabilities = deepCopyCapabilities(capabilities);
+        publishSnapshot();
 
         if (oldVolteAvailable != volteAvailable
                 || oldVoWifiAvailable != voWifiAvailable
@@ -452,11 +544,14 @@ public class DeviceCapabilityInfo {
     }
 
     public synchronized void updatePresenceCapable(boolean isCapable) {
-        mPresenceCapable = isCapable;
+        if (mPresenceCapable != isCapable) {
+            mPresenceCapable = isCapable;
+            publishSnapshot();
+        }
     }
 
-    public synchronized boolean isPresenceCapable() {
-        return mPresenceCapable;
+    public boolean isPresenceCapable() {
+        return mSnapshot.mPresenceCapable;
     }
 
     // Get the device's capabilities with the PRESENCE mechanism.
@@ -464,12 +559,12 @@ public class DeviceCapabilityInfo {
         if (context == null) {
             return null;
         }
-        Set<ServiceDescription> capableFromReg =
-                mServiceCapRegTracker.copyRegistrationCapabilities();
-        if (isPresenceCapabilityChanged(capableFromReg)) {
-            RcsContactUceCapability rcsContactUceCapability = getPresenceCapabilities(context);
+        CapabilitySnapshot snapshot = mSnapshot;
+        if (isPresenceCapabilityChanged(snapshot.mRegistrationCapabilities)) {
+            RcsContactUceCapability rcsContactUceCapability =
+                    getPresenceCapabilities(context, snapshot);
             if (rcsContactUceCapability != null) {
-                mPendingPublishCapabilities = mServiceCapRegTracker.copyRegistrationCapabilities();
+                mPendingPublishCapabilities = snapshot.mRegistrationCapabilities;
             }
             return rcsContactUceCapability;
         }
@@ -548,18 +643,19 @@ public class DeviceCapabilityInfo {
     /**
      * Get the device's capabilities.
      */
-    public synchronized RcsContactUceCapability getDeviceCapabilities(
+    public RcsContactUceCapability getDeviceCapabilities(
             @CapabilityMechanism int mechanism, Context context) {
+        CapabilitySnapshot snapshot = mSnapshot;
         switch (mechanism) {
             case RcsContactUceCapability.CAPABILITY_MECHANISM_PRESENCE:
-                RcsContactUceCapability rcsContactUceCapability = getPresenceCapabilities(context);
+                RcsContactUceCapability rcsContactUceCapability =
+                        getPresenceCapabilities(context, snapshot);
                 if (rcsContactUceCapability != null) {
-                    mPendingPublishCapabilities =
-                            mServiceCapRegTracker.copyRegistrationCapabilities();
+                    mPendingPublishCapabilities = snapshot.mRegistrationCapabilities;
                 }
                 return rcsContactUceCapability;
             case RcsContactUceCapability.CAPABILITY_MECHANISM_OPTIONS:
-                return getOptionsCapabilities(context);
+                return getOptionsCapabilities(context, snapshot);
             default:
                 logw("getDeviceCapabilities: invalid mechanism " + mechanism);
                 return null;
@@ -567,14 +663,26 @@ public class DeviceCapabilityInfo {
     }
 
     // Get the device's capabilities with the PRESENCE mechanism.
-    private RcsContactUceCapability getPresenceCapabilities(Context context) {
+    private RcsContactUceCapability getPresenceCapabilities(Context context,
+            CapabilitySnapshot snapshot) {
         Uri uri = PublishUtils.getDeviceContactUri(context, mSubId, this, true);
         if (uri == null) {
             logw("getPresenceCapabilities: uri is empty");
             return null;
         }
+        Pair<Uri, RcsContactUceCapability> cached = snapshot.mPresenceCapability;
+        if (cached != null && cached.first.equals(uri)) {
+            return cached.second;
+        }
+        RcsContactUceCapability capability = buildPresenceCapabilities(uri, snapshot);
+        snapshot.mPresenceCapability = Pair.create(uri, capability);
+        return capability;
+    }
+
+    private RcsContactUceCapability buildPresenceCapabilities(Uri uri,
+            CapabilitySnapshot snapshot) {
         Set<ServiceDescription> capableFromReg =
-                mServiceCapRegTracker.copyRegistrationCapabilities();
+                new ArraySet<>(snapshot.mRegistrationCapabilities);
 
         PresenceBuilder presenceBuilder = new PresenceBuilder(uri,
                 RcsContactUceCapability.SOURCE_TYPE_CACHED,
@@ -590,10 +698,10 @@ public class DeviceCapabilityInfo {
                 ServiceDescription.SERVICE_DESCRIPTION_MMTEL_VOICE, capableFromReg);
         ServiceDescription vtDescription = getCustomizedDescription(
                 ServiceDescription.SERVICE_DESCRIPTION_MMTEL_VOICE_VIDEO, capableFromReg);
-        ServiceDescription descToUse = (hasVolteCapability() && hasVtCapability()) ?
+        ServiceDescription descToUse = (snapshot.mVolteCapable && snapshot.mVtCapable) ?
                 vtDescription : voiceDescription;
         ServiceCapabilities servCaps = new ServiceCapabilities.Builder(
-                hasVolteCapability(), hasVtCapability())
+                snapshot.mVolteCapable, snapshot.mVtCapable)
                 .addSupportedDuplexMode(ServiceCapabilities.DUPLEX_MODE_FULL).build();
         addCapability(presenceBuilder, descToUse.getTupleBuilder()
                 .setServiceCapabilities(servCaps), uri);
@@ -603,7 +711,7 @@ public class DeviceCapabilityInfo {
         // call composer via mmtel
         ServiceDescription composerDescription = getCustomizedDescription(
                 ServiceDescription.SERVICE_DESCRIPTION_CALL_COMPOSER_MMTEL, capableFromReg);
-        if (hasCallComposerCapability()) {
+        if (snapshot.mCallComposerCapable) {
             addCapability(presenceBuilder, composerDescription.getTupleBuilder(), uri);
         }
         capableFromReg.remove(composerDescription);
@@ -628,20 +736,26 @@ public class DeviceCapabilityInfo {
     }
 
     // Get the device's capabilities with the OPTIONS mechanism.
-    private RcsContactUceCapability getOptionsCapabilities(Context context) {
+    private RcsContactUceCapability getOptionsCapabilities(Context context,
+            CapabilitySnapshot snapshot) {
         Uri uri = PublishUtils.getDeviceContactUri(context, mSubId, this, false);
         if (uri == null) {
             logw("getOptionsCapabilities: uri is empty");
             return null;
         }
-
-        Set<String> capableFromReg = mServiceCapRegTracker.copyRegistrationFeatureTags();
+        Pair<Uri, RcsContactUceCapability> cached = snapshot.mOptionsCapability;
+        if (cached != null && cached.first.equals(uri)) {
+            return cached.second;
+        }
 
         OptionsBuilder optionsBuilder = new OptionsBuilder(uri, SOURCE_TYPE_CACHED);
         optionsBuilder.setRequestResult(RcsContactUceCapability.REQUEST_RESULT_FOUND);
-        FeatureTags.addFeatureTags(optionsBuilder, hasVolteCapability(), hasVtCapability(),
-                isPresenceCapable(), hasCallComposerCapability(), capableFromReg);
-        return optionsBuilder.build();
+        FeatureTags.addFeatureTags(optionsBuilder, snapshot.mVolteCapable, snapshot.mVtCapable,
+                snapshot.mPresenceCapable, snapshot.mCallComposerCapable,
+                new ArraySet<>(snapshot.mRegistrationFeatureTags));
+        RcsContactUceCapability capability = optionsBuilder.build();
+        snapshot.mOptionsCapability = Pair.create(uri, capability);
+        return capability;
     }
 
     private void addCapability(RcsContactUceCapability.PresenceBuilder presenceBuilder,
@@ -27,6 +27,7 @@ import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 import android.provider.Settings;
 import android.provider.Telephony;
 import android.telecom.TelecomManager;
@@ -103,12 +104,19 @@ public class DeviceCapabilityListener {
      */
     private class DeviceCapabilityHandler extends Handler {
         private static final long TRIGGER_PUBLISH_REQUEST_DELAY_MS = 500L;
+        private static final int TRIGGER_TYPE_NONE = -1;
 
         private static final int EVENT_REGISTER_IMS_CONTENT_CHANGE = 1;
         private static final int EVENT_UNREGISTER_IMS_CHANGE = 2;
         private static final int EVENT_REQUEST_PUBLISH = 3;
         private static final int EVENT_IMS_UNREGISTERED = 4;
 
+        // The triggers received within the coalescing window are merged into one publish request
+        // of the most urgent trigger type. The window starts from the first pending trigger.
+        private final Object mTriggerLock = new Object();
+        private int mPendingTriggerType = TRIGGER_TYPE_NONE;
+        private long mCoalescingWindowEndTime;
+
         DeviceCapabilityHandler(Looper looper) {
             super(looper);
         }
@@ -125,8 +133,10 @@ public class DeviceCapabilityListener {
                     unregisterImsProvisionCallback();
                     break;
                 case EVENT_REQUEST_PUBLISH:
-                    int triggerType = msg.arg1;
-                    mCallback.requestPublishFromInternal(triggerType);
+                    int triggerType = takePendingTriggerType();
+                    if (triggerType != TRIGGER_TYPE_NONE) {
+                        mCallback.requestPublishFromInternal(triggerType);
+                    }
                     break;
                 case EVENT_IMS_UNREGISTERED:
                     mCallback.updateImsUnregistered();
@@ -151,24 +161,69 @@ public class DeviceCapabilityListener {
         }
 
         public void sendTriggeringPublishMessage(@PublishTriggerType int type) {
-            logd("sendTriggeringPublishMessage: type=" + type);
-            // Remove the existing message and resend a new message.
-            removeMessages(EVENT_REQUEST_PUBLISH);
-            Message message = obtainMessage();
-            message.what = EVENT_REQUEST_PUBLISH;
-            message.arg1 = type;
-            sendMessageDelayed(message, TRIGGER_PUBLISH_REQUEST_DELAY_MS);
+            synchronized (mTriggerLock) {
+                long now = SystemClock.elapsedRealtime();
+                if (mPendingTriggerType == TRIGGER_TYPE_NONE) {
+                    mPendingTriggerType = type;
+                    mCoalescingWindowEndTime = now + UceUtils.getPublishTriggerCoalescingMillis(
+                            mContext, mSubId);
+                } else if (getTriggerUrgency(type) > getTriggerUrgency(mPendingTriggerType)) {
+                    mPendingTriggerType = type;
+                }
+                logd("sendTriggeringPublishMessage: type=" + type
+                        + ", pending type=" + mPendingTriggerType);
+                // Wait for the next trigger for a short time but do not wait beyond the end of
+                // the coalescing window so that a burst of triggers cannot postpone the publish.
+                long delay = Math.max(0L, Math.min(TRIGGER_PUBLISH_REQUEST_DELAY_MS,
+                        mCoalescingWindowEndTime - now));
+                removeMessages(EVENT_REQUEST_PUBLISH);
+                sendEmptyMessageDelayed(EVENT_REQUEST_PUBLISH, delay);
+            }
         }
 
         public void sendImsUnregisteredMessage() {
             logd("sendImsUnregisteredMessage");
             // The IMS has been unregistered. Remove the existing message not processed.
-            removeMessages(EVENT_REQUEST_PUBLISH);
+            synchronized (mTriggerLock) {
+                mPendingTriggerType = TRIGGER_TYPE_NONE;
+                removeMessages(EVENT_REQUEST_PUBLISH);
+            }
             // Remove the existing message and resend a new message.
             removeMessages(EVENT_IMS_UNREGISTERED);
             Message msg = obtainMessage(EVENT_IMS_UNREGISTERED);
             sendMessageDelayed(msg, TRIGGER_PUBLISH_REQUEST_DELAY_MS);
         }
+
+        private int takePendingTriggerType() {
+            synchronized (mTriggerLock) {
+                int triggerType = mPendingTriggerType;
+                mPendingTriggerType = TRIGGER_TYPE_NONE;
+                return triggerType;
+            }
+        }
+
+        /*
+         * The urgency of the trigger type when several triggers are merged. The registration and
+         * the URI changes are kept over the changes of the individual capabilities.
+         */
+        private int getTriggerUrgency(@PublishTriggerType int type) {
+            switch (type) {
+                case PublishController.PUBLISH_TRIGGER_RCS_REGISTERED:
+                case PublishController.PUBLISH_TRIGGER_MMTEL_REGISTERED:
+                    return 3;
+                case PublishController.PUBLISH_TRIGGER_RCS_URI_CHANGE:
+                case PublishController.PUBLISH_TRIGGER_MMTEL_URI_CHANGE:
+                case PublishController.PUBLISH_TRIGGER_PROVISIONING_CHANGE:
+                    return 2;
+                case PublishController.PUBLISH_TRIGGER_MMTEL_CAPABILITY_CHANGE:
+                case PublishController.PUBLISH_TRIGGER_VT_SETTING_CHANGE:
+                case PublishController.PUBLISH_TRIGGER_MOBILE_DATA_CHANGE:
+                case PublishController.PUBLISH_TRIGGER_TTY_PREFERRED_CHANGE:
+                    return 1;
+                default:
+                    return 0;
+            }
+        }
     }
 
     private final int mSubId;
@@ -32,7 +32,7 @@ import android.util.Log;
 
 import com.android.ims.RcsFeatureManager;
 import com.android.ims.rcs.uce.UceStatsWriter;
-import com.android.ims.rcs.uce.presence.pidfparser.PidfParser;
+import com.android.ims.rcs.uce.presence.pidfparser.PidfTemplateCache;
 import com.android.ims.rcs.uce.presence.publish.PublishController.PublishControllerCallback;
 import com.android.ims.rcs.uce.presence.publish.PublishController.PublishTriggerType;
 import com.android.ims.rcs.uce.util.UceUtils;
@@ -68,6 +68,9 @@ public class PublishProcessor {
     // The callback of the PublishController
     private final PublishControllerCallback mPublishCtrlCallback;
 
+    // The serialized tuples of the latest published pidf.
+    private final PidfTemplateCache mPidfTemplateCache = new PidfTemplateCache();
+
     // The lock of processing the pending request.
     private final Object mPendingRequestLock = new Object();
 
@@ -113,6 +116,7 @@ public class PublishProcessor {
         logi("onRcsDisconnected");
         mRcsFeatureManager = null;
         mProcessorState.onRcsDisconnected();
+        mPidfTemplateCache.clear();
         // reset the publish capabilities.
         mDeviceCapabilities.resetPresenceCapability();
     }
@@ -124,6 +128,7 @@ public class PublishProcessor {
         mLocalLog.log("onDestroy");
         logi("onDestroy");
         mIsDestroyed = true;
+        mPidfTemplateCache.clear();
     }
 
     /**
@@ -154,6 +159,14 @@ public class PublishProcessor {
             return false;
         }
 
+        // The PUBLISH triggered by the framework is skipped when the device capabilities are the
+        // same as the last successful PUBLISH. The PUBLISH requested by the ImsService and the
+        // retry are always sent because the ImsService is waiting for them.
+        final boolean skipUnchanged = triggerType != PublishController.PUBLISH_TRIGGER_SERVICE
+                && triggerType != PublishController.PUBLISH_TRIGGER_RETRY
+                && isSkipUnchangedPublishEnabled();
+        final long capabilityVersion = mDeviceCapabilities.getCapabilityVersion();
+
         // Get the latest device's capabilities.
         RcsContactUceCapability deviceCapability;
         if (triggerType == PublishController.PUBLISH_TRIGGER_SERVICE) {
@@ -168,12 +181,20 @@ public class PublishProcessor {
         }
 
         // Convert the device's capabilities to pidf format.
-        String pidfXml = PidfParser.convertToPidf(deviceCapability);
+        String pidfXml = mPidfTemplateCache.convertToPidf(deviceCapability);
         if (TextUtils.isEmpty(pidfXml)) {
             logw("doPublishInternal: pidfXml is empty");
             return false;
         }
 
+        if (skipUnchanged && mProcessorState.isPidfPublished(pidfXml)) {
+            mLocalLog.log("doPublishInternal: pidf is unchanged, skip PUBLISH");
+            logi("doPublishInternal: pidf is published, capability version=" + capabilityVersion);
+            // The changed capabilities result in the same PIDF which has been published.
+            mDeviceCapabilities.setPresencePublishResult(true);
+            return false;
+        }
+
         // Set the pending request and return if RCS is not connected. When the RCS is connected
         // afterward, it will send a new request if there's a pending request.
         RcsFeatureManager featureManager = mRcsFeatureManager;
@@ -191,7 +212,7 @@ public class PublishProcessor {
         });
 
         // Publish to the Presence server.
-        return publishCapabilities(featureManager, pidfXml);
+        return publishCapabilities(featureManager, pidfXml, capabilityVersion);
     }
 
     /*
@@ -231,7 +252,7 @@ public class PublishProcessor {
 
     // Publish the device capabilities with the given pidf.
     private boolean publishCapabilities(@NonNull RcsFeatureManager featureManager,
-            @NonNull String pidfXml) {
+            @NonNull String pidfXml, long capabilityVersion) {
         PublishRequestResponse requestResponse = null;
         try {
             // Clear the pending flag because it is going to send the latest device's capabilities.
@@ -239,7 +260,8 @@ public class PublishProcessor {
 
             // Generate a unique taskId to track this request.
             long taskId = mProcessorState.generatePublishTaskId();
-            requestResponse = new PublishRequestResponse(mPublishCtrlCallback, taskId, pidfXml);
+            requestResponse = new PublishRequestResponse(mPublishCtrlCallback, taskId, pidfXml,
+                    capabilityVersion);
 
             mLocalLog.log("publish capabilities: taskId=" + taskId);
             logi("publishCapabilities: taskId=" + taskId);
@@ -388,6 +410,15 @@ public class PublishProcessor {
             mProcessorState.setLastPublishedTime(responseTime);
             mProcessorState.resetRetryCount();
             publishSuccess = true;
+            // Record the published PIDF to check whether the next PUBLISH triggered by the
+            // framework has any change. The response which is not generated from the PUBLISH
+            // request sent by the framework has no capability version and is not recorded.
+            if (response.getCapabilityVersion()
+                    != PublishRequestResponse.CAPABILITY_VERSION_UNKNOWN) {
+                mProcessorState.setLastPublishedSnapshot(response.getPidfXml());
+            }
+        } else {
+            mProcessorState.clearLastPublishedSnapshot();
         }
         // set the last capabilities according to the result of request.
         mDeviceCapabilities.setPresencePublishResult(publishSuccess);
@@ -532,6 +563,11 @@ public class PublishProcessor {
         return UceUtils.isEabProvisioned(mContext, mSubId);
     }
 
+    @VisibleForTesting
+    protected boolean isSkipUnchangedPublishEnabled() {
+        return UceUtils.isPublishSkipUnchangedEnabled(mContext, mSubId);
+    }
+
     private void logd(String log) {
        Log.d(LOG_TAG, getLogPrefix().append(log).toString());
     }
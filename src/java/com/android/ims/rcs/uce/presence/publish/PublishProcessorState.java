@@ -250,6 +250,11 @@ public class PublishProcessorState {
     // Control the publish throttle
     private final PublishThrottle mPublishThrottle;
 
+    // The PIDF of the last successful PUBLISH request. It's used to check whether the next
+    // PUBLISH triggered by the framework has any change.
+    private int mLastPublishedPidfHash;
+    private String mLastPublishedPidfXml;
+
     private final Object mLock = new Object();
 
     public PublishProcessorState(int subId) {
@@ -330,6 +335,38 @@ public class PublishProcessorState {
         }
     }
 
+    /**
+     * Record the PIDF of the last successful PUBLISH request.
+     * @param pidfXml The PIDF which is published.
+     */
+    public void setLastPublishedSnapshot(String pidfXml) {
+        synchronized (mLock) {
+            mLastPublishedPidfXml = pidfXml;
+            mLastPublishedPidfHash = (pidfXml == null) ? 0 : pidfXml.hashCode();
+        }
+    }
+
+    /**
+     * Clear the last successful PUBLISH. The next PUBLISH request will send the full PIDF.
+     */
+    public void clearLastPublishedSnapshot() {
+        synchronized (mLock) {
+            mLastPublishedPidfXml = null;
+            mLastPublishedPidfHash = 0;
+        }
+    }
+
+    /**
+     * @return true if the given PIDF is the same as the one of the last successful PUBLISH.
+     */
+    public boolean isPidfPublished(String pidfXml) {
+        synchronized (mLock) {
+            return pidfXml != null && mLastPublishedPidfXml != null
+                    && pidfXml.hashCode() == mLastPublishedPidfHash
+                    && pidfXml.equals(mLastPublishedPidfXml);
+        }
+    }
+
     /**
      * Increase the retry count when the PUBLISH has failed and need to retry.
      */
@@ -355,6 +392,7 @@ public class PublishProcessorState {
     public void resetState() {
         synchronized (mLock) {
             mPublishThrottle.resetState();
+            clearLastPublishedSnapshot();
         }
     }
 
@@ -404,6 +442,7 @@ public class PublishProcessorState {
             setPublishingFlag(false /*isPublishing*/);
             clearPendingRequest();
             mPublishThrottle.resetState();
+            clearLastPublishedSnapshot();
         }
     }
 }
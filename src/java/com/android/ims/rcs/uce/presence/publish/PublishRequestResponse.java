@@ -39,8 +39,16 @@ public class PublishRequestResponse {
 
     private static final String LOG_TAG = UceUtils.getLogPrefix() + "PublishRequestResp";
 
+    /**
+     * The capability version of the response which is not generated from the PUBLISH request
+     * sent by the framework.
+     */
+    public static final long CAPABILITY_VERSION_UNKNOWN = -1L;
+
     private final long mTaskId;
     private final String mPidfXml;
+    // The version of the device capabilities which the PIDF is generated from.
+    private final long mCapabilityVersion;
     private volatile boolean mNeedRetry;
     private volatile PublishControllerCallback mPublishCtrlCallback;
 
@@ -54,9 +62,10 @@ public class PublishRequestResponse {
     private Instant mResponseTimestamp;
 
     public PublishRequestResponse(PublishControllerCallback publishCtrlCallback, long taskId,
-            String pidfXml) {
+            String pidfXml, long capabilityVersion) {
         mTaskId = taskId;
         mPidfXml = pidfXml;
+        mCapabilityVersion = capabilityVersion;
         mPublishCtrlCallback = publishCtrlCallback;
         mCmdErrorCode = Optional.empty();
         mNetworkRespSipCode = Optional.empty();
@@ -72,6 +81,7 @@ public class PublishRequestResponse {
         mCmdErrorCode = Optional.empty();
 
         mPidfXml = pidfXml;
+        mCapabilityVersion = CAPABILITY_VERSION_UNKNOWN;
         mResponseTimestamp = Instant.now();
         mNetworkRespSipCode = Optional.of(details.getResponseCode());
         mReasonPhrase = Optional.ofNullable(details.getResponsePhrase());
@@ -182,6 +192,14 @@ public class PublishRequestResponse {
         return mPidfXml;
     }
 
+    /**
+     * @return The version of the device capabilities which the PIDF of this request is generated
+     * from, or {@link #CAPABILITY_VERSION_UNKNOWN} if it is unknown.
+     */
+    public long getCapabilityVersion() {
+        return mCapabilityVersion;
+    }
+
     public void onDestroy() {
         mPublishCtrlCallback = null;
     }
@@ -354,6 +372,7 @@ public class PublishRequestResponse {
     public String toString() {
         StringBuilder builder = new StringBuilder();
         builder.append("taskId=").append(mTaskId)
+                .append(", capabilityVersion=").append(mCapabilityVersion)
                 .append(", CmdErrorCode=").append(getCmdErrorCode().orElse(-1))
                 .append(", NetworkRespSipCode=").append(getNetworkRespSipCode().orElse(-1))
                 .append(", ReasonPhrase=").append(getReasonPhrase().orElse(""))
@@ -21,14 +21,16 @@ import android.util.ArrayMap;
 import android.util.ArraySet;
 import android.util.IndentingPrintWriter;
 import android.util.Log;
+import android.util.Pair;
 
 import com.android.ims.rcs.uce.util.FeatureTags;
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -122,12 +124,31 @@ public class PublishServiceDescTracker {
         DEFAULT_SERVICE_DESCRIPTION_MAP = Collections.unmodifiableMap(map);
     }
 
+    // The maximum number of the registration feature tags whose bit index is cached.
+    private static final int MAX_REGISTRATION_TAG_CACHE_SIZE = 256;
+    private static final int NO_ALIAS_GROUP = -1;
+
     // Maps from ServiceDescription to the set of feature tags required to consider the feature
     // capable for PUBLISH.
     private final Map<ServiceDescription, Set<String>> mServiceDescriptionFeatureTagMap;
     // Handles cases where multiple ServiceDescriptions match a subset of the same feature tags.
     // This will be used to only include the feature tags where the
     private final Set<ServiceDescription> mServiceDescriptionPartialMatches = new ArraySet<>();
+
+    // The compiled form of mServiceDescriptionFeatureTagMap in its iteration order. Each known
+    // feature tag has a bit and each ServiceDescription has the mask of its required tags.
+    private final Map<String, Integer> mFeatureTagBits = new ArrayMap<>();
+    private final ServiceDescription[] mServiceDescriptions;
+    private final long[][] mServiceDescriptionMasks;
+    private final int[] mServiceDescriptionTagCounts;
+    // The index of the aliased group (same service-id & version) of each ServiceDescription, or
+    // NO_ALIAS_GROUP when no other ServiceDescription is similar.
+    private final int[] mServiceDescriptionAliasGroups;
+    private final int mAliasGroupCount;
+    // Caches the bit index of the feature tags received in the IMS registration, which are
+    // usually the same on every re-registration.
+    private final Map<String, Integer> mRegistrationTagBitCache = new ArrayMap<>();
+
     // The capabilities calculated based off of the last IMS registration.
     private final Set<ServiceDescription> mRegistrationCapabilities = new ArraySet<>();
     // Contains the feature tags used in the last update to IMS registration.
@@ -180,14 +201,52 @@ public class PublishServiceDescTracker {
 
     private PublishServiceDescTracker(Map<ServiceDescription, Set<String>> serviceFeatureTagMap) {
         mServiceDescriptionFeatureTagMap = serviceFeatureTagMap;
-        Set<ServiceDescription> keySet = mServiceDescriptionFeatureTagMap.keySet();
+        int size = serviceFeatureTagMap.size();
+        mServiceDescriptions = new ServiceDescription[size];
+        mServiceDescriptionMasks = new long[size][];
+        mServiceDescriptionTagCounts = new int[size];
+        mServiceDescriptionAliasGroups = new int[size];
+
+        // Assign a bit to each known feature tag.
+        for (Set<String> tags : serviceFeatureTagMap.values()) {
+            for (String tag : tags) {
+                if (!mFeatureTagBits.containsKey(tag)) {
+                    mFeatureTagBits.put(tag, mFeatureTagBits.size());
+                }
+            }
+        }
+
         // Go through and collect any ServiceDescriptions that have the same service-id & version
-        // (but not the same description) and add them to a "partial match" list.
-        for (ServiceDescription c : keySet) {
-            mServiceDescriptionPartialMatches.addAll(keySet.stream()
-                    .filter(s -> !Objects.equals(s, c) && isSimilar(c , s))
-                    .collect(Collectors.toList()));
+        // (but not the same description) into the same group and add them to a "partial match"
+        // list.
+        Map<Pair<String, String>, List<Integer>> similarDescriptions = new ArrayMap<>();
+        int index = 0;
+        for (Map.Entry<ServiceDescription, Set<String>> entry : serviceFeatureTagMap.entrySet()) {
+            ServiceDescription desc = entry.getKey();
+            long[] mask = newMask();
+            for (String tag : entry.getValue()) {
+                setBit(mask, mFeatureTagBits.get(tag));
+            }
+            mServiceDescriptions[index] = desc;
+            mServiceDescriptionMasks[index] = mask;
+            mServiceDescriptionTagCounts[index] = entry.getValue().size();
+            mServiceDescriptionAliasGroups[index] = NO_ALIAS_GROUP;
+            similarDescriptions.computeIfAbsent(new Pair<>(desc.serviceId, desc.version),
+                    k -> new ArrayList<>()).add(index);
+            index++;
         }
+        int aliasGroupCount = 0;
+        for (List<Integer> group : similarDescriptions.values()) {
+            if (group.size() < 2) {
+                continue;
+            }
+            for (int i : group) {
+                mServiceDescriptionAliasGroups[i] = aliasGroupCount;
+                mServiceDescriptionPartialMatches.add(mServiceDescriptions[i]);
+            }
+            aliasGroupCount++;
+        }
+        mAliasGroupCount = aliasGroupCount;
     }
 
     /**
@@ -196,60 +255,93 @@ public class PublishServiceDescTracker {
      *                        registration.
      */
     public void updateImsRegistration(Set<String> imsRegistration) {
-        Set<String> sanitizedTags = imsRegistration.stream()
-                // Ensure formatting passed in is the same as format stored here.
-                .map(PublishServiceDescTracker::parseFeatureTags)
-                // Each entry should only contain one feature tag.
-                .map(s -> s.iterator().next()).collect(Collectors.toSet());
         // For aliased service descriptions (service-id && version is the same, but desc is
-        // different), Keep a "score" of the number of feature tags that the service description
-        // has associated with it. If another is found with a higher score, replace this one.
-        Map<ServiceDescription, Integer> aliasedServiceDescScore = new ArrayMap<>();
+        // different), Keep the index of the service description with the highest "score", which
+        // is the number of feature tags that the service description has associated with it.
+        int[] aliasedServiceDescIndex = new int[mAliasGroupCount];
+        Arrays.fill(aliasedServiceDescIndex, -1);
         synchronized (mRegistrationCapabilities) {
+            long[] registrationMask = newMask();
+            for (String tag : imsRegistration) {
+                int bit = getRegistrationTagBit(tag);
+                if (bit >= 0) {
+                    setBit(registrationMask, bit);
+                }
+            }
             mRegistrationFeatureTags = imsRegistration;
             mRegistrationCapabilities.clear();
-            for (Map.Entry<ServiceDescription, Set<String>> desc :
-                    mServiceDescriptionFeatureTagMap.entrySet()) {
-                boolean found = true;
-                for (String tag : desc.getValue()) {
-                    if (!sanitizedTags.contains(tag)) {
-                        found = false;
-                        break;
-                    }
+            for (int i = 0; i < mServiceDescriptions.length; i++) {
+                if (!isSubset(mServiceDescriptionMasks[i], registrationMask)) {
+                    continue;
                 }
-                if (found) {
-                    // There may be ambiguity with multiple entries having the same service-id &&
-                    // version, but not the same description. In this case, we need to find any
-                    // other entries with the same id & version and replace it with the new entry
-                    // if it matches more "completely", i.e. match "mmtel;video" over "mmtel" if the
-                    // registration set includes "mmtel;video". Skip putting that in for now and
-                    // instead track the match with the most feature tags associated with it that
-                    // are all found in the IMS registration.
-                    if (mServiceDescriptionPartialMatches.contains(desc.getKey())) {
-                        ServiceDescription aliasedDesc = aliasedServiceDescScore.keySet().stream()
-                                .filter(s -> isSimilar(s, desc.getKey()))
-                                .findFirst().orElse(null);
-                        if (aliasedDesc != null) {
-                            Integer prevEntrySize = aliasedServiceDescScore.get(aliasedDesc);
-                            if (prevEntrySize != null
-                                    // Overrides are added below the original map, so prefer those.
-                                    && (prevEntrySize <= desc.getValue().size())) {
-                                aliasedServiceDescScore.remove(aliasedDesc);
-                                aliasedServiceDescScore.put(desc.getKey(), desc.getValue().size());
-                            }
-                        } else {
-                            aliasedServiceDescScore.put(desc.getKey(), desc.getValue().size());
-                        }
-                    } else {
-                        mRegistrationCapabilities.add(desc.getKey());
-                    }
+                // There may be ambiguity with multiple entries having the same service-id &&
+                // version, but not the same description. In this case, we need to find any
+                // other entries with the same id & version and replace it with the new entry
+                // if it matches more "completely", i.e. match "mmtel;video" over "mmtel" if the
+                // registration set includes "mmtel;video". Skip putting that in for now and
+                // instead track the match with the most feature tags associated with it that
+                // are all found in the IMS registration.
+                int group = mServiceDescriptionAliasGroups[i];
+                if (group == NO_ALIAS_GROUP) {
+                    mRegistrationCapabilities.add(mServiceDescriptions[i]);
+                    continue;
+                }
+                int prevIndex = aliasedServiceDescIndex[group];
+                // Overrides are added below the original map, so prefer those.
+                if (prevIndex < 0 || mServiceDescriptionTagCounts[prevIndex]
+                        <= mServiceDescriptionTagCounts[i]) {
+                    aliasedServiceDescIndex[group] = i;
+                }
+            }
+            // Collect the highest "scored" ServiceDescriptions and add them to registration caps.
+            for (int index : aliasedServiceDescIndex) {
+                if (index >= 0) {
+                    mRegistrationCapabilities.add(mServiceDescriptions[index]);
                 }
             }
-            // Collect the highest "scored" ServiceDescriptions and add themto registration caps.
-            mRegistrationCapabilities.addAll(aliasedServiceDescScore.keySet());
         }
     }
 
+    /*
+     * Get the bit of the given feature tag of the IMS registration, or -1 if the feature tag is
+     * not required by any ServiceDescription.
+     */
+    private int getRegistrationTagBit(String registrationTag) {
+        Integer bit = mRegistrationTagBitCache.get(registrationTag);
+        if (bit != null) {
+            return bit;
+        }
+        // Ensure formatting passed in is the same as format stored here. Each entry should only
+        // contain one feature tag.
+        String tag = parseFeatureTags(registrationTag).iterator().next();
+        bit = mFeatureTagBits.getOrDefault(tag, -1);
+        if (mRegistrationTagBitCache.size() >= MAX_REGISTRATION_TAG_CACHE_SIZE) {
+            mRegistrationTagBitCache.clear();
+        }
+        mRegistrationTagBitCache.put(registrationTag, bit);
+        return bit;
+    }
+
+    private long[] newMask() {
+        return new long[(mFeatureTagBits.size() + Long.SIZE - 1) / Long.SIZE];
+    }
+
+    private static void setBit(long[] mask, int bit) {
+        mask[bit / Long.SIZE] |= 1L << (bit % Long.SIZE);
+    }
+
+    /*
+     * @return true if all the bits of the given mask are also set in the other mask.
+     */
+    private static boolean isSubset(long[] mask, long[] other) {
+        for (int i = 0; i < mask.length; i++) {
+            if ((mask[i] & ~other[i]) != 0L) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * @return A copy of the service-description pairs (service-id, version) that are associated
      * with the last IMS registration update in {@link #updateImsRegistration(Set)}
@@ -319,13 +411,6 @@ public class PublishServiceDescTracker {
         pw.decreaseIndent();
     }
 
-    /**
-     * Test if two ServiceDescriptions are similar, meaning service-id && version are equal.
-     */
-    private static boolean isSimilar(ServiceDescription a, ServiceDescription b) {
-        return (a.serviceId.equals(b.serviceId) && a.version.equals(b.version));
-    }
-
     /**
      * Remove any formatting inconsistencies that could make string matching difficult.
      */
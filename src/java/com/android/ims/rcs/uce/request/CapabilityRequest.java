@@ -32,6 +32,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -246,10 +247,12 @@ public abstract class CapabilityRequest implements UceRequest {
      * @param cachedCapList The capabilities which are already stored in the cache.
      */
     private List<Uri> getRequestingFromNetworkUris(List<RcsContactUceCapability> cachedCapList) {
+        Set<UceContactKey> cachedContacts = cachedCapList.stream()
+                .map(cap -> UceContactKey.of(cap.getContactUri()))
+                .collect(Collectors.toSet());
         return mUriList.stream()
-                .filter(uri -> cachedCapList.stream()
-                        .noneMatch(cap -> cap.getContactUri().equals(uri)))
-                        .collect(Collectors.toList());
+                .filter(uri -> !cachedContacts.contains(UceContactKey.of(uri)))
+                .collect(Collectors.toList());
     }
 
     /**
@@ -36,8 +36,8 @@ import com.android.ims.rcs.uce.util.UceUtils;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -85,8 +85,9 @@ public class CapabilityRequestResponse {
     // The list of the remote contact's capability.
     private Set<String> mRemoteCaps;
 
-    // The collection to record whether the request contacts have received the capabilities updated.
-    private Map<Uri, Boolean> mContactCapsReceived;
+    // The request contacts which have not received the capabilities updated. They are keyed by
+    // the canonical contact key so the received capabilities can be matched by hashing.
+    private Map<UceContactKey, List<Uri>> mContactCapsNotReceived;
 
     // The SIP detail information of the network response.
     private Optional<SipDetails> mSipDetails;
@@ -104,7 +105,7 @@ public class CapabilityRequestResponse {
         mCachedCapabilityList = new ArrayList<>();
         mUpdatedCapabilityList = new ArrayList<>();
         mRemoteCaps = new HashSet<>();
-        mContactCapsReceived = new HashMap<>();
+        mContactCapsNotReceived = new LinkedHashMap<>();
         mSipDetails = Optional.empty();
     }
 
@@ -112,28 +113,26 @@ public class CapabilityRequestResponse {
      * Set the request contacts which is expected to receive the capabilities updated.
      */
     public synchronized void setRequestContacts(List<Uri> contactUris) {
-        // Initialize the default value to FALSE. All the numbers have not received the
-        // capabilities updated.
-        contactUris.forEach(contact -> mContactCapsReceived.put(contact, Boolean.FALSE));
-        Log.d(LOG_TAG, "setRequestContacts: size=" + mContactCapsReceived.size());
+        // All the numbers have not received the capabilities updated.
+        contactUris.forEach(contact -> mContactCapsNotReceived.computeIfAbsent(
+                UceContactKey.of(contact), key -> new ArrayList<>(1)).add(contact));
+        Log.d(LOG_TAG, "setRequestContacts: size=" + mContactCapsNotReceived.size());
     }
 
     /**
      * Get the contacts that have not received the capabilities updated yet.
      */
     public synchronized List<Uri> getNotReceiveCapabilityUpdatedContact() {
-        return mContactCapsReceived.entrySet()
-                .stream()
-                .filter(entry -> Objects.equals(entry.getValue(), Boolean.FALSE))
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
+        List<Uri> contacts = new ArrayList<>(mContactCapsNotReceived.size());
+        mContactCapsNotReceived.values().forEach(contacts::addAll);
+        return contacts;
     }
 
     /**
      * Set the request contacts which is expected to receive the capabilities updated.
      */
     public synchronized boolean haveAllRequestCapsUpdatedBeenReceived() {
-        return !(mContactCapsReceived.containsValue(Boolean.FALSE));
+        return mContactCapsNotReceived.isEmpty();
     }
 
     /**
@@ -277,14 +276,11 @@ public class CapabilityRequestResponse {
         for (RcsContactUceCapability updatedCap : updatedCapList) {
             Uri updatedUri = updatedCap.getContactUri();
             if (updatedUri == null) continue;
-            String updatedUriStr = updatedUri.toString();
-
-            for (Map.Entry<Uri, Boolean> contactCapEntry : mContactCapsReceived.entrySet()) {
-                String number = UceUtils.getContactNumber(contactCapEntry.getKey());
-                if (!TextUtils.isEmpty(number) && updatedUriStr.contains(number)) {
-                    // Set the flag that this contact has received the capability updated.
-                    contactCapEntry.setValue(true);
-                }
+            // Remove the contact because it has received the capability updated.
+            UceContactKey updatedKey = UceContactKey.of(updatedUri);
+            if (mContactCapsNotReceived.remove(updatedKey) == null) {
+                // The number may be responded in a different format than the requested one.
+                mContactCapsNotReceived.keySet().removeIf(updatedKey::isSuffixMatched);
             }
         }
     }
@@ -20,24 +20,33 @@ import android.net.Uri;
 import android.util.Log;
 
 import com.android.ims.rcs.uce.util.UceUtils;
+import com.android.internal.annotations.VisibleForTesting;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.PriorityQueue;
 
 /**
  * The class is used to store when the contact's capabilities request result is inconclusive.
+ * The contacts are indexed by the canonical contact key for the lookup and by the throttle end time
+ * so that only the expired contacts are visited when cleaning up the list.
  */
 public class ContactThrottlingList {
     private static final String LOG_TAG = UceUtils.getLogPrefix() + "ThrottlingList";
 
     private static class ContactInfo {
+        UceContactKey mContactKey;
         Uri mContactUri;
         int mSipCode;
         Instant mThrottleEndTimestamp;
 
-        public ContactInfo(Uri contactUri, int sipCode, Instant timestamp) {
+        public ContactInfo(UceContactKey contactKey, Uri contactUri, int sipCode,
+                Instant timestamp) {
+            mContactKey = contactKey;
             mContactUri = contactUri;
             mSipCode = sipCode;
             mThrottleEndTimestamp = timestamp;
@@ -45,7 +54,13 @@ public class ContactThrottlingList {
     }
 
     private final int mSubId;
-    private final List<ContactInfo> mThrottlingList = new ArrayList<>();
+
+    // The throttled contacts which are keyed by the canonical contact key.
+    private final Map<UceContactKey, ContactInfo> mThrottlingList = new HashMap<>();
+
+    // The throttled contacts which are ordered by the throttle end time.
+    private final PriorityQueue<ContactInfo> mExpirationQueue = new PriorityQueue<>(
+            Comparator.comparing(contactInfo -> contactInfo.mThrottleEndTimestamp));
 
     public ContactThrottlingList(int subId) {
         mSubId = subId;
@@ -53,42 +68,50 @@ public class ContactThrottlingList {
 
     public synchronized void reset() {
         mThrottlingList.clear();
+        mExpirationQueue.clear();
     }
 
     public synchronized void addToThrottlingList(List<Uri> uriList, int sipCode) {
         // Clean up the expired contacts before starting.
         cleanUpExpiredContacts();
 
-        List<Uri> addToThrottlingList = getNotInThrottlingListUris(uriList);
         long expiration = UceUtils.getAvailabilityCacheExpiration(mSubId);
         Instant timestamp = Instant.now().plusSeconds(expiration);
 
-        List<ContactInfo> list = addToThrottlingList.stream().map(uri ->
-                new ContactInfo(uri, sipCode, timestamp)).collect(Collectors.toList());
-
         int previousSize = mThrottlingList.size();
-        mThrottlingList.addAll(list);
+        for (Uri uri : uriList) {
+            UceContactKey contactKey = UceContactKey.of(uri);
+            if (mThrottlingList.containsKey(contactKey)) {
+                continue;
+            }
+            ContactInfo contactInfo = new ContactInfo(contactKey, uri, sipCode, timestamp);
+            mThrottlingList.put(contactKey, contactInfo);
+            mExpirationQueue.add(contactInfo);
+        }
 
         logd("addToThrottlingList: previous size=" + previousSize +
                 ", current size=" + mThrottlingList.size() + ", expired time=" + timestamp);
     }
 
-    private synchronized List<Uri> getNotInThrottlingListUris(List<Uri> uriList) {
-        List<Uri> throttlingUris = mThrottlingList.stream().map(contactInfo ->
-                contactInfo.mContactUri).collect(Collectors.toList());
-        List<Uri> addToThrottlingUris = new ArrayList<>(uriList);
-        addToThrottlingUris.removeAll(throttlingUris);
-        return addToThrottlingUris;
-    }
-
     public synchronized List<Uri> getInThrottlingListUris(List<Uri> uriList) {
         // Clean up the expired contacts before starting.
         cleanUpExpiredContacts();
 
-        return uriList.stream()
-                .filter(uri -> mThrottlingList.stream()
-                    .anyMatch(contactInfo -> contactInfo.mContactUri.equals(uri)))
-                    .collect(Collectors.toList());
+        List<Uri> throttlingUris = new ArrayList<>();
+        if (mThrottlingList.isEmpty()) {
+            return throttlingUris;
+        }
+        for (Uri uri : uriList) {
+            if (mThrottlingList.containsKey(UceContactKey.of(uri))) {
+                throttlingUris.add(uri);
+            }
+        }
+        return throttlingUris;
+    }
+
+    @VisibleForTesting
+    public synchronized int size() {
+        return mThrottlingList.size();
     }
 
     /**
@@ -96,14 +119,17 @@ public class ContactThrottlingList {
      */
     private synchronized void cleanUpExpiredContacts() {
         final int previousSize = mThrottlingList.size();
-        List<ContactInfo> expiredContacts = mThrottlingList.stream()
-                .filter(contactInfo -> Instant.now()
-                        .isAfter(contactInfo.mThrottleEndTimestamp))
-                        .collect(Collectors.toList());
-        mThrottlingList.removeAll(expiredContacts);
-
-        logd("cleanUpExpiredContacts: previous size=" + previousSize +
-                ", current size=" + mThrottlingList.size());
+        final Instant now = Instant.now();
+        while (!mExpirationQueue.isEmpty()
+                && now.isAfter(mExpirationQueue.peek().mThrottleEndTimestamp)) {
+            ContactInfo contactInfo = mExpirationQueue.poll();
+            mThrottlingList.remove(contactInfo.mContactKey, contactInfo);
+        }
+
+        if (previousSize != mThrottlingList.size()) {
+            logd("cleanUpExpiredContacts: previous size=" + previousSize +
+                    ", current size=" + mThrottlingList.size());
+        }
     }
 
     private void logd(String log) {
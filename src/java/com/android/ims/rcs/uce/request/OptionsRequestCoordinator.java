@@ -23,6 +23,7 @@ import android.telephony.ims.RcsContactUceCapability;
 import android.telephony.ims.RcsUceAdapter;
 import android.telephony.ims.aidl.IRcsUceControllerCallback;
 
+import com.android.ims.rcs.uce.request.UceRequestCoordinator.UceRequestPriority;
 import com.android.ims.rcs.uce.request.UceRequestManager.RequestManagerCallback;
 import com.android.ims.rcs.uce.UceStatsWriter;
 import com.android.internal.annotations.VisibleForTesting;
@@ -60,6 +61,11 @@ public class OptionsRequestCoordinator extends UceRequestCoordinator {
             return this;
         }
 
+        public Builder setPriority(@UceRequestPriority int priority) {
+            mRequestCoordinator.setPriority(priority);
+            return this;
+        }
+
         public OptionsRequestCoordinator build() {
             return mRequestCoordinator;
         }
@@ -227,7 +233,7 @@ public class OptionsRequestCoordinator extends UceRequestCoordinator {
         List<RcsContactUceCapability> updatedCapList = response.getUpdatedContactCapability();
         if (!updatedCapList.isEmpty()) {
             // Save the capabilities and trigger the capabilities callback
-            mRequestManagerCallback.saveCapabilities(updatedCapList);
+            mRequestManagerCallback.saveCapabilities(request.getTaskId(), updatedCapList);
             triggerCapabilitiesReceivedCallback(updatedCapList);
             response.removeUpdatedCapabilities(updatedCapList);
         }
@@ -28,7 +28,7 @@ import android.telephony.ims.aidl.ISubscribeResponseCallback;
 import android.telephony.ims.stub.RcsCapabilityExchangeImplBase.CommandCode;
 
 import com.android.ims.rcs.uce.eab.EabCapabilityResult;
-import com.android.ims.rcs.uce.presence.pidfparser.PidfParser;
+import com.android.ims.rcs.uce.presence.pidfparser.PidfBatchParser;
 import com.android.ims.rcs.uce.presence.pidfparser.PidfParserUtils;
 import com.android.ims.rcs.uce.presence.pidfparser.RcsContactUceCapabilityWrapper;
 import com.android.ims.rcs.uce.presence.subscribe.SubscribeController;
@@ -175,10 +175,10 @@ public class SubscribeRequest extends CapabilityRequest {
         }
 
         // Convert from the pidf xml to the list of RcsContactUceCapabilityWrapper
-        List<RcsContactUceCapabilityWrapper> capabilityList = pidfXml.stream()
-                .map(pidf -> PidfParser.getRcsContactUceCapabilityWrapper(pidf))
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+        PidfBatchParser.Result parseResult = PidfBatchParser.parse(pidfXml);
+        List<RcsContactUceCapabilityWrapper> capabilityList = parseResult.getCapabilities();
+        mRequestManagerCallback.notifyCapabilitiesParsed(mTaskId,
+                parseResult.getParseTimeMillis());
 
         // When the given PIDF xml is empty, set the contacts who have not received the
         // capabilities updated as non-RCS user.
@@ -204,6 +204,8 @@ public class SubscribeRequest extends CapabilityRequest {
             }
         }
         logd("onCapabilitiesUpdate: PIDF size=" + pidfXml.size()
+                + ", parse failed size=" + parseResult.getFailedCount()
+                + ", parse time=" + parseResult.getParseTimeMillis() + "ms"
                 + ", not received capability size=" + notReceivedCapabilityList.size()
                 + ", normal capability size=" + updateCapabilityList.size()
                 + ", malformed but entity uri is valid capability size="
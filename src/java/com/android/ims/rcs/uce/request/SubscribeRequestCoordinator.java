@@ -30,6 +30,7 @@ import com.android.ims.rcs.uce.UceDeviceState.DeviceStateResult;
 import com.android.ims.rcs.uce.eab.EabCapabilityResult;
 import com.android.ims.rcs.uce.presence.pidfparser.PidfParserUtils;
 import com.android.ims.rcs.uce.request.SubscriptionTerminatedHelper.TerminatedResult;
+import com.android.ims.rcs.uce.request.UceRequestCoordinator.UceRequestPriority;
 import com.android.ims.rcs.uce.request.UceRequestManager.RequestManagerCallback;
 import com.android.ims.rcs.uce.UceStatsWriter;
 import com.android.internal.annotations.VisibleForTesting;
@@ -73,6 +74,14 @@ public class SubscribeRequestCoordinator extends UceRequestCoordinator {
             return this;
         }
 
+        /**
+         * Set the priority of the requests.
+         */
+        public Builder setPriority(@UceRequestPriority int priority) {
+            mRequestCoordinator.setPriority(priority);
+            return this;
+        }
+
         /**
          * Get the SubscribeRequestCoordinator instance.
          */
@@ -305,7 +314,8 @@ public class SubscribeRequestCoordinator extends UceRequestCoordinator {
             List<RcsContactUceCapability> updatedCapList = response.getUpdatedContactCapability();
             if (!updatedCapList.isEmpty()) {
                 if (response.isNotFound()) {
-                    mRequestManagerCallback.saveCapabilities(updatedCapList);
+                    mRequestManagerCallback.saveCapabilities(request.getTaskId(),
+                            updatedCapList);
                 }
                 triggerCapabilitiesReceivedCallback(updatedCapList);
                 response.removeUpdatedCapabilities(updatedCapList);
@@ -407,7 +417,7 @@ public class SubscribeRequestCoordinator extends UceRequestCoordinator {
 
         mUceStatsWriter.setPresenceNotifyEvent(mSubId, taskId, updatedCapList);
         // Save the updated capabilities to the cache.
-        mRequestManagerCallback.saveCapabilities(updatedCapList);
+        mRequestManagerCallback.saveCapabilities(taskId, updatedCapList);
 
         // Trigger the capabilities updated callback and remove the given capabilities that have
         // executed the callback onCapabilitiesReceived.
@@ -432,7 +442,7 @@ public class SubscribeRequestCoordinator extends UceRequestCoordinator {
         mUceStatsWriter.setPresenceNotifyEvent(mSubId, taskId, terminatedResources);
 
         // Save the terminated capabilities to the cache.
-        mRequestManagerCallback.saveCapabilities(terminatedResources);
+        mRequestManagerCallback.saveCapabilities(taskId, terminatedResources);
 
         // Trigger the capabilities updated callback and remove the given capabilities from the
         // resource terminated list.
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce.request;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.net.Uri;
+
+import com.android.ims.rcs.uce.util.UceUtils;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The canonical key of a contact in the capabilities requests. The contact number is derived
+ * from the contact URI once and the key is shared by all the requests of the same URI, so the
+ * contacts can be matched by hashing instead of comparing the URI strings. The contacts with
+ * the same number are matched even if the schemes of the URIs are different because the network
+ * may respond the SIP URI of a contact which is requested with the TEL URI.
+ */
+public final class UceContactKey {
+
+    // The maximum number of the keys kept in the pool.
+    @VisibleForTesting
+    public static final int MAX_POOL_SIZE = 1000;
+
+    private static final Object sLock = new Object();
+
+    // The pool of the keys which are keyed by the contact URI.
+    private static final LinkedHashMap<Uri, UceContactKey> sKeyPool =
+            new LinkedHashMap<Uri, UceContactKey>(16, 0.75f, true /*accessOrder*/) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Uri, UceContactKey> eldest) {
+                    return size() > MAX_POOL_SIZE;
+                }
+            };
+
+    private final String mContact;
+    private final String mScheme;
+    private final int mHashCode;
+
+    private UceContactKey(@NonNull String contact, @Nullable String scheme) {
+        mContact = contact;
+        mScheme = scheme;
+        mHashCode = contact.hashCode();
+    }
+
+    /**
+     * @return The key of the given contact URI.
+     */
+    public static @NonNull UceContactKey of(@Nullable Uri contactUri) {
+        if (contactUri == null) {
+            return new UceContactKey("", null);
+        }
+        synchronized (sLock) {
+            UceContactKey key = sKeyPool.get(contactUri);
+            if (key != null) {
+                return key;
+            }
+        }
+
+        String number = UceUtils.getContactNumber(contactUri);
+        UceContactKey key = new UceContactKey((number != null) ? number : contactUri.toString(),
+                contactUri.getScheme());
+
+        synchronized (sLock) {
+            sKeyPool.put(contactUri, key);
+        }
+        return key;
+    }
+
+    /**
+     * Clear the pool of the keys.
+     */
+    @VisibleForTesting
+    public static void clearPool() {
+        synchronized (sLock) {
+            sKeyPool.clear();
+        }
+    }
+
+    /**
+     * @return The contact number, or the contact URI if the number cannot be retrieved.
+     */
+    public @NonNull String getContact() {
+        return mContact;
+    }
+
+    /**
+     * @return The scheme of the contact URI which creates this key.
+     */
+    public @Nullable String getScheme() {
+        return mScheme;
+    }
+
+    /**
+     * @return true if one of the contact numbers ends with the other one. The network may respond
+     * the number of a contact in a different format, e.g. the E.164 number of a contact which is
+     * requested with the local number, so the keys are not equal.
+     */
+    public boolean isSuffixMatched(@NonNull UceContactKey other) {
+        if (mContact.isEmpty() || other.mContact.isEmpty()) {
+            return false;
+        }
+        return mContact.endsWith(other.mContact) || other.mContact.endsWith(mContact);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof UceContactKey)) return false;
+        UceContactKey that = (UceContactKey) o;
+        return mHashCode == that.mHashCode && mContact.equals(that.mContact);
+    }
+
+    @Override
+    public int hashCode() {
+        return mHashCode;
+    }
+}
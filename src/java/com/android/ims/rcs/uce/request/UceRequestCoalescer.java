@@ -0,0 +1,405 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce.request;
+
+import android.net.Uri;
+import android.os.IBinder;
+import android.os.RemoteException;
+import android.telephony.ims.RcsContactUceCapability;
+import android.telephony.ims.RcsContactUceCapability.CapabilityMechanism;
+import android.telephony.ims.SipDetails;
+import android.telephony.ims.aidl.IRcsUceControllerCallback;
+import android.util.Log;
+
+import com.android.ims.rcs.uce.request.UceRequestCoordinator.UceRequestPriority;
+import com.android.ims.rcs.uce.util.UceUtils;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Coalesce the capabilities requests of the same contacts which are in flight. When a contact is
+ * requested while another request of the same contact and the same mechanism has been sent to
+ * the network, the new requester is attached to the outstanding request instead of sending a
+ * duplicate SUBSCRIBE or OPTIONS. The result of the outstanding request is forwarded to all the
+ * attached requesters.
+ */
+public class UceRequestCoalescer {
+
+    private static final String LOG_TAG = UceUtils.getLogPrefix() + "RequestCoalescer";
+
+    /**
+     * The key of a contact which is requested by the given mechanism.
+     */
+    private static class ContactKey {
+        private final int mSubId;
+        private final UceContactKey mContact;
+        private final @CapabilityMechanism int mMechanism;
+
+        ContactKey(int subId, Uri contactUri, @CapabilityMechanism int mechanism) {
+            mSubId = subId;
+            mContact = UceContactKey.of(contactUri);
+            mMechanism = mechanism;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ContactKey)) return false;
+            ContactKey that = (ContactKey) o;
+            return mSubId == that.mSubId && mMechanism == that.mMechanism
+                    && mContact.equals(that.mContact);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mSubId, mContact, mMechanism);
+        }
+    }
+
+    /**
+     * The result of coalescing a capabilities request.
+     */
+    public static class CoalescedRequest {
+        private final List<Uri> mUris;
+        private final IRcsUceControllerCallback mCallback;
+
+        private CoalescedRequest(List<Uri> uris, IRcsUceControllerCallback callback) {
+            mUris = uris;
+            mCallback = callback;
+        }
+
+        /**
+         * @return The contacts which still need to be requested from the network. It's empty if
+         * all the contacts are attached to the outstanding requests.
+         */
+        public List<Uri> getUris() {
+            return mUris;
+        }
+
+        /**
+         * @return The callback which should be set to the new request. It's null if there is no
+         * contact to be requested.
+         */
+        public IRcsUceControllerCallback getCallback() {
+            return mCallback;
+        }
+    }
+
+    /**
+     * A requester whose contacts are requested by one or more requests. It's completed when all
+     * of these requests are completed.
+     */
+    private class Requester {
+        private final IRcsUceControllerCallback mCallback;
+        private int mPendingRequests;
+        private Optional<Integer> mErrorCode = Optional.empty();
+        private long mRetryAfterMillis = 0L;
+
+        Requester(IRcsUceControllerCallback callback, int pendingRequests) {
+            mCallback = callback;
+            mPendingRequests = pendingRequests;
+        }
+
+        void onCapabilitiesReceived(List<RcsContactUceCapability> capabilities) {
+            if (capabilities.isEmpty()) {
+                return;
+            }
+            try {
+                mCallback.onCapabilitiesReceived(capabilities);
+            } catch (RemoteException e) {
+                logw("onCapabilitiesReceived exception: " + e);
+            }
+        }
+
+        void onRequestFinished(Optional<Integer> errorCode, long retryAfterMillis) {
+            if (!mErrorCode.isPresent() && errorCode.isPresent()) {
+                mErrorCode = errorCode;
+                mRetryAfterMillis = retryAfterMillis;
+            }
+            if (--mPendingRequests > 0) {
+                return;
+            }
+            try {
+                if (mErrorCode.isPresent()) {
+                    mCallback.onError(mErrorCode.get(), mRetryAfterMillis, null);
+                } else {
+                    mCallback.onComplete(null);
+                }
+            } catch (RemoteException e) {
+                logw("onRequestFinished exception: " + e);
+            }
+        }
+    }
+
+    /**
+     * The request which is sent to the network. It receives the result of the network request
+     * and forwards it to the owner and the attached requesters.
+     */
+    private class InFlightRequest implements IRcsUceControllerCallback {
+        private final @UceRequestPriority int mPriority;
+        private final Set<ContactKey> mContactKeys;
+        // The callback of the requester which sends this request. It's null if the requester
+        // is also attached to the other requests.
+        private final IRcsUceControllerCallback mCallback;
+        private final Requester mOwner;
+        // The attached requesters and the contacts they are waiting for.
+        private final Map<Requester, Set<ContactKey>> mAttachedRequesters = new HashMap<>();
+        // The capabilities which have been received, keyed by the contacts of this request.
+        // They are replayed to the requesters which are attached later.
+        private final Map<ContactKey, RcsContactUceCapability> mReceivedCapabilities =
+                new HashMap<>();
+
+        InFlightRequest(@UceRequestPriority int priority, Set<ContactKey> contactKeys,
+                IRcsUceControllerCallback callback, Requester owner) {
+            mPriority = priority;
+            mContactKeys = contactKeys;
+            mCallback = callback;
+            mOwner = owner;
+        }
+
+        /**
+         * Attach the requester which is waiting for the given contacts of this request.
+         * @return The capabilities of these contacts which have been received.
+         */
+        private List<RcsContactUceCapability> attach(Requester requester, Set<ContactKey> keys) {
+            mAttachedRequesters.put(requester, keys);
+            List<RcsContactUceCapability> receivedCaps = new ArrayList<>();
+            keys.forEach(key -> {
+                RcsContactUceCapability capability = mReceivedCapabilities.get(key);
+                if (capability != null) {
+                    receivedCaps.add(capability);
+                }
+            });
+            return receivedCaps;
+        }
+
+        /**
+         * Find the contact of this request which the given capability responds to. The network
+         * may respond the contact in a different format, so it falls back to the contact whose
+         * number is suffix matched.
+         * @return The contact of this request, or null if no contact is matched.
+         */
+        private ContactKey resolveContactKey(RcsContactUceCapability capability) {
+            ContactKey key = new ContactKey(mSubId, capability.getContactUri(),
+                    capability.getCapabilityMechanism());
+            if (mContactKeys.contains(key)) {
+                return key;
+            }
+            for (ContactKey contactKey : mContactKeys) {
+                if (contactKey.mMechanism == key.mMechanism
+                        && contactKey.mContact.isSuffixMatched(key.mContact)) {
+                    return contactKey;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void onCapabilitiesReceived(List<RcsContactUceCapability> capabilities) {
+            List<ContactKey> resolvedKeys = new ArrayList<>(capabilities.size());
+            Map<Requester, Set<ContactKey>> attachedRequesters;
+            synchronized (mLock) {
+                for (RcsContactUceCapability capability : capabilities) {
+                    ContactKey key = resolveContactKey(capability);
+                    if (key != null) {
+                        mReceivedCapabilities.put(key, capability);
+                    }
+                    resolvedKeys.add(key);
+                }
+                attachedRequesters = new HashMap<>(mAttachedRequesters);
+            }
+            if (mOwner != null) {
+                mOwner.onCapabilitiesReceived(capabilities);
+            } else {
+                try {
+                    mCallback.onCapabilitiesReceived(capabilities);
+                } catch (RemoteException e) {
+                    logw("onCapabilitiesReceived exception: " + e);
+                }
+            }
+            attachedRequesters.forEach((requester, keys) -> {
+                List<RcsContactUceCapability> attachedCaps = new ArrayList<>();
+                for (int i = 0; i < capabilities.size(); i++) {
+                    ContactKey key = resolvedKeys.get(i);
+                    if (key != null && keys.contains(key)) {
+                        attachedCaps.add(capabilities.get(i));
+                    }
+                }
+                requester.onCapabilitiesReceived(attachedCaps);
+            });
+        }
+
+        @Override
+        public void onComplete(SipDetails details) {
+            Map<Requester, Set<ContactKey>> attachedRequesters = finish();
+            if (mOwner != null) {
+                mOwner.onRequestFinished(Optional.empty(), 0L);
+            } else {
+                try {
+                    mCallback.onComplete(details);
+                } catch (RemoteException e) {
+                    logw("onComplete exception: " + e);
+                }
+            }
+            attachedRequesters.keySet().forEach(requester ->
+                    requester.onRequestFinished(Optional.empty(), 0L));
+        }
+
+        @Override
+        public void onError(int errorCode, long retryAfterMilliseconds, SipDetails details) {
+            Map<Requester, Set<ContactKey>> attachedRequesters = finish();
+            if (mOwner != null) {
+                mOwner.onRequestFinished(Optional.of(errorCode), retryAfterMilliseconds);
+            } else {
+                try {
+                    mCallback.onError(errorCode, retryAfterMilliseconds, details);
+                } catch (RemoteException e) {
+                    logw("onError exception: " + e);
+                }
+            }
+            attachedRequesters.keySet().forEach(requester ->
+                    requester.onRequestFinished(Optional.of(errorCode), retryAfterMilliseconds));
+        }
+
+        /**
+         * Remove this request from the in-flight requests.
+         * @return The attached requesters.
+         */
+        private Map<Requester, Set<ContactKey>> finish() {
+            synchronized (mLock) {
+                mContactKeys.forEach(key -> mInFlightRequests.remove(key, this));
+                Map<Requester, Set<ContactKey>> attachedRequesters =
+                        new HashMap<>(mAttachedRequesters);
+                mAttachedRequesters.clear();
+                mReceivedCapabilities.clear();
+                return attachedRequesters;
+            }
+        }
+
+        @Override
+        public IBinder asBinder() {
+            return null;
+        }
+    }
+
+    private final int mSubId;
+    private final Object mLock = new Object();
+
+    // The in-flight requests of each contact.
+    private final Map<ContactKey, InFlightRequest> mInFlightRequests = new HashMap<>();
+
+    public UceRequestCoalescer(int subId) {
+        mSubId = subId;
+    }
+
+    /**
+     * Attach the given contacts to the outstanding requests of the same contacts and the same
+     * mechanism. The interactive requests are not attached to the background requests which may
+     * be delayed by the dispatcher.
+     *
+     * @return The contacts which need to be requested from the network and the callback which
+     * should be set to the new request.
+     */
+    public CoalescedRequest coalesce(List<Uri> uriList, @CapabilityMechanism int mechanism,
+            @UceRequestPriority int priority, IRcsUceControllerCallback callback) {
+        List<RcsContactUceCapability> receivedCaps = new ArrayList<>();
+        Requester requester;
+        CoalescedRequest coalescedRequest;
+        synchronized (mLock) {
+            List<Uri> requestUris = new ArrayList<>();
+            Set<ContactKey> requestKeys = new LinkedHashSet<>();
+            Map<InFlightRequest, Set<ContactKey>> attachedRequests = new HashMap<>();
+            for (Uri uri : uriList) {
+                ContactKey key = new ContactKey(mSubId, uri, mechanism);
+                InFlightRequest inFlightRequest = mInFlightRequests.get(key);
+                if (inFlightRequest != null && inFlightRequest.mPriority <= priority) {
+                    attachedRequests.computeIfAbsent(inFlightRequest, k -> new LinkedHashSet<>())
+                            .add(key);
+                } else if (requestKeys.add(key)) {
+                    requestUris.add(uri);
+                }
+            }
+
+            if (attachedRequests.isEmpty()) {
+                // Nothing can be coalesced, the requester receives the result directly.
+                InFlightRequest request = new InFlightRequest(priority, requestKeys, callback,
+                        null);
+                requestKeys.forEach(key -> mInFlightRequests.put(key, request));
+                return new CoalescedRequest(requestUris, request);
+            }
+
+            int pendingRequests = attachedRequests.size() + (requestUris.isEmpty() ? 0 : 1);
+            requester = new Requester(callback, pendingRequests);
+            attachedRequests.forEach((request, keys) ->
+                    receivedCaps.addAll(request.attach(requester, keys)));
+            logd("coalesce: attached " + (uriList.size() - requestUris.size())
+                    + " contacts to " + attachedRequests.size() + " in-flight requests");
+
+            if (requestUris.isEmpty()) {
+                coalescedRequest = new CoalescedRequest(requestUris, null);
+            } else {
+                InFlightRequest request = new InFlightRequest(priority, requestKeys, null,
+                        requester);
+                requestKeys.forEach(key -> mInFlightRequests.put(key, request));
+                coalescedRequest = new CoalescedRequest(requestUris, request);
+            }
+        }
+        // Replay the capabilities which the in-flight requests have already received.
+        requester.onCapabilitiesReceived(receivedCaps);
+        return coalescedRequest;
+    }
+
+    /**
+     * Clear all the in-flight requests.
+     */
+    public void reset() {
+        synchronized (mLock) {
+            mInFlightRequests.clear();
+        }
+    }
+
+    @VisibleForTesting
+    public int getInFlightContactCount() {
+        synchronized (mLock) {
+            return mInFlightRequests.size();
+        }
+    }
+
+    private void logd(String log) {
+        Log.d(LOG_TAG, getLogPrefix().append(log).toString());
+    }
+
+    private void logw(String log) {
+        Log.w(LOG_TAG, getLogPrefix().append(log).toString());
+    }
+
+    private StringBuilder getLogPrefix() {
+        StringBuilder builder = new StringBuilder("[");
+        builder.append(mSubId);
+        builder.append("] ");
+        return builder;
+    }
+}
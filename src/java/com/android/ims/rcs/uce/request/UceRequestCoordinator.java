@@ -108,6 +108,23 @@ public abstract class UceRequestCoordinator {
     @Retention(RetentionPolicy.SOURCE)
     @interface UceRequestUpdate {}
 
+    /**
+     * The priority of the requests which the user is waiting for.
+     */
+    public static final int REQUEST_PRIORITY_INTERACTIVE = 0;
+
+    /**
+     * The priority of the requests which refresh the capabilities in the background.
+     */
+    public static final int REQUEST_PRIORITY_BACKGROUND = 1;
+
+    @IntDef(value = {
+            REQUEST_PRIORITY_INTERACTIVE,
+            REQUEST_PRIORITY_BACKGROUND,
+    }, prefix="REQUEST_PRIORITY_")
+    @Retention(RetentionPolicy.SOURCE)
+    @interface UceRequestPriority {}
+
     protected static Map<Integer, String> REQUEST_EVENT_DESC = new HashMap<>();
     static {
         REQUEST_EVENT_DESC.put(REQUEST_UPDATE_ERROR, "REQUEST_ERROR");
@@ -243,6 +260,7 @@ public abstract class UceRequestCoordinator {
     protected final int mSubId;
     protected final long mCoordinatorId;
     protected volatile boolean mIsFinished;
+    protected volatile @UceRequestPriority int mPriority = REQUEST_PRIORITY_INTERACTIVE;
 
     // The collection of activated requests.
     protected final Map<Long, UceRequest> mActivatedRequests;
@@ -276,6 +294,20 @@ public abstract class UceRequestCoordinator {
         return mCoordinatorId;
     }
 
+    /**
+     * Set the priority of the requests of this coordinator.
+     */
+    public void setPriority(@UceRequestPriority int priority) {
+        mPriority = priority;
+    }
+
+    /**
+     * @return Get the priority of the requests of this coordinator.
+     */
+    public @UceRequestPriority int getPriority() {
+        return mPriority;
+    }
+
     /**
      * @return Get the collection of task ID of all the activated requests.
      */
@@ -16,36 +16,66 @@
 
 package com.android.ims.rcs.uce.request;
 
+import android.util.IndentingPrintWriter;
 import android.util.Log;
 
+import com.android.ims.rcs.uce.request.UceRequestCoordinator.UceRequestPriority;
 import com.android.ims.rcs.uce.request.UceRequestManager.RequestManagerCallback;
+import com.android.ims.rcs.uce.util.NetworkSipCode;
 import com.android.ims.rcs.uce.util.UceUtils;
+import com.android.internal.annotations.VisibleForTesting;
 
-import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 
 /**
  * Calculate network carry capabilities and dispatcher the UceRequests.
+ *
+ * The requests are paced by a token bucket which holds up to {@link #mMaxConcurrentNum} tokens
+ * and is refilled with one token every {@link #mIntervalTime} milliseconds. The interval is
+ * increased when the network is overloaded and recovers gradually when the network responds
+ * successfully again. The waiting requests of different coordinators are dispatched in turn so
+ * that a large request cannot hold up the requests which are added after it.
+ *
+ * The interactive requests are always dispatched before the background requests. When more than
+ * one request can be executed at the same time, the background requests cannot occupy the last
+ * executing slot so that an interactive request can be sent without waiting for them.
  */
 public class UceRequestDispatcher {
 
     private static final String LOG_TAG = UceUtils.getLogPrefix() + "RequestDispatcher";
 
+    // The default interval milliseconds for each request.
+    @VisibleForTesting
+    public static final long DEFAULT_INTERVAL_TIME_MS = 100L;
+
+    // The default number of requests that the network can process at the same time.
+    @VisibleForTesting
+    public static final int DEFAULT_MAX_CONCURRENT_NUM = 1;
+
+    // The maximum factor which the interval is multiplied by when the network is overloaded.
+    @VisibleForTesting
+    public static final int MAX_PACING_FACTOR = 16;
+
     /**
      * Record the request timestamp.
      */
     private static class Request {
         private final long mTaskId;
         private final long mCoordinatorId;
-        private Optional<Instant> mExecutingTime;
+        private final @UceRequestPriority int mPriority;
+        private final long mAddedTime;
 
-        public Request(long coordinatorId, long taskId) {
+        public Request(long coordinatorId, @UceRequestPriority int priority, long taskId,
+                long addedTime) {
             mTaskId = taskId;
             mCoordinatorId = coordinatorId;
-            mExecutingTime = Optional.empty();
+            mPriority = priority;
+            mAddedTime = addedTime;
         }
 
         public long getCoordinatorId() {
@@ -56,28 +86,105 @@ public class UceRequestDispatcher {
             return mTaskId;
         }
 
-        public void setExecutingTime(Instant instant) {
-            mExecutingTime = Optional.of(instant);
+        public @UceRequestPriority int getPriority() {
+            return mPriority;
+        }
+
+        public long getAddedTime() {
+            return mAddedTime;
+        }
+    }
+
+    /**
+     * The waiting requests of one priority. The requests of different coordinators are polled in
+     * turn.
+     */
+    private static class RequestLane {
+        // The waiting requests of each coordinator.
+        private final Map<Long, ArrayDeque<Request>> mRequests = new HashMap<>();
+
+        // The coordinators which have waiting requests, in the order they will be served.
+        private final ArrayDeque<Long> mCoordinators = new ArrayDeque<>();
+
+        private int mCount = 0;
+
+        public void add(Request request) {
+            ArrayDeque<Request> requests = mRequests.get(request.getCoordinatorId());
+            if (requests == null) {
+                requests = new ArrayDeque<>();
+                mRequests.put(request.getCoordinatorId(), requests);
+                mCoordinators.addLast(request.getCoordinatorId());
+            }
+            requests.addLast(request);
+            mCount++;
+        }
+
+        public Request poll() {
+            Long coordinatorId = mCoordinators.pollFirst();
+            if (coordinatorId == null) {
+                return null;
+            }
+            ArrayDeque<Request> requests = mRequests.get(coordinatorId);
+            Request request = requests.pollFirst();
+            if (requests.isEmpty()) {
+                mRequests.remove(coordinatorId);
+            } else {
+                mCoordinators.addLast(coordinatorId);
+            }
+            mCount--;
+            return request;
+        }
+
+        public int size() {
+            return mCount;
         }
 
-        public Optional<Instant> getExecutingTime() {
-            return mExecutingTime;
+        public void clear() {
+            mRequests.clear();
+            mCoordinators.clear();
+            mCount = 0;
         }
     }
 
     private final int mSubId;
 
     // The interval milliseconds for each request.
-    private long mIntervalTime = 100;
+    private long mIntervalTime = DEFAULT_INTERVAL_TIME_MS;
 
     // The number of requests that the network can process at the same time.
-    private int mMaxConcurrentNum = 1;
+    private int mMaxConcurrentNum = DEFAULT_MAX_CONCURRENT_NUM;
+
+    // The factor which the interval is multiplied by. It's increased when the network is
+    // overloaded.
+    private int mPacingFactor = 1;
+
+    // The theoretical time in milliseconds at which the token bucket becomes full again. The
+    // token bucket is tracked by this timestamp instead of counting the tokens.
+    private long mBucketFullTime = 0L;
 
-    // The collection of all requests waiting to be executed.
-    private final List<Request> mWaitingRequests = new ArrayList<>();
+    // The requests cannot be sent before this time in milliseconds because of the Retry-After
+    // from the network.
+    private long mRetryAfterTime = 0L;
+
+    // The waiting requests of each priority.
+    private final RequestLane mInteractiveRequests = new RequestLane();
+    private final RequestLane mBackgroundRequests = new RequestLane();
+
+    // The number of all the waiting requests.
+    private int mWaitingCount = 0;
 
     // The collection of all executing requests.
-    private final List<Request> mExecutingRequests = new ArrayList<>();
+    private final Map<Long, Request> mExecutingRequests = new HashMap<>();
+
+    // The number of the executing background requests.
+    private int mExecutingBackgroundCount = 0;
+
+    // The metrics of the dispatched requests.
+    private long mDispatchedCount = 0L;
+    private long mTotalWaitTime = 0L;
+    private long mMaxWaitTime = 0L;
+    private int mMaxWaitingCount = 0;
+    private int mOverloadCount = 0;
 
     // The callback to communicate with UceRequestManager
     private RequestManagerCallback mRequestManagerCallback;
@@ -91,20 +198,50 @@ public class UceRequestDispatcher {
      * Clear all the collections when the instance is destroyed.
      */
     public synchronized void onDestroy() {
-        mWaitingRequests.clear();
+        mInteractiveRequests.clear();
+        mBackgroundRequests.clear();
+        mWaitingCount = 0;
         mExecutingRequests.clear();
+        mExecutingBackgroundCount = 0;
         mRequestManagerCallback = null;
     }
 
+    /**
+     * Update the number of requests that the network can process at the same time and the
+     * interval milliseconds for each request.
+     */
+    public synchronized void updateConfig(int maxConcurrentNum, long intervalTime) {
+        logd("updateConfig: maxConcurrentNum=" + maxConcurrentNum
+                + ", intervalTime=" + intervalTime);
+        mMaxConcurrentNum = Math.max(1, maxConcurrentNum);
+        mIntervalTime = Math.max(0L, intervalTime);
+        onRequestUpdated();
+    }
+
     /**
      * Add new requests to the waiting collection and trigger sending request if the network is
      * capable of processing the given requests.
      */
     public synchronized void addRequest(long coordinatorId, List<Long> taskIds) {
-        taskIds.stream().forEach(taskId -> {
-            Request request = new Request(coordinatorId, taskId);
-            mWaitingRequests.add(request);
-        });
+        addRequest(coordinatorId, UceRequestCoordinator.REQUEST_PRIORITY_INTERACTIVE, taskIds);
+    }
+
+    /**
+     * Add new requests of the given priority to the waiting collection and trigger sending request
+     * if the network is capable of processing the given requests.
+     */
+    public synchronized void addRequest(long coordinatorId, @UceRequestPriority int priority,
+            List<Long> taskIds) {
+        if (taskIds.isEmpty()) {
+            return;
+        }
+        long now = getCurrentTime();
+        RequestLane lane = getRequestLane(priority);
+        for (Long taskId : taskIds) {
+            lane.add(new Request(coordinatorId, priority, taskId, now));
+        }
+        mWaitingCount += taskIds.size();
+        mMaxWaitingCount = Math.max(mMaxWaitingCount, mWaitingCount);
         onRequestUpdated();
     }
 
@@ -113,16 +250,40 @@ public class UceRequestDispatcher {
      */
     public synchronized void onRequestFinished(Long taskId) {
         logd("onRequestFinished: taskId=" + taskId);
-        mExecutingRequests.removeIf(request -> request.getTaskId() == taskId);
+        Request request = mExecutingRequests.remove(taskId);
+        if (request != null && isBackgroundRequest(request)) {
+            mExecutingBackgroundCount--;
+        }
         onRequestUpdated();
     }
 
+    /**
+     * Notify the SIP response of a finished request so that the pacing can be adapted to the
+     * load of the network.
+     * @param sipCode The SIP code of the network response.
+     * @param retryAfterMillis The Retry-After of the network response, 0L if it's not present.
+     */
+    public synchronized void onNetworkResponse(int sipCode, long retryAfterMillis) {
+        if (sipCode == NetworkSipCode.SIP_CODE_SERVICE_UNAVAILABLE || retryAfterMillis > 0L) {
+            mOverloadCount++;
+            mPacingFactor = Math.min(mPacingFactor * 2, MAX_PACING_FACTOR);
+            if (retryAfterMillis > 0L) {
+                mRetryAfterTime = Math.max(mRetryAfterTime, getCurrentTime() + retryAfterMillis);
+            }
+            logd("onNetworkResponse: overloaded, sipCode=" + sipCode + ", retryAfter="
+                    + retryAfterMillis + ", pacingFactor=" + mPacingFactor);
+        } else if (sipCode >= NetworkSipCode.SIP_CODE_OK && sipCode < 300 && mPacingFactor > 1) {
+            mPacingFactor--;
+            logd("onNetworkResponse: recovered, pacingFactor=" + mPacingFactor);
+        }
+    }
+
     private synchronized void onRequestUpdated() {
-        logd("onRequestUpdated: waiting=" + mWaitingRequests.size()
+        logd("onRequestUpdated: waiting=" + mWaitingCount
                 + ", executing=" + mExecutingRequests.size());
 
         // Return if there is no waiting request.
-        if (mWaitingRequests.isEmpty()) {
+        if (mWaitingCount == 0) {
             return;
         }
 
@@ -140,22 +301,38 @@ public class UceRequestDispatcher {
     }
 
     /*
-     * Retrieve the given number of requests from the WaitingRequestList.
+     * Retrieve the given number of requests from the waiting collection. The interactive requests
+     * are retrieved first and each coordinator provides one request in turn.
      */
     private List<Request> getRequestFromWaitingCollection(int numCapacity) {
-        // The number of the requests cannot more than the waiting requests.
-        int numRequests = (numCapacity < mWaitingRequests.size()) ?
-                numCapacity : mWaitingRequests.size();
-
         List<Request> requestList = new ArrayList<>();
-        for (int i = 0; i < numRequests; i++) {
-            requestList.add(mWaitingRequests.get(i));
+        while (requestList.size() < numCapacity && mInteractiveRequests.size() > 0) {
+            requestList.add(mInteractiveRequests.poll());
         }
 
-        mWaitingRequests.removeAll(requestList);
+        // Keep the last executing slot for the interactive requests if the network can process
+        // more than one request at the same time.
+        int backgroundCapacity = numCapacity - requestList.size();
+        if (mMaxConcurrentNum > 1) {
+            backgroundCapacity = Math.min(backgroundCapacity,
+                    mMaxConcurrentNum - 1 - mExecutingBackgroundCount);
+        }
+        for (int i = 0; i < backgroundCapacity && mBackgroundRequests.size() > 0; i++) {
+            requestList.add(mBackgroundRequests.poll());
+        }
+        mWaitingCount -= requestList.size();
         return requestList;
     }
 
+    private RequestLane getRequestLane(@UceRequestPriority int priority) {
+        return (priority == UceRequestCoordinator.REQUEST_PRIORITY_BACKGROUND)
+                ? mBackgroundRequests : mInteractiveRequests;
+    }
+
+    private boolean isBackgroundRequest(Request request) {
+        return request.getPriority() == UceRequestCoordinator.REQUEST_PRIORITY_BACKGROUND;
+    }
+
     /**
      * Notify start of the UceRequest.
      */
@@ -166,57 +343,81 @@ public class UceRequestDispatcher {
             return;
         }
 
-        Instant lastRequestTime = getLastRequestTime();
-        Instant baseTime;
-        if (lastRequestTime.plusMillis(mIntervalTime).isAfter(Instant.now())) {
-            baseTime = lastRequestTime.plusMillis(mIntervalTime);
-        } else {
-            baseTime = Instant.now();
-        }
-
+        long now = getCurrentTime();
         StringBuilder builder = new StringBuilder("notifyStartOfRequest: taskId=");
-        for (int i = 0; i < requestList.size(); i++) {
-            Instant startExecutingTime = baseTime.plusMillis((mIntervalTime * i));
-            Request request = requestList.get(i);
-            request.setExecutingTime(startExecutingTime);
-
+        for (Request request : requestList) {
             // Add the request to the executing collection
-            mExecutingRequests.add(request);
+            mExecutingRequests.put(request.getTaskId(), request);
+            if (isBackgroundRequest(request)) {
+                mExecutingBackgroundCount++;
+            }
 
             // Notify RequestManager to execute this task.
-            long taskId = request.getTaskId();
-            long coordId = request.getCoordinatorId();
-            long delayTime = getDelayTime(startExecutingTime);
-            mRequestManagerCallback.notifySendingRequest(coordId, taskId, delayTime);
-
-            builder.append(request.getTaskId() + ", ");
+            long delayTime = acquireToken(now);
+            long waitTime = now + delayTime - request.getAddedTime();
+            mDispatchedCount++;
+            mTotalWaitTime += waitTime;
+            mMaxWaitTime = Math.max(mMaxWaitTime, waitTime);
+            callback.notifySendingRequest(request.getCoordinatorId(), request.getTaskId(),
+                    delayTime);
+
+            builder.append(request.getTaskId()).append("(delay=").append(delayTime)
+                    .append("), ");
         }
         builder.append("ExecutingRequests size=" + mExecutingRequests.size());
         logd(builder.toString());
     }
 
-    private Instant getLastRequestTime() {
-        if (mExecutingRequests.isEmpty()) {
-            return Instant.MIN;
-        }
+    /**
+     * Take a token from the token bucket.
+     * @return The milliseconds to wait until the token is available.
+     */
+    private long acquireToken(long now) {
+        long interval = mIntervalTime * mPacingFactor;
+        long earliestTime = Math.max(now, mRetryAfterTime);
+        long bucketFullTime = Math.max(mBucketFullTime, earliestTime);
+        // The token is available when the bucket has been refilled to hold at least one token.
+        long sendingTime = Math.max(earliestTime,
+                bucketFullTime - interval * (mMaxConcurrentNum - 1));
+        mBucketFullTime = bucketFullTime + interval;
+        return sendingTime - now;
+    }
 
-        Instant lastTime = Instant.MIN;
-        for (Request request : mExecutingRequests) {
-            if (!request.getExecutingTime().isPresent()) continue;
-            Instant executingTime = request.getExecutingTime().get();
-            if (executingTime.isAfter(lastTime)) {
-                lastTime = executingTime;
-            }
-        }
-        return lastTime;
+    /**
+     * Dump the state and the metrics of the dispatcher.
+     */
+    public synchronized void dump(IndentingPrintWriter pw) {
+        pw.println("UceRequestDispatcher" + "[subId: " + mSubId + "]:");
+        pw.increaseIndent();
+        pw.println("maxConcurrentNum=" + mMaxConcurrentNum + ", intervalTime=" + mIntervalTime
+                + ", pacingFactor=" + mPacingFactor + ", retryAfterTime=" + mRetryAfterTime);
+        pw.println("waiting=" + mWaitingCount + " (interactive=" + mInteractiveRequests.size()
+                + ", background=" + mBackgroundRequests.size() + "), executing="
+                + mExecutingRequests.size() + " (background=" + mExecutingBackgroundCount
+                + "), maxWaiting=" + mMaxWaitingCount);
+        pw.println("dispatched=" + mDispatchedCount + ", averageWaitTime="
+                + (mDispatchedCount == 0L ? 0L : mTotalWaitTime / mDispatchedCount)
+                + ", maxWaitTime=" + mMaxWaitTime + ", overloadCount=" + mOverloadCount);
+        pw.decreaseIndent();
     }
 
-    private long getDelayTime(Instant executingTime) {
-        long delayTime = Duration.between(executingTime, Instant.now()).toMillis();
-        if (delayTime < 0L) {
-            delayTime = 0;
-        }
-        return delayTime;
+    @VisibleForTesting
+    public synchronized int getWaitingRequestCount() {
+        return mWaitingCount;
+    }
+
+    @VisibleForTesting
+    public synchronized int getExecutingRequestCount() {
+        return mExecutingRequests.size();
+    }
+
+    @VisibleForTesting
+    public synchronized int getPacingFactor() {
+        return mPacingFactor;
+    }
+
+    private long getCurrentTime() {
+        return Instant.now().toEpochMilli();
     }
 
     private void logd(String log) {
@@ -230,4 +431,3 @@ public class UceRequestDispatcher {
         return builder;
     }
 }
-
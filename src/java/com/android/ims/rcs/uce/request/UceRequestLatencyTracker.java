@@ -0,0 +1,367 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce.request;
+
+import android.os.SystemClock;
+import android.util.IndentingPrintWriter;
+import android.util.Log;
+
+import com.android.ims.rcs.uce.UceStatsWriter;
+import com.android.ims.rcs.uce.util.UceUtils;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Trace the lifecycle of the capability requests of a subscription and aggregate the time spent
+ * in each stage of the requests into the latency histograms.
+ */
+public class UceRequestLatencyTracker {
+    private static final String LOG_TAG = UceUtils.getLogPrefix() + "LatencyTracker";
+
+    /** From the request being added to the request being sent by the dispatcher. */
+    public static final int STAGE_QUEUED = 0;
+    /** From the request being sent by the dispatcher to the request being executed. */
+    public static final int STAGE_SCHEDULED = 1;
+    /** From the request being executed to the network response being received. */
+    public static final int STAGE_NETWORK = 2;
+    /** From the network response being received to the subscription being terminated. */
+    public static final int STAGE_NOTIFY = 3;
+    /** The time spent on parsing the PIDF documents of all the NOTIFYs of the request. */
+    public static final int STAGE_PARSE = 4;
+    /** The time spent on saving the capabilities of the request to the EAB provider. */
+    public static final int STAGE_EAB_WRITE = 5;
+    /** From the request being added to the request being finished. */
+    public static final int STAGE_TOTAL = 6;
+
+    private static final String[] STAGE_NAMES = {
+            "QUEUED", "SCHEDULED", "NETWORK", "NOTIFY", "PARSE", "EAB_WRITE", "TOTAL"};
+
+    // The number of finished requests after which the latency summary is sent to the metrics.
+    @VisibleForTesting
+    public static final int REPORT_INTERVAL = 100;
+
+    // The maximum number of the requests being traced. The oldest one is dropped when it is full
+    // so that the requests which never finish cannot make the collection grow.
+    private static final int MAX_TRACED_REQUESTS = 500;
+
+    /**
+     * The timestamps of a capability request. The value 0 means the event has not happened yet.
+     */
+    private static class Timeline {
+        final long mCreatedTime;
+        long mDispatchedTime;
+        long mExecutedTime;
+        long mRespondedTime;
+        // The time spent on parsing and saving the capabilities, -1 if it has not happened.
+        long mParseTime = -1L;
+        long mEabWriteTime = -1L;
+
+        Timeline(long createdTime) {
+            mCreatedTime = createdTime;
+        }
+    }
+
+    /**
+     * The latency histogram with the fixed bucket upper bounds.
+     */
+    @VisibleForTesting
+    public static class LatencyHistogram {
+        private static final long[] BUCKET_BOUNDS_MS =
+                {10L, 25L, 50L, 100L, 250L, 500L, 1000L, 2500L, 5000L, 10000L};
+
+        // The last bucket counts the samples which are larger than the largest bound.
+        private final int[] mBuckets = new int[BUCKET_BOUNDS_MS.length + 1];
+        private int mCount;
+        private long mSum;
+        private long mMax;
+
+        void add(long latencyMs) {
+            latencyMs = Math.max(0L, latencyMs);
+            int index = 0;
+            while (index < BUCKET_BOUNDS_MS.length && latencyMs > BUCKET_BOUNDS_MS[index]) {
+                index++;
+            }
+            mBuckets[index]++;
+            mCount++;
+            mSum += latencyMs;
+            mMax = Math.max(mMax, latencyMs);
+        }
+
+        void merge(LatencyHistogram other) {
+            for (int i = 0; i < mBuckets.length; i++) {
+                mBuckets[i] += other.mBuckets[i];
+            }
+            mCount += other.mCount;
+            mSum += other.mSum;
+            mMax = Math.max(mMax, other.mMax);
+        }
+
+        void reset() {
+            Arrays.fill(mBuckets, 0);
+            mCount = 0;
+            mSum = 0L;
+            mMax = 0L;
+        }
+
+        public int getCount() {
+            return mCount;
+        }
+
+        public long getAverage() {
+            return (mCount == 0) ? 0L : mSum / mCount;
+        }
+
+        public long getMax() {
+            return mMax;
+        }
+
+        /**
+         * @return The upper bound of the bucket containing the given percentile, or the maximum
+         * latency when it is in the last bucket or smaller than the bound.
+         */
+        public long getPercentile(int percentile) {
+            if (mCount == 0) {
+                return 0L;
+            }
+            long rank = ((long) mCount * percentile + 99L) / 100L;
+            long cumulative = 0L;
+            for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+                cumulative += mBuckets[i];
+                if (cumulative >= rank) {
+                    return Math.min(BUCKET_BOUNDS_MS[i], mMax);
+                }
+            }
+            return mMax;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("count=").append(mCount)
+                    .append(", avg=").append(getAverage())
+                    .append(", p50=").append(getPercentile(50))
+                    .append(", p90=").append(getPercentile(90))
+                    .append(", p99=").append(getPercentile(99))
+                    .append(", max=").append(mMax)
+                    .append(", buckets=[");
+            for (int i = 0; i < mBuckets.length; i++) {
+                if (i > 0) {
+                    builder.append(", ");
+                }
+                builder.append(i < BUCKET_BOUNDS_MS.length ? "<=" + BUCKET_BOUNDS_MS[i] : ">"
+                        + BUCKET_BOUNDS_MS[BUCKET_BOUNDS_MS.length - 1]);
+                builder.append(":").append(mBuckets[i]);
+            }
+            return builder.append("]").toString();
+        }
+    }
+
+    private final int mSubId;
+    private final LongSupplier mClock;
+
+    private final Map<Long, Timeline> mTimelines =
+            new LinkedHashMap<Long, Timeline>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Timeline> eldest) {
+                    return size() > MAX_TRACED_REQUESTS;
+                }
+            };
+
+    // The latency since the previous summary was sent and the latency since created.
+    private final LatencyHistogram[] mWindowHistograms = new LatencyHistogram[STAGE_NAMES.length];
+    private final LatencyHistogram[] mTotalHistograms = new LatencyHistogram[STAGE_NAMES.length];
+
+    public UceRequestLatencyTracker(int subId) {
+        this(subId, SystemClock::elapsedRealtime);
+    }
+
+    @VisibleForTesting
+    public UceRequestLatencyTracker(int subId, LongSupplier clock) {
+        mSubId = subId;
+        mClock = clock;
+        for (int i = 0; i < STAGE_NAMES.length; i++) {
+            mWindowHistograms[i] = new LatencyHistogram();
+            mTotalHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Notify that the requests of a coordinator are about to be added to the repository.
+     */
+    public synchronized void onRequestsCreated(List<Long> taskIds) {
+        long now = mClock.getAsLong();
+        for (Long taskId : taskIds) {
+            mTimelines.put(taskId, new Timeline(now));
+        }
+    }
+
+    /**
+     * Notify that the dispatcher has sent the request to be executed.
+     */
+    public synchronized void onRequestDispatched(long taskId) {
+        Timeline timeline = mTimelines.get(taskId);
+        if (timeline == null || timeline.mDispatchedTime != 0L) {
+            return;
+        }
+        timeline.mDispatchedTime = mClock.getAsLong();
+        addLatency(STAGE_QUEUED, timeline.mDispatchedTime - timeline.mCreatedTime);
+    }
+
+    /**
+     * Notify that the request is being executed.
+     */
+    public synchronized void onRequestExecuted(long taskId) {
+        Timeline timeline = mTimelines.get(taskId);
+        if (timeline == null || timeline.mDispatchedTime == 0L || timeline.mExecutedTime != 0L) {
+            return;
+        }
+        timeline.mExecutedTime = mClock.getAsLong();
+        addLatency(STAGE_SCHEDULED, timeline.mExecutedTime - timeline.mDispatchedTime);
+    }
+
+    /**
+     * Notify that the network response or the command error of the request is received.
+     */
+    public synchronized void onNetworkResponse(long taskId) {
+        Timeline timeline = mTimelines.get(taskId);
+        if (timeline == null || timeline.mExecutedTime == 0L || timeline.mRespondedTime != 0L) {
+            return;
+        }
+        timeline.mRespondedTime = mClock.getAsLong();
+        addLatency(STAGE_NETWORK, timeline.mRespondedTime - timeline.mExecutedTime);
+    }
+
+    /**
+     * Notify that the subscription of the request is terminated.
+     */
+    public synchronized void onRequestTerminated(long taskId) {
+        Timeline timeline = mTimelines.get(taskId);
+        if (timeline == null || timeline.mRespondedTime == 0L) {
+            return;
+        }
+        addLatency(STAGE_NOTIFY, mClock.getAsLong() - timeline.mRespondedTime);
+    }
+
+    /**
+     * Add the time spent on parsing the PIDF documents of a NOTIFY of the request. The time of
+     * all the NOTIFYs is added up and recorded when the request is finished.
+     */
+    public synchronized void onCapabilitiesParsed(long taskId, long parseTimeMillis) {
+        Timeline timeline = mTimelines.get(taskId);
+        if (timeline == null) {
+            return;
+        }
+        timeline.mParseTime = Math.max(timeline.mParseTime, 0L) + parseTimeMillis;
+    }
+
+    /**
+     * @return The timestamp to pass to {@link #onCapabilitiesSaved} after the capabilities are
+     * saved to the EAB provider.
+     */
+    public long getTimestamp() {
+        return mClock.getAsLong();
+    }
+
+    /**
+     * Notify that the capabilities of the request have been saved to the EAB provider. The time
+     * of all the saves is added up and recorded when the request is finished.
+     * @param startTime The timestamp from {@link #getTimestamp} before saving.
+     */
+    public synchronized void onCapabilitiesSaved(long taskId, long startTime) {
+        Timeline timeline = mTimelines.get(taskId);
+        if (timeline == null) {
+            return;
+        }
+        timeline.mEabWriteTime = Math.max(timeline.mEabWriteTime, 0L)
+                + (mClock.getAsLong() - startTime);
+    }
+
+    /**
+     * Notify that the request is finished. The latency summary is sent to the metrics every
+     * {@link #REPORT_INTERVAL} finished requests.
+     */
+    public synchronized void onRequestFinished(long taskId) {
+        Timeline timeline = mTimelines.remove(taskId);
+        if (timeline == null) {
+            return;
+        }
+        if (timeline.mParseTime >= 0L) {
+            addLatency(STAGE_PARSE, timeline.mParseTime);
+        }
+        if (timeline.mEabWriteTime >= 0L) {
+            addLatency(STAGE_EAB_WRITE, timeline.mEabWriteTime);
+        }
+        addLatency(STAGE_TOTAL, mClock.getAsLong() - timeline.mCreatedTime);
+        if (mWindowHistograms[STAGE_TOTAL].getCount() >= REPORT_INTERVAL) {
+            reportLatencyStats();
+        }
+    }
+
+    /**
+     * Clear the requests being traced. The collected latency is kept for the dump.
+     */
+    public synchronized void reset() {
+        mTimelines.clear();
+    }
+
+    @VisibleForTesting
+    public synchronized LatencyHistogram getHistogram(int stage) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.merge(mTotalHistograms[stage]);
+        histogram.merge(mWindowHistograms[stage]);
+        return histogram;
+    }
+
+    @VisibleForTesting
+    public synchronized int getTracedRequestCount() {
+        return mTimelines.size();
+    }
+
+    private void addLatency(int stage, long latencyMs) {
+        mWindowHistograms[stage].add(latencyMs);
+    }
+
+    private void reportLatencyStats() {
+        UceStatsWriter writer = UceStatsWriter.getInstance();
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+            LatencyHistogram histogram = mWindowHistograms[stage];
+            if (writer != null && histogram.getCount() > 0) {
+                writer.setUceRequestLatencyStats(mSubId, stage, histogram.getCount(),
+                        histogram.getAverage(), histogram.getPercentile(90), histogram.getMax());
+            }
+            mTotalHistograms[stage].merge(histogram);
+            histogram.reset();
+        }
+        Log.d(LOG_TAG, "reportLatencyStats: subId=" + mSubId);
+    }
+
+    public synchronized void dump(IndentingPrintWriter pw) {
+        pw.println("UceRequestLatencyTracker" + "[subId: " + mSubId + "]:");
+        pw.increaseIndent();
+        pw.println("tracedRequests=" + mTimelines.size());
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+            pw.println(STAGE_NAMES[stage] + ": " + getHistogram(stage));
+        }
+        pw.decreaseIndent();
+    }
+}
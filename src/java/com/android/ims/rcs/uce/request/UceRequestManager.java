@@ -29,6 +29,7 @@ import android.telephony.ims.RcsUceAdapter;
 import android.telephony.ims.aidl.IOptionsRequestCallback;
 import android.telephony.ims.aidl.IRcsUceControllerCallback;
 import android.text.TextUtils;
+import android.util.IndentingPrintWriter;
 import android.util.Log;
 
 import com.android.i18n.phonenumbers.NumberParseException;
@@ -38,11 +39,16 @@ import com.android.ims.rcs.uce.UceController;
 import com.android.ims.rcs.uce.UceController.UceControllerCallback;
 import com.android.ims.rcs.uce.UceDeviceState;
 import com.android.ims.rcs.uce.UceDeviceState.DeviceStateResult;
+import com.android.ims.rcs.uce.UceStatsWriter;
 import com.android.ims.rcs.uce.eab.EabCapabilityResult;
 import com.android.ims.rcs.uce.options.OptionsController;
 import com.android.ims.rcs.uce.presence.subscribe.SubscribeController;
 import com.android.ims.rcs.uce.request.UceRequest.UceRequestType;
+import com.android.ims.rcs.uce.request.UceRequestCoalescer.CoalescedRequest;
+import com.android.ims.rcs.uce.request.UceRequestCoordinator.UceRequestPriority;
 import com.android.ims.rcs.uce.request.UceRequestCoordinator.UceRequestUpdate;
+import com.android.ims.rcs.uce.util.FeatureTags;
+import com.android.ims.rcs.uce.util.NetworkSipCode;
 import com.android.ims.rcs.uce.util.UceUtils;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.os.SomeArgs;
@@ -51,10 +57,12 @@ import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -180,6 +188,17 @@ public class UceRequestManager {
          */
         void saveCapabilities(List<RcsContactUceCapability> contactCapabilities);
 
+        /**
+         * Store the given contact capabilities received by the given request to the cache.
+         */
+        void saveCapabilities(long taskId, List<RcsContactUceCapability> contactCapabilities);
+
+        /**
+         * Notify the time spent on parsing the PIDF documents received in a NOTIFY of the given
+         * request.
+         */
+        void notifyCapabilitiesParsed(long taskId, long parseTimeMillis);
+
         /**
          * Retrieve the device's capabilities.
          */
@@ -282,6 +301,7 @@ public class UceRequestManager {
     private RequestManagerCallback mRequestMgrCallback = new RequestManagerCallback() {
         @Override
         public void notifySendingRequest(long coordinatorId, long taskId, long delayTimeMs) {
+            mLatencyTracker.onRequestDispatched(taskId);
             mHandler.sendRequestMessage(coordinatorId, taskId, delayTimeMs);
         }
 
@@ -310,6 +330,19 @@ public class UceRequestManager {
             mControllerCallback.saveCapabilities(contactCapabilities);
         }
 
+        @Override
+        public void saveCapabilities(long taskId,
+                List<RcsContactUceCapability> contactCapabilities) {
+            long startTime = mLatencyTracker.getTimestamp();
+            mControllerCallback.saveCapabilities(contactCapabilities);
+            mLatencyTracker.onCapabilitiesSaved(taskId, startTime);
+        }
+
+        @Override
+        public void notifyCapabilitiesParsed(long taskId, long parseTimeMillis) {
+            mLatencyTracker.onCapabilitiesParsed(taskId, parseTimeMillis);
+        }
+
         @Override
         public RcsContactUceCapability getDeviceCapabilities(@CapabilityMechanism int mechanism) {
             return mControllerCallback.getDeviceCapabilities(mechanism);
@@ -334,17 +367,20 @@ public class UceRequestManager {
 
         @Override
         public void notifyCommandError(long requestCoordinatorId, long taskId) {
+            mLatencyTracker.onNetworkResponse(taskId);
             mHandler.sendRequestUpdatedMessage(requestCoordinatorId, taskId,
                     UceRequestCoordinator.REQUEST_UPDATE_COMMAND_ERROR);
         }
 
         @Override
         public void notifyNetworkResponse(long requestCoordinatorId, long taskId) {
+            mLatencyTracker.onNetworkResponse(taskId);
             mHandler.sendRequestUpdatedMessage(requestCoordinatorId, taskId,
                     UceRequestCoordinator.REQUEST_UPDATE_NETWORK_RESPONSE);
         }
         @Override
         public void notifyTerminated(long requestCoordinatorId, long taskId) {
+            mLatencyTracker.onRequestTerminated(taskId);
             mHandler.sendRequestUpdatedMessage(requestCoordinatorId, taskId,
                     UceRequestCoordinator.REQUEST_UPDATE_TERMINATED);
         }
@@ -413,6 +449,8 @@ public class UceRequestManager {
     private final UceRequestHandler mHandler;
     private final UceRequestRepository mRequestRepository;
     private final ContactThrottlingList mThrottlingList;
+    private final UceRequestCoalescer mRequestCoalescer;
+    private final UceRequestLatencyTracker mLatencyTracker;
     private volatile boolean mIsDestroyed;
 
     private OptionsController mOptionsCtrl;
@@ -425,7 +463,10 @@ public class UceRequestManager {
         mControllerCallback = c;
         mHandler = new UceRequestHandler(this, looper);
         mThrottlingList = new ContactThrottlingList(mSubId);
+        mRequestCoalescer = new UceRequestCoalescer(mSubId);
+        mLatencyTracker = new UceRequestLatencyTracker(mSubId);
         mRequestRepository = new UceRequestRepository(subId, mRequestMgrCallback);
+        updateDispatcherConfig();
         logi("create");
     }
 
@@ -438,6 +479,8 @@ public class UceRequestManager {
         mHandler = new UceRequestHandler(this, looper);
         mRequestRepository = requestRepository;
         mThrottlingList = new ContactThrottlingList(mSubId);
+        mRequestCoalescer = new UceRequestCoalescer(mSubId);
+        mLatencyTracker = new UceRequestLatencyTracker(mSubId);
     }
 
     /**
@@ -462,9 +505,24 @@ public class UceRequestManager {
         mIsDestroyed = true;
         mHandler.onDestroy();
         mThrottlingList.reset();
+        mRequestCoalescer.reset();
+        mLatencyTracker.reset();
         mRequestRepository.onDestroy();
     }
 
+    /**
+     * Notify that the carrier config is changed.
+     */
+    public void onCarrierConfigChanged() {
+        updateDispatcherConfig();
+    }
+
+    private void updateDispatcherConfig() {
+        mRequestRepository.updateDispatcherConfig(
+                UceUtils.getRequestMaxConcurrentNum(mContext, mSubId),
+                UceUtils.getRequestIntervalMillis(mContext, mSubId));
+    }
+
     /**
      * Clear the throttling list.
      */
@@ -477,11 +535,22 @@ public class UceRequestManager {
      */
     public void sendCapabilityRequest(List<Uri> uriList, boolean skipFromCache,
             IRcsUceControllerCallback callback) throws RemoteException {
+        sendCapabilityRequest(uriList, skipFromCache,
+                UceRequestCoordinator.REQUEST_PRIORITY_INTERACTIVE, callback);
+    }
+
+    /**
+     * Send a new capability request with the given priority. It is called by UceController.
+     */
+    public void sendCapabilityRequest(List<Uri> uriList, boolean skipFromCache,
+            @UceRequestPriority int priority, IRcsUceControllerCallback callback)
+            throws RemoteException {
         if (mIsDestroyed) {
             callback.onError(RcsUceAdapter.ERROR_GENERIC_FAILURE, 0L, null);
             return;
         }
-        sendRequestInternal(UceRequest.REQUEST_TYPE_CAPABILITY, uriList, skipFromCache, callback);
+        sendRequestInternal(UceRequest.REQUEST_TYPE_CAPABILITY, uriList, skipFromCache,
+                priority, callback);
     }
 
     /**
@@ -494,11 +563,13 @@ public class UceRequestManager {
             return;
         }
         sendRequestInternal(UceRequest.REQUEST_TYPE_AVAILABILITY,
-                Collections.singletonList(uri), false /* skipFromCache */, callback);
+                Collections.singletonList(uri), false /* skipFromCache */,
+                UceRequestCoordinator.REQUEST_PRIORITY_INTERACTIVE, callback);
     }
 
     private void sendRequestInternal(@UceRequestType int type, List<Uri> uriList,
-            boolean skipFromCache, IRcsUceControllerCallback callback) throws RemoteException {
+            boolean skipFromCache, @UceRequestPriority int priority,
+            IRcsUceControllerCallback callback) throws RemoteException {
         UceRequestCoordinator requestCoordinator = null;
         List<Uri> nonCachedUris = uriList;
         if (FEATURE_SHORTCUT_QUEUE_FOR_CACHED_CAPS && !skipFromCache) {
@@ -515,22 +586,36 @@ public class UceRequestManager {
                 return;
             }
         }
-        if (sUceUtilsProxy.isPresenceCapExchangeEnabled(mContext, mSubId) &&
-                sUceUtilsProxy.isPresenceSupported(mContext, mSubId)) {
-            requestCoordinator = createSubscribeRequestCoordinator(type, nonCachedUris,
-                    skipFromCache, callback);
-        } else if (sUceUtilsProxy.isSipOptionsSupported(mContext, mSubId)) {
-            requestCoordinator = createOptionsRequestCoordinator(type, nonCachedUris, callback);
-        }
-
-        if (requestCoordinator == null) {
+        boolean isPresenceEnabled = sUceUtilsProxy.isPresenceCapExchangeEnabled(mContext, mSubId)
+                && sUceUtilsProxy.isPresenceSupported(mContext, mSubId);
+        if (!isPresenceEnabled && !sUceUtilsProxy.isSipOptionsSupported(mContext, mSubId)) {
             logw("sendRequestInternal: Neither Presence nor OPTIONS are supported");
             callback.onError(RcsUceAdapter.ERROR_NOT_ENABLED, 0L, null);
             return;
         }
 
+        // Attach the contacts which are being requested to the outstanding requests.
+        CoalescedRequest coalescedRequest = mRequestCoalescer.coalesce(nonCachedUris,
+                isPresenceEnabled ? RcsContactUceCapability.CAPABILITY_MECHANISM_PRESENCE
+                        : RcsContactUceCapability.CAPABILITY_MECHANISM_OPTIONS,
+                priority, callback);
+        if (coalescedRequest.getUris().isEmpty()) {
+            logd("sendRequestInternal: all the contacts are attached to the in-flight requests");
+            return;
+        }
+
+        if (isPresenceEnabled) {
+            requestCoordinator = createSubscribeRequestCoordinator(type,
+                    coalescedRequest.getUris(), skipFromCache, priority,
+                    coalescedRequest.getCallback());
+        } else {
+            requestCoordinator = createOptionsRequestCoordinator(type,
+                    coalescedRequest.getUris(), priority, coalescedRequest.getCallback());
+        }
+
         StringBuilder builder = new StringBuilder("sendRequestInternal: ");
         builder.append("requestType=").append(type)
+                .append(", priority=").append(priority)
                 .append(", requestCoordinatorId=").append(requestCoordinator.getCoordinatorId())
                 .append(", taskId={")
                 .append(requestCoordinator.getActivatedRequestTaskIds().stream()
@@ -568,8 +653,11 @@ public class UceRequestManager {
             logw("sendCachedCapInfoToRequester, error sending cap info back to requester: " + e);
         }
         // remove these numbers from the numbers pending a cap query from the network.
-        for (RcsContactUceCapability c : numbersWithCachedCaps) {
-            nonCachedUris.removeIf(uri -> c.getContactUri().equals(uri));
+        if (!numbersWithCachedCaps.isEmpty()) {
+            Set<UceContactKey> cachedContacts = new HashSet<>();
+            numbersWithCachedCaps.forEach(c -> cachedContacts.add(
+                    UceContactKey.of(c.getContactUri())));
+            nonCachedUris.removeIf(uri -> cachedContacts.contains(UceContactKey.of(uri)));
         }
         return nonCachedUris;
     }
@@ -600,7 +688,8 @@ public class UceRequestManager {
     }
 
     private UceRequestCoordinator createSubscribeRequestCoordinator(final @UceRequestType int type,
-            final List<Uri> uriList, boolean skipFromCache, IRcsUceControllerCallback callback) {
+            final List<Uri> uriList, boolean skipFromCache, @UceRequestPriority int priority,
+            IRcsUceControllerCallback callback) {
         SubscribeRequestCoordinator.Builder builder;
 
         if (!sUceUtilsProxy.isPresenceGroupSubscribeEnabled(mContext, mSubId)) {
@@ -658,11 +747,13 @@ public class UceRequestManager {
                     mRequestMgrCallback);
             builder.setCapabilitiesCallback(callback);
         }
+        builder.setPriority(priority);
         return builder.build();
     }
 
     private UceRequestCoordinator createOptionsRequestCoordinator(@UceRequestType int type,
-            List<Uri> uriList, IRcsUceControllerCallback callback) {
+            List<Uri> uriList, @UceRequestPriority int priority,
+            IRcsUceControllerCallback callback) {
         OptionsRequestCoordinator.Builder builder;
         List<UceRequest> requestList = new ArrayList<>();
         uriList.forEach(uri -> {
@@ -672,6 +763,7 @@ public class UceRequestManager {
         });
         builder = new OptionsRequestCoordinator.Builder(mSubId, requestList, mRequestMgrCallback);
         builder.setCapabilitiesCallback(callback);
+        builder.setPriority(priority);
         return builder.build();
     }
 
@@ -699,16 +791,25 @@ public class UceRequestManager {
      */
     public void retrieveCapabilitiesForRemote(Uri contactUri, List<String> remoteCapabilities,
             IOptionsRequestCallback requestCallback) {
-        RemoteOptionsRequest request = new RemoteOptionsRequest(mSubId, mRequestMgrCallback);
-        request.setContactUri(Collections.singletonList(contactUri));
-        request.setRemoteFeatureTags(remoteCapabilities);
-
         // If the remote number is blocked, do not send capabilities back.
+        boolean isNumberBlocked = false;
         String number = getNumberFromUri(contactUri);
         if (!TextUtils.isEmpty(number)) {
-            request.setIsRemoteNumberBlocked(sUceUtilsProxy.isNumberBlocked(mContext, number));
+            isNumberBlocked = sUceUtilsProxy.isNumberBlocked(mContext, number);
         }
 
+        // Respond right away with the device's capabilities when the remote number is not
+        // blocked instead of queuing the request behind the other requests on the handler.
+        if (!isNumberBlocked && respondToRemoteRequestDirectly(contactUri, remoteCapabilities,
+                requestCallback)) {
+            return;
+        }
+
+        RemoteOptionsRequest request = new RemoteOptionsRequest(mSubId, mRequestMgrCallback);
+        request.setContactUri(Collections.singletonList(contactUri));
+        request.setRemoteFeatureTags(remoteCapabilities);
+        request.setIsRemoteNumberBlocked(isNumberBlocked);
+
         // Create the RemoteOptionsCoordinator instance
         RemoteOptionsCoordinator.Builder CoordBuilder = new RemoteOptionsCoordinator.Builder(
                 mSubId, Collections.singletonList(request), mRequestMgrCallback);
@@ -726,6 +827,64 @@ public class UceRequestManager {
         addRequestCoordinator(requestCoordinator);
     }
 
+    /*
+     * Respond to the remote OPTIONS request with the device's capabilities, which are built once
+     * per version of the device capabilities. The remote capabilities are saved afterward on the
+     * handler thread so that the response is not held behind the database write.
+     * @return false if the request should be handled by the RemoteOptionsCoordinator instead.
+     */
+    private boolean respondToRemoteRequestDirectly(Uri contactUri,
+            List<String> remoteCapabilities, IOptionsRequestCallback requestCallback) {
+        if (mIsDestroyed || contactUri == null) {
+            return false;
+        }
+        int sipCode = NetworkSipCode.SIP_CODE_OK;
+        try {
+            RcsContactUceCapability deviceCaps = mRequestMgrCallback.getDeviceCapabilities(
+                    RcsContactUceCapability.CAPABILITY_MECHANISM_OPTIONS);
+            if (deviceCaps == null) {
+                return false;
+            }
+            logd("respondToRemoteRequestDirectly");
+            requestCallback.respondToCapabilityRequest(deviceCaps, false /*isBlocked*/);
+        } catch (RemoteException e) {
+            logw("respondToRemoteRequestDirectly exception: " + e);
+        } catch (Exception e) {
+            logw("respondToRemoteRequestDirectly: exception " + e);
+            sipCode = NetworkSipCode.SIP_CODE_SERVER_INTERNAL_ERROR;
+            try {
+                requestCallback.respondToCapabilityRequestWithError(sipCode,
+                        NetworkSipCode.SIP_INTERNAL_SERVER_ERROR);
+            } catch (RemoteException remoteException) {
+                logw("respondToRemoteRequestDirectly exception: " + remoteException);
+            }
+        }
+
+        UceStatsWriter statsWriter = UceStatsWriter.getInstance();
+        if (statsWriter != null) {
+            statsWriter.setUceEvent(mSubId, UceStatsWriter.INCOMING_OPTION_EVENT, true, 0,
+                    sipCode);
+        }
+
+        // Store the remote capabilities on the handler thread, which also handles the other
+        // updates of the EAB.
+        mHandler.post(() -> saveRemoteCapabilities(contactUri, remoteCapabilities));
+        return true;
+    }
+
+    private void saveRemoteCapabilities(Uri contactUri, List<String> remoteCapabilities) {
+        if (mIsDestroyed) {
+            return;
+        }
+        try {
+            RcsContactUceCapability remoteCaps = FeatureTags.getContactCapability(contactUri,
+                    RcsContactUceCapability.SOURCE_TYPE_NETWORK, remoteCapabilities);
+            mRequestMgrCallback.saveCapabilities(Collections.singletonList(remoteCaps));
+        } catch (Exception e) {
+            logw("saveRemoteCapabilities: exception " + e);
+        }
+    }
+
     private static class UceRequestHandler extends Handler {
         private static final int EVENT_EXECUTE_REQUEST = 1;
         private static final int EVENT_REQUEST_UPDATED = 2;
@@ -868,6 +1027,7 @@ public class UceRequestManager {
                         requestManager.logw("handleMessage: cannot find request, taskId=" + taskId);
                         return;
                     }
+                    requestManager.mLatencyTracker.onRequestExecuted(taskId);
                     request.executeRequest();
                     break;
                 }
@@ -927,6 +1087,8 @@ public class UceRequestManager {
     }
 
     private void addRequestCoordinator(UceRequestCoordinator coordinator) {
+        // Trace the requests before adding them because the dispatcher may send them right away.
+        mLatencyTracker.onRequestsCreated(coordinator.getActivatedRequestTaskIds());
         mRequestRepository.addRequestCoordinator(coordinator);
     }
 
@@ -943,7 +1105,16 @@ public class UceRequestManager {
     }
 
     private void notifyRepositoryRequestFinished(Long taskId) {
+        // Let the dispatcher adapt the pacing to the network response of this request.
+        UceRequest request = getUceRequest(taskId);
+        if (request instanceof CapabilityRequest) {
+            CapabilityRequestResponse response = ((CapabilityRequest) request).getRequestResponse();
+            response.getNetworkRespSipCode().ifPresent(sipCode ->
+                    mRequestRepository.notifyNetworkResponse(sipCode,
+                            response.getRetryAfterMillis()));
+        }
         mRequestRepository.notifyRequestFinished(taskId);
+        mLatencyTracker.onRequestFinished(taskId);
     }
 
     private Uri getSipUriFromUri(Uri uri) {
@@ -973,6 +1144,11 @@ public class UceRequestManager {
         return convertedUri;
     }
 
+    public void dump(IndentingPrintWriter pw) {
+        mRequestRepository.dump(pw);
+        mLatencyTracker.dump(pw);
+    }
+
     @VisibleForTesting
     public UceRequestHandler getUceRequestHandler() {
         return mHandler;
@@ -16,6 +16,8 @@
 
 package com.android.ims.rcs.uce.request;
 
+import android.util.IndentingPrintWriter;
+
 import com.android.ims.rcs.uce.request.UceRequestManager.RequestManagerCallback;
 
 import java.util.HashMap;
@@ -56,7 +58,7 @@ public class UceRequestRepository {
     public synchronized void addRequestCoordinator(UceRequestCoordinator coordinator) {
         if (mDestroyed) return;
         mRequestCoordinators.put(coordinator.getCoordinatorId(), coordinator);
-        mDispatcher.addRequest(coordinator.getCoordinatorId(),
+        mDispatcher.addRequest(coordinator.getCoordinatorId(), coordinator.getPriority(),
                 coordinator.getActivatedRequestTaskIds());
     }
 
@@ -89,4 +91,21 @@ public class UceRequestRepository {
     public synchronized void notifyRequestFinished(Long taskId) {
         mDispatcher.onRequestFinished(taskId);
     }
+
+    // Notify the SIP response of a finished task to adapt the pacing of the requests.
+    public synchronized void notifyNetworkResponse(int sipCode, long retryAfterMillis) {
+        mDispatcher.onNetworkResponse(sipCode, retryAfterMillis);
+    }
+
+    /**
+     * Update the concurrency and the pacing of the RequestDispatcher.
+     */
+    public synchronized void updateDispatcherConfig(int maxConcurrentNum, long intervalTime) {
+        if (mDestroyed) return;
+        mDispatcher.updateConfig(maxConcurrentNum, intervalTime);
+    }
+
+    public void dump(IndentingPrintWriter pw) {
+        mDispatcher.dump(pw);
+    }
 }
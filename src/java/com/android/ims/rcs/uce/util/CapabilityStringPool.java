@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce.util;
+
+import android.annotation.Nullable;
+import android.telephony.ims.RcsContactPresenceTuple;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The pool of the canonical instances of the capability values which are shared by many
+ * contacts, such as the service IDs, the versions and the statuses of the presence tuples and
+ * the OPTIONS feature tags. The parsed and the cached capabilities refer to the pooled instances
+ * instead of keeping a copy of the same value for every contact. The free text values, like the
+ * descriptions of the presence tuples, are not pooled.
+ */
+public final class CapabilityStringPool {
+
+    // The maximum number of the values in the pool besides the well-known values. The least
+    // recently used value is removed when the pool is full.
+    @VisibleForTesting
+    public static final int MAX_POOL_SIZE = 512;
+
+    // The values which are longer than this are not pooled.
+    @VisibleForTesting
+    public static final int MAX_VALUE_LENGTH = 256;
+
+    // The well-known values are always pooled.
+    private static final Map<String, String> sWellKnownValues;
+
+    private static final Object sLock = new Object();
+
+    // The other values which are received from the network.
+    private static final LinkedHashMap<String, String> sPool =
+            new LinkedHashMap<String, String>(16, 0.75f, true /*accessOrder*/) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > MAX_POOL_SIZE;
+                }
+            };
+
+    static {
+        String[] wellKnownValues = new String[] {
+                RcsContactPresenceTuple.TUPLE_BASIC_STATUS_OPEN,
+                RcsContactPresenceTuple.TUPLE_BASIC_STATUS_CLOSED,
+                RcsContactPresenceTuple.SERVICE_ID_PRESENCE,
+                RcsContactPresenceTuple.SERVICE_ID_MMTEL,
+                RcsContactPresenceTuple.SERVICE_ID_CHAT_V1,
+                RcsContactPresenceTuple.SERVICE_ID_CHAT_V2,
+                RcsContactPresenceTuple.SERVICE_ID_FT,
+                RcsContactPresenceTuple.SERVICE_ID_FT_OVER_SMS,
+                RcsContactPresenceTuple.SERVICE_ID_GEO_PUSH,
+                RcsContactPresenceTuple.SERVICE_ID_GEO_PUSH_VIA_SMS,
+                RcsContactPresenceTuple.SERVICE_ID_CALL_COMPOSER,
+                RcsContactPresenceTuple.SERVICE_ID_POST_CALL,
+                RcsContactPresenceTuple.SERVICE_ID_SHARED_MAP,
+                RcsContactPresenceTuple.SERVICE_ID_SHARED_SKETCH,
+                RcsContactPresenceTuple.SERVICE_ID_CHATBOT,
+                RcsContactPresenceTuple.SERVICE_ID_CHATBOT_STANDALONE.trim(),
+                RcsContactPresenceTuple.SERVICE_ID_CHATBOT_ROLE,
+                RcsContactPresenceTuple.SERVICE_ID_SLM,
+                RcsContactPresenceTuple.ServiceCapabilities.DUPLEX_MODE_FULL,
+                RcsContactPresenceTuple.ServiceCapabilities.DUPLEX_MODE_HALF,
+                RcsContactPresenceTuple.ServiceCapabilities.DUPLEX_MODE_RECEIVE_ONLY,
+                RcsContactPresenceTuple.ServiceCapabilities.DUPLEX_MODE_SEND_ONLY,
+                "1.0",
+                "2.0"
+        };
+        Map<String, String> values = new HashMap<>();
+        for (String value : wellKnownValues) {
+            values.put(value, value);
+        }
+        sWellKnownValues = Collections.unmodifiableMap(values);
+    }
+
+    private CapabilityStringPool() {}
+
+    /**
+     * @return The pooled instance which is equal to the given value, or the given value if it
+     * cannot be pooled.
+     */
+    public static @Nullable String intern(@Nullable String value) {
+        if (value == null) {
+            return null;
+        }
+        String pooledValue = sWellKnownValues.get(value);
+        if (pooledValue != null) {
+            return pooledValue;
+        }
+        if (value.length() > MAX_VALUE_LENGTH) {
+            return value;
+        }
+        synchronized (sLock) {
+            pooledValue = sPool.putIfAbsent(value, value);
+        }
+        return (pooledValue != null) ? pooledValue : value;
+    }
+
+    @VisibleForTesting
+    public static int size() {
+        synchronized (sLock) {
+            return sPool.size();
+        }
+    }
+}
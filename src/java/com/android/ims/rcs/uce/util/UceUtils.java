@@ -50,6 +50,40 @@ public class UceUtils {
             TimeUnit.DAYS.toSeconds(30);
     private static final long DEFAULT_REQUEST_RETRY_INTERVAL_MS = TimeUnit.MINUTES.toMillis(20);
     private static final long DEFAULT_MINIMUM_REQUEST_RETRY_AFTER_MS = TimeUnit.SECONDS.toMillis(3);
+    private static final int DEFAULT_REQUEST_MAX_CONCURRENT_NUM = 1;
+    private static final long DEFAULT_REQUEST_INTERVAL_MS = 100L;
+    private static final long DEFAULT_PUBLISH_TRIGGER_COALESCING_MS = 2000L;
+    private static final boolean DEFAULT_PUBLISH_SKIP_UNCHANGED = false;
+
+    /**
+     * The carrier config key of the number of the capabilities requests that the network can
+     * process at the same time. It's provided by the carrier config overlay.
+     */
+    public static final String KEY_RCS_REQUEST_MAX_CONCURRENT_NUM_INT =
+            CarrierConfigManager.Ims.KEY_PREFIX + "rcs_request_max_concurrent_num_int";
+
+    /**
+     * The carrier config key of the minimum interval in milliseconds between two capabilities
+     * requests sent to the network. It's provided by the carrier config overlay.
+     */
+    public static final String KEY_RCS_REQUEST_INTERVAL_MILLIS_LONG =
+            CarrierConfigManager.Ims.KEY_PREFIX + "rcs_request_interval_millis_long";
+
+    /**
+     * The carrier config key of the window in milliseconds within which the changes of the
+     * device capabilities are merged into one publish request. It's provided by the carrier
+     * config overlay.
+     */
+    public static final String KEY_RCS_PUBLISH_TRIGGER_COALESCING_MILLIS_LONG =
+            CarrierConfigManager.Ims.KEY_PREFIX + "rcs_publish_trigger_coalescing_millis_long";
+
+    /**
+     * The carrier config key of whether the PUBLISH triggered by the framework is skipped when
+     * the PIDF is the same as the last successful PUBLISH. It's provided by the carrier config
+     * overlay.
+     */
+    public static final String KEY_RCS_PUBLISH_SKIP_UNCHANGED_BOOL =
+            CarrierConfigManager.Ims.KEY_PREFIX + "rcs_publish_skip_unchanged_bool";
 
     // The default of the capabilities request timeout.
     private static final long DEFAULT_CAP_REQUEST_TIMEOUT_AFTER_MS = TimeUnit.MINUTES.toMillis(3);
@@ -306,6 +340,74 @@ public class UceUtils {
                 CarrierConfigManager.Ims.KEY_RCS_REQUEST_RETRY_INTERVAL_MILLIS_LONG);
     }
 
+    /**
+     * Get the number of the capabilities requests that the network can process at the same time.
+     */
+    public static int getRequestMaxConcurrentNum(Context context, int subId) {
+        CarrierConfigManager configManager = context.getSystemService(CarrierConfigManager.class);
+        if (configManager == null) {
+            return DEFAULT_REQUEST_MAX_CONCURRENT_NUM;
+        }
+        PersistableBundle config = configManager.getConfigForSubId(subId);
+        if (config == null) {
+            return DEFAULT_REQUEST_MAX_CONCURRENT_NUM;
+        }
+        int value = config.getInt(KEY_RCS_REQUEST_MAX_CONCURRENT_NUM_INT,
+                DEFAULT_REQUEST_MAX_CONCURRENT_NUM);
+        return (value > 0) ? value : DEFAULT_REQUEST_MAX_CONCURRENT_NUM;
+    }
+
+    /**
+     * Get the minimum interval in milliseconds between two capabilities requests.
+     */
+    public static long getRequestIntervalMillis(Context context, int subId) {
+        CarrierConfigManager configManager = context.getSystemService(CarrierConfigManager.class);
+        if (configManager == null) {
+            return DEFAULT_REQUEST_INTERVAL_MS;
+        }
+        PersistableBundle config = configManager.getConfigForSubId(subId);
+        if (config == null) {
+            return DEFAULT_REQUEST_INTERVAL_MS;
+        }
+        long value = config.getLong(KEY_RCS_REQUEST_INTERVAL_MILLIS_LONG,
+                DEFAULT_REQUEST_INTERVAL_MS);
+        return (value >= 0L) ? value : DEFAULT_REQUEST_INTERVAL_MS;
+    }
+
+    /**
+     * Get the window in milliseconds within which the publish triggers are merged.
+     */
+    public static long getPublishTriggerCoalescingMillis(Context context, int subId) {
+        CarrierConfigManager configManager = context.getSystemService(CarrierConfigManager.class);
+        if (configManager == null) {
+            return DEFAULT_PUBLISH_TRIGGER_COALESCING_MS;
+        }
+        PersistableBundle config = configManager.getConfigForSubId(subId);
+        if (config == null) {
+            return DEFAULT_PUBLISH_TRIGGER_COALESCING_MS;
+        }
+        long value = config.getLong(KEY_RCS_PUBLISH_TRIGGER_COALESCING_MILLIS_LONG,
+                DEFAULT_PUBLISH_TRIGGER_COALESCING_MS);
+        return (value >= 0L) ? value : DEFAULT_PUBLISH_TRIGGER_COALESCING_MS;
+    }
+
+    /**
+     * Get whether the PUBLISH triggered by the framework is skipped when the PIDF has not
+     * changed since the last successful PUBLISH.
+     */
+    public static boolean isPublishSkipUnchangedEnabled(Context context, int subId) {
+        CarrierConfigManager configManager = context.getSystemService(CarrierConfigManager.class);
+        if (configManager == null) {
+            return DEFAULT_PUBLISH_SKIP_UNCHANGED;
+        }
+        PersistableBundle config = configManager.getConfigForSubId(subId);
+        if (config == null) {
+            return DEFAULT_PUBLISH_SKIP_UNCHANGED;
+        }
+        return config.getBoolean(KEY_RCS_PUBLISH_SKIP_UNCHANGED_BOOL,
+                DEFAULT_PUBLISH_SKIP_UNCHANGED);
+    }
+
     public static boolean saveDeviceStateToPreference(Context context, int subId,
             DeviceStateResult deviceState) {
         SharedPreferences sharedPreferences =
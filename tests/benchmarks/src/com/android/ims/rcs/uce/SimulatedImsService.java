@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+import android.net.Uri;
+import android.os.RemoteException;
+import android.telephony.ims.RcsContactPresenceTuple;
+import android.telephony.ims.RcsContactUceCapability;
+import android.telephony.ims.SipDetails;
+import android.telephony.ims.aidl.IOptionsResponseCallback;
+import android.telephony.ims.aidl.IPublishResponseCallback;
+import android.telephony.ims.aidl.ISubscribeResponseCallback;
+import android.telephony.ims.stub.ImsRegistrationImplBase;
+import android.util.Log;
+
+import com.android.ims.RcsFeatureManager;
+import com.android.ims.rcs.uce.presence.pidfparser.PidfParser;
+import com.android.ims.rcs.uce.util.NetworkSipCode;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A local stand-in for the RCS ImsService. It answers the SUBSCRIBE, OPTIONS and PUBLISH requests
+ * of the {@link RcsFeatureManager} which is returned by {@link #getRcsFeatureManager()} with the
+ * configured latency, SIP codes and NOTIFY payloads, so that the UCE stack can be driven without
+ * a network or an IMS core.
+ * <p>
+ * The responses are sent from a single thread, which simulates the binder thread of the
+ * ImsService.
+ */
+public class SimulatedImsService {
+    private static final String TAG = "SimulatedImsService";
+
+    /**
+     * Generate the PIDF of the given contact which is sent in the NOTIFY.
+     */
+    public static final Function<Uri, String> DEFAULT_PIDF_GENERATOR = contact -> {
+        RcsContactPresenceTuple.ServiceCapabilities servCaps =
+                new RcsContactPresenceTuple.ServiceCapabilities.Builder(true, true)
+                        .addSupportedDuplexMode(
+                                RcsContactPresenceTuple.ServiceCapabilities.DUPLEX_MODE_FULL)
+                        .build();
+        RcsContactPresenceTuple tuple = new RcsContactPresenceTuple.Builder(
+                RcsContactPresenceTuple.TUPLE_BASIC_STATUS_OPEN,
+                RcsContactPresenceTuple.SERVICE_ID_MMTEL, "1.0")
+                .setContactUri(contact)
+                .setServiceCapabilities(servCaps)
+                .setTime(Instant.now())
+                .build();
+        return PidfParser.convertToPidf(new RcsContactUceCapability.PresenceBuilder(contact,
+                RcsContactUceCapability.SOURCE_TYPE_NETWORK,
+                RcsContactUceCapability.REQUEST_RESULT_FOUND)
+                .addCapabilityTuple(tuple)
+                .build());
+    };
+
+    private final ScheduledExecutorService mExecutor =
+            Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, TAG));
+    private final RcsFeatureManager mRcsFeatureManager;
+
+    // The configuration of the responses.
+    private volatile long mLatencyMillis = 0L;
+    private volatile int mSubscribeSipCode = NetworkSipCode.SIP_CODE_OK;
+    private volatile String mSubscribeReason = NetworkSipCode.SIP_OK;
+    private volatile String mTerminatedReason = "";
+    private volatile long mRetryAfterMillis = 0L;
+    private volatile int mNotifyBatchSize = Integer.MAX_VALUE;
+    private volatile Function<Uri, String> mPidfGenerator = DEFAULT_PIDF_GENERATOR;
+    private volatile int mOptionsSipCode = NetworkSipCode.SIP_CODE_OK;
+    private volatile String mOptionsReason = NetworkSipCode.SIP_OK;
+    private volatile List<String> mOptionsFeatureTags = Collections.emptyList();
+    private volatile int mPublishSipCode = NetworkSipCode.SIP_CODE_OK;
+    private volatile String mPublishReason = NetworkSipCode.SIP_OK;
+
+    // The statistics of the received requests.
+    private final AtomicInteger mSubscribeCount = new AtomicInteger();
+    private final AtomicInteger mSubscribedContactCount = new AtomicInteger();
+    private final AtomicInteger mOptionsCount = new AtomicInteger();
+    private final AtomicInteger mPublishCount = new AtomicInteger();
+    private final AtomicInteger mPendingResponseCount = new AtomicInteger();
+
+    public SimulatedImsService() {
+        // The invocations are not recorded so that they are not counted as the allocations of
+        // the UCE stack.
+        mRcsFeatureManager = mock(RcsFeatureManager.class, withSettings().stubOnly());
+        try {
+            doAnswer(invocation -> {
+                requestCapabilities(invocation.getArgument(0), invocation.getArgument(1));
+                return null;
+            }).when(mRcsFeatureManager).requestCapabilities(any(), any());
+            doAnswer(invocation -> {
+                sendOptionsCapabilityRequest(invocation.getArgument(0),
+                        invocation.getArgument(1), invocation.getArgument(2));
+                return null;
+            }).when(mRcsFeatureManager).sendOptionsCapabilityRequest(any(), any(), any());
+            doAnswer(invocation -> {
+                requestPublication(invocation.getArgument(0), invocation.getArgument(1));
+                return null;
+            }).when(mRcsFeatureManager).requestPublication(any(), any());
+        } catch (RemoteException e) {
+            // It's not thrown when stubbing the mock.
+        }
+        doAnswer(invocation -> {
+            Consumer<Integer> callback = invocation.getArgument(0);
+            callback.accept(ImsRegistrationImplBase.REGISTRATION_TECH_LTE);
+            return null;
+        }).when(mRcsFeatureManager).getImsRegistrationTech(any());
+    }
+
+    /**
+     * @return The RcsFeatureManager which is backed by this simulated ImsService.
+     */
+    public RcsFeatureManager getRcsFeatureManager() {
+        return mRcsFeatureManager;
+    }
+
+    /**
+     * Set the time between receiving a request and sending its response.
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        mLatencyMillis = latencyMillis;
+    }
+
+    /**
+     * Set the SIP response of the SUBSCRIBE requests. The NOTIFY is only sent when the SIP code
+     * is 2xx.
+     */
+    public void setSubscribeResponse(int sipCode, String reason) {
+        mSubscribeSipCode = sipCode;
+        mSubscribeReason = reason;
+    }
+
+    /**
+     * Set the reason and the Retry-After of the terminated subscriptions.
+     */
+    public void setSubscriptionTerminated(String reason, long retryAfterMillis) {
+        mTerminatedReason = reason;
+        mRetryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * Set the maximum number of the PIDF documents which are sent in one NOTIFY.
+     */
+    public void setNotifyBatchSize(int batchSize) {
+        mNotifyBatchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Set the generator of the PIDF documents of the NOTIFY. The contact is not included in the
+     * NOTIFY if the generator returns null.
+     */
+    public void setPidfGenerator(Function<Uri, String> pidfGenerator) {
+        mPidfGenerator = pidfGenerator;
+    }
+
+    /**
+     * Set the SIP response and the feature tags of the remote contacts of the OPTIONS requests.
+     */
+    public void setOptionsResponse(int sipCode, String reason, List<String> featureTags) {
+        mOptionsSipCode = sipCode;
+        mOptionsReason = reason;
+        mOptionsFeatureTags = featureTags;
+    }
+
+    /**
+     * Set the SIP response of the PUBLISH requests.
+     */
+    public void setPublishResponse(int sipCode, String reason) {
+        mPublishSipCode = sipCode;
+        mPublishReason = reason;
+    }
+
+    public int getSubscribeCount() {
+        return mSubscribeCount.get();
+    }
+
+    public int getSubscribedContactCount() {
+        return mSubscribedContactCount.get();
+    }
+
+    public int getOptionsCount() {
+        return mOptionsCount.get();
+    }
+
+    public int getPublishCount() {
+        return mPublishCount.get();
+    }
+
+    /**
+     * @return The number of the requests whose responses have not been sent yet.
+     */
+    public int getPendingResponseCount() {
+        return mPendingResponseCount.get();
+    }
+
+    /**
+     * Stop sending the responses. The pending responses are dropped.
+     */
+    public void shutdown() {
+        Log.i(TAG, "shutdown: subscribe=" + mSubscribeCount + ", contacts="
+                + mSubscribedContactCount + ", options=" + mOptionsCount + ", publish="
+                + mPublishCount);
+        mExecutor.shutdownNow();
+    }
+
+    private void requestCapabilities(List<Uri> uris, ISubscribeResponseCallback c) {
+        mSubscribeCount.incrementAndGet();
+        mSubscribedContactCount.addAndGet(uris.size());
+        final List<Uri> contacts = new ArrayList<>(uris);
+        final int sipCode = mSubscribeSipCode;
+        final String reason = mSubscribeReason;
+        final String terminatedReason = mTerminatedReason;
+        final long retryAfterMillis = mRetryAfterMillis;
+        final int batchSize = mNotifyBatchSize;
+        final Function<Uri, String> pidfGenerator = mPidfGenerator;
+        respond(() -> {
+            c.onNetworkResponse(new SipDetails.Builder(SipDetails.METHOD_SUBSCRIBE)
+                    .setSipResponseCode(sipCode, reason).build());
+            if (sipCode < NetworkSipCode.SIP_CODE_OK || sipCode >= 300) {
+                return;
+            }
+            List<String> pidfs = new ArrayList<>(Math.min(batchSize, contacts.size()));
+            for (Uri contact : contacts) {
+                String pidf = pidfGenerator.apply(contact);
+                if (pidf != null) {
+                    pidfs.add(pidf);
+                }
+                if (pidfs.size() >= batchSize) {
+                    c.onNotifyCapabilitiesUpdate(pidfs);
+                    pidfs = new ArrayList<>(batchSize);
+                }
+            }
+            if (!pidfs.isEmpty()) {
+                c.onNotifyCapabilitiesUpdate(pidfs);
+            }
+            c.onTerminated(terminatedReason, retryAfterMillis);
+        });
+    }
+
+    private void sendOptionsCapabilityRequest(Uri contactUri, List<String> myCapabilities,
+            IOptionsResponseCallback c) {
+        mOptionsCount.incrementAndGet();
+        final int sipCode = mOptionsSipCode;
+        final String reason = mOptionsReason;
+        final List<String> featureTags = mOptionsFeatureTags;
+        respond(() -> c.onNetworkResponse(sipCode, reason, featureTags));
+    }
+
+    private void requestPublication(String pidfXml, IPublishResponseCallback c) {
+        mPublishCount.incrementAndGet();
+        final int sipCode = mPublishSipCode;
+        final String reason = mPublishReason;
+        respond(() -> c.onNetworkResponse(new SipDetails.Builder(SipDetails.METHOD_PUBLISH)
+                .setSipResponseCode(sipCode, reason).build()));
+    }
+
+    private interface Response {
+        void send() throws RemoteException;
+    }
+
+    private void respond(Response response) {
+        mPendingResponseCount.incrementAndGet();
+        mExecutor.schedule(() -> {
+            try {
+                response.send();
+            } catch (RemoteException e) {
+                Log.w(TAG, "respond: exception=" + e);
+            } finally {
+                mPendingResponseCount.decrementAndGet();
+            }
+        }, mLatencyMillis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Looper;
+import android.os.PersistableBundle;
+import android.telephony.AccessNetworkConstants;
+import android.telephony.CarrierConfigManager;
+import android.telephony.ims.RcsContactUceCapability;
+import android.telephony.ims.RcsUceAdapter;
+import android.telephony.ims.SipDetails;
+import android.telephony.ims.aidl.IRcsUceControllerCallback;
+import android.telephony.ims.feature.MmTelFeature.MmTelCapabilities;
+import android.test.mock.MockContentResolver;
+import android.util.Log;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import com.android.ims.ImsTestBase;
+import com.android.ims.rcs.uce.UceController.ControllerFactory;
+import com.android.ims.rcs.uce.UceDeviceState.DeviceStateResult;
+import com.android.ims.rcs.uce.eab.EabController;
+import com.android.ims.rcs.uce.eab.EabControllerImpl;
+import com.android.ims.rcs.uce.eab.EabProvider;
+import com.android.ims.rcs.uce.eab.InMemoryEabProvider;
+import com.android.ims.rcs.uce.options.OptionsController;
+import com.android.ims.rcs.uce.options.OptionsControllerImpl;
+import com.android.ims.rcs.uce.presence.publish.DeviceCapabilityInfo;
+import com.android.ims.rcs.uce.presence.publish.DeviceCapabilityListener;
+import com.android.ims.rcs.uce.presence.publish.PublishController;
+import com.android.ims.rcs.uce.presence.publish.PublishControllerImpl;
+import com.android.ims.rcs.uce.presence.publish.PublishProcessor;
+import com.android.ims.rcs.uce.presence.subscribe.SubscribeController;
+import com.android.ims.rcs.uce.presence.subscribe.SubscribeControllerImpl;
+import com.android.ims.rcs.uce.request.UceRequestManager;
+import com.android.ims.rcs.uce.util.FeatureTags;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end benchmarks of the UCE stack. The real controllers and request manager are driven
+ * through {@link UceController} and the requests are answered by {@link SimulatedImsService}, so
+ * the time per operation is the latency of the whole stack excluding the network.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class UceLoadBenchmark extends ImsTestBase {
+    private static final String TAG = "UceLoadBenchmark";
+
+    private static final int TEST_SUB_ID = 1;
+    private static final String DEVICE_NUMBER = "+16505550000";
+    private static final int BULK_CONTACT_COUNT = 100;
+    private static final int RCL_MAX_NUMBER_ENTRIES = 100;
+    private static final int OPTIONS_CONTACT_COUNT = 10;
+    private static final int PUBLISH_STORM_SIZE = 10;
+    private static final long NETWORK_LATENCY_MS = 20L;
+    private static final long TIMEOUT_MS = 10000L;
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private final InMemoryEabProvider mEabProvider = new InMemoryEabProvider();
+    private SimulatedImsService mImsService;
+    private UceController mUceController;
+    private PublishControllerImpl mPublishController;
+    private PublishProcessor mPublishProcessor;
+    private int mContactIndex;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        UceStatsWriter.init(mock(UceStatsWriter.UceStatsCallback.class,
+                withSettings().stubOnly()));
+        MockContentResolver resolver = (MockContentResolver) mContext.getContentResolver();
+        mEabProvider.initialize(mContext);
+        resolver.addProvider(EabProvider.AUTHORITY, mEabProvider);
+
+        mImsService = new SimulatedImsService();
+        mImsService.setLatencyMillis(NETWORK_LATENCY_MS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (mUceController != null) {
+            mUceController.onDestroy();
+        }
+        mImsService.shutdown();
+        mEabProvider.closeDatabase();
+        super.tearDown();
+    }
+
+    @Test
+    public void requestCapabilities_bulkRefresh100Contacts() throws Exception {
+        connect(true /*isPresence*/);
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            // The new contacts are requested every time so that they are sent to the network.
+            List<Uri> contacts = createContacts(BULK_CONTACT_COUNT);
+            ResultCallback callback = new ResultCallback();
+            state.resumeTiming();
+
+            mUceController.requestCapabilities(contacts, callback);
+            callback.await();
+        }
+    }
+
+    @Test
+    public void requestCapabilities_bulkRefresh100Contacts_rejected() throws Exception {
+        connect(true /*isPresence*/);
+        mImsService.setSubscribeResponse(503, "Service Unavailable");
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            List<Uri> contacts = createContacts(BULK_CONTACT_COUNT);
+            ResultCallback callback = new ResultCallback();
+            state.resumeTiming();
+
+            mUceController.requestCapabilities(contacts, callback);
+            callback.await();
+        }
+    }
+
+    @Test
+    public void requestAvailability_network() throws Exception {
+        connect(true /*isPresence*/);
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            Uri contact = createContacts(1).get(0);
+            ResultCallback callback = new ResultCallback();
+            state.resumeTiming();
+
+            mUceController.requestAvailability(contact, callback);
+            callback.await();
+        }
+    }
+
+    @Test
+    public void requestAvailability_cached() throws Exception {
+        connect(true /*isPresence*/);
+        Uri contact = createContacts(1).get(0);
+        ResultCallback firstCallback = new ResultCallback();
+        mUceController.requestAvailability(contact, firstCallback);
+        firstCallback.await();
+
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            ResultCallback callback = new ResultCallback();
+            state.resumeTiming();
+
+            mUceController.requestAvailability(contact, callback);
+            callback.await();
+        }
+    }
+
+    @Test
+    public void requestCapabilities_options10Contacts() throws Exception {
+        connect(false /*isPresence*/);
+        mImsService.setOptionsResponse(200, "OK", Collections.singletonList(
+                FeatureTags.FEATURE_TAG_CHAT_SESSION));
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            List<Uri> contacts = createContacts(OPTIONS_CONTACT_COUNT);
+            ResultCallback callback = new ResultCallback();
+            state.resumeTiming();
+
+            mUceController.requestCapabilities(contacts, callback);
+            callback.await();
+        }
+    }
+
+    @Test
+    public void publishStorm() throws Exception {
+        connect(true /*isPresence*/);
+        mPublishProcessor.updatePublishThrottle(0);
+        int storms = 0;
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            for (int i = 0; i < PUBLISH_STORM_SIZE; i++) {
+                mUceController.onRequestPublishCapabilitiesFromService(
+                        RcsUceAdapter.CAPABILITY_UPDATE_TRIGGER_MOVE_TO_LTE);
+            }
+            waitForPublishIdle();
+            storms++;
+        }
+        Log.i(TAG, "publishStorm: triggers=" + storms * PUBLISH_STORM_SIZE
+                + ", publish=" + mImsService.getPublishCount());
+    }
+
+    /**
+     * Create the UceController with the real controllers and connect it to the simulated
+     * ImsService.
+     */
+    private void connect(boolean isPresence) {
+        PersistableBundle bundle = mContextFixture.getTestCarrierConfigBundle();
+        bundle.putBoolean(CarrierConfigManager.Ims.KEY_ENABLE_PRESENCE_PUBLISH_BOOL, isPresence);
+        bundle.putBoolean(CarrierConfigManager.Ims.KEY_ENABLE_PRESENCE_CAPABILITY_EXCHANGE_BOOL,
+                isPresence);
+        bundle.putBoolean(CarrierConfigManager.Ims.KEY_ENABLE_PRESENCE_GROUP_SUBSCRIBE_BOOL,
+                isPresence);
+        bundle.putBoolean(CarrierConfigManager.KEY_USE_RCS_SIP_OPTIONS_BOOL, !isPresence);
+
+        // The device state is not simulated, the requests are always allowed.
+        UceDeviceState deviceState = mock(UceDeviceState.class, withSettings().stubOnly());
+        DeviceStateResult deviceStateResult = mock(DeviceStateResult.class,
+                withSettings().stubOnly());
+        doReturn(deviceStateResult).when(deviceState).getCurrentState();
+        doReturn(false).when(deviceStateResult).isRequestForbidden();
+
+        mUceController = new UceController(mContext, TEST_SUB_ID, deviceState,
+                new SimulatedControllerFactory(),
+                (context, subId, looper, callback) -> {
+                    UceRequestManager requestManager =
+                            new UceRequestManager(context, subId, looper, callback);
+                    requestManager.setsUceUtilsProxy(new SimulatedUceUtilsProxy(isPresence));
+                    return requestManager;
+                });
+        mUceController.onRcsConnected(mImsService.getRcsFeatureManager());
+        waitForHandlerAction(mPublishController.getPublishHandler(), TIMEOUT_MS);
+    }
+
+    private List<Uri> createContacts(int count) {
+        List<Uri> contacts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            contacts.add(Uri.fromParts("tel", "+1408" + String.format("%07d", mContactIndex++),
+                    null));
+        }
+        return contacts;
+    }
+
+    private void waitForPublishIdle() {
+        do {
+            waitForHandlerAction(mPublishController.getPublishHandler(), TIMEOUT_MS);
+        } while (mImsService.getPendingResponseCount() > 0 || mPublishProcessor.isPublishingNow());
+    }
+
+    /**
+     * Create the real controllers. The device capability listener is not created, the IMS
+     * registration is simulated by updating the device capabilities directly.
+     */
+    private class SimulatedControllerFactory implements ControllerFactory {
+        @Override
+        public EabController createEabController(Context context, int subId,
+                UceController.UceControllerCallback c, Looper looper) {
+            return new EabControllerImpl(context, subId, c, looper);
+        }
+
+        @Override
+        public PublishController createPublishController(Context context, int subId,
+                UceController.UceControllerCallback c, Looper looper) {
+            mPublishController = new PublishControllerImpl(context, subId, c, looper,
+                    (ctx, sub, capInfo, callback, statsWriter) -> {
+                        registerIms(capInfo);
+                        return mock(DeviceCapabilityListener.class, withSettings().stubOnly());
+                    },
+                    (ctx, sub, capInfo, callback) -> {
+                        mPublishProcessor = new PublishProcessor(ctx, sub, capInfo, callback,
+                                UceStatsWriter.getInstance()) {
+                            @Override
+                            protected boolean isEabProvisioned() {
+                                return true;
+                            }
+                        };
+                        return mPublishProcessor;
+                    },
+                    UceStatsWriter.getInstance());
+            return mPublishController;
+        }
+
+        @Override
+        public SubscribeController createSubscribeController(Context context, int subId) {
+            return new SubscribeControllerImpl(context, subId);
+        }
+
+        @Override
+        public OptionsController createOptionsController(Context context, int subId) {
+            return new OptionsControllerImpl(context, subId);
+        }
+
+        private void registerIms(DeviceCapabilityInfo capInfo) {
+            capInfo.updateImsMmtelRegistered(AccessNetworkConstants.TRANSPORT_TYPE_WWAN);
+            capInfo.updateMmTelAssociatedUri(
+                    new Uri[] {Uri.fromParts("tel", DEVICE_NUMBER, null)});
+            capInfo.updateMmtelCapabilitiesChanged(new MmTelCapabilities(
+                    MmTelCapabilities.CAPABILITY_TYPE_VOICE
+                            | MmTelCapabilities.CAPABILITY_TYPE_VIDEO));
+        }
+    }
+
+    /**
+     * Answer the provisioning queries of the request manager without the ImsService.
+     */
+    private static class SimulatedUceUtilsProxy implements UceRequestManager.UceUtilsProxy {
+        private final boolean mIsPresence;
+
+        SimulatedUceUtilsProxy(boolean isPresence) {
+            mIsPresence = isPresence;
+        }
+
+        @Override
+        public boolean isPresenceCapExchangeEnabled(Context context, int subId) {
+            return mIsPresence;
+        }
+
+        @Override
+        public boolean isPresenceSupported(Context context, int subId) {
+            return mIsPresence;
+        }
+
+        @Override
+        public boolean isSipOptionsSupported(Context context, int subId) {
+            return !mIsPresence;
+        }
+
+        @Override
+        public boolean isPresenceGroupSubscribeEnabled(Context context, int subId) {
+            return mIsPresence;
+        }
+
+        @Override
+        public int getRclMaxNumberEntries(int subId) {
+            return RCL_MAX_NUMBER_ENTRIES;
+        }
+
+        @Override
+        public boolean isNumberBlocked(Context context, String phoneNumber) {
+            return false;
+        }
+    }
+
+    /**
+     * Wait for the result of a capability request.
+     */
+    private static class ResultCallback extends IRcsUceControllerCallback.Stub {
+        private final CountDownLatch mLatch = new CountDownLatch(1);
+
+        @Override
+        public void onCapabilitiesReceived(List<RcsContactUceCapability> contactCapabilities) {
+        }
+
+        @Override
+        public void onComplete(SipDetails details) {
+            mLatch.countDown();
+        }
+
+        @Override
+        public void onError(int errorCode, long retryAfterMilliseconds, SipDetails details) {
+            mLatch.countDown();
+        }
+
+        void await() throws InterruptedException {
+            if (!mLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("The capability request timed out");
+            }
+        }
+    }
+}
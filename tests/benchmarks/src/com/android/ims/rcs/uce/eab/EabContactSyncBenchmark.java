@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce.eab;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.SharedPreferences;
+import android.content.pm.ProviderInfo;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.ContactsContract;
+import android.test.mock.MockContentResolver;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import com.android.ims.ImsTestBase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks of syncing the phone numbers of the contact provider to the EAB provider.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class EabContactSyncBenchmark extends ImsTestBase {
+
+    private static final int CONTACT_COUNT = EabContactSyncController.MAX_SYNC_CONTACTS_PER_PASS;
+    private static final int CHANGED_CONTACT_COUNT = 10;
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private final InMemoryEabProvider mEabProvider = new InMemoryEabProvider();
+    private final FakeContactsProvider mContactsProvider = new FakeContactsProvider();
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        MockContentResolver resolver = (MockContentResolver) mContext.getContentResolver();
+        mEabProvider.initialize(mContext);
+        resolver.addProvider(EabProvider.AUTHORITY, mEabProvider);
+        ProviderInfo providerInfo = new ProviderInfo();
+        providerInfo.authority = ContactsContract.AUTHORITY;
+        mContactsProvider.attachInfo(mContext, providerInfo);
+        resolver.addProvider(ContactsContract.AUTHORITY, mContactsProvider);
+
+        // The invocations are not recorded so that they are not counted as the allocations of
+        // the sync.
+        SharedPreferences sharedPreferences = mock(SharedPreferences.class,
+                withSettings().stubOnly());
+        SharedPreferences.Editor editor = mock(SharedPreferences.Editor.class,
+                withSettings().stubOnly());
+        doReturn("com.android.ims.benchmarks").when(mContext).getPackageName();
+        doReturn(sharedPreferences).when(mContext).getSharedPreferences(anyString(), anyInt());
+        doReturn(0L).when(sharedPreferences).getLong(anyString(), anyLong());
+        doReturn(editor).when(sharedPreferences).edit();
+        doReturn(editor).when(editor).putLong(anyString(), anyLong());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mEabProvider.closeDatabase();
+        super.tearDown();
+    }
+
+    @Test
+    public void initialSync_2000Contacts() {
+        mContactsProvider.setContactData(createContactData(0, CONTACT_COUNT, "+1650"));
+        EabContactSyncController syncController = new EabContactSyncController();
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            mContext.getContentResolver().delete(EabProvider.CONTACT_URI, null, null);
+            state.resumeTiming();
+            syncController.syncContactToEabProvider(mContext);
+        }
+    }
+
+    @Test
+    public void incrementalSync_10Of2000ContactsChanged() {
+        mContactsProvider.setContactData(createContactData(0, CONTACT_COUNT, "+1650"));
+        EabContactSyncController syncController = new EabContactSyncController();
+        syncController.syncContactToEabProvider(mContext);
+
+        // Only the changed phone numbers are returned by the contact provider after the initial
+        // sync. The numbers alternate so that every pass updates the EAB provider.
+        List<ContentValues> changedData = createContactData(0, CHANGED_CONTACT_COUNT, "+1408");
+        List<ContentValues> originalData = createContactData(0, CHANGED_CONTACT_COUNT, "+1650");
+        boolean changed = false;
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            changed = !changed;
+            mContactsProvider.setContactData(changed ? changedData : originalData);
+            state.resumeTiming();
+            syncController.syncContactToEabProvider(mContext);
+        }
+    }
+
+    private List<ContentValues> createContactData(int start, int count, String prefix) {
+        List<ContentValues> contactData = new ArrayList<>(count);
+        for (int i = start; i < start + count; i++) {
+            ContentValues values = new ContentValues();
+            values.put(ContactsContract.Data._ID, i);
+            values.put(ContactsContract.Data.CONTACT_ID, i);
+            values.put(ContactsContract.CommonDataKinds.Phone.RAW_CONTACT_ID, i);
+            values.put(ContactsContract.CommonDataKinds.Phone.NUMBER,
+                    prefix + String.format("%07d", i));
+            values.put(ContactsContract.Data.CONTACT_LAST_UPDATED_TIMESTAMP, i + 1);
+            contactData.add(values);
+        }
+        return contactData;
+    }
+
+    /**
+     * The contact provider which returns the given phone numbers regardless of the selection.
+     */
+    public static class FakeContactsProvider extends ContentProvider {
+        private static final String[] DATA_COLUMNS = new String[] {
+                ContactsContract.Data._ID,
+                ContactsContract.Data.CONTACT_ID,
+                ContactsContract.CommonDataKinds.Phone.RAW_CONTACT_ID,
+                ContactsContract.CommonDataKinds.Phone.NUMBER,
+                ContactsContract.Data.CONTACT_LAST_UPDATED_TIMESTAMP
+        };
+
+        private List<ContentValues> mContactData = new ArrayList<>();
+
+        public void setContactData(List<ContentValues> contactData) {
+            mContactData = contactData;
+        }
+
+        @Override
+        public boolean onCreate() {
+            return true;
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                String sortOrder) {
+            if (!ContactsContract.Data.CONTENT_URI.equals(uri)) {
+                // No contact is deleted.
+                return new MatrixCursor(
+                        new String[] {ContactsContract.DeletedContacts.CONTACT_ID}, 0);
+            }
+            MatrixCursor cursor = new MatrixCursor(DATA_COLUMNS, mContactData.size());
+            for (ContentValues values : mContactData) {
+                MatrixCursor.RowBuilder builder = cursor.newRow();
+                for (String column : DATA_COLUMNS) {
+                    builder.add(column, values.get(column));
+                }
+            }
+            return cursor;
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return null;
+        }
+
+        @Override
+        public Uri insert(Uri uri, ContentValues values) {
+            return null;
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            return 0;
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection,
+                String[] selectionArgs) {
+            return 0;
+        }
+    }
+}
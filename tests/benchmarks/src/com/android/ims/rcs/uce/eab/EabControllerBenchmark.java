@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce.eab;
+
+import static android.telephony.ims.RcsContactUceCapability.REQUEST_RESULT_FOUND;
+import static android.telephony.ims.RcsContactUceCapability.SOURCE_TYPE_NETWORK;
+
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.Looper;
+import android.telephony.ims.RcsContactPresenceTuple;
+import android.telephony.ims.RcsContactUceCapability;
+import android.test.mock.MockContentResolver;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import com.android.ims.ImsTestBase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Benchmarks of saving and retrieving the capabilities of the EAB database which contains
+ * {@link #CONTACT_COUNT} contacts with the capabilities.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class EabControllerBenchmark extends ImsTestBase {
+
+    private static final int TEST_SUB_ID = 1;
+    private static final int CONTACT_COUNT = 10000;
+    private static final int REQUEST_CONTACT_COUNT = 100;
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private final InMemoryEabProvider mEabProvider = new InMemoryEabProvider();
+    private EabControllerImpl mEabController;
+    private List<Uri> mContactUris;
+    private List<Uri> mRequestUris;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        MockContentResolver resolver = (MockContentResolver) mContext.getContentResolver();
+        mEabProvider.initialize(mContext);
+        resolver.addProvider(EabProvider.AUTHORITY, mEabProvider);
+
+        mContactUris = new ArrayList<>(CONTACT_COUNT);
+        ContentValues[] contacts = new ContentValues[CONTACT_COUNT];
+        for (int i = 0; i < CONTACT_COUNT; i++) {
+            String number = "+1650" + String.format("%07d", i);
+            mContactUris.add(Uri.fromParts("tel", number, null));
+            ContentValues values = new ContentValues();
+            values.put(EabProvider.ContactColumns.PHONE_NUMBER, number);
+            values.put(EabProvider.ContactColumns.RAW_CONTACT_ID, i);
+            values.put(EabProvider.ContactColumns.DATA_ID, i);
+            contacts[i] = values;
+        }
+        resolver.bulkInsert(EabProvider.CONTACT_URI, contacts);
+
+        mEabController = new EabControllerImpl(mContext, TEST_SUB_ID, null,
+                Looper.getMainLooper());
+        List<RcsContactUceCapability> capabilities = new ArrayList<>(CONTACT_COUNT);
+        for (Uri contactUri : mContactUris) {
+            capabilities.add(createCapability(contactUri));
+        }
+        mEabController.saveCapabilities(capabilities);
+
+        // Request the contacts which are spread over the database.
+        mRequestUris = new ArrayList<>(REQUEST_CONTACT_COUNT);
+        for (int i = 0; i < REQUEST_CONTACT_COUNT; i++) {
+            mRequestUris.add(mContactUris.get(i * (CONTACT_COUNT / REQUEST_CONTACT_COUNT)));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mEabController.onDestroy();
+        mEabProvider.closeDatabase();
+        super.tearDown();
+    }
+
+    @Test
+    public void getCapabilities_100Of10000Contacts_uncached() {
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            mEabController.clearCapabilityCache();
+            state.resumeTiming();
+            mEabController.getCapabilities(mRequestUris);
+        }
+    }
+
+    @Test
+    public void getCapabilities_100Of10000Contacts_cached() {
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            mEabController.getCapabilities(mRequestUris);
+        }
+    }
+
+    @Test
+    public void getAvailability_oneOf10000Contacts_uncached() {
+        Uri contactUri = mRequestUris.get(REQUEST_CONTACT_COUNT / 2);
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            mEabController.clearCapabilityCache();
+            state.resumeTiming();
+            mEabController.getAvailability(contactUri);
+        }
+    }
+
+    @Test
+    public void saveCapabilities_oneContact() {
+        List<RcsContactUceCapability> capabilities = Collections.singletonList(
+                createCapability(mRequestUris.get(0)));
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            mEabController.saveCapabilities(capabilities);
+        }
+    }
+
+    @Test
+    public void saveCapabilities_100Contacts() {
+        List<RcsContactUceCapability> capabilities = new ArrayList<>(REQUEST_CONTACT_COUNT);
+        for (Uri contactUri : mRequestUris) {
+            capabilities.add(createCapability(contactUri));
+        }
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            mEabController.saveCapabilities(capabilities);
+        }
+    }
+
+    private RcsContactUceCapability createCapability(Uri contactUri) {
+        RcsContactPresenceTuple.ServiceCapabilities serviceCapabilities =
+                new RcsContactPresenceTuple.ServiceCapabilities.Builder(true, true).build();
+        RcsContactPresenceTuple mmtelTuple = new RcsContactPresenceTuple.Builder(
+                RcsContactPresenceTuple.TUPLE_BASIC_STATUS_OPEN,
+                RcsContactPresenceTuple.SERVICE_ID_MMTEL, "1.0")
+                .setContactUri(contactUri)
+                .setServiceCapabilities(serviceCapabilities)
+                .setTime(Instant.now())
+                .build();
+        RcsContactPresenceTuple chatTuple = new RcsContactPresenceTuple.Builder(
+                RcsContactPresenceTuple.TUPLE_BASIC_STATUS_OPEN,
+                RcsContactPresenceTuple.SERVICE_ID_CHAT_V2, "2.0")
+                .setContactUri(contactUri)
+                .setTime(Instant.now())
+                .build();
+
+        RcsContactUceCapability.PresenceBuilder builder =
+                new RcsContactUceCapability.PresenceBuilder(
+                        contactUri, SOURCE_TYPE_NETWORK, REQUEST_RESULT_FOUND);
+        builder.addCapabilityTuple(mmtelTuple);
+        builder.addCapabilityTuple(chatTuple);
+        builder.setEntityUri(contactUri);
+        return builder.build();
+    }
+}
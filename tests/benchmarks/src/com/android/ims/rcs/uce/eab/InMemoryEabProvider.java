@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce.eab;
+
+import android.content.Context;
+import android.content.pm.ProviderInfo;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * The EAB provider which is backed by an in-memory database. Unlike
+ * {@link EabProviderTestable}, the query results are not dumped to the log, otherwise the
+ * logging would dominate the benchmarks.
+ */
+public class InMemoryEabProvider extends EabProvider {
+
+    private EabProviderTestable.InMemoryEabProviderDbHelper mDbHelper;
+
+    @Override
+    public boolean onCreate() {
+        mDbHelper = new EabProviderTestable.InMemoryEabProviderDbHelper();
+        return true;
+    }
+
+    public void initialize(Context context) {
+        ProviderInfo providerInfo = new ProviderInfo();
+        providerInfo.authority = EabProvider.AUTHORITY;
+        attachInfoForTesting(context, providerInfo);
+    }
+
+    public void closeDatabase() {
+        mDbHelper.close();
+    }
+
+    @Override
+    public SQLiteDatabase getReadableDatabase() {
+        return mDbHelper.getReadableDatabase();
+    }
+
+    @Override
+    public SQLiteDatabase getWritableDatabase() {
+        return mDbHelper.getWritableDatabase();
+    }
+}
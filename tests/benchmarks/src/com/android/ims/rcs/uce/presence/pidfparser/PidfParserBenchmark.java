@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce.presence.pidfparser;
+
+import android.net.Uri;
+import android.telephony.ims.RcsContactPresenceTuple;
+import android.telephony.ims.RcsContactPresenceTuple.ServiceCapabilities;
+import android.telephony.ims.RcsContactUceCapability;
+import android.telephony.ims.RcsContactUceCapability.PresenceBuilder;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks of converting the capabilities to PIDF and parsing the PIDF of the NOTIFYs.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class PidfParserBenchmark {
+
+    private static final Uri TEST_CONTACT = Uri.fromParts("sip", "+16505551234", null);
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private RcsContactUceCapability mCapability;
+    private String mPidf;
+    private byte[] mPidfBytes;
+
+    @Before
+    public void setUp() throws Exception {
+        mCapability = createCapability(TEST_CONTACT);
+        mPidf = PidfParser.convertToPidf(mCapability);
+        mPidfBytes = mPidf.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void convertToPidf() {
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            PidfParser.convertToPidf(mCapability);
+        }
+    }
+
+    @Test
+    public void convertToPidf_templateCache() {
+        PidfTemplateCache cache = new PidfTemplateCache();
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            cache.convertToPidf(mCapability);
+        }
+    }
+
+    @Test
+    public void getRcsContactUceCapabilityWrapper_string() {
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            PidfParser.getRcsContactUceCapabilityWrapper(mPidf);
+        }
+    }
+
+    @Test
+    public void getRcsContactUceCapabilityWrapper_bytes() {
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            PidfParser.getRcsContactUceCapabilityWrapper(mPidfBytes);
+        }
+    }
+
+    @Test
+    public void batchParse_10Documents() {
+        runBatchParse(10);
+    }
+
+    @Test
+    public void batchParse_100Documents() {
+        runBatchParse(100);
+    }
+
+    @Test
+    public void batchParse_500Documents() {
+        runBatchParse(500);
+    }
+
+    private void runBatchParse(int documentCount) {
+        List<String> pidfs = createPidfs(documentCount);
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            PidfBatchParser.parse(pidfs);
+        }
+    }
+
+    private List<String> createPidfs(int count) {
+        List<String> pidfs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Uri contact = Uri.fromParts("sip", "+1650555" + String.format("%04d", i), null);
+            pidfs.add(PidfParser.convertToPidf(createCapability(contact)));
+        }
+        return pidfs;
+    }
+
+    private RcsContactUceCapability createCapability(Uri contact) {
+        ServiceCapabilities.Builder servCapsBuilder = new ServiceCapabilities.Builder(true, true);
+        servCapsBuilder.addSupportedDuplexMode(ServiceCapabilities.DUPLEX_MODE_FULL);
+
+        RcsContactPresenceTuple mmtelTuple = new RcsContactPresenceTuple.Builder(
+                RcsContactPresenceTuple.TUPLE_BASIC_STATUS_OPEN,
+                RcsContactPresenceTuple.SERVICE_ID_MMTEL, "1.0")
+                .setContactUri(contact)
+                .setServiceDescription("MMTEL feature service")
+                .setTime(Instant.now())
+                .setServiceCapabilities(servCapsBuilder.build())
+                .build();
+
+        RcsContactPresenceTuple chatTuple = new RcsContactPresenceTuple.Builder(
+                RcsContactPresenceTuple.TUPLE_BASIC_STATUS_OPEN,
+                RcsContactPresenceTuple.SERVICE_ID_CHAT_V2, "2.0")
+                .setContactUri(contact)
+                .setServiceDescription("Session Mode Messaging")
+                .setTime(Instant.now())
+                .build();
+
+        PresenceBuilder presenceBuilder = new PresenceBuilder(contact,
+                RcsContactUceCapability.SOURCE_TYPE_NETWORK,
+                RcsContactUceCapability.REQUEST_RESULT_FOUND);
+        presenceBuilder.addCapabilityTuple(mmtelTuple);
+        presenceBuilder.addCapabilityTuple(chatTuple);
+        return presenceBuilder.build();
+    }
+}
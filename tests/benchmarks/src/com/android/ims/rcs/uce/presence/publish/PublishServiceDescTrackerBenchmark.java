@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce.presence.publish;
+
+import android.util.ArraySet;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import com.android.ims.rcs.uce.util.FeatureTags;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Benchmarks of calculating the PUBLISH capabilities from the feature tags of the IMS
+ * registration.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class PublishServiceDescTrackerBenchmark {
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    @Test
+    public void updateImsRegistration_mmtel() {
+        runUpdateImsRegistration(createImsRegistration(
+                FeatureTags.FEATURE_TAG_MMTEL,
+                FeatureTags.FEATURE_TAG_VIDEO));
+    }
+
+    @Test
+    public void updateImsRegistration_allFeatures() {
+        runUpdateImsRegistration(createImsRegistration(
+                FeatureTags.FEATURE_TAG_MMTEL,
+                FeatureTags.FEATURE_TAG_VIDEO,
+                FeatureTags.FEATURE_TAG_PRESENCE,
+                FeatureTags.FEATURE_TAG_STANDALONE_MSG,
+                FeatureTags.FEATURE_TAG_CHAT_IM,
+                FeatureTags.FEATURE_TAG_CHAT_SESSION,
+                FeatureTags.FEATURE_TAG_FILE_TRANSFER,
+                FeatureTags.FEATURE_TAG_FILE_TRANSFER_VIA_SMS,
+                FeatureTags.FEATURE_TAG_CALL_COMPOSER_ENRICHED_CALLING,
+                FeatureTags.FEATURE_TAG_POST_CALL,
+                FeatureTags.FEATURE_TAG_SHARED_MAP,
+                FeatureTags.FEATURE_TAG_SHARED_SKETCH,
+                FeatureTags.FEATURE_TAG_GEO_PUSH,
+                FeatureTags.FEATURE_TAG_CHATBOT_COMMUNICATION_USING_SESSION,
+                FeatureTags.FEATURE_TAG_CHATBOT_VERSION_SUPPORTED));
+    }
+
+    private void runUpdateImsRegistration(Set<String> imsRegistration) {
+        PublishServiceDescTracker tracker = PublishServiceDescTracker.fromCarrierConfig(
+                new String[0]);
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            tracker.updateImsRegistration(imsRegistration);
+        }
+    }
+
+    private Set<String> createImsRegistration(String... imsReg) {
+        return new ArraySet<>(Arrays.asList(imsReg));
+    }
+}
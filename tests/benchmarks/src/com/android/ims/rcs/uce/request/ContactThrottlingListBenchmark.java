@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce.request;
+
+import android.net.Uri;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import com.android.ims.rcs.uce.util.NetworkSipCode;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks of adding and looking up the throttled contacts.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class ContactThrottlingListBenchmark {
+
+    private static final int TEST_SUB_ID = 1;
+    private static final int THROTTLED_CONTACT_COUNT = 1000;
+    private static final int REQUEST_CONTACT_COUNT = 100;
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private ContactThrottlingList mThrottlingList;
+    private List<Uri> mThrottledUris;
+    private List<Uri> mRequestUris;
+
+    @Before
+    public void setUp() throws Exception {
+        UceContactKey.clearPool();
+        mThrottlingList = new ContactThrottlingList(TEST_SUB_ID);
+        mThrottledUris = createUris(0, THROTTLED_CONTACT_COUNT);
+        // Half of the requested contacts are throttled.
+        mRequestUris = createUris(THROTTLED_CONTACT_COUNT - REQUEST_CONTACT_COUNT / 2,
+                REQUEST_CONTACT_COUNT);
+    }
+
+    @Test
+    public void addToThrottlingList_1000Contacts() {
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            mThrottlingList.addToThrottlingList(mThrottledUris,
+                    NetworkSipCode.SIP_CODE_REQUEST_TIMEOUT);
+            state.pauseTiming();
+            mThrottlingList.reset();
+            state.resumeTiming();
+        }
+    }
+
+    @Test
+    public void getInThrottlingListUris_100Of1000Contacts() {
+        mThrottlingList.addToThrottlingList(mThrottledUris,
+                NetworkSipCode.SIP_CODE_REQUEST_TIMEOUT);
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            mThrottlingList.getInThrottlingListUris(mRequestUris);
+        }
+    }
+
+    private List<Uri> createUris(int start, int count) {
+        List<Uri> uris = new ArrayList<>(count);
+        for (int i = start; i < start + count; i++) {
+            uris.add(Uri.fromParts("tel", "+1650555" + String.format("%04d", i), null));
+        }
+        return uris;
+    }
+}
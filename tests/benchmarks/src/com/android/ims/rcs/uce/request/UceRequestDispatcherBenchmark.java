@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce.request;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import com.android.ims.rcs.uce.request.UceRequestManager.RequestManagerCallback;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks of dispatching the requests of the coordinators to the network.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class UceRequestDispatcherBenchmark {
+
+    private static final int TEST_SUB_ID = 1;
+    private static final int REQUEST_COUNT = 100;
+    private static final int MAX_CONCURRENT_NUM = 3;
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private UceRequestDispatcher mDispatcher;
+    private List<Long> mTaskIds;
+
+    @Before
+    public void setUp() throws Exception {
+        // The invocations are not recorded so that they are not counted as the allocations of
+        // the dispatcher.
+        RequestManagerCallback callback = mock(RequestManagerCallback.class,
+                withSettings().stubOnly());
+        mDispatcher = new UceRequestDispatcher(TEST_SUB_ID, callback);
+        mDispatcher.updateConfig(MAX_CONCURRENT_NUM, 0L /*intervalTime*/);
+
+        mTaskIds = new ArrayList<>(REQUEST_COUNT);
+        for (long i = 1; i <= REQUEST_COUNT; i++) {
+            mTaskIds.add(i);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mDispatcher.onDestroy();
+    }
+
+    @Test
+    public void dispatch_100InteractiveRequests() {
+        runDispatch(UceRequestCoordinator.REQUEST_PRIORITY_INTERACTIVE);
+    }
+
+    @Test
+    public void dispatch_100BackgroundRequests() {
+        runDispatch(UceRequestCoordinator.REQUEST_PRIORITY_BACKGROUND);
+    }
+
+    private void runDispatch(int priority) {
+        final BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            mDispatcher.addRequest(1L /*coordinatorId*/, priority, mTaskIds);
+            for (Long taskId : mTaskIds) {
+                mDispatcher.onRequestFinished(taskId);
+            }
+        }
+    }
+}
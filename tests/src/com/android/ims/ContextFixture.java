@@ -24,6 +24,7 @@ import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 
+import android.app.AlarmManager;
 import android.content.BroadcastReceiver;
 import android.content.ContentResolver;
 import android.content.Context;
@@ -58,6 +59,7 @@ public class ContextFixture {
     private final PackageManager mPackageManager = mock(PackageManager.class);
     private final SubscriptionManager mSubscriptionManager = mock(SubscriptionManager.class);
     private final ImsManager mImsManager = mock(ImsManager.class);
+    private final AlarmManager mAlarmManager = mock(AlarmManager.class);
     private final Resources mResources = mock(Resources.class);
 
     private final PersistableBundle mBundle = new PersistableBundle();
@@ -103,6 +105,8 @@ public class ContextFixture {
                     return mSubscriptionManager;
                 case Context.TELEPHONY_IMS_SERVICE:
                     return mImsManager;
+                case Context.ALARM_SERVICE:
+                    return mAlarmManager;
                 default:
                     return null;
             }
@@ -122,6 +126,8 @@ public class ContextFixture {
                 return Context.TELEPHONY_IMS_SERVICE;
             } else if (serviceClass == CarrierConfigManager.class) {
                 return Context.CARRIER_CONFIG_SERVICE;
+            } else if (serviceClass == AlarmManager.class) {
+                return Context.ALARM_SERVICE;
             }
             return super.getSystemServiceName(serviceClass);
         }
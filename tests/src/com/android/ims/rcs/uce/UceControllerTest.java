@@ -40,6 +40,7 @@ import com.android.ims.rcs.uce.eab.EabController;
 import com.android.ims.rcs.uce.options.OptionsController;
 import com.android.ims.rcs.uce.presence.publish.PublishController;
 import com.android.ims.rcs.uce.presence.subscribe.SubscribeController;
+import com.android.ims.rcs.uce.request.UceRequestCoordinator;
 import com.android.ims.rcs.uce.request.UceRequestManager;
 import com.android.ims.rcs.uce.UceDeviceState.DeviceStateResult;
 
@@ -148,7 +149,7 @@ public class UceControllerTest extends ImsTestBase {
         uceController.requestCapabilities(uriList, mCapabilitiesCallback);
 
         verify(mCapabilitiesCallback).onError(RcsUceAdapter.ERROR_GENERIC_FAILURE, 0L, null);
-        verify(mTaskManager, never()).sendCapabilityRequest(any(), eq(false), any());
+        verify(mTaskManager, never()).sendCapabilityRequest(any(), eq(false), anyInt(), any());
     }
 
     @Test
@@ -165,7 +166,7 @@ public class UceControllerTest extends ImsTestBase {
         uceController.requestCapabilities(uriList, mCapabilitiesCallback);
 
         verify(mCapabilitiesCallback).onError(RcsUceAdapter.ERROR_FORBIDDEN, 0L, null);
-        verify(mTaskManager, never()).sendCapabilityRequest(any(), eq(false), any());
+        verify(mTaskManager, never()).sendCapabilityRequest(any(), eq(false), anyInt(), any());
     }
 
     @Test
@@ -182,7 +183,8 @@ public class UceControllerTest extends ImsTestBase {
         uriList.add(Uri.fromParts("sip", "test", null));
         uceController.requestCapabilities(uriList, mCapabilitiesCallback);
 
-        verify(mTaskManager).sendCapabilityRequest(uriList, false, mCapabilitiesCallback);
+        verify(mTaskManager).sendCapabilityRequest(uriList, false,
+                UceRequestCoordinator.REQUEST_PRIORITY_INTERACTIVE, mCapabilitiesCallback);
     }
 
     @Test
@@ -211,7 +213,7 @@ public class UceControllerTest extends ImsTestBase {
         uceController.requestAvailability(contact, mCapabilitiesCallback);
 
         verify(mCapabilitiesCallback).onError(RcsUceAdapter.ERROR_FORBIDDEN, 0L, null);
-        verify(mTaskManager, never()).sendCapabilityRequest(any(), eq(false), any());
+        verify(mTaskManager, never()).sendCapabilityRequest(any(), eq(false), anyInt(), any());
     }
 
     @Test
@@ -16,6 +16,10 @@
 
 package com.android.ims.rcs.uce.eab;
 
+import static android.telephony.ims.RcsContactUceCapability.CAPABILITY_MECHANISM_PRESENCE;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyList;
@@ -24,9 +28,14 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import android.app.AlarmManager;
+import android.content.ContentValues;
 import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.HandlerThread;
@@ -37,6 +46,7 @@ import android.telephony.ims.ImsManager;
 import android.telephony.ims.ImsRcsManager;
 import android.telephony.ims.RcsUceAdapter;
 import android.telephony.ims.aidl.IRcsUceControllerCallback;
+import android.test.mock.MockContentResolver;
 
 import com.android.ims.ImsTestBase;
 import com.android.ims.rcs.uce.UceController;
@@ -44,9 +54,11 @@ import com.android.ims.rcs.uce.UceController;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class EabBulkCapabilityUpdaterTest extends ImsTestBase {
@@ -55,6 +67,7 @@ public class EabBulkCapabilityUpdaterTest extends ImsTestBase {
 
     private Handler mHandler;
     private HandlerThread mHandlerThread;
+    private EabProviderTestable mEabProviderTestable = new EabProviderTestable();
 
     @Mock
     private UceController.UceControllerCallback mMockUceControllerCallback;
@@ -84,6 +97,11 @@ public class EabBulkCapabilityUpdaterTest extends ImsTestBase {
         doReturn(mSharedPreferencesEditor).when(mSharedPreferences).edit();
         doReturn(mSharedPreferencesEditor).when(mSharedPreferencesEditor).putLong(anyString(),
                 anyLong());
+
+        MockContentResolver mockContentResolver =
+                (MockContentResolver) mContext.getContentResolver();
+        mEabProviderTestable.initializeForTesting(mContext);
+        mockContentResolver.addProvider(EabProvider.AUTHORITY, mEabProviderTestable);
     }
 
     @After
@@ -202,6 +220,128 @@ public class EabBulkCapabilityUpdaterTest extends ImsTestBase {
                 any(IRcsUceControllerCallback.class));
     }
 
+    @Test
+    public void testTimeAlertRearmedAfterAlarmFired() throws Exception {
+        mockUceUserSettings(true);
+        mockBulkCapabilityCarrierConfig(true);
+        doReturn(new ArrayList<>())
+                .when(mEabContactSyncController)
+                .syncContactToEabProvider(any());
+        insertPresenceCapability("+16505551234", 1000L);
+
+        EabBulkCapabilityUpdater eabBulkCapabilityUpdater = new EabBulkCapabilityUpdater(
+                mContext,
+                mSubId,
+                mMockEabControllerImpl,
+                mEabContactSyncController,
+                mMockUceControllerCallback,
+                mHandler);
+        waitHandlerThreadFinish();
+
+        AlarmManager alarmManager = mContext.getSystemService(AlarmManager.class);
+        ArgumentCaptor<AlarmManager.OnAlarmListener> listenerCaptor =
+                ArgumentCaptor.forClass(AlarmManager.OnAlarmListener.class);
+        verify(alarmManager).set(eq(AlarmManager.RTC_WAKEUP), anyLong(), anyString(),
+                listenerCaptor.capture(), any(Handler.class));
+
+        // The refresh does not update the capabilities, so the least expired timestamp is still
+        // the same. The one-shot alarm should be set again anyway.
+        listenerCaptor.getValue().onAlarm();
+        eabBulkCapabilityUpdater.updateExpiredTimeAlert();
+
+        verify(mMockUceControllerCallback).refreshCapabilities(
+                anyList(),
+                any(IRcsUceControllerCallback.class));
+        verify(alarmManager, times(2)).set(eq(AlarmManager.RTC_WAKEUP), anyLong(), anyString(),
+                any(AlarmManager.OnAlarmListener.class), any(Handler.class));
+    }
+
+    @Test
+    public void testLeastTimestampQueryUsesTimestampIndex() throws Exception {
+        String table = EabProvider.EAB_PRESENCE_TUPLE_TABLE_NAME;
+        String timestampColumn = EabProvider.PresenceTupleColumns.REQUEST_TIMESTAMP;
+        String selection = EabBulkCapabilityUpdater.getLeastTimestampSelection(mSubId, table,
+                EabProvider.PresenceTupleColumns.EAB_COMMON_ID, timestampColumn,
+                CAPABILITY_MECHANISM_PRESENCE);
+        String sql = SQLiteQueryBuilder.buildQueryString(false, table,
+                new String[]{"MIN(" + timestampColumn + ")"}, selection,
+                null, null, null, null);
+
+        StringBuilder queryPlan = new StringBuilder();
+        try (Cursor cursor = mEabProviderTestable.getReadableDatabase().rawQuery(
+                "EXPLAIN QUERY PLAN " + sql, null)) {
+            while (cursor.moveToNext()) {
+                queryPlan.append(cursor.getString(cursor.getColumnIndex("detail"))).append("\n");
+            }
+        }
+
+        assertTrue(queryPlan.toString(), queryPlan.toString().contains(
+                "USING INDEX " + table + "_timestamp_index"));
+    }
+
+    @Test
+    public void testExpiredContactListOnlyContainsExpiredCapabilities() throws Exception {
+        long now = System.currentTimeMillis() / 1000;
+        doReturn(60 * 60).when(mMockEabControllerImpl).getCapabilityCacheExpiration(mSubId);
+        insertPresenceCapability("+16505551111", now - 2 * 60 * 60);
+        insertPresenceCapability("+16505552222", now);
+
+        EabBulkCapabilityUpdater eabBulkCapabilityUpdater = new EabBulkCapabilityUpdater(
+                mContext,
+                mSubId,
+                mMockEabControllerImpl,
+                mEabContactSyncController,
+                mMockUceControllerCallback,
+                mHandler);
+
+        assertEquals(Collections.singletonList(Uri.parse("+16505551111")),
+                eabBulkCapabilityUpdater.getExpiredContactList());
+    }
+
+    @Test
+    public void testExpiredCapabilityQueryUsesTimestampIndex() throws Exception {
+        String table = EabProvider.EAB_PRESENCE_TUPLE_TABLE_NAME;
+        String selection = EabBulkCapabilityUpdater.getExpiredCapabilitySelection(mSubId, table,
+                EabProvider.PresenceTupleColumns.EAB_COMMON_ID,
+                EabProvider.PresenceTupleColumns.REQUEST_TIMESTAMP,
+                CAPABILITY_MECHANISM_PRESENCE, 1000L);
+        String sql = SQLiteQueryBuilder.buildQueryString(false, table,
+                new String[]{EabProvider.PresenceTupleColumns.EAB_COMMON_ID}, selection,
+                null, null, null, null);
+
+        StringBuilder queryPlan = new StringBuilder();
+        try (Cursor cursor = mEabProviderTestable.getReadableDatabase().rawQuery(
+                "EXPLAIN QUERY PLAN " + sql, null)) {
+            while (cursor.moveToNext()) {
+                queryPlan.append(cursor.getString(cursor.getColumnIndex("detail"))).append("\n");
+            }
+        }
+
+        assertTrue(queryPlan.toString(), queryPlan.toString().contains(
+                "USING INDEX " + table + "_timestamp_index"));
+    }
+
+    private void insertPresenceCapability(String phoneNumber, long timestamp) {
+        ContentValues data = new ContentValues();
+        data.put(EabProvider.ContactColumns.PHONE_NUMBER, phoneNumber);
+        data.put(EabProvider.ContactColumns.RAW_CONTACT_ID, 1);
+        data.put(EabProvider.ContactColumns.DATA_ID, 1);
+        Uri contactUri = mContext.getContentResolver().insert(EabProvider.CONTACT_URI, data);
+
+        data = new ContentValues();
+        data.put(EabProvider.EabCommonColumns.EAB_CONTACT_ID,
+                Integer.parseInt(contactUri.getLastPathSegment()));
+        data.put(EabProvider.EabCommonColumns.MECHANISM, CAPABILITY_MECHANISM_PRESENCE);
+        data.put(EabProvider.EabCommonColumns.SUBSCRIPTION_ID, mSubId);
+        Uri commonUri = mContext.getContentResolver().insert(EabProvider.COMMON_URI, data);
+
+        data = new ContentValues();
+        data.put(EabProvider.PresenceTupleColumns.EAB_COMMON_ID,
+                Integer.parseInt(commonUri.getLastPathSegment()));
+        data.put(EabProvider.PresenceTupleColumns.REQUEST_TIMESTAMP, timestamp);
+        mContext.getContentResolver().insert(EabProvider.PRESENCE_URI, data);
+    }
+
     private void mockBulkCapabilityCarrierConfig(boolean isEnabled) {
         PersistableBundle persistableBundle = new PersistableBundle();
         persistableBundle.putBoolean(
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ims.rcs.uce.eab;
+
+import static android.telephony.ims.RcsContactUceCapability.CAPABILITY_MECHANISM_PRESENCE;
+import static android.telephony.ims.RcsContactUceCapability.REQUEST_RESULT_FOUND;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.ims.ImsTestBase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+@RunWith(AndroidJUnit4.class)
+public class EabCapabilityCacheTest extends ImsTestBase {
+
+    private static final int TEST_SUB_ID = 1;
+    private static final String TEST_NUMBER_1 = "+16661234567";
+    private static final String TEST_NUMBER_2 = "+16661234568";
+    private static final String TEST_NUMBER_3 = "+16661234569";
+    private static final String TEST_SERVICE_ID = "org.3gpp.urn:urn-7:3gpp-service.ims.icsi.mmtel";
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    @Test
+    @SmallTest
+    public void testPutAndGet() {
+        EabCapabilityCache cache = new EabCapabilityCache(TEST_SUB_ID);
+        assertNull(cache.get(TEST_NUMBER_1));
+
+        cache.put(TEST_NUMBER_1, createEntry(), cache.getVersion());
+
+        EabCapabilityCache.Entry entry = cache.get(TEST_NUMBER_1);
+        assertNotNull(entry);
+        assertFalse(entry.isEmpty());
+        Cursor cursor = entry.toCursor();
+        assertTrue(cursor.moveToFirst());
+        assertEquals(CAPABILITY_MECHANISM_PRESENCE, cursor.getInt(
+                cursor.getColumnIndex(EabProvider.EabCommonColumns.MECHANISM)));
+        assertEquals(TEST_SERVICE_ID, cursor.getString(
+                cursor.getColumnIndex(EabProvider.PresenceTupleColumns.SERVICE_ID)));
+        cursor.close();
+    }
+
+    @Test
+    @SmallTest
+    public void testEmptyEntry() {
+        EabCapabilityCache cache = new EabCapabilityCache(TEST_SUB_ID);
+        cache.put(TEST_NUMBER_1, EabCapabilityCache.Entry.fromCursor(null), cache.getVersion());
+
+        EabCapabilityCache.Entry entry = cache.get(TEST_NUMBER_1);
+        assertNotNull(entry);
+        assertTrue(entry.isEmpty());
+    }
+
+    @Test
+    @SmallTest
+    public void testLeastRecentlyUsedEntryEvicted() {
+        EabCapabilityCache cache = new EabCapabilityCache(TEST_SUB_ID, 2);
+        cache.put(TEST_NUMBER_1, createEntry(), cache.getVersion());
+        cache.put(TEST_NUMBER_2, createEntry(), cache.getVersion());
+
+        // Access the first number so that the second number becomes the eldest one.
+        cache.get(TEST_NUMBER_1);
+        cache.put(TEST_NUMBER_3, createEntry(), cache.getVersion());
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(TEST_NUMBER_1));
+        assertNull(cache.get(TEST_NUMBER_2));
+        assertNotNull(cache.get(TEST_NUMBER_3));
+    }
+
+    @Test
+    @SmallTest
+    public void testInvalidate() {
+        EabCapabilityCache cache = new EabCapabilityCache(TEST_SUB_ID);
+        cache.put(TEST_NUMBER_1, createEntry(), cache.getVersion());
+        cache.put(TEST_NUMBER_2, createEntry(), cache.getVersion());
+
+        cache.invalidate(Collections.singletonList(TEST_NUMBER_1));
+        assertNull(cache.get(TEST_NUMBER_1));
+        assertNotNull(cache.get(TEST_NUMBER_2));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    @SmallTest
+    public void testStaleEntryNotCached() {
+        EabCapabilityCache cache = new EabCapabilityCache(TEST_SUB_ID);
+        long version = cache.getVersion();
+
+        // The cache is invalidated while the entry is being queried from the database.
+        cache.invalidate(Collections.singletonList(TEST_NUMBER_1));
+        cache.put(TEST_NUMBER_1, createEntry(), version);
+
+        assertNull(cache.get(TEST_NUMBER_1));
+    }
+
+    private EabCapabilityCache.Entry createEntry() {
+        MatrixCursor cursor = new MatrixCursor(EabCapabilityCache.CAPABILITY_PROJECTION);
+        cursor.newRow()
+                .add(EabProvider.EabCommonColumns.MECHANISM, CAPABILITY_MECHANISM_PRESENCE)
+                .add(EabProvider.EabCommonColumns.REQUEST_RESULT, REQUEST_RESULT_FOUND)
+                .add(EabProvider.PresenceTupleColumns.SERVICE_ID, TEST_SERVICE_ID)
+                .add(EabProvider.PresenceTupleColumns.REQUEST_TIMESTAMP, 1000L);
+        EabCapabilityCache.Entry entry = EabCapabilityCache.Entry.fromCursor(cursor);
+        cursor.close();
+        return entry;
+    }
+}
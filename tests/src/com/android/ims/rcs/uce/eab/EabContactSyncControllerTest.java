@@ -19,10 +19,14 @@ package com.android.ims.rcs.uce.eab;
 import static android.provider.ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.verify;
 
 import android.content.ContentProvider;
 import android.content.ContentValues;
@@ -176,6 +180,45 @@ public class EabContactSyncControllerTest extends ImsTestBase {
                 result.getString(result.getColumnIndex(EabProvider.ContactColumns.PHONE_NUMBER)));
     }
 
+    @Test
+    public void testSyncContactsInMultiplePasses() {
+        int contactCount = EabContactSyncController.MAX_SYNC_CONTACTS_PER_PASS + 1;
+        for (int i = 1; i <= contactCount; i++) {
+            insertContactToContactProvider(i, i, i, String.valueOf(i), i);
+        }
+        EabContactSyncController syncController = new EabContactSyncController();
+
+        List<Uri> refreshContacts = syncController.syncContactToEabProvider(mContext);
+
+        // Only the contacts of the first pass are synced and the progress is saved.
+        assertEquals(EabContactSyncController.MAX_SYNC_CONTACTS_PER_PASS,
+                refreshContacts.size());
+        assertTrue(syncController.hasPendingContacts());
+        Cursor result = mProviderTestRule.getResolver().query(
+                EabProvider.CONTACT_URI,
+                null,
+                null,
+                null);
+        assertEquals(EabContactSyncController.MAX_SYNC_CONTACTS_PER_PASS, result.getCount());
+        verify(mSharedPreferencesEditor).putLong(anyString(),
+                eq((long) EabContactSyncController.MAX_SYNC_CONTACTS_PER_PASS));
+    }
+
+    @Test
+    public void testContactsWithSameTimestampSyncedInOnePass() {
+        int contactCount = EabContactSyncController.MAX_SYNC_CONTACTS_PER_PASS + 1;
+        for (int i = 1; i <= contactCount; i++) {
+            insertContactToContactProvider(i, i, i, String.valueOf(i));
+        }
+        EabContactSyncController syncController = new EabContactSyncController();
+
+        List<Uri> refreshContacts = syncController.syncContactToEabProvider(mContext);
+
+        // The contacts with the same timestamp can't be split into different passes.
+        assertEquals(contactCount, refreshContacts.size());
+        assertFalse(syncController.hasPendingContacts());
+    }
+
     private void insertDeletedContactToContactProvider(int contactId, int timestamp) {
         ContentValues values = new ContentValues();
         values.put(ContactsContract.DeletedContacts.CONTACT_ID, contactId);
@@ -186,13 +229,19 @@ public class EabContactSyncControllerTest extends ImsTestBase {
 
     private void insertContactToContactProvider(
             int contactId, int rawContactId, int dataId, String number) {
+        insertContactToContactProvider(contactId, rawContactId, dataId, number, 1);
+    }
+
+    private void insertContactToContactProvider(
+            int contactId, int rawContactId, int dataId, String number, long timestamp) {
         ContentValues values = new ContentValues();
         values.put(ContactsContract.Data._ID, dataId);
         values.put(EabProvider.ContactColumns.CONTACT_ID, contactId);
         values.put(ContactsContract.CommonDataKinds.Phone.RAW_CONTACT_ID, rawContactId);
         values.put(ContactsContract.Data.MIMETYPE, CONTENT_ITEM_TYPE);
         values.put(ContactsContract.CommonDataKinds.Phone.NUMBER, number);
-        values.put(ContactsContract.CommonDataKinds.Phone.CONTACT_LAST_UPDATED_TIMESTAMP, 1);
+        values.put(ContactsContract.CommonDataKinds.Phone.CONTACT_LAST_UPDATED_TIMESTAMP,
+                timestamp);
 
         mContext.getContentResolver().insert(ContactsContract.Data.CONTENT_URI, values);
     }
@@ -219,14 +219,33 @@ public class EabControllerTest extends ImsTestBase {
         data.put(EabProvider.EabCommonColumns.SUBSCRIPTION_ID, -1);
         mContext.getContentResolver().insert(COMMON_URI, data);
 
+        // Save the capabilities twice, the common row of the first one becomes invalid.
         List<RcsContactUceCapability> contactList = new ArrayList<>();
         contactList.add(createPresenceCapability());
         mEabControllerSub1.saveCapabilities(contactList);
+        mEabControllerSub1.saveCapabilities(contactList);
 
         mExecutor.awaitTermination(TIME_OUT_IN_SEC, TimeUnit.SECONDS);
 
-        // Verify the entry that cannot map to presence/option table has been removed
+        // Verify only the invalid entry of the saved contact has been removed
         Cursor cursor = mContext.getContentResolver().query(COMMON_URI, null, null, null, null);
+        int invalidCount = 0;
+        int savedCount = 0;
+        while(cursor.moveToNext()) {
+            int contactId = cursor.getInt(
+                    cursor.getColumnIndex(EabProvider.EabCommonColumns.EAB_CONTACT_ID));
+            if (contactId == -1) {
+                invalidCount++;
+            } else {
+                savedCount++;
+            }
+        }
+        Assert.assertEquals(1, invalidCount);
+        Assert.assertEquals(1, savedCount);
+
+        // Verify the other invalid entry is removed by the full cleanup
+        mEabControllerSub1.cleanupOrphanedRows();
+        cursor = mContext.getContentResolver().query(COMMON_URI, null, null, null, null);
         while(cursor.moveToNext()) {
             int contactId = cursor.getInt(
                     cursor.getColumnIndex(EabProvider.EabCommonColumns.EAB_CONTACT_ID));
@@ -400,6 +419,106 @@ public class EabControllerTest extends ImsTestBase {
                 mEabControllerSub1.getCapabilities(contactUriList).get(0).getStatus());
     }
 
+    @Test
+    @SmallTest
+    public void testGetCapabilityFromCache() {
+        List<RcsContactUceCapability> contactList = new ArrayList<>();
+        contactList.add(createPresenceCapability());
+        mEabControllerSub1.saveCapabilities(contactList);
+
+        List<Uri> contactUriList = new ArrayList<>();
+        contactUriList.add(TEST_CONTACT_URI);
+        Assert.assertEquals(EabCapabilityResult.EAB_QUERY_SUCCESSFUL,
+                mEabControllerSub1.getCapabilities(contactUriList).get(0).getStatus());
+
+        // Remove the capabilities without going through the EabController.
+        mContext.getContentResolver().delete(PRESENCE_URI, null, null);
+
+        // The MockContentResolver doesn't deliver the change, verify the capabilities are still
+        // served from the cache.
+        EabCapabilityResult result = mEabControllerSub1.getCapabilities(contactUriList).get(0);
+        Assert.assertEquals(EabCapabilityResult.EAB_QUERY_SUCCESSFUL, result.getStatus());
+        Assert.assertEquals(2, result.getContactCapabilities().getCapabilityTuples().size());
+        Assert.assertEquals(EabCapabilityResult.EAB_QUERY_SUCCESSFUL,
+                mEabControllerSub1.getAvailability(TEST_CONTACT_URI).getStatus());
+
+        // Verify the cache is reloaded after it's cleared.
+        mEabControllerSub1.clearCapabilityCache();
+        result = mEabControllerSub1.getCapabilities(contactUriList).get(0);
+        Assert.assertEquals(0, result.getContactCapabilities().getCapabilityTuples().size());
+    }
+
+    @Test
+    @SmallTest
+    public void testRemoveContactFromEabInvalidatesCache() {
+        List<RcsContactUceCapability> contactList = new ArrayList<>();
+        contactList.add(createPresenceCapability());
+        mEabControllerSub1.saveCapabilities(contactList);
+
+        List<Uri> contactUriList = new ArrayList<>();
+        contactUriList.add(TEST_CONTACT_URI);
+        Assert.assertEquals(EabCapabilityResult.EAB_QUERY_SUCCESSFUL,
+                mEabControllerSub1.getCapabilities(contactUriList).get(0).getStatus());
+
+        // Remove the contact through EabUtil and deliver the change of the provider.
+        EabUtil.removeContactFromEab(TEST_SUB_ID, TEST_PHONE_NUMBER, mContext);
+        mEabControllerSub1.mEabProviderObserver.dispatchChange(false, CONTACT_URI);
+
+        // Verify the removed capabilities are not served from the cache.
+        Assert.assertEquals(EabCapabilityResult.EAB_CONTACT_NOT_FOUND_FAILURE,
+                mEabControllerSub1.getCapabilities(contactUriList).get(0).getStatus());
+        Assert.assertEquals(EabCapabilityResult.EAB_CONTACT_NOT_FOUND_FAILURE,
+                mEabControllerSub1.getAvailability(TEST_CONTACT_URI).getStatus());
+    }
+
+    @Test
+    @SmallTest
+    public void testSaveCapabilityInvalidatesCache() {
+        List<RcsContactUceCapability> contactList = new ArrayList<>();
+        contactList.add(createPresenceCapability());
+        mEabControllerSub1.saveCapabilities(contactList);
+
+        List<Uri> contactUriList = new ArrayList<>();
+        contactUriList.add(TEST_CONTACT_URI);
+        Assert.assertEquals(2, mEabControllerSub1.getCapabilities(contactUriList).get(0)
+                .getContactCapabilities().getCapabilityTuples().size());
+
+        // Save the new capabilities and verify the cached capabilities are not returned.
+        contactList.clear();
+        contactList.add(createEmptyTuplePresenceCapability());
+        mEabControllerSub1.saveCapabilities(contactList);
+
+        Assert.assertEquals(0, mEabControllerSub1.getCapabilities(contactUriList).get(0)
+                .getContactCapabilities().getCapabilityTuples().size());
+    }
+
+    @Test
+    @SmallTest
+    public void testGetCapabilitiesOfMultipleContacts() {
+        List<RcsContactUceCapability> contactList = new ArrayList<>();
+        contactList.add(createPresenceCapability());
+        mEabControllerSub1.saveCapabilities(contactList);
+
+        Uri unknownContactUri = Uri.parse("16669876543@android.test");
+        List<Uri> contactUriList = new ArrayList<>();
+        contactUriList.add(TEST_CONTACT_URI);
+        contactUriList.add(unknownContactUri);
+        contactUriList.add(TEST_CONTACT_URI);
+
+        List<EabCapabilityResult> results = mEabControllerSub1.getCapabilities(contactUriList);
+        Assert.assertEquals(3, results.size());
+        Assert.assertEquals(TEST_CONTACT_URI, results.get(0).getContact());
+        Assert.assertEquals(EabCapabilityResult.EAB_QUERY_SUCCESSFUL,
+                results.get(0).getStatus());
+        Assert.assertEquals(2,
+                results.get(0).getContactCapabilities().getCapabilityTuples().size());
+        Assert.assertEquals(unknownContactUri, results.get(1).getContact());
+        Assert.assertEquals(EabCapabilityResult.EAB_CONTACT_NOT_FOUND_FAILURE,
+                results.get(1).getStatus());
+        Assert.assertEquals(EabCapabilityResult.EAB_QUERY_SUCCESSFUL,
+                results.get(2).getStatus());
+    }
+
     private RcsContactUceCapability createPresenceCapability() {
         RcsContactPresenceTuple.ServiceCapabilities.Builder serviceCapabilitiesBuilder =
                 new RcsContactPresenceTuple.ServiceCapabilities.Builder(TEST_AUDIO_CAPABLE,
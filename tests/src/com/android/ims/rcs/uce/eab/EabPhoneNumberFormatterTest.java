@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ims.rcs.uce.eab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.ims.ImsTestBase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+public class EabPhoneNumberFormatterTest extends ImsTestBase {
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        EabPhoneNumberFormatter.clear();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        EabPhoneNumberFormatter.clear();
+        super.tearDown();
+    }
+
+    @Test
+    @SmallTest
+    public void testFormatNumber() {
+        doReturn("us").when(mTelephonyManager).getSimCountryIso();
+
+        assertEquals("+16505551234",
+                EabPhoneNumberFormatter.formatNumber(mContext, "6505551234"));
+        assertEquals("+16505551234",
+                EabPhoneNumberFormatter.formatNumber(mContext, "(650) 555-1234"));
+        assertNull(EabPhoneNumberFormatter.formatNumber(mContext, null));
+    }
+
+    @Test
+    @SmallTest
+    public void testSimCountryIsoCached() {
+        doReturn("us").when(mTelephonyManager).getSimCountryIso();
+
+        EabPhoneNumberFormatter.formatNumber(mContext, "6505551234");
+        EabPhoneNumberFormatter.formatNumber(mContext, "6505555678");
+        verify(mTelephonyManager, times(1)).getSimCountryIso();
+
+        // Verify the SIM country ISO is retrieved again after the cache is cleared.
+        doReturn("gb").when(mTelephonyManager).getSimCountryIso();
+        EabPhoneNumberFormatter.clear();
+
+        assertEquals("+442079460000",
+                EabPhoneNumberFormatter.formatNumber(mContext, "020 7946 0000"));
+        verify(mTelephonyManager, times(2)).getSimCountryIso();
+    }
+
+    @Test
+    @SmallTest
+    public void testSimCountryIsoUnavailable() {
+        doReturn(null).when(mTelephonyManager).getSimCountryIso();
+
+        assertEquals("6505551234", EabPhoneNumberFormatter.formatNumber(mContext, "6505551234"));
+    }
+}
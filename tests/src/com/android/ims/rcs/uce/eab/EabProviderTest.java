@@ -26,10 +26,13 @@ import static com.android.ims.rcs.uce.eab.EabProvider.OPTIONS_URI;
 import static com.android.ims.rcs.uce.eab.EabProvider.PRESENCE_URI;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.os.Bundle;
 import android.test.mock.MockContentResolver;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
@@ -42,6 +45,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
+
 @RunWith(AndroidJUnit4.class)
 public class EabProviderTest extends ImsTestBase {
     EabProviderTestable mEabProviderTestable = new EabProviderTestable();
@@ -316,6 +321,114 @@ public class EabProviderTest extends ImsTestBase {
                 EabProvider.EabCommonColumns.ENTITY_URI)));
     }
 
+    @Test
+    @SmallTest
+    public void testQueryBySubIdAndPhoneNumbers() {
+        int subid = 1;
+        String[] phoneNumbers = new String[] {"123456", "654321", "111111"};
+
+        for (int i = 0; i < phoneNumbers.length; i++) {
+            ContentValues data = new ContentValues();
+            data.put(EabProvider.ContactColumns._ID, i + 1);
+            data.put(EabProvider.ContactColumns.PHONE_NUMBER, phoneNumbers[i]);
+            data.put(EabProvider.ContactColumns.RAW_CONTACT_ID, i + 1);
+            mContext.getContentResolver().insert(CONTACT_URI, data);
+
+            data = new ContentValues();
+            data.put(EabProvider.EabCommonColumns._ID, i + 1);
+            data.put(EabProvider.EabCommonColumns.EAB_CONTACT_ID, i + 1);
+            data.put(EabProvider.EabCommonColumns.MECHANISM, CAPABILITY_MECHANISM_PRESENCE);
+            data.put(EabProvider.EabCommonColumns.REQUEST_RESULT, REQUEST_RESULT_FOUND);
+            data.put(EabProvider.EabCommonColumns.SUBSCRIPTION_ID, subid);
+            mContext.getContentResolver().insert(COMMON_URI, data);
+
+            data = new ContentValues();
+            data.put(EabProvider.PresenceTupleColumns.EAB_COMMON_ID, i + 1);
+            data.put(EabProvider.PresenceTupleColumns.AUDIO_CAPABLE, true);
+            mContext.getContentResolver().insert(PRESENCE_URI, data);
+        }
+
+        Uri testUri = Uri.withAppendedPath(ALL_DATA_URI, String.valueOf(subid));
+        Cursor cursor = mContext.getContentResolver().query(testUri,
+                new String[] {EabProvider.ContactColumns.PHONE_NUMBER},
+                null,
+                new String[] {"123456", "654321"},
+                null);
+
+        assertEquals(2, cursor.getCount());
+        while (cursor.moveToNext()) {
+            String number = cursor.getString(
+                    cursor.getColumnIndex(EabProvider.ContactColumns.PHONE_NUMBER));
+            assertTrue("123456".equals(number) || "654321".equals(number));
+        }
+
+        // Query with the incorrect sub id
+        testUri = Uri.withAppendedPath(ALL_DATA_URI, String.valueOf(subid + 1));
+        cursor = mContext.getContentResolver().query(testUri,
+                null,
+                null,
+                new String[] {"123456", "654321"},
+                null);
+
+        assertEquals(0, cursor.getCount());
+    }
+
+    @Test
+    @SmallTest
+    public void testSaveCapabilities() {
+        ArrayList<Bundle> capabilityList = new ArrayList<>();
+        capabilityList.add(createPresenceCapabilityBundle("123456", 2));
+        capabilityList.add(createOptionsCapabilityBundle("654321", 3));
+        Bundle extras = new Bundle();
+        extras.putParcelableArrayList(EabProvider.KEY_CAPABILITY_LIST, capabilityList);
+
+        Bundle result = mContext.getContentResolver().call(EabProvider.AUTHORITY_URI,
+                EabProvider.METHOD_SAVE_CAPABILITIES, null, extras);
+
+        assertEquals(2, result.getInt(EabProvider.KEY_RESULT_COUNT));
+        assertEquals(2, getCount(CONTACT_URI));
+        assertEquals(2, getCount(COMMON_URI));
+        assertEquals(2, getCount(PRESENCE_URI));
+        assertEquals(3, getCount(OPTIONS_URI));
+
+        // Save the presence capability of the same contact again. The old presence rows and the
+        // common row should be replaced.
+        capabilityList.clear();
+        capabilityList.add(createPresenceCapabilityBundle("123456", 1));
+        mContext.getContentResolver().call(EabProvider.AUTHORITY_URI,
+                EabProvider.METHOD_SAVE_CAPABILITIES, null, extras);
+
+        assertEquals(2, getCount(CONTACT_URI));
+        assertEquals(2, getCount(COMMON_URI));
+        assertEquals(1, getCount(PRESENCE_URI));
+        assertEquals(3, getCount(OPTIONS_URI));
+    }
+
+    @Test
+    @SmallTest
+    public void testUpgradeDatabaseToVersion5() {
+        // Create the tables of the database version 4 which don't have any index.
+        SQLiteDatabase db = SQLiteDatabase.create(null);
+        db.execSQL(EabProvider.EabDatabaseHelper.SQL_CREATE_CONTACT_TABLE);
+        db.execSQL(EabProvider.EabDatabaseHelper.SQL_CREATE_COMMON_TABLE);
+        db.execSQL(EabProvider.EabDatabaseHelper.SQL_CREATE_PRESENCE_TUPLE_TABLE);
+        db.execSQL(EabProvider.EabDatabaseHelper.SQL_CREATE_OPTIONS_TABLE);
+        ContentValues data = new ContentValues();
+        data.put(EabProvider.ContactColumns.PHONE_NUMBER, "123456");
+        db.insert(EabProvider.EAB_CONTACT_TABLE_NAME, null, data);
+        assertEquals(0, getIndexCount(db));
+
+        new EabProvider.EabDatabaseHelper(mContext).onUpgrade(db, 4, 5);
+
+        assertEquals(EabProvider.EabDatabaseHelper.SQL_CREATE_INDEXES.length,
+                getIndexCount(db));
+        Cursor cursor = db.query(EabProvider.EAB_CONTACT_TABLE_NAME, null, null, null, null,
+                null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+        db.close();
+    }
+
     @Test
     @SmallTest
     public void testBulkInsert() {
@@ -340,4 +453,58 @@ public class EabProviderTest extends ImsTestBase {
                 null);
         assertEquals(2, cursor.getCount());
     }
+
+    private Bundle createPresenceCapabilityBundle(String phoneNumber, int tupleCount) {
+        ContentValues commonValues = new ContentValues();
+        commonValues.put(EabProvider.EabCommonColumns.MECHANISM, CAPABILITY_MECHANISM_PRESENCE);
+        commonValues.put(EabProvider.EabCommonColumns.REQUEST_RESULT, REQUEST_RESULT_FOUND);
+        commonValues.put(EabProvider.EabCommonColumns.SUBSCRIPTION_ID, 1);
+        ArrayList<ContentValues> presenceValues = new ArrayList<>();
+        for (int i = 0; i < tupleCount; i++) {
+            ContentValues values = new ContentValues();
+            values.put(EabProvider.PresenceTupleColumns.SERVICE_ID, "service" + i);
+            presenceValues.add(values);
+        }
+
+        Bundle bundle = new Bundle();
+        bundle.putString(EabProvider.KEY_PHONE_NUMBER, phoneNumber);
+        bundle.putParcelable(EabProvider.KEY_COMMON_VALUES, commonValues);
+        bundle.putParcelableArrayList(EabProvider.KEY_PRESENCE_VALUES, presenceValues);
+        return bundle;
+    }
+
+    private Bundle createOptionsCapabilityBundle(String phoneNumber, int featureTagCount) {
+        ContentValues commonValues = new ContentValues();
+        commonValues.put(EabProvider.EabCommonColumns.MECHANISM, CAPABILITY_MECHANISM_OPTIONS);
+        commonValues.put(EabProvider.EabCommonColumns.REQUEST_RESULT, REQUEST_RESULT_FOUND);
+        commonValues.put(EabProvider.EabCommonColumns.SUBSCRIPTION_ID, 1);
+        ArrayList<ContentValues> optionsValues = new ArrayList<>();
+        for (int i = 0; i < featureTagCount; i++) {
+            ContentValues values = new ContentValues();
+            values.put(EabProvider.OptionsColumns.FEATURE_TAG, "featureTag" + i);
+            optionsValues.add(values);
+        }
+
+        Bundle bundle = new Bundle();
+        bundle.putString(EabProvider.KEY_PHONE_NUMBER, phoneNumber);
+        bundle.putParcelable(EabProvider.KEY_COMMON_VALUES, commonValues);
+        bundle.putParcelableArrayList(EabProvider.KEY_OPTIONS_VALUES, optionsValues);
+        return bundle;
+    }
+
+    private int getIndexCount(SQLiteDatabase db) {
+        // The automatic indexes created by the UNIQUE constraints are not counted.
+        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type='index'"
+                + " AND sql IS NOT NULL", null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    private int getCount(Uri uri) {
+        Cursor cursor = mContext.getContentResolver().query(uri, null, null, null, null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
 }
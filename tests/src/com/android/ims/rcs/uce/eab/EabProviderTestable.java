@@ -94,6 +94,7 @@ public class EabProviderTestable extends EabProvider {
             db.execSQL(SQL_CREATE_COMMON_TABLE);
             db.execSQL(SQL_CREATE_PRESENCE_TUPLE_TABLE);
             db.execSQL(SQL_CREATE_OPTIONS_TABLE);
+            EabProvider.EabDatabaseHelper.createIndexes(db);
         }
 
         @Override
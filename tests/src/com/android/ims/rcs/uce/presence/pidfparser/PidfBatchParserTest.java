@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce.presence.pidfparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.net.Uri;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.ims.ImsTestBase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+public class PidfBatchParserTest extends ImsTestBase {
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    @Test
+    @SmallTest
+    public void testParseEmptyDocuments() throws Exception {
+        PidfBatchParser.Result result = PidfBatchParser.parse(null);
+        assertTrue(result.getCapabilities().isEmpty());
+        assertEquals(0, result.getFailedCount());
+
+        result = PidfBatchParser.parse(Collections.emptyList());
+        assertTrue(result.getCapabilities().isEmpty());
+        assertEquals(0, result.getFailedCount());
+    }
+
+    @Test
+    @SmallTest
+    public void testParseKeepsDocumentOrder() throws Exception {
+        final int size = PidfBatchParser.MIN_DOCUMENTS_PER_CHUNK * 8;
+        List<String> pidfXmls = new ArrayList<>();
+        List<Uri> expectedContacts = new ArrayList<>();
+        int failedCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (i % 10 == 5) {
+                // The document which cannot be parsed.
+                pidfXmls.add("");
+                failedCount++;
+                continue;
+            }
+            String contact = "tel:+1650555" + String.format("%04d", i);
+            pidfXmls.add(getPidfData(contact));
+            expectedContacts.add(Uri.parse(contact));
+        }
+
+        PidfBatchParser.Result result = PidfBatchParser.parse(pidfXmls);
+
+        assertEquals(failedCount, result.getFailedCount());
+        List<RcsContactUceCapabilityWrapper> capabilities = result.getCapabilities();
+        assertEquals(expectedContacts.size(), capabilities.size());
+        for (int i = 0; i < expectedContacts.size(); i++) {
+            assertEquals(expectedContacts.get(i), capabilities.get(i).getEntityUri());
+        }
+    }
+
+    private String getPidfData(String contact) {
+        StringBuilder pidfBuilder = new StringBuilder();
+        pidfBuilder.append("<?xml version='1.0' encoding='utf-8' standalone='yes' ?>")
+                .append("<presence entity=\"" + contact + "\"")
+                .append(" xmlns=\"urn:ietf:params:xml:ns:pidf\"")
+                .append(" xmlns:op=\"urn:oma:xml:prs:pidf:oma-pres\"")
+                .append(" xmlns:caps=\"urn:ietf:params:xml:ns:pidf:caps\">")
+                .append("<tuple id=\"tid0\">")
+                .append("<status><basic>open</basic></status>")
+                .append("<op:service-description>")
+                .append("<op:service-id>org.3gpp.urn:urn-7:3gpp-application.ims.iari.rcse.dp")
+                .append("</op:service-id>")
+                .append("<op:version>1.0</op:version>")
+                .append("<op:description>DiscoveryPresence</op:description>")
+                .append("</op:service-description>")
+                .append("<contact>").append(contact).append("</contact>")
+                .append("</tuple></presence>");
+        return pidfBuilder.toString();
+    }
+}
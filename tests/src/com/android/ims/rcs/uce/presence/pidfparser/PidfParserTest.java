@@ -34,8 +34,10 @@ import androidx.test.filters.SmallTest;
 
 import com.android.ims.ImsTestBase;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.After;
@@ -118,6 +120,44 @@ public class PidfParserTest extends ImsTestBase {
         assertFalse(presenceTuple1.getServiceCapabilities().isVideoCapable());
     }
 
+    @Test
+    @SmallTest
+    public void testConvertFromBytesAndCharSequence() throws Exception {
+        final String contact = "tel:+11234567890";
+        final String serviceId = "org.3gpp.urn:urn-7:3gpp-application.ims.iari.rcse.dp";
+        final String pidfData = getPidfDataWithNewlineAndWhitespaceCharacters();
+
+        RcsContactUceCapabilityWrapper bytesWrapper = PidfParser.getRcsContactUceCapabilityWrapper(
+                pidfData.getBytes(StandardCharsets.UTF_8));
+        RcsContactUceCapabilityWrapper charsWrapper = PidfParser.getRcsContactUceCapabilityWrapper(
+                new StringBuilder(pidfData));
+
+        for (RcsContactUceCapabilityWrapper wrapper : Arrays.asList(bytesWrapper, charsWrapper)) {
+            assertNotNull(wrapper);
+            RcsContactUceCapability capabilities = wrapper.toRcsContactUceCapability();
+            assertEquals(Uri.parse(contact), capabilities.getContactUri());
+            assertEquals(5, capabilities.getCapabilityTuples().size());
+            assertNotNull(capabilities.getCapabilityTuple(serviceId));
+        }
+    }
+
+    @Test
+    @SmallTest
+    public void testParseAfterMalformedPidf() throws Exception {
+        final String contact = "tel:+11234567890";
+        final String pidfData = getPidfData(contact, "DiscoveryPresence", "DiscoveryPresence",
+                true, false);
+
+        // The parser of this thread is still usable after the malformed PIDF.
+        assertNull(PidfParser.getRcsContactUceCapabilityWrapper("<presence><tuple>"));
+        assertNull(PidfParser.getRcsContactUceCapabilityWrapper(new byte[0]));
+
+        RcsContactUceCapabilityWrapper wrapper =
+                PidfParser.getRcsContactUceCapabilityWrapper(pidfData);
+        assertNotNull(wrapper);
+        assertEquals(Uri.parse(contact), wrapper.toRcsContactUceCapability().getContactUri());
+    }
+
     @Test
     @SmallTest
     public void testConvertFromNewlineIncludedPidfToRcsContactUceCapability() throws Exception {
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce.presence.pidfparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.net.Uri;
+import android.telephony.ims.RcsContactPresenceTuple;
+import android.telephony.ims.RcsContactPresenceTuple.ServiceCapabilities;
+import android.telephony.ims.RcsContactUceCapability;
+import android.telephony.ims.RcsContactUceCapability.PresenceBuilder;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.ims.ImsTestBase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+public class PidfTemplateCacheTest extends ImsTestBase {
+
+    private static final String SERVICE_ID_MMTEL = "org.3gpp.urn:urn-7:3gpp-service.ims.icsi.mmtel";
+    private static final String SERVICE_ID_PRESENCE =
+            "org.3gpp.urn:urn-7:3gpp-application.ims.iari.rcse.dp";
+
+    private final Uri mContact = Uri.parse("sip:+16505551111@test.com");
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    @Test
+    @SmallTest
+    public void testSameDocumentAsPidfParser() throws Exception {
+        PidfTemplateCache cache = new PidfTemplateCache();
+        RcsContactUceCapability capability = getCapability(true);
+
+        String pidf = cache.convertToPidf(capability);
+
+        assertNotNull(pidf);
+        assertEquals(removeTupleIds(PidfParser.convertToPidf(capability)), removeTupleIds(pidf));
+    }
+
+    @Test
+    @SmallTest
+    public void testOnlyChangedTupleSerialized() throws Exception {
+        PidfTemplateCache cache = new PidfTemplateCache();
+        cache.convertToPidf(getCapability(true));
+        assertEquals(2, cache.getSerializedTupleCount());
+
+        // Nothing has changed.
+        String pidf = cache.convertToPidf(getCapability(true));
+        assertEquals(2, cache.getSerializedTupleCount());
+        assertTrue(pidf.contains("<caps:video>true</caps:video>"));
+
+        // Only the MMTEL tuple has changed.
+        pidf = cache.convertToPidf(getCapability(false));
+        assertEquals(3, cache.getSerializedTupleCount());
+        assertTrue(pidf.contains("<caps:video>false</caps:video>"));
+        assertFalse(pidf.contains("<caps:video>true</caps:video>"));
+
+        RcsContactUceCapability parsedCapability =
+                PidfParser.getRcsContactUceCapabilityWrapper(pidf).toRcsContactUceCapability();
+        assertEquals(2, parsedCapability.getCapabilityTuples().size());
+        assertFalse(parsedCapability.getCapabilityTuple(SERVICE_ID_MMTEL)
+                .getServiceCapabilities().isVideoCapable());
+        assertNotNull(parsedCapability.getCapabilityTuple(SERVICE_ID_PRESENCE));
+    }
+
+    @Test
+    @SmallTest
+    public void testClear() throws Exception {
+        PidfTemplateCache cache = new PidfTemplateCache();
+        cache.convertToPidf(getCapability(true));
+
+        cache.clear();
+        cache.convertToPidf(getCapability(true));
+
+        assertEquals(4, cache.getSerializedTupleCount());
+    }
+
+    private RcsContactUceCapability getCapability(boolean isVideoCapable) {
+        RcsContactPresenceTuple.Builder mmtelBuilder = new RcsContactPresenceTuple.Builder(
+                RcsContactPresenceTuple.TUPLE_BASIC_STATUS_OPEN, SERVICE_ID_MMTEL, "1.0");
+        mmtelBuilder.setServiceCapabilities(
+                new ServiceCapabilities.Builder(true, isVideoCapable).build())
+                .setContactUri(mContact);
+
+        RcsContactPresenceTuple.Builder presenceBuilder = new RcsContactPresenceTuple.Builder(
+                RcsContactPresenceTuple.TUPLE_BASIC_STATUS_OPEN, SERVICE_ID_PRESENCE, "1.0");
+        presenceBuilder.setServiceDescription("DiscoveryPresence").setContactUri(mContact);
+
+        PresenceBuilder builder = new PresenceBuilder(mContact,
+                RcsContactUceCapability.SOURCE_TYPE_CACHED,
+                RcsContactUceCapability.REQUEST_RESULT_FOUND);
+        builder.addCapabilityTuple(mmtelBuilder.build());
+        builder.addCapabilityTuple(presenceBuilder.build());
+        return builder.build();
+    }
+
+    private String removeTupleIds(String pidf) {
+        return pidf.replaceAll("id=\"tid\\d+\"", "id=\"tid\"");
+    }
+}
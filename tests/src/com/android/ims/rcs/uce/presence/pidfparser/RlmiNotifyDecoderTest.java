@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce.presence.pidfparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.net.Uri;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.ims.ImsTestBase;
+import com.android.ims.rcs.uce.presence.pidfparser.RlmiNotifyDecoder.Resource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+public class RlmiNotifyDecoderTest extends ImsTestBase {
+
+    private static final String BOUNDARY = "50UBfW7LSCVLtggUPe5z";
+    private static final String CONTACT_1 = "sip:+16505551111@test.com";
+    private static final String CONTACT_2 = "sip:+16505552222@test.com";
+    private static final String CONTACT_3 = "sip:+16505553333@test.com";
+
+    private final List<Resource> mResources = new ArrayList<>();
+    private final List<RcsContactUceCapabilityWrapper> mCapabilities = new ArrayList<>();
+    private final List<Resource> mCapabilityResources = new ArrayList<>();
+
+    private final RlmiNotifyDecoder.Listener mListener = new RlmiNotifyDecoder.Listener() {
+        @Override
+        public void onResourceListDecoded(List<Resource> resources) {
+            mResources.addAll(resources);
+        }
+
+        @Override
+        public void onCapabilityDecoded(RcsContactUceCapabilityWrapper capability,
+                Resource resource) {
+            mCapabilities.add(capability);
+            mCapabilityResources.add(resource);
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    @Test
+    @SmallTest
+    public void testGetBoundary() throws Exception {
+        assertEquals(BOUNDARY, RlmiNotifyDecoder.getBoundary("multipart/related;"
+                + "type=\"application/rlmi+xml\";boundary=\"" + BOUNDARY + "\""));
+        assertEquals(BOUNDARY, RlmiNotifyDecoder.getBoundary(
+                "multipart/related; Boundary=" + BOUNDARY));
+        assertNull(RlmiNotifyDecoder.getBoundary("application/pidf+xml"));
+        assertNull(RlmiNotifyDecoder.getBoundary(null));
+    }
+
+    @Test
+    @SmallTest
+    public void testDecodeMultipartBody() throws Exception {
+        String body = "--" + BOUNDARY + "\r\n"
+                + "Content-Transfer-Encoding: binary\r\n"
+                + "Content-ID: <rlmi@test.com>\r\n"
+                + "Content-Type: application/rlmi+xml;charset=\"UTF-8\"\r\n"
+                + "\r\n"
+                + getRlmiData() + "\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-ID: <cid1@test.com>\r\n"
+                + "Content-Type: application/pidf+xml;charset=\"UTF-8\"\r\n"
+                + "\r\n"
+                + getPidfData(CONTACT_1) + "\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-ID: <cid2@test.com>\r\n"
+                + "Content-Type: application/pidf+xml;charset=\"UTF-8\"\r\n"
+                + "\r\n"
+                + getPidfData(CONTACT_2) + "\r\n"
+                + "--" + BOUNDARY + "--\r\n";
+        RlmiNotifyDecoder decoder = new RlmiNotifyDecoder(
+                body.getBytes(StandardCharsets.UTF_8), BOUNDARY);
+
+        assertTrue(decoder.decode(mListener));
+
+        assertEquals(0, decoder.getFailedCount());
+        assertEquals(3, mResources.size());
+        Resource terminatedResource = mResources.get(2);
+        assertEquals(Uri.parse(CONTACT_3), terminatedResource.getUri());
+        assertTrue(terminatedResource.isTerminated());
+        assertEquals("rejected", terminatedResource.getReason());
+        assertNull(terminatedResource.getContentId());
+
+        assertEquals(2, mCapabilities.size());
+        assertEquals(Uri.parse(CONTACT_1), mCapabilities.get(0).getEntityUri());
+        assertEquals(Uri.parse(CONTACT_1), mCapabilityResources.get(0).getUri());
+        assertEquals(Uri.parse(CONTACT_2), mCapabilities.get(1).getEntityUri());
+        assertEquals(Uri.parse(CONTACT_2), mCapabilityResources.get(1).getUri());
+        assertEquals("active", mCapabilityResources.get(1).getState());
+    }
+
+    @Test
+    @SmallTest
+    public void testDecodeMalformedBody() throws Exception {
+        String body = "--" + BOUNDARY + "\r\n"
+                + "Content-Type: application/pidf+xml\r\n"
+                + "\r\n"
+                + getPidfData(CONTACT_1) + "\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Type: application/pidf+xml\r\n"
+                + "\r\n"
+                + "<presence>";
+        RlmiNotifyDecoder decoder = new RlmiNotifyDecoder(
+                body.getBytes(StandardCharsets.UTF_8), BOUNDARY);
+
+        assertFalse(decoder.decode(mListener));
+
+        // The part before the malformed part is still decoded.
+        assertEquals(1, mCapabilities.size());
+        assertNull(mCapabilityResources.get(0));
+    }
+
+    private String getRlmiData() {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<list xmlns=\"urn:ietf:params:xml:ns:rlmi\" uri=\"sip:rls@test.com\""
+                + " version=\"1\" fullState=\"true\">"
+                + "<resource uri=\"" + CONTACT_1 + "\">"
+                + "<instance id=\"1\" state=\"active\" cid=\"cid1@test.com\"/>"
+                + "</resource>"
+                + "<resource uri=\"" + CONTACT_2 + "\">"
+                + "<instance id=\"2\" state=\"active\" cid=\"cid2@test.com\"/>"
+                + "</resource>"
+                + "<resource uri=\"" + CONTACT_3 + "\">"
+                + "<instance id=\"3\" state=\"terminated\" reason=\"rejected\"/>"
+                + "</resource>"
+                + "</list>";
+    }
+
+    private String getPidfData(String contact) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n"
+                + "<presence entity=\"" + contact + "\""
+                + " xmlns=\"urn:ietf:params:xml:ns:pidf\""
+                + " xmlns:op=\"urn:oma:xml:prs:pidf:oma-pres\">\r\n"
+                + "<tuple id=\"tid0\"><status><basic>open</basic></status>"
+                + "<op:service-description>"
+                + "<op:service-id>org.3gpp.urn:urn-7:3gpp-application.ims.iari.rcse.dp"
+                + "</op:service-id>"
+                + "<op:version>1.0</op:version>"
+                + "</op:service-description>"
+                + "<contact>" + contact + "</contact>"
+                + "</tuple></presence>";
+    }
+}
@@ -27,10 +27,14 @@ import android.content.Context;
 import android.telephony.CarrierConfigManager;
 import android.telephony.TelephonyManager;
 import android.telephony.ims.RcsContactPresenceTuple;
+import android.telephony.ims.RcsContactUceCapability;
+import android.telephony.ims.feature.MmTelFeature.MmTelCapabilities;
 import android.util.ArraySet;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import android.net.Uri;
 import android.telecom.PhoneAccount;
@@ -39,6 +43,7 @@ import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.filters.SmallTest;
 
 import com.android.ims.ImsTestBase;
+import com.android.ims.rcs.uce.util.FeatureTags;
 import com.android.ims.rcs.uce.util.UceUtils;
 
 import org.junit.After;
@@ -231,6 +236,37 @@ public class DeviceCapabilityInfoTest extends ImsTestBase {
         }
     }
 
+    @Test
+    @SmallTest
+    public void testOptionsCapabilitiesMemoizedPerVersion() throws Exception {
+        DeviceCapabilityInfo deviceCapInfo = createDeviceCapabilityInfo();
+        Uri[] uris = new Uri[] {Uri.fromParts(PhoneAccount.SCHEME_SIP, sipNumber, null)};
+        deviceCapInfo.updateRcsAssociatedUri(uris);
+        long version = deviceCapInfo.getCapabilityVersion();
+
+        RcsContactUceCapability capability = deviceCapInfo.getDeviceCapabilities(
+                RcsContactUceCapability.CAPABILITY_MECHANISM_OPTIONS, mMockContext);
+
+        // The capabilities are not built again when nothing changed.
+        assertSame(capability, deviceCapInfo.getDeviceCapabilities(
+                RcsContactUceCapability.CAPABILITY_MECHANISM_OPTIONS, mMockContext));
+        assertFalse(capability.getFeatureTags().contains(FeatureTags.FEATURE_TAG_MMTEL));
+
+        // The settings which are not part of the capabilities do not create a new version.
+        deviceCapInfo.updateMobileData(false);
+        assertEquals(version, deviceCapInfo.getCapabilityVersion());
+
+        MmTelCapabilities mmtelCapabilities = new MmTelCapabilities();
+        mmtelCapabilities.addCapabilities(MmTelCapabilities.CAPABILITY_TYPE_VOICE);
+        deviceCapInfo.updateMmtelCapabilitiesChanged(mmtelCapabilities);
+
+        assertTrue(deviceCapInfo.getCapabilityVersion() > version);
+        RcsContactUceCapability updatedCapability = deviceCapInfo.getDeviceCapabilities(
+                RcsContactUceCapability.CAPABILITY_MECHANISM_OPTIONS, mMockContext);
+        assertNotSame(capability, updatedCapability);
+        assertTrue(updatedCapability.getFeatureTags().contains(FeatureTags.FEATURE_TAG_MMTEL));
+    }
+
     private DeviceCapabilityInfo createDeviceCapabilityInfo() {
         DeviceCapabilityInfo deviceCapInfo = new DeviceCapabilityInfo(mSubId, null);
         return deviceCapInfo;
@@ -208,6 +208,30 @@ public class DeviceCapabilityListenerTest extends ImsTestBase {
                 PublishController.PUBLISH_TRIGGER_MMTEL_CAPABILITY_CHANGE);
     }
 
+    @Test
+    @SmallTest
+    public void testTriggersCoalescedIntoMostUrgentType() throws Exception {
+        DeviceCapabilityListener deviceCapListener = createDeviceCapabilityListener();
+        deviceCapListener.setImsCallbackRegistered(true);
+        ImsRegistrationAttributes attr = new ImsRegistrationAttributes.Builder(
+                ImsRegistrationImplBase.REGISTRATION_TECH_LTE).build();
+        doReturn(true).when(mDeviceCapability).updateImsRcsRegistered(attr);
+
+        // The RCS registration and the MMTEL capability change arrive in a burst.
+        deviceCapListener.mRcsRegistrationCallback.onRegistered(attr);
+        deviceCapListener.mMmtelCapabilityCallback.onCapabilitiesStatusChanged(
+                new MmTelFeature.MmTelCapabilities());
+
+        Handler handler = deviceCapListener.getHandler();
+        waitForHandlerActionDelayed(handler, HANDLER_WAIT_TIMEOUT_MS, HANDLER_SENT_DELAY_MS);
+
+        // Only one publish request of the most urgent trigger type is sent.
+        verify(mCallback).requestPublishFromInternal(
+                PublishController.PUBLISH_TRIGGER_RCS_REGISTERED);
+        verify(mCallback, never()).requestPublishFromInternal(
+                PublishController.PUBLISH_TRIGGER_MMTEL_CAPABILITY_CHANGE);
+    }
+
     @Test
     @SmallTest
     public void testImsUnregistration() throws Exception {
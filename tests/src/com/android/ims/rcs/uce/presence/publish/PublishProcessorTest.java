@@ -24,6 +24,7 @@ import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import android.content.Context;
@@ -62,6 +63,8 @@ public class PublishProcessorTest extends ImsTestBase {
     private long mTaskId = 1L;
 
     public static class TestPublishProcessor extends PublishProcessor {
+        private boolean mSkipUnchangedPublishEnabled;
+
         public TestPublishProcessor(Context context, int subId,
                 DeviceCapabilityInfo capabilityInfo,
                 PublishControllerCallback publishCtrlCallback,
@@ -73,6 +76,15 @@ public class PublishProcessorTest extends ImsTestBase {
         protected boolean isEabProvisioned() {
             return true;
         }
+
+        @Override
+        protected boolean isSkipUnchangedPublishEnabled() {
+            return mSkipUnchangedPublishEnabled;
+        }
+
+        public void setSkipUnchangedPublishEnabled(boolean enabled) {
+            mSkipUnchangedPublishEnabled = enabled;
+        }
     }
 
     @Before
@@ -108,6 +120,37 @@ public class PublishProcessorTest extends ImsTestBase {
         verify(mPublishCtrlCallback).notifyPendingPublishRequest();
     }
 
+    @Test
+    @SmallTest
+    public void testPublishSkippedWhenCapabilitiesPublished() throws Exception {
+        TestPublishProcessor publishProcessor = (TestPublishProcessor) getPublishProcessor();
+        publishProcessor.setSkipUnchangedPublishEnabled(true);
+
+        // The changed capabilities result in the same PIDF as the last successful PUBLISH.
+        doReturn(true).when(mProcessorState).isPidfPublished(any());
+        publishProcessor.doPublish(PublishController.PUBLISH_TRIGGER_VT_SETTING_CHANGE);
+
+        verify(mDeviceCapabilities).setPresencePublishResult(true);
+        verify(mRcsFeatureManager, never()).requestPublication(any(), any());
+        verify(mProcessorState).setPublishingFlag(false);
+    }
+
+    @Test
+    @SmallTest
+    public void testServicePublishNotSkippedWhenCapabilitiesPublished() throws Exception {
+        doReturn(true).when(mProcessorState).isPidfPublished(any());
+        TestPublishProcessor publishProcessor = (TestPublishProcessor) getPublishProcessor();
+        publishProcessor.setSkipUnchangedPublishEnabled(true);
+
+        // The ImsService is waiting for the PUBLISH which it requested.
+        publishProcessor.doPublish(PublishController.PUBLISH_TRIGGER_SERVICE);
+        verify(mRcsFeatureManager).requestPublication(any(), any());
+
+        // The retry is not skipped either.
+        publishProcessor.doPublish(PublishController.PUBLISH_TRIGGER_RETRY);
+        verify(mRcsFeatureManager, times(2)).requestPublication(any(), any());
+    }
+
     @Test
     @SmallTest
     public void testPublishWithoutResetRetryCount() throws Exception {
@@ -302,6 +302,31 @@ public class PublishServiceDescTrackerTest {
         assertEquals(expectedSet, t1.copyRegistrationCapabilities());
     }
 
+    @SmallTest
+    @Test
+    public void testManyFeatureTagsMatch() {
+        // Configure more feature tags than the bits of a single word.
+        String[] carrierConfig = new String[100];
+        for (int i = 0; i < carrierConfig.length; i++) {
+            carrierConfig[i] = "org.test.service" + i + "|1.0|test" + i
+                    + "|+g.test.service" + i + ";+g.test.common";
+        }
+        PublishServiceDescTracker t1 = PublishServiceDescTracker.fromCarrierConfig(carrierConfig);
+
+        Set<ServiceDescription> expectedSet = new ArraySet<>(Arrays.asList(
+                new ServiceDescription("org.test.service1", "1.0", "test1"),
+                new ServiceDescription("org.test.service99", "1.0", "test99")));
+        Set<String> imsReg = createImsRegistration("+g.test.common", "+g.test.service1",
+                "+g.test.service99", "+g.test.unknown");
+        t1.updateImsRegistration(imsReg);
+        assertEquals(expectedSet, t1.copyRegistrationCapabilities());
+
+        // The common tag is required by every configured service.
+        imsReg = createImsRegistration("+g.test.service1", "+g.test.service99");
+        t1.updateImsRegistration(imsReg);
+        assertEquals(Collections.emptySet(), t1.copyRegistrationCapabilities());
+    }
+
     private Set<String> createImsRegistration(String... imsReg) {
         return new ArraySet<>(imsReg);
     }
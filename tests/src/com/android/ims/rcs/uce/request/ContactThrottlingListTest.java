@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.net.Uri;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.ims.ImsTestBase;
+import com.android.ims.rcs.uce.util.NetworkSipCode;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+public class ContactThrottlingListTest extends ImsTestBase {
+
+    private int mSubId = 1;
+    private Uri mContact1 = Uri.fromParts("tel", "+16505551111", null);
+    private Uri mContact2 = Uri.fromParts("tel", "+16505552222", null);
+    private Uri mContact3 = Uri.fromParts("tel", "+16505553333", null);
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    @Test
+    @SmallTest
+    public void testGetInThrottlingListUris() throws Exception {
+        ContactThrottlingList throttlingList = new ContactThrottlingList(mSubId);
+        throttlingList.addToThrottlingList(Arrays.asList(mContact1, mContact2),
+                NetworkSipCode.SIP_CODE_REQUEST_TIMEOUT);
+
+        List<Uri> result = throttlingList.getInThrottlingListUris(
+                Arrays.asList(mContact1, mContact3));
+
+        assertEquals(Collections.singletonList(mContact1), result);
+    }
+
+    @Test
+    @SmallTest
+    public void testContactAddedOnlyOnce() throws Exception {
+        ContactThrottlingList throttlingList = new ContactThrottlingList(mSubId);
+        throttlingList.addToThrottlingList(Collections.singletonList(mContact1),
+                NetworkSipCode.SIP_CODE_REQUEST_TIMEOUT);
+        // The same contact in the SIP URI format.
+        throttlingList.addToThrottlingList(
+                Arrays.asList(Uri.parse("sip:+16505551111@test.com"), mContact2),
+                NetworkSipCode.SIP_CODE_REQUEST_TIMEOUT);
+
+        assertEquals(2, throttlingList.size());
+    }
+
+    @Test
+    @SmallTest
+    public void testReset() throws Exception {
+        ContactThrottlingList throttlingList = new ContactThrottlingList(mSubId);
+        throttlingList.addToThrottlingList(Arrays.asList(mContact1, mContact2),
+                NetworkSipCode.SIP_CODE_REQUEST_TIMEOUT);
+
+        throttlingList.reset();
+
+        assertEquals(0, throttlingList.size());
+        assertTrue(throttlingList.getInThrottlingListUris(
+                Arrays.asList(mContact1, mContact2)).isEmpty());
+    }
+}
@@ -126,7 +126,7 @@ public class OptionsCoordinatorTest extends ImsTestBase {
 
         coordinator.onRequestUpdated(mTaskId, REQUEST_UPDATE_NETWORK_RESPONSE);
 
-        verify(mRequestMgrCallback).saveCapabilities(updatedCapList);
+        verify(mRequestMgrCallback).saveCapabilities(mTaskId, updatedCapList);
         verify(mUceCallback).onCapabilitiesReceived(updatedCapList);
         verify(mResponse).removeUpdatedCapabilities(updatedCapList);
 
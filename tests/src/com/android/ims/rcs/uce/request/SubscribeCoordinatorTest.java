@@ -187,7 +187,7 @@ public class SubscribeCoordinatorTest extends ImsTestBase {
         coordinator.onRequestUpdated(mTaskId, REQUEST_UPDATE_NETWORK_RESPONSE);
 
         verify(mUceStatsWriter).setSubscribeResponse(eq(mSubId), eq(mTaskId), eq(400));
-        verify(mRequestMgrCallback, never()).saveCapabilities(any());
+        verify(mRequestMgrCallback, never()).saveCapabilities(anyLong(), any());
         verify(mRequest).onFinish();
     }
 
@@ -228,7 +228,7 @@ public class SubscribeCoordinatorTest extends ImsTestBase {
 
         coordinator.onRequestUpdated(mTaskId, REQUEST_UPDATE_CAPABILITY_UPDATE);
 
-        verify(mRequestMgrCallback).saveCapabilities(updatedCapList);
+        verify(mRequestMgrCallback).saveCapabilities(mTaskId, updatedCapList);
         verify(mUceCallback).onCapabilitiesReceived(updatedCapList);
         verify(mResponse).removeUpdatedCapabilities(updatedCapList);
 
@@ -247,7 +247,7 @@ public class SubscribeCoordinatorTest extends ImsTestBase {
 
         coordinator.onRequestUpdated(mTaskId, REQUEST_UPDATE_RESOURCE_TERMINATED);
 
-        verify(mRequestMgrCallback).saveCapabilities(updatedCapList);
+        verify(mRequestMgrCallback).saveCapabilities(mTaskId, updatedCapList);
         verify(mUceCallback).onCapabilitiesReceived(updatedCapList);
         verify(mResponse).removeTerminatedResources(updatedCapList);
 
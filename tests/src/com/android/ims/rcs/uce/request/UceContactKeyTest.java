@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.net.Uri;
+import android.telephony.ims.RcsContactUceCapability;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.ims.ImsTestBase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+public class UceContactKeyTest extends ImsTestBase {
+
+    private Uri mTelUri = Uri.fromParts("tel", "+16505551111", null);
+    private Uri mSipUri = Uri.parse("sip:+16505551111@test.com;user=phone");
+    private Uri mOtherUri = Uri.fromParts("tel", "+16505552222", null);
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        UceContactKey.clearPool();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        UceContactKey.clearPool();
+        super.tearDown();
+    }
+
+    @Test
+    @SmallTest
+    public void testContactMatchedAcrossSchemes() throws Exception {
+        assertEquals(UceContactKey.of(mTelUri), UceContactKey.of(mSipUri));
+        assertEquals(UceContactKey.of(mTelUri).hashCode(), UceContactKey.of(mSipUri).hashCode());
+        assertNotEquals(UceContactKey.of(mTelUri), UceContactKey.of(mOtherUri));
+        assertEquals("sip", UceContactKey.of(mSipUri).getScheme());
+    }
+
+    @Test
+    @SmallTest
+    public void testKeyShared() throws Exception {
+        assertSame(UceContactKey.of(mTelUri), UceContactKey.of(Uri.parse(mTelUri.toString())));
+    }
+
+    @Test
+    @SmallTest
+    public void testResponseMatchesReceivedCapabilities() throws Exception {
+        CapabilityRequestResponse response = new CapabilityRequestResponse();
+        response.setRequestContacts(Arrays.asList(mTelUri, mOtherUri));
+
+        // The network responds the SIP URI of the contact which is requested with the TEL URI.
+        RcsContactUceCapability capability = new RcsContactUceCapability.PresenceBuilder(
+                mSipUri, RcsContactUceCapability.SOURCE_TYPE_NETWORK,
+                RcsContactUceCapability.REQUEST_RESULT_FOUND).build();
+        response.addUpdatedCapabilities(Collections.singletonList(capability));
+
+        List<Uri> notReceivedContacts = response.getNotReceiveCapabilityUpdatedContact();
+        assertEquals(Collections.singletonList(mOtherUri), notReceivedContacts);
+
+        capability = new RcsContactUceCapability.PresenceBuilder(mOtherUri,
+                RcsContactUceCapability.SOURCE_TYPE_NETWORK,
+                RcsContactUceCapability.REQUEST_RESULT_FOUND).build();
+        response.addUpdatedCapabilities(Collections.singletonList(capability));
+        assertTrue(response.haveAllRequestCapsUpdatedBeenReceived());
+    }
+
+    @Test
+    @SmallTest
+    public void testResponseMatchesLocalNumberWithE164Number() throws Exception {
+        Uri localTelUri = Uri.fromParts("tel", "6505551234", null);
+        Uri e164SipUri = Uri.parse("sip:+16505551234@test.com;user=phone");
+        CapabilityRequestResponse response = new CapabilityRequestResponse();
+        response.setRequestContacts(Arrays.asList(localTelUri, mOtherUri));
+
+        // The network responds the E.164 SIP URI of the contact requested with the local number.
+        RcsContactUceCapability capability = new RcsContactUceCapability.PresenceBuilder(
+                e164SipUri, RcsContactUceCapability.SOURCE_TYPE_NETWORK,
+                RcsContactUceCapability.REQUEST_RESULT_FOUND).build();
+        response.addUpdatedCapabilities(Collections.singletonList(capability));
+
+        assertEquals(Collections.singletonList(mOtherUri),
+                response.getNotReceiveCapabilityUpdatedContact());
+        assertTrue(UceContactKey.of(localTelUri).isSuffixMatched(UceContactKey.of(e164SipUri)));
+        assertFalse(UceContactKey.of(localTelUri).isSuffixMatched(UceContactKey.of(mOtherUri)));
+    }
+}
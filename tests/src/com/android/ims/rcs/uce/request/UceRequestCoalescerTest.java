@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce.request;
+
+import static android.telephony.ims.RcsContactUceCapability.CAPABILITY_MECHANISM_OPTIONS;
+import static android.telephony.ims.RcsContactUceCapability.CAPABILITY_MECHANISM_PRESENCE;
+import static android.telephony.ims.RcsContactUceCapability.REQUEST_RESULT_FOUND;
+import static android.telephony.ims.RcsContactUceCapability.SOURCE_TYPE_NETWORK;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import android.net.Uri;
+import android.telephony.ims.RcsContactUceCapability;
+import android.telephony.ims.RcsUceAdapter;
+import android.telephony.ims.aidl.IRcsUceControllerCallback;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.ims.ImsTestBase;
+import com.android.ims.rcs.uce.request.UceRequestCoalescer.CoalescedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+public class UceRequestCoalescerTest extends ImsTestBase {
+
+    @Mock IRcsUceControllerCallback mCallback1;
+    @Mock IRcsUceControllerCallback mCallback2;
+
+    private int mSubId = 1;
+    private Uri mContact1 = Uri.fromParts("tel", "+16505551111", null);
+    private Uri mContact2 = Uri.fromParts("tel", "+16505552222", null);
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    @Test
+    @SmallTest
+    public void testDuplicateContactAttachedToInFlightRequest() throws Exception {
+        UceRequestCoalescer coalescer = new UceRequestCoalescer(mSubId);
+        CoalescedRequest request1 = coalescer.coalesce(Collections.singletonList(mContact1),
+                CAPABILITY_MECHANISM_PRESENCE, UceRequestCoordinator.REQUEST_PRIORITY_INTERACTIVE,
+                mCallback1);
+        // The same contact in the SIP URI format should be attached to the first request.
+        Uri sipContact1 = Uri.parse("sip:+16505551111@test.com");
+        CoalescedRequest request2 = coalescer.coalesce(Arrays.asList(sipContact1, mContact2),
+                CAPABILITY_MECHANISM_PRESENCE, UceRequestCoordinator.REQUEST_PRIORITY_INTERACTIVE,
+                mCallback2);
+
+        assertEquals(Collections.singletonList(mContact1), request1.getUris());
+        assertEquals(Collections.singletonList(mContact2), request2.getUris());
+
+        // The result of the first request is forwarded to both requesters.
+        List<RcsContactUceCapability> caps1 = Collections.singletonList(createCapability(
+                mContact1));
+        request1.getCallback().onCapabilitiesReceived(caps1);
+        request1.getCallback().onComplete(null);
+        verify(mCallback1).onCapabilitiesReceived(caps1);
+        verify(mCallback1).onComplete(null);
+        verify(mCallback2).onCapabilitiesReceived(caps1);
+        verify(mCallback2, never()).onComplete(any());
+
+        // The second requester is completed when its own request is completed.
+        List<RcsContactUceCapability> caps2 = Collections.singletonList(createCapability(
+                mContact2));
+        request2.getCallback().onCapabilitiesReceived(caps2);
+        request2.getCallback().onComplete(null);
+        verify(mCallback2).onCapabilitiesReceived(caps2);
+        verify(mCallback2).onComplete(null);
+        assertEquals(0, coalescer.getInFlightContactCount());
+    }
+
+    @Test
+    @SmallTest
+    public void testAllContactsAttached() throws Exception {
+        UceRequestCoalescer coalescer = new UceRequestCoalescer(mSubId);
+        CoalescedRequest request1 = coalescer.coalesce(Arrays.asList(mContact1, mContact2),
+                CAPABILITY_MECHANISM_PRESENCE, UceRequestCoordinator.REQUEST_PRIORITY_INTERACTIVE,
+                mCallback1);
+        CoalescedRequest request2 = coalescer.coalesce(Collections.singletonList(mContact2),
+                CAPABILITY_MECHANISM_PRESENCE, UceRequestCoordinator.REQUEST_PRIORITY_BACKGROUND,
+                mCallback2);
+
+        assertEquals(0, request2.getUris().size());
+        assertNull(request2.getCallback());
+
+        request1.getCallback().onError(RcsUceAdapter.ERROR_SERVER_UNAVAILABLE, 1000L, null);
+        verify(mCallback1).onError(RcsUceAdapter.ERROR_SERVER_UNAVAILABLE, 1000L, null);
+        verify(mCallback2).onError(RcsUceAdapter.ERROR_SERVER_UNAVAILABLE, 1000L, null);
+        assertEquals(0, coalescer.getInFlightContactCount());
+    }
+
+    @Test
+    @SmallTest
+    public void testInteractiveRequestNotAttachedToBackgroundRequest() throws Exception {
+        UceRequestCoalescer coalescer = new UceRequestCoalescer(mSubId);
+        coalescer.coalesce(Collections.singletonList(mContact1), CAPABILITY_MECHANISM_PRESENCE,
+                UceRequestCoordinator.REQUEST_PRIORITY_BACKGROUND, mCallback1);
+        CoalescedRequest request2 = coalescer.coalesce(Collections.singletonList(mContact1),
+                CAPABILITY_MECHANISM_PRESENCE, UceRequestCoordinator.REQUEST_PRIORITY_INTERACTIVE,
+                mCallback2);
+
+        assertEquals(Collections.singletonList(mContact1), request2.getUris());
+    }
+
+    @Test
+    @SmallTest
+    public void testDifferentMechanismNotCoalesced() throws Exception {
+        UceRequestCoalescer coalescer = new UceRequestCoalescer(mSubId);
+        coalescer.coalesce(Collections.singletonList(mContact1), CAPABILITY_MECHANISM_PRESENCE,
+                UceRequestCoordinator.REQUEST_PRIORITY_INTERACTIVE, mCallback1);
+        CoalescedRequest request2 = coalescer.coalesce(Collections.singletonList(mContact1),
+                CAPABILITY_MECHANISM_OPTIONS, UceRequestCoordinator.REQUEST_PRIORITY_INTERACTIVE,
+                mCallback2);
+
+        assertEquals(Collections.singletonList(mContact1), request2.getUris());
+        verify(mCallback2, never()).onError(anyInt(), anyLong(), any());
+    }
+
+    @Test
+    @SmallTest
+    public void testReceivedCapabilitiesReplayedToAttachedRequester() throws Exception {
+        UceRequestCoalescer coalescer = new UceRequestCoalescer(mSubId);
+        CoalescedRequest request1 = coalescer.coalesce(Arrays.asList(mContact1, mContact2),
+                CAPABILITY_MECHANISM_PRESENCE, UceRequestCoordinator.REQUEST_PRIORITY_INTERACTIVE,
+                mCallback1);
+        List<RcsContactUceCapability> caps1 = Collections.singletonList(createCapability(
+                mContact1));
+        request1.getCallback().onCapabilitiesReceived(caps1);
+
+        // The capabilities received before the requester is attached are replayed to it.
+        CoalescedRequest request2 = coalescer.coalesce(Collections.singletonList(mContact1),
+                CAPABILITY_MECHANISM_PRESENCE, UceRequestCoordinator.REQUEST_PRIORITY_INTERACTIVE,
+                mCallback2);
+        assertEquals(0, request2.getUris().size());
+        verify(mCallback2).onCapabilitiesReceived(caps1);
+
+        // The capabilities of the contacts which the requester is not waiting for are not
+        // forwarded to it.
+        List<RcsContactUceCapability> caps2 = Collections.singletonList(createCapability(
+                mContact2));
+        request1.getCallback().onCapabilitiesReceived(caps2);
+        request1.getCallback().onComplete(null);
+        verify(mCallback2, never()).onCapabilitiesReceived(caps2);
+        verify(mCallback2).onComplete(null);
+    }
+
+    @Test
+    @SmallTest
+    public void testCapabilitiesInDifferentFormatForwardedToAttachedRequester()
+            throws Exception {
+        UceRequestCoalescer coalescer = new UceRequestCoalescer(mSubId);
+        Uri localContact = Uri.fromParts("tel", "6505551234", null);
+        CoalescedRequest request1 = coalescer.coalesce(Collections.singletonList(localContact),
+                CAPABILITY_MECHANISM_PRESENCE, UceRequestCoordinator.REQUEST_PRIORITY_INTERACTIVE,
+                mCallback1);
+        coalescer.coalesce(Collections.singletonList(localContact),
+                CAPABILITY_MECHANISM_PRESENCE, UceRequestCoordinator.REQUEST_PRIORITY_INTERACTIVE,
+                mCallback2);
+
+        // The network responds the E.164 number of the contact in the SIP URI format.
+        List<RcsContactUceCapability> caps = Collections.singletonList(createCapability(
+                Uri.parse("sip:+16505551234@test.com")));
+        request1.getCallback().onCapabilitiesReceived(caps);
+        request1.getCallback().onComplete(null);
+
+        verify(mCallback1).onCapabilitiesReceived(caps);
+        verify(mCallback2).onCapabilitiesReceived(caps);
+        verify(mCallback2).onComplete(null);
+    }
+
+    private RcsContactUceCapability createCapability(Uri contact) {
+        return new RcsContactUceCapability.PresenceBuilder(contact, SOURCE_TYPE_NETWORK,
+                REQUEST_RESULT_FOUND).build();
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.ims.ImsTestBase;
+import com.android.ims.rcs.uce.request.UceRequestManager.RequestManagerCallback;
+import com.android.ims.rcs.uce.util.NetworkSipCode;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+@RunWith(AndroidJUnit4.class)
+public class UceRequestDispatcherTest extends ImsTestBase {
+
+    @Mock RequestManagerCallback mRequestManagerCallback;
+
+    private int mSubId = 1;
+    private long mCoordinatorId1 = 1L;
+    private long mCoordinatorId2 = 2L;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    @Test
+    @SmallTest
+    public void testDispatchWithinConcurrencyLimit() throws Exception {
+        UceRequestDispatcher dispatcher = getUceRequestDispatcher();
+        dispatcher.updateConfig(2, 0L);
+
+        dispatcher.addRequest(mCoordinatorId1, Arrays.asList(1L, 2L, 3L));
+
+        verify(mRequestManagerCallback).notifySendingRequest(eq(mCoordinatorId1), eq(1L),
+                anyLong());
+        verify(mRequestManagerCallback).notifySendingRequest(eq(mCoordinatorId1), eq(2L),
+                anyLong());
+        assertEquals(1, dispatcher.getWaitingRequestCount());
+        assertEquals(2, dispatcher.getExecutingRequestCount());
+
+        dispatcher.onRequestFinished(1L);
+
+        verify(mRequestManagerCallback).notifySendingRequest(eq(mCoordinatorId1), eq(3L),
+                anyLong());
+        assertEquals(0, dispatcher.getWaitingRequestCount());
+        assertEquals(2, dispatcher.getExecutingRequestCount());
+    }
+
+    @Test
+    @SmallTest
+    public void testCoordinatorsDispatchedInTurn() throws Exception {
+        UceRequestDispatcher dispatcher = getUceRequestDispatcher();
+        dispatcher.updateConfig(1, 0L);
+
+        dispatcher.addRequest(mCoordinatorId1, Arrays.asList(1L, 2L, 3L));
+        dispatcher.addRequest(mCoordinatorId2, Collections.singletonList(4L));
+        dispatcher.onRequestFinished(1L);
+
+        // The request of the second coordinator should not wait for the whole first coordinator.
+        verify(mRequestManagerCallback).notifySendingRequest(eq(mCoordinatorId2), eq(4L),
+                anyLong());
+        verify(mRequestManagerCallback, times(0)).notifySendingRequest(eq(mCoordinatorId1),
+                eq(2L), anyLong());
+    }
+
+    @Test
+    @SmallTest
+    public void testInteractiveRequestsDispatchedFirst() throws Exception {
+        UceRequestDispatcher dispatcher = getUceRequestDispatcher();
+        dispatcher.updateConfig(1, 0L);
+
+        dispatcher.addRequest(mCoordinatorId1, UceRequestCoordinator.REQUEST_PRIORITY_BACKGROUND,
+                Arrays.asList(1L, 2L, 3L));
+        dispatcher.addRequest(mCoordinatorId2, UceRequestCoordinator.REQUEST_PRIORITY_INTERACTIVE,
+                Collections.singletonList(4L));
+        dispatcher.onRequestFinished(1L);
+
+        verify(mRequestManagerCallback).notifySendingRequest(eq(mCoordinatorId2), eq(4L),
+                anyLong());
+        verify(mRequestManagerCallback, times(0)).notifySendingRequest(eq(mCoordinatorId1),
+                eq(2L), anyLong());
+    }
+
+    @Test
+    @SmallTest
+    public void testBackgroundRequestsKeepSlotForInteractiveRequests() throws Exception {
+        UceRequestDispatcher dispatcher = getUceRequestDispatcher();
+        dispatcher.updateConfig(2, 0L);
+
+        dispatcher.addRequest(mCoordinatorId1, UceRequestCoordinator.REQUEST_PRIORITY_BACKGROUND,
+                Arrays.asList(1L, 2L, 3L));
+
+        // Only one background request can be executed and the other slot is kept.
+        assertEquals(1, dispatcher.getExecutingRequestCount());
+        assertEquals(2, dispatcher.getWaitingRequestCount());
+
+        dispatcher.addRequest(mCoordinatorId2, UceRequestCoordinator.REQUEST_PRIORITY_INTERACTIVE,
+                Collections.singletonList(4L));
+
+        verify(mRequestManagerCallback).notifySendingRequest(eq(mCoordinatorId2), eq(4L),
+                anyLong());
+        assertEquals(2, dispatcher.getExecutingRequestCount());
+    }
+
+    @Test
+    @SmallTest
+    public void testRequestsPacedByInterval() throws Exception {
+        UceRequestDispatcher dispatcher = getUceRequestDispatcher();
+        dispatcher.updateConfig(1, 1000L);
+
+        dispatcher.addRequest(mCoordinatorId1, Arrays.asList(1L, 2L));
+        dispatcher.onRequestFinished(1L);
+
+        ArgumentCaptor<Long> captor = ArgumentCaptor.forClass(Long.class);
+        verify(mRequestManagerCallback).notifySendingRequest(eq(mCoordinatorId1), eq(2L),
+                captor.capture());
+        assertTrue(captor.getValue() > 0L);
+        assertTrue(captor.getValue() <= 1000L);
+    }
+
+    @Test
+    @SmallTest
+    public void testPacingAdaptsToNetworkResponse() throws Exception {
+        UceRequestDispatcher dispatcher = getUceRequestDispatcher();
+
+        dispatcher.onNetworkResponse(NetworkSipCode.SIP_CODE_SERVICE_UNAVAILABLE, 0L);
+        assertEquals(2, dispatcher.getPacingFactor());
+        dispatcher.onNetworkResponse(NetworkSipCode.SIP_CODE_SERVICE_UNAVAILABLE, 0L);
+        assertEquals(4, dispatcher.getPacingFactor());
+
+        dispatcher.onNetworkResponse(NetworkSipCode.SIP_CODE_OK, 0L);
+        assertEquals(3, dispatcher.getPacingFactor());
+
+        for (int i = 0; i < 10; i++) {
+            dispatcher.onNetworkResponse(NetworkSipCode.SIP_CODE_SERVICE_UNAVAILABLE, 0L);
+        }
+        assertEquals(UceRequestDispatcher.MAX_PACING_FACTOR, dispatcher.getPacingFactor());
+    }
+
+    @Test
+    @SmallTest
+    public void testRetryAfterDelaysRequests() throws Exception {
+        UceRequestDispatcher dispatcher = getUceRequestDispatcher();
+        dispatcher.onNetworkResponse(NetworkSipCode.SIP_CODE_SERVICE_UNAVAILABLE, 5000L);
+
+        dispatcher.addRequest(mCoordinatorId1, Collections.singletonList(1L));
+
+        ArgumentCaptor<Long> captor = ArgumentCaptor.forClass(Long.class);
+        verify(mRequestManagerCallback).notifySendingRequest(eq(mCoordinatorId1), eq(1L),
+                captor.capture());
+        assertTrue(captor.getValue() > 4000L);
+    }
+
+    private UceRequestDispatcher getUceRequestDispatcher() {
+        return new UceRequestDispatcher(mSubId, mRequestManagerCallback);
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce.request;
+
+import static com.android.ims.rcs.uce.request.UceRequestLatencyTracker.STAGE_EAB_WRITE;
+import static com.android.ims.rcs.uce.request.UceRequestLatencyTracker.STAGE_NETWORK;
+import static com.android.ims.rcs.uce.request.UceRequestLatencyTracker.STAGE_NOTIFY;
+import static com.android.ims.rcs.uce.request.UceRequestLatencyTracker.STAGE_PARSE;
+import static com.android.ims.rcs.uce.request.UceRequestLatencyTracker.STAGE_QUEUED;
+import static com.android.ims.rcs.uce.request.UceRequestLatencyTracker.STAGE_SCHEDULED;
+import static com.android.ims.rcs.uce.request.UceRequestLatencyTracker.STAGE_TOTAL;
+
+import static org.junit.Assert.assertEquals;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.ims.ImsTestBase;
+import com.android.ims.rcs.uce.request.UceRequestLatencyTracker.LatencyHistogram;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+@RunWith(AndroidJUnit4.class)
+public class UceRequestLatencyTrackerTest extends ImsTestBase {
+
+    private int mSubId = 1;
+    private long mCurrentTime = 1000L;
+    private UceRequestLatencyTracker mTracker;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mTracker = new UceRequestLatencyTracker(mSubId, () -> mCurrentTime);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    @Test
+    @SmallTest
+    public void testRequestLifecycleStages() throws Exception {
+        mTracker.onRequestsCreated(Collections.singletonList(1L));
+        mCurrentTime += 20L;
+        mTracker.onRequestDispatched(1L);
+        mCurrentTime += 5L;
+        mTracker.onRequestExecuted(1L);
+        mCurrentTime += 300L;
+        mTracker.onNetworkResponse(1L);
+        mTracker.onCapabilitiesParsed(1L, 8L);
+        mCurrentTime += 1200L;
+        mTracker.onRequestTerminated(1L);
+        mTracker.onRequestFinished(1L);
+
+        assertLatency(STAGE_QUEUED, 20L);
+        assertLatency(STAGE_SCHEDULED, 5L);
+        assertLatency(STAGE_NETWORK, 300L);
+        assertLatency(STAGE_PARSE, 8L);
+        assertLatency(STAGE_NOTIFY, 1200L);
+        assertLatency(STAGE_TOTAL, 1525L);
+        assertEquals(0, mTracker.getTracedRequestCount());
+    }
+
+    @Test
+    @SmallTest
+    public void testStagesAreRecordedOnce() throws Exception {
+        mTracker.onRequestsCreated(Collections.singletonList(1L));
+        mCurrentTime += 10L;
+        mTracker.onRequestDispatched(1L);
+        mTracker.onRequestExecuted(1L);
+        mCurrentTime += 10L;
+        mTracker.onNetworkResponse(1L);
+
+        // The duplicated events must not be counted again.
+        mCurrentTime += 10L;
+        mTracker.onRequestDispatched(1L);
+        mTracker.onNetworkResponse(1L);
+
+        assertEquals(1, mTracker.getHistogram(STAGE_QUEUED).getCount());
+        assertEquals(1, mTracker.getHistogram(STAGE_NETWORK).getCount());
+        assertEquals(10L, mTracker.getHistogram(STAGE_NETWORK).getMax());
+    }
+
+    @Test
+    @SmallTest
+    public void testUnknownRequestIsIgnored() throws Exception {
+        mTracker.onRequestDispatched(1L);
+        mTracker.onRequestExecuted(1L);
+        mTracker.onNetworkResponse(1L);
+        mTracker.onRequestFinished(1L);
+
+        assertEquals(0, mTracker.getHistogram(STAGE_QUEUED).getCount());
+        assertEquals(0, mTracker.getHistogram(STAGE_TOTAL).getCount());
+    }
+
+    @Test
+    @SmallTest
+    public void testParseAndEabWriteLatencyPerRequest() throws Exception {
+        mTracker.onRequestsCreated(Arrays.asList(1L, 2L));
+
+        // The request receives two NOTIFYs.
+        mTracker.onCapabilitiesParsed(1L, 8L);
+        long startTime = mTracker.getTimestamp();
+        mCurrentTime += 40L;
+        mTracker.onCapabilitiesSaved(1L, startTime);
+        mTracker.onCapabilitiesParsed(1L, 4L);
+        startTime = mTracker.getTimestamp();
+        mCurrentTime += 20L;
+        mTracker.onCapabilitiesSaved(1L, startTime);
+
+        // The latency is recorded once per request when it is finished.
+        assertEquals(0, mTracker.getHistogram(STAGE_PARSE).getCount());
+        mTracker.onRequestFinished(1L);
+        assertLatency(STAGE_PARSE, 12L);
+        assertLatency(STAGE_EAB_WRITE, 60L);
+
+        // The request which receives no capabilities doesn't add any sample.
+        mTracker.onRequestFinished(2L);
+        assertEquals(1, mTracker.getHistogram(STAGE_PARSE).getCount());
+        assertEquals(1, mTracker.getHistogram(STAGE_EAB_WRITE).getCount());
+
+        // The unknown request is ignored.
+        mTracker.onCapabilitiesParsed(3L, 5L);
+        mTracker.onRequestFinished(3L);
+        assertEquals(1, mTracker.getHistogram(STAGE_PARSE).getCount());
+    }
+
+    @Test
+    @SmallTest
+    public void testHistogramPercentile() throws Exception {
+        mTracker.onRequestsCreated(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L));
+        for (long taskId = 1L; taskId <= 9L; taskId++) {
+            mTracker.onRequestFinished(taskId);
+        }
+        mCurrentTime += 3000L;
+        mTracker.onRequestFinished(10L);
+
+        LatencyHistogram histogram = mTracker.getHistogram(STAGE_TOTAL);
+        assertEquals(10, histogram.getCount());
+        assertEquals(300L, histogram.getAverage());
+        assertEquals(10L, histogram.getPercentile(50));
+        assertEquals(10L, histogram.getPercentile(90));
+        assertEquals(3000L, histogram.getPercentile(99));
+        assertEquals(3000L, histogram.getMax());
+    }
+
+    @Test
+    @SmallTest
+    public void testLatencyIsKeptAfterReport() throws Exception {
+        int requestCount = UceRequestLatencyTracker.REPORT_INTERVAL + 1;
+        for (long taskId = 1L; taskId <= requestCount; taskId++) {
+            mTracker.onRequestsCreated(Collections.singletonList(taskId));
+            mCurrentTime += 10L;
+            mTracker.onRequestFinished(taskId);
+        }
+
+        LatencyHistogram histogram = mTracker.getHistogram(STAGE_TOTAL);
+        assertEquals(requestCount, histogram.getCount());
+        assertEquals(10L, histogram.getMax());
+    }
+
+    @Test
+    @SmallTest
+    public void testReset() throws Exception {
+        mTracker.onRequestsCreated(Arrays.asList(1L, 2L));
+        assertEquals(2, mTracker.getTracedRequestCount());
+
+        mTracker.reset();
+
+        assertEquals(0, mTracker.getTracedRequestCount());
+    }
+
+    private void assertLatency(int stage, long expectedLatency) {
+        LatencyHistogram histogram = mTracker.getHistogram(stage);
+        assertEquals(1, histogram.getCount());
+        assertEquals(expectedLatency, histogram.getMax());
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.android.ims.rcs.uce.request;
 
+import static android.telephony.ims.RcsContactUceCapability.CAPABILITY_MECHANISM_OPTIONS;
 import static android.telephony.ims.RcsContactUceCapability.CAPABILITY_MECHANISM_PRESENCE;
 import static android.telephony.ims.RcsContactUceCapability.SOURCE_TYPE_CACHED;
 
@@ -30,9 +31,11 @@ import static com.android.ims.rcs.uce.request.UceRequestCoordinator.REQUEST_UPDA
 import static com.android.ims.rcs.uce.request.UceRequestCoordinator.REQUEST_UPDATE_TERMINATED;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
@@ -55,6 +58,7 @@ import com.android.ims.rcs.uce.eab.EabCapabilityResult;
 import com.android.ims.rcs.uce.request.UceRequestManager.RequestManagerCallback;
 import com.android.ims.rcs.uce.request.UceRequestManager.UceUtilsProxy;
 import com.android.ims.rcs.uce.util.FeatureTags;
+import com.android.ims.rcs.uce.util.NetworkSipCode;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -273,6 +277,10 @@ public class UceRequestManagerTest extends ImsTestBase {
         requestMgrCallback.saveCapabilities(capabilityList);
         verify(mCallback).saveCapabilities(capabilityList);
 
+        List<RcsContactUceCapability> requestCapabilityList = new ArrayList<>();
+        requestMgrCallback.saveCapabilities(1L, requestCapabilityList);
+        verify(mCallback).saveCapabilities(requestCapabilityList);
+
         requestMgrCallback.getDeviceCapabilities(CAPABILITY_MECHANISM_PRESENCE);
         verify(mCallback).getDeviceCapabilities(CAPABILITY_MECHANISM_PRESENCE);
 
@@ -342,6 +350,64 @@ public class UceRequestManagerTest extends ImsTestBase {
         verify(mRequestRepository).addRequestCoordinator(any());
     }
 
+    @Test
+    @SmallTest
+    public void testRetrieveCapForRemoteRespondedDirectly() throws Exception {
+        UceRequestManager requestManager = getUceRequestManager();
+        requestManager.setsUceUtilsProxy(getUceUtilsProxy(true, true, true, false, true, 10));
+        Uri contact = Uri.fromParts("sip", "test", null);
+        RcsContactUceCapability deviceCaps = new RcsContactUceCapability.OptionsBuilder(
+                Uri.fromParts("sip", "device", null), SOURCE_TYPE_CACHED).build();
+        doReturn(deviceCaps).when(mCallback).getDeviceCapabilities(CAPABILITY_MECHANISM_OPTIONS);
+
+        requestManager.retrieveCapabilitiesForRemote(contact,
+                Collections.singletonList(FeatureTags.FEATURE_TAG_CHAT_IM), mOptionsReqCallback);
+
+        verify(mOptionsReqCallback).respondToCapabilityRequest(deviceCaps, false);
+        verify(mRequestRepository, never()).addRequestCoordinator(any());
+
+        // The remote capabilities are saved on the handler thread after responding.
+        Handler handler = requestManager.getUceRequestHandler();
+        waitForHandlerAction(handler, 500L);
+        verify(mCallback).saveCapabilities(any());
+    }
+
+    @Test
+    @SmallTest
+    public void testRetrieveCapForRemoteRespondedWithErrorOnException() throws Exception {
+        UceRequestManager requestManager = getUceRequestManager();
+        requestManager.setsUceUtilsProxy(getUceUtilsProxy(true, true, true, false, true, 10));
+        Uri contact = Uri.fromParts("sip", "test", null);
+        doThrow(new IllegalStateException()).when(mCallback)
+                .getDeviceCapabilities(CAPABILITY_MECHANISM_OPTIONS);
+
+        requestManager.retrieveCapabilitiesForRemote(contact,
+                Collections.singletonList(FeatureTags.FEATURE_TAG_CHAT_IM), mOptionsReqCallback);
+
+        verify(mOptionsReqCallback).respondToCapabilityRequestWithError(
+                eq(NetworkSipCode.SIP_CODE_SERVER_INTERNAL_ERROR), any());
+        verify(mOptionsReqCallback, never()).respondToCapabilityRequest(any(), anyBoolean());
+        verify(mRequestRepository, never()).addRequestCoordinator(any());
+    }
+
+    @Test
+    @SmallTest
+    public void testRetrieveCapForRemoteBlockedNumber() throws Exception {
+        UceRequestManager requestManager = getUceRequestManager();
+        requestManager.setsUceUtilsProxy(getUceUtilsProxy(true, true, true, true, true, 10));
+        Uri contact = Uri.fromParts("sip", "test", null);
+        RcsContactUceCapability deviceCaps = new RcsContactUceCapability.OptionsBuilder(
+                Uri.fromParts("sip", "device", null), SOURCE_TYPE_CACHED).build();
+        doReturn(deviceCaps).when(mCallback).getDeviceCapabilities(CAPABILITY_MECHANISM_OPTIONS);
+
+        requestManager.retrieveCapabilitiesForRemote(contact,
+                Collections.singletonList(FeatureTags.FEATURE_TAG_CHAT_IM), mOptionsReqCallback);
+
+        // The blocked number is handled by the RemoteOptionsCoordinator.
+        verify(mRequestRepository).addRequestCoordinator(any());
+        verify(mOptionsReqCallback, never()).respondToCapabilityRequest(any(), anyBoolean());
+    }
+
     private UceRequestManager getUceRequestManager() {
         UceRequestManager manager = new UceRequestManager(mContext, mSubId, Looper.getMainLooper(),
                 mCallback, mRequestRepository);
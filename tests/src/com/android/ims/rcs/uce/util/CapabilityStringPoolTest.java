@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.ims.rcs.uce.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import android.telephony.ims.RcsContactPresenceTuple;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.ims.ImsTestBase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+public class CapabilityStringPoolTest extends ImsTestBase {
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    @Test
+    @SmallTest
+    public void testWellKnownValuePooled() throws Exception {
+        String serviceId = new String(RcsContactPresenceTuple.SERVICE_ID_MMTEL);
+
+        assertSame(RcsContactPresenceTuple.SERVICE_ID_MMTEL,
+                CapabilityStringPool.intern(serviceId));
+        assertNull(CapabilityStringPool.intern(null));
+    }
+
+    @Test
+    @SmallTest
+    public void testSameInstanceReturned() throws Exception {
+        String featureTag = new String("+g.test.feature");
+
+        String pooledValue = CapabilityStringPool.intern(featureTag);
+
+        assertEquals(featureTag, pooledValue);
+        assertSame(pooledValue, CapabilityStringPool.intern(new String("+g.test.feature")));
+    }
+
+    @Test
+    @SmallTest
+    public void testLongValueNotPooled() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i <= CapabilityStringPool.MAX_VALUE_LENGTH; i++) {
+            builder.append('a');
+        }
+        String value = builder.toString();
+        int size = CapabilityStringPool.size();
+
+        assertSame(value, CapabilityStringPool.intern(value));
+        assertNotSame(value, CapabilityStringPool.intern(new String(value)));
+        assertEquals(size, CapabilityStringPool.size());
+    }
+
+    @Test
+    @SmallTest
+    public void testLeastRecentlyUsedValueEvicted() throws Exception {
+        String firstValue = CapabilityStringPool.intern(new String("+g.test.first"));
+        for (int i = 0; i < CapabilityStringPool.MAX_POOL_SIZE; i++) {
+            CapabilityStringPool.intern("+g.test.value" + i);
+        }
+
+        // The pool is full, but the new values are still pooled.
+        String lastValue = CapabilityStringPool.intern(new String("+g.test.last"));
+        assertSame(lastValue, CapabilityStringPool.intern(new String("+g.test.last")));
+        assertEquals(CapabilityStringPool.MAX_POOL_SIZE, CapabilityStringPool.size());
+
+        // The least recently used value has been removed.
+        assertNotSame(firstValue, CapabilityStringPool.intern(new String("+g.test.first")));
+
+        // The well-known values are not evicted.
+        String serviceId = new String(RcsContactPresenceTuple.SERVICE_ID_CHAT_V2);
+        assertSame(RcsContactPresenceTuple.SERVICE_ID_CHAT_V2,
+                CapabilityStringPool.intern(serviceId));
+    }
+}